@@ -0,0 +1,129 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import uk.ac.napier.sa.model.ConnectionPool;
+import uk.ac.napier.sa.model.DatabaseManager;
+import uk.ac.napier.sa.model.SqlScriptRunner;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * An embedded database seeded with a given number of products, shared by every thread of a benchmark trial.
+ * Customers, sales and past transactions are generated in proportion to the product count, with purchases spread
+ * over the last two months so the monthly report has both current and historic data to work with.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    /**
+     * Every twentieth product is kept low in stock, so the stock check has something to report.
+     */
+    static final int LOW_STOCK_EVERY = 20;
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long SEED = 42L;
+
+    /**
+     * The number of products in the catalogue.
+     */
+    @Param({"100", "10000"})
+    public int products;
+
+    int customers;
+    DatabaseManager database;
+
+    String url;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        customers = Math.max(10, products / 10);
+        url = "jdbc:h2:mem:benchmark-" + products + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+
+        // The manager and the controller report to the console as they work, which would drown out the results.
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            try (Reader schema = new InputStreamReader(Objects.requireNonNull(
+                    BenchmarkDatabase.class.getResourceAsStream("/benchmark-schema.sql")), StandardCharsets.UTF_8)) {
+                new SqlScriptRunner(conn).run(schema);
+            }
+            seed(conn);
+
+            // The pool is opened while the seeding connection still holds the in-memory database open.
+            database = DatabaseManager.getInstance();
+            if (!database.connect(url, "sa", "", new ConnectionPool.Settings(2, 64, 5000, 300000, 2, 64))) {
+                throw new IllegalStateException("Could not connect to " + url);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.disconnect();
+        System.setOut(out);
+    }
+
+    private void seed(@NotNull Connection conn) throws SQLException {
+        SplittableRandom random = new SplittableRandom(SEED);
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO customer (name, loyal) VALUES (?, ?)")) {
+            for (int i = 1; i <= customers; i++) {
+                stmt.setString(1, "Customer " + i);
+                stmt.setBoolean(2, random.nextInt(3) == 0);
+                add(stmt, i);
+            }
+            stmt.executeBatch();
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO product (name, stock, price) VALUES (?, ?, ?)")) {
+            for (int i = 1; i <= products; i++) {
+                stmt.setString(1, "Product " + i);
+                stmt.setInt(2, i % LOW_STOCK_EVERY == 0 ? random.nextInt(6) : 1_000_000_000);
+                stmt.setBigDecimal(3, BigDecimal.valueOf(100 + random.nextInt(5000), 2));
+                add(stmt, i);
+            }
+            stmt.executeBatch();
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO sale (product, type) VALUES (?, ?)")) {
+            for (int i = 1; i <= products / 10; i++) {
+                stmt.setInt(1, 1 + random.nextInt(products));
+                stmt.setInt(2, 1 + random.nextInt(3));
+                add(stmt, i);
+            }
+            stmt.executeBatch();
+        }
+
+        Instant now = Instant.now();
+        long window = ChronoUnit.SECONDS.between(now.minus(60, ChronoUnit.DAYS), now);
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO `transaction` (product, customer, cost, purchased) VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= products * 10; i++) {
+                stmt.setInt(1, 1 + random.nextInt(products));
+                stmt.setInt(2, 1 + random.nextInt(customers));
+                stmt.setBigDecimal(3, BigDecimal.valueOf(100 + random.nextInt(5000), 2));
+                stmt.setTimestamp(4, Timestamp.from(now.minusSeconds(random.nextLong(window))));
+                add(stmt, i);
+            }
+            stmt.executeBatch();
+        }
+
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    private static void add(@NotNull PreparedStatement stmt, int row) throws SQLException {
+        stmt.addBatch();
+        if (row % BATCH_SIZE == 0) stmt.executeBatch();
+    }
+}
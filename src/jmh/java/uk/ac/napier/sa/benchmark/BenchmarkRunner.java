@@ -0,0 +1,42 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.stream.IntStream;
+
+/**
+ * Runs every benchmark first on one thread and then on as many threads as there are processors, recording
+ * throughput, latency percentiles and allocation rate per operation.
+ * Results are written to {@code benchmark-<threads>.json} so that runs from before and after a change can be compared.
+ * <p>
+ * Arguments, if any, are regular expressions choosing which benchmarks to run, e.g. {@code purchase}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int[] threads = IntStream.of(1, Runtime.getRuntime().availableProcessors()).distinct().toArray();
+
+        for (int t : threads) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .threads(t)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("benchmark-" + t + ".json");
+
+            if (args.length == 0) {
+                options.include(BenchmarkRunner.class.getPackageName() + ".*Benchmark");
+            } else {
+                for (String pattern : args) options.include(pattern);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.napier.sa.controller.Controller;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link Controller} operations, which add formatting of the results on top of the database manager.
+ * {@code changePrice} and {@code enrolOnLoyaltyCardScheme} are left out as they wait for input on the console.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ControllerBenchmark {
+
+    private Controller controller;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase db) {
+        controller = new Controller(db.database);
+    }
+
+    @Benchmark
+    public String retrieveProduct(RandomIds ids) {
+        return controller.retrieveProduct(ids.product());
+    }
+
+    @Benchmark
+    public String purchase(RandomIds ids) {
+        return controller.purchase(ids.customer(), ids.product());
+    }
+
+    @Benchmark
+    public String addSale(RandomIds ids) {
+        return controller.addSale(ids.product(), 1);
+    }
+
+    @Benchmark
+    public String stockMonitor() {
+        return controller.stockMonitor();
+    }
+
+    @Benchmark
+    public String generateReport() {
+        return controller.generateReport();
+    }
+}
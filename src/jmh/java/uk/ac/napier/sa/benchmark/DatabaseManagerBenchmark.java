@@ -0,0 +1,77 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
+import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Receipt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link uk.ac.napier.sa.model.DatabaseManager} operations.
+ * {@code changePrice} is left out as it asks for manager authorisation on the console.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseManagerBenchmark {
+
+    @Benchmark
+    public Product getProduct(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.getProduct(ids.product());
+    }
+
+    @Benchmark
+    public List<Product> getProducts(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.getProducts(ids.products(RandomIds.BATCH));
+    }
+
+    @Benchmark
+    public List<Product> getAllProducts(BenchmarkDatabase db) {
+        return db.database.getAllProducts();
+    }
+
+    @Benchmark
+    public String retrieveProductName(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.retrieveProductName(ids.product());
+    }
+
+    @Benchmark
+    public Receipt purchase(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.completePurchase(ids.customer(), ids.product());
+    }
+
+    @Benchmark
+    public BasketReceipt purchaseBasket(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.purchaseBasket(ids.customer(), ids.basket(RandomIds.BASKET));
+    }
+
+    @Benchmark
+    public boolean sell(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.sell(ids.product(), 1);
+    }
+
+    @Benchmark
+    public List<Integer> stockMonitor(BenchmarkDatabase db) {
+        return db.database.stockMonitor();
+    }
+
+    @Benchmark
+    public boolean noStock(BenchmarkDatabase db) {
+        return db.database.noStock();
+    }
+
+    @Benchmark
+    public boolean checkLoyaltyCardEligibility(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.checkLoyaltyCardEligibility(ids.customer());
+    }
+
+    @Benchmark
+    public Map<String, Object> generateReport(BenchmarkDatabase db) {
+        return db.database.generateReport();
+    }
+}
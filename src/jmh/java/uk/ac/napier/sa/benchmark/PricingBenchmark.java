@@ -0,0 +1,61 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.model.PricingEngine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link PricingEngine} on its own, measured in baskets priced per second.
+ * A ring of baskets is built up front, with a third of the products on promotion, and each operation prices the next,
+ * reusing one quote, so the allocation rate reported by the runner should be zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+
+    private static final int BASKETS = 1_024;
+
+    /**
+     * The number of products in each basket.
+     */
+    @Param({"1", "10", "100"})
+    public int lines;
+
+    private final PricingEngine engine = new PricingEngine(PricingEngine.Settings.defaults());
+    private final PricingEngine.Quote quote = new PricingEngine.Quote();
+    private PricingEngine.Basket[] baskets;
+    private boolean[] loyal;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42L);
+        baskets = new PricingEngine.Basket[BASKETS];
+        loyal = new boolean[BASKETS];
+
+        for (int b = 0; b < BASKETS; b++) {
+            PricingEngine.Basket basket = new PricingEngine.Basket(lines);
+            for (int i = 0; i < lines; i++) {
+                int saleTypes = random.nextInt(3) == 0 ? Product.saleMask(1 + random.nextInt(3)) : 0;
+                basket.add(1 + i, 1 + random.nextInt(6), 100 + random.nextInt(5000), saleTypes);
+            }
+            baskets[b] = basket;
+            loyal[b] = random.nextInt(3) == 0;
+        }
+    }
+
+    @Benchmark
+    public long price() {
+        int b = next;
+        next = (b + 1) & (BASKETS - 1);
+        engine.price(baskets[b], loyal[b], quote);
+        return quote.total();
+    }
+}
@@ -0,0 +1,99 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import uk.ac.napier.sa.controller.adt.Receipt;
+import uk.ac.napier.sa.model.ConnectionPool;
+import uk.ac.napier.sa.model.PooledConnection;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@code completePurchase}, one transaction of three statements, with the purchase it replaced, which sent
+ * five statements, each committed on its own, on the same database.
+ * The old path is reproduced with its bugs fixed, reading the real loyalty column and recording the product and a
+ * null sale, so that both write the same rows and only the round trips and commits differ.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PurchasePathBenchmark {
+
+    private static final BigDecimal LOYALTY_RATE = new BigDecimal("0.90");
+    private static final BigDecimal SURCHARGE_RATE = new BigDecimal("1.05");
+
+    /**
+     * A pool of its own for the old path, so that it is measured without the manager's caches and indexes.
+     */
+    @State(Scope.Benchmark)
+    public static class SeparateStatements {
+
+        ConnectionPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase db) throws SQLException {
+            pool = new ConnectionPool(db.url, "sa", "", new ConnectionPool.Settings(2, 64, 5000, 300000, 2, 64));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    public Receipt atomicTransaction(BenchmarkDatabase db, RandomIds ids) {
+        return db.database.completePurchase(ids.customer(), ids.product());
+    }
+
+    @Benchmark
+    public boolean separateStatements(SeparateStatements old, RandomIds ids) throws SQLException {
+        int customerId = ids.customer();
+        int productId = ids.product();
+
+        try (PooledConnection c = old.pool.borrow()) {
+            PreparedStatement stmt = c.prepare("UPDATE product SET stock = stock - 1 WHERE id = ? AND stock > 0");
+            stmt.setInt(1, productId);
+            if (stmt.executeUpdate() == 0) return false;
+
+            BigDecimal cost = BigDecimal.ZERO;
+            stmt = c.prepare("SELECT price FROM product WHERE id = ?");
+            stmt.setInt(1, productId);
+            try (ResultSet results = stmt.executeQuery()) {
+                if (results.next()) cost = results.getBigDecimal(1);
+            }
+
+            stmt = c.prepare("SELECT loyal FROM customer WHERE id = ?");
+            stmt.setInt(1, customerId);
+            try (ResultSet results = stmt.executeQuery()) {
+                if (results.next() && results.getInt(1) == 1) cost = cost.multiply(LOYALTY_RATE);
+            }
+            cost = cost.multiply(SURCHARGE_RATE).setScale(2, RoundingMode.UP);
+
+            int saleId = 0;
+            stmt = c.prepare("SELECT id FROM sale WHERE product = ? ORDER BY id DESC");
+            stmt.setInt(1, productId);
+            try (ResultSet results = stmt.executeQuery()) {
+                if (results.next()) saleId = results.getInt(1);
+            }
+
+            stmt = c.prepare("INSERT INTO transaction (`product`, `customer`, `sale`, `cost`) VALUES (?, ?, ?, ?)");
+            stmt.setInt(1, productId);
+            stmt.setInt(2, customerId);
+            if (saleId == 0) {
+                stmt.setNull(3, Types.INTEGER);
+            } else {
+                stmt.setInt(3, saleId);
+            }
+            stmt.setBigDecimal(4, cost);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+}
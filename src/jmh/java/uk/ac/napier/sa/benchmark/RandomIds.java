@@ -0,0 +1,60 @@
+package uk.ac.napier.sa.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Picks the customers and products each benchmark thread works on, so threads do not all contend for the same rows.
+ */
+@State(Scope.Thread)
+public class RandomIds {
+
+    /**
+     * The number of products looked up together by the batch lookup benchmarks.
+     */
+    static final int BATCH = 32;
+
+    /**
+     * The number of products in a basket bought by the basket purchase benchmark.
+     */
+    static final int BASKET = 5;
+
+    private SplittableRandom random;
+    private int products;
+    private int customers;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase db) {
+        random = new SplittableRandom(Thread.currentThread().getId());
+        products = db.products;
+        customers = db.customers;
+    }
+
+    int product() {
+        return 1 + random.nextInt(products);
+    }
+
+    int customer() {
+        return 1 + random.nextInt(customers);
+    }
+
+    List<Integer> products(int n) {
+        List<Integer> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) ids.add(product());
+        return ids;
+    }
+
+    Map<Integer, Integer> basket(int n) {
+        Map<Integer, Integer> items = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) items.merge(product(), 1 + random.nextInt(3), Integer::sum);
+        return items;
+    }
+}
@@ -0,0 +1,117 @@
+package uk.ac.napier.sa.benchmark;
+
+import uk.ac.napier.sa.controller.Controller;
+import uk.ac.napier.sa.model.InMemoryDatabaseManager;
+import uk.ac.napier.sa.server.TillClient;
+import uk.ac.napier.sa.server.TillServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads a {@link TillServer} over loopback from many pipelining tills and reports the requests served per second,
+ * in total and per second of processor time, which is the throughput each core gives.
+ * The server runs on the in-memory database manager, so the figures are those of the server and the controller rather
+ * than of MySQL. Nine requests in ten look up a product and one buys a product.
+ * <p>
+ * Arguments, all optional: the number of tills (default four per processor), the number of requests each till sends
+ * before reading the responses (default 32), and the number of seconds to measure for (default 10).
+ * The processor time is that of the whole process, so it includes the tills as well as the server.
+ */
+public final class TillServerLoadTest {
+
+    private static final int PRODUCTS = 10_000;
+    private static final int CUSTOMERS = 1_000;
+    private static final int WARMUP_SECONDS = 3;
+
+    private TillServerLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int tills = args.length > 0 ? Integer.parseInt(args[0]) : 4 * cores;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        InMemoryDatabaseManager database = new InMemoryDatabaseManager();
+        for (int i = 1; i <= CUSTOMERS; i++) database.addCustomer("Customer " + i, i % 3 == 0);
+        for (int i = 1; i <= PRODUCTS; i++) database.addProduct("Product " + i, 1_000_000_000, BigDecimal.valueOf(100 + i % 5000, 2));
+
+        TillServer.Settings settings = TillServer.Settings.defaults(0);
+
+        // The controller reports to the console as it works, which would slow the server down to the speed of the terminal.
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        LongAdder served = new LongAdder();
+        try (TillServer server = new TillServer(new Controller(database), settings)) {
+            List<Thread> threads = new ArrayList<>(tills);
+            List<TillClient> clients = new ArrayList<>(tills);
+            for (int t = 0; t < tills; t++) {
+                TillClient client = TillClient.connect(server.address());
+                clients.add(client);
+                SplittableRandom random = new SplittableRandom(t);
+                Thread thread = new Thread(() -> run(client, random, depth, served), "till-" + t);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+            threads.forEach(Thread::start);
+
+            Thread.sleep(WARMUP_SECONDS * 1_000L);
+            long startRequests = served.sum();
+            long startCpu = processCpuNanos();
+            long startTime = System.nanoTime();
+
+            Thread.sleep(seconds * 1_000L);
+            long requests = served.sum() - startRequests;
+            double cpu = (processCpuNanos() - startCpu) / 1e9;
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+
+            for (TillClient client : clients) client.close();
+            System.setOut(out);
+            System.out.printf("%d tills, %d requests pipelined, %d processors, %s%n", tills, depth, cores, server.statistics());
+            System.out.printf("%,.0f requests/s%n", requests / elapsed);
+            System.out.printf("%,.0f requests/s per core busy (%.1f cores busy)%n", requests / cpu, cpu / elapsed);
+            System.out.printf("%,.0f requests/s per core available%n", requests / elapsed / cores);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void run(TillClient client, SplittableRandom random, int depth, LongAdder served) {
+        int expected = 0;
+        try {
+            while (true) {
+                for (int i = 0; i < depth; i++) {
+                    int product = 1 + random.nextInt(PRODUCTS);
+                    if (random.nextInt(10) == 0) {
+                        client.purchase(1 + random.nextInt(CUSTOMERS), product);
+                    } else {
+                        client.retrieveProduct(product);
+                    }
+                }
+                client.flush();
+                for (int i = 0; i < depth; i++) {
+                    TillClient.Response response = client.receive();
+                    if (response.requestId() != expected++ || !response.ok()) {
+                        throw new IllegalStateException("Unexpected response " + response);
+                    }
+                }
+                served.add(depth);
+            }
+        } catch (IOException e) {
+            // The till was closed at the end of the run.
+        }
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
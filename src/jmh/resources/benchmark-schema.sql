@@ -0,0 +1,54 @@
+-- ------------------------------ --
+--  Schema for benchmark runs     --
+-- ------------------------------ --
+--
+-- The tables of src/migrations, written with the portable form of the
+-- foreign key clause so that the embedded database accepts them.
+--
+CREATE TABLE customer
+(
+    id    int          NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    name  varchar(255) NOT NULL,
+    loyal tinyint(1)   NOT NULL DEFAULT 0
+);
+
+CREATE TABLE product
+(
+    id            int            NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    name          varchar(255)   NOT NULL,
+    stock         int            NOT NULL,
+    price         decimal(16, 2) NOT NULL,
+    reorder_level int            NOT NULL DEFAULT 5
+);
+
+CREATE TABLE sale
+(
+    id      int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    product int NOT NULL,
+    type    int NOT NULL,
+    CONSTRAINT sale_product FOREIGN KEY (product) REFERENCES product (id)
+);
+
+CREATE TABLE `transaction`
+(
+    id        int            NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    product   int            NOT NULL,
+    customer  int            NOT NULL,
+    sale      int            NULL,
+    cost      decimal(16, 2) NOT NULL,
+    purchased TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT transaction_product FOREIGN KEY (product) REFERENCES product (id),
+    CONSTRAINT transaction_customer FOREIGN KEY (customer) REFERENCES customer (id),
+    CONSTRAINT transaction_sale FOREIGN KEY (sale) REFERENCES sale (id)
+);
+
+CREATE TABLE purchase_order
+(
+    id       int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    product  int NOT NULL,
+    quantity int NOT NULL,
+    ordered  TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT purchase_order_product FOREIGN KEY (product) REFERENCES product (id)
+);
+
+CREATE INDEX transaction_purchased ON `transaction` (purchased, id);
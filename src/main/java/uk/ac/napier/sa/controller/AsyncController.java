@@ -0,0 +1,235 @@
+package uk.ac.napier.sa.controller;
+
+import org.jetbrains.annotations.NotNull;
+import uk.ac.napier.sa.model.TaskExecutors;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+public record AsyncController(RemoteController controller, ExecutorService executor) implements AsyncRemoteController, AutoCloseable {
+
+    /**
+     * Run the operations of a controller on virtual threads where available.
+     *
+     * @param controller The controller whose operations are run.
+     */
+    public AsyncController(@NotNull RemoteController controller) {
+        this(controller, TaskExecutors.newExecutor("controller"));
+    }
+
+    /**
+     * Obtain relevant product information.
+     *
+     * @param id The ID of the product
+     * @return The product details.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> retrieveProduct(int id) {
+        return supply(() -> controller.retrieveProduct(id));
+    }
+
+    /**
+     * Obtain information for several products, looking them up concurrently.
+     *
+     * @param ids The IDs of the products.
+     * @return The product details, in the order the IDs were given.
+     */
+    @Override
+    public @NotNull CompletableFuture<List<String>> retrieveProducts(@NotNull Collection<Integer> ids) {
+        List<CompletableFuture<String>> lookups = ids.stream().map(this::retrieveProduct).toList();
+        return CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new))
+                .thenApply(done -> lookups.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Change the price of an item.
+     * ** REQUIRES MANAGER AUTHORISATION **
+     *
+     * @param id       The ID of the item.
+     * @param newPrice The new price of the item.
+     * @return Whether the price has been updated.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> changePrice(int id, double newPrice) {
+        return supply(() -> controller.changePrice(id, newPrice));
+    }
+
+    /**
+     * Change the price of an item, with the manager's credentials given up front.
+     *
+     * @param id       The ID of the item.
+     * @param newPrice The new price of the item.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return Whether the price has been updated.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> changePrice(int id, double newPrice, @NotNull String username, @NotNull String password) {
+        return supply(() -> controller.changePrice(id, newPrice, username, password));
+    }
+
+    /**
+     * Change the prices of every item in a price list file.
+     *
+     * @param file     The path of the price list.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return How many prices were changed, or what was wrong with the file.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> changePrices(@NotNull String file, @NotNull String username, @NotNull String password) {
+        return supply(() -> controller.changePrices(file, username, password));
+    }
+
+    /**
+     * Load CSV files of customers, products, sales and transactions.
+     *
+     * @param directory The directory holding the files.
+     * @return How many rows of each file were loaded, and how fast.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> importCatalog(@NotNull String directory) {
+        return supply(() -> controller.importCatalog(directory));
+    }
+
+    /**
+     * Export the transactions made between two dates to a file.
+     *
+     * @param from The first day, as yyyy-MM-dd, or blank for the first transaction.
+     * @param to   The last day, as yyyy-MM-dd, or blank for the last transaction.
+     * @param file The file to write.
+     * @return How many transactions were exported, and the size of the file.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> exportTransactions(@NotNull String from, @NotNull String to, @NotNull String file) {
+        return supply(() -> controller.exportTransactions(from, to, file));
+    }
+
+    /**
+     * Produce a report of the transactions made between two dates from an export file.
+     *
+     * @param file The export file.
+     * @param from The first day, as yyyy-MM-dd, or blank for the first transaction.
+     * @param to   The last day, as yyyy-MM-dd, or blank for the last transaction.
+     * @return The report.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> reportFromExport(@NotNull String file, @NotNull String from, @NotNull String to) {
+        return supply(() -> controller.reportFromExport(file, from, to));
+    }
+
+    /**
+     * Create a purchase.
+     *
+     * @param customer The customer ID
+     * @param product  The product ID.
+     * @return The receipt for the purchase, or why it has been disallowed.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> purchase(int customer, int product) {
+        return supply(() -> controller.purchase(customer, product));
+    }
+
+    /**
+     * Purchase several products at once.
+     *
+     * @param customer The customer ID
+     * @param items    The number of units of each product, keyed by product ID.
+     * @return The receipt for the basket, or why it has been disallowed.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> purchaseBasket(int customer, @NotNull Map<Integer, Integer> items) {
+        return supply(() -> controller.purchaseBasket(customer, items));
+    }
+
+    /**
+     * Enrol a customer on the Loyalty Card scheme.
+     *
+     * @param id The ID of the customer.
+     * @return Whether the customer was added to the scheme
+     */
+    @Override
+    public @NotNull CompletableFuture<String> enrolOnLoyaltyCardScheme(int id) {
+        return supply(() -> controller.enrolOnLoyaltyCardScheme(id));
+    }
+
+    /**
+     * Enrol a customer on the Loyalty Card scheme, with the customer's answer given up front.
+     *
+     * @param id        The ID of the customer.
+     * @param confirmed Whether the customer wants to join the scheme if they are eligible.
+     * @return Whether the customer was added to the scheme
+     */
+    @Override
+    public @NotNull CompletableFuture<String> enrolOnLoyaltyCardScheme(int id, boolean confirmed) {
+        return supply(() -> controller.enrolOnLoyaltyCardScheme(id, confirmed));
+    }
+
+    /**
+     * Print the last N purchases from the database.
+     *
+     * @param n The amount of purchases.
+     */
+    @Override
+    public @NotNull CompletableFuture<Void> printLastNPurchases(int n) {
+        return CompletableFuture.runAsync(() -> controller.printLastNPurchases(n), executor);
+    }
+
+    /**
+     * Generate a report for the user of the system.
+     *
+     * @return A report for that month.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> generateReport() {
+        return supply(controller::generateReport);
+    }
+
+    /**
+     * Check for low and out of stock products.
+     *
+     * @return Whether the stock check has completed.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> stockMonitor() {
+        return supply(controller::stockMonitor);
+    }
+
+    /**
+     * Apply a sale to a product.
+     *
+     * @param id       The ID of the product.
+     * @param selected The type of sale.
+     * @return Whether the sale has been applied.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> addSale(int id, int selected) {
+        return supply(() -> controller.addSale(id, selected));
+    }
+
+    /**
+     * Run the stock check and the monthly report at the same time and combine their results.
+     *
+     * @return The stock check status followed by the report.
+     */
+    @Override
+    public @NotNull CompletableFuture<String> overview() {
+        return stockMonitor().thenCombine(generateReport(), (stock, report) -> stock + "\n" + report);
+    }
+
+    /**
+     * Stop accepting operations. Operations already started are allowed to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> @NotNull CompletableFuture<T> supply(@NotNull Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, executor);
+    }
+}
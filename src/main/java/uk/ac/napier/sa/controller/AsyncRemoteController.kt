@@ -0,0 +1,23 @@
+package uk.ac.napier.sa.controller
+
+import java.util.concurrent.CompletableFuture
+
+interface AsyncRemoteController {
+    fun retrieveProduct(id: Int): CompletableFuture<String?>
+    fun retrieveProducts(ids: Collection<Int>): CompletableFuture<List<String?>>
+    fun changePrice(id: Int, newPrice: Double): CompletableFuture<String>
+    fun changePrice(id: Int, newPrice: Double, username: String, password: String): CompletableFuture<String>
+    fun changePrices(file: String, username: String, password: String): CompletableFuture<String>
+    fun importCatalog(directory: String): CompletableFuture<String>
+    fun exportTransactions(from: String, to: String, file: String): CompletableFuture<String>
+    fun reportFromExport(file: String, from: String, to: String): CompletableFuture<String>
+    fun purchase(customer: Int, product: Int): CompletableFuture<String>
+    fun purchaseBasket(customer: Int, items: Map<Int, Int>): CompletableFuture<String>
+    fun enrolOnLoyaltyCardScheme(id: Int): CompletableFuture<String?>
+    fun enrolOnLoyaltyCardScheme(id: Int, confirmed: Boolean): CompletableFuture<String>
+    fun printLastNPurchases(n: Int): CompletableFuture<Void?>
+    fun generateReport(): CompletableFuture<String?>
+    fun stockMonitor(): CompletableFuture<String?>
+    fun addSale(id: Int, selected: Int): CompletableFuture<String?>
+    fun overview(): CompletableFuture<String>
+}
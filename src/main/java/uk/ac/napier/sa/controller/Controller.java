@@ -2,12 +2,25 @@ package uk.ac.napier.sa.controller;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
 import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Receipt;
+import uk.ac.napier.sa.metrics.Instrumentation;
+import uk.ac.napier.sa.model.CatalogImporter;
+import uk.ac.napier.sa.model.PriceList;
 import uk.ac.napier.sa.model.RemoteDatabaseManager;
+import uk.ac.napier.sa.model.SalesSummary;
+import uk.ac.napier.sa.model.TransactionExport;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 
@@ -22,7 +35,7 @@ public record Controller(RemoteDatabaseManager rdbm) implements RemoteController
     @Override
     public String retrieveProduct(int id) {
         Product p = rdbm.getProduct(id);
-        return p.toString();
+        return p != null ? p.toString() : "[!] Product " + id + " does not exist.";
     }
 
     /**
@@ -39,17 +52,117 @@ public record Controller(RemoteDatabaseManager rdbm) implements RemoteController
         return rdbm.changePrice(id, newPrice) ? "Price updated successfully." : "[!] Price has not been updated.";
     }
 
+    /**
+     * Change the price of an item, with the manager's credentials given up front rather than asked for.
+     *
+     * @param id       The ID of the item.
+     * @param newPrice The new price of the item.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return Whether the price has been updated.
+     */
+    @Override
+    public @NotNull
+    String changePrice(int id, double newPrice, @NotNull String username, @NotNull String password) {
+        return rdbm.changePrice(id, newPrice, username, password) ? "Price updated successfully." : "[!] Price has not been updated.";
+    }
+
+    /**
+     * Change the prices of every item in a price list file, all together.
+     * ** REQUIRES MANAGER AUTHORISATION **
+     *
+     * @param file     The path of the price list.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return How many prices were changed and how long it took, or what was wrong with the file.
+     */
+    @Override
+    public @NotNull
+    String changePrices(@NotNull String file, @NotNull String username, @NotNull String password) {
+        PriceList.Update update = rdbm.changePrices(file, username, password);
+        if (update == null) return "[!] Prices have not been updated.";
+
+        if (!update.applied()) {
+            StringBuilder sb = new StringBuilder("[!] Prices have not been updated, as the price list is not valid:\n");
+            update.errors().forEach(error -> sb.append(error).append('\n'));
+            return sb.toString();
+        }
+        return String.format("%d of %d prices changed (read in %d ms, applied in %d ms).", update.changed(), update.rows(),
+                update.reading().toMillis(), update.applying().toMillis());
+    }
+
+    /**
+     * Load CSV files of customers, products, sales and transactions, named after their tables.
+     *
+     * @param directory The directory holding the files.
+     * @return How many rows of each file were loaded, and how fast, with the lines that were skipped.
+     */
+    @Override
+    public @NotNull
+    String importCatalog(@NotNull String directory) {
+        List<CatalogImporter.Result> results = rdbm.importCatalog(directory);
+        if (results == null) return "[!] The import has not been completed.";
+        if (results.isEmpty()) return "[!] There are no files to import in " + directory + ".";
+
+        StringBuilder sb = new StringBuilder();
+        for (CatalogImporter.Result result : results) {
+            sb.append(String.format("%s: %,d rows imported in %.1f s (%,.0f rows/s)", result.table().file(), result.rows(),
+                    result.elapsed().toMillis() / 1000.0, result.rowsPerSecond()));
+            if (result.rejected() > 0) sb.append(String.format(", %,d line%s skipped", result.rejected(), result.rejected() == 1 ? "" : "s"));
+            sb.append('\n');
+            result.errors().forEach(error -> sb.append("    ").append(error).append('\n'));
+        }
+        return sb.toString();
+    }
+
     /**
      * Create a purchase.
      *
      * @param customer The customer ID
      * @param product  The {@link Product} ID.
-     * @return Whether the purchase has been allowed.
+     * @return The receipt for the purchase, or why it has been disallowed.
      */
     @Override
     public @NotNull
     String purchase(int customer, int product) {
-        return rdbm.purchase(customer, product) ? "Purchase has been confirmed." : "[!] Purchase disallowed.";
+        Receipt receipt = rdbm.completePurchase(customer, product);
+        if (receipt == null) return "[!] Purchase disallowed.";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Product price: £%s\n", receipt.getPrice().toPlainString()));
+        if (receipt.isDiscounted()) {
+            sb.append(String.format("Customer is on loyalty card scheme. £%s discount has been applied.\n", receipt.getDiscount().toPlainString()));
+        }
+        sb.append(String.format("Total cost: £%s\n", receipt.getCost().toPlainString()));
+        sb.append(String.format("Purchase has been confirmed (transaction %d).", receipt.getTransactionId()));
+        return sb.toString();
+    }
+
+    /**
+     * Purchase several products at once, with their promotions applied.
+     *
+     * @param customer The customer ID
+     * @param items    The number of units of each {@link Product}, keyed by product ID.
+     * @return The receipt for the basket, or why it has been disallowed.
+     */
+    @Override
+    public @NotNull
+    String purchaseBasket(int customer, @NotNull Map<Integer, Integer> items) {
+        BasketReceipt receipt = rdbm.purchaseBasket(customer, items);
+        if (receipt == null) return "[!] Purchase disallowed.";
+
+        StringBuilder sb = new StringBuilder();
+        for (BasketReceipt.Line line : receipt.getLines()) {
+            sb.append(String.format("Product %d: %d x £%s", line.getProductId(), line.getQuantity(), line.getPrice().toPlainString()));
+            if (line.getPromotion().signum() > 0) sb.append(String.format(", £%s off", line.getPromotion().toPlainString()));
+            if (line.getDiscount().signum() > 0) sb.append(String.format(", £%s loyalty discount", line.getDiscount().toPlainString()));
+            sb.append(String.format(" = £%s\n", line.getCost().toPlainString()));
+        }
+        if (receipt.getDelivery().signum() > 0) sb.append(String.format("Delivery: £%s\n", receipt.getDelivery().toPlainString()));
+        sb.append(String.format("Total saved: £%s\n", receipt.getSavings().toPlainString()));
+        sb.append(String.format("Total cost: £%s\n", receipt.getTotal().toPlainString()));
+        sb.append("Purchase has been confirmed.");
+        return sb.toString();
     }
 
     /**
@@ -68,19 +181,37 @@ public record Controller(RemoteDatabaseManager rdbm) implements RemoteController
                     [N] No
                                         
                     Enter your choice: """);
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in))) {
-                String selection = br.readLine();
-                if (selection.equalsIgnoreCase("y")) {
+            try {
+                // System.in is not closed, as the menu goes on reading from it.
+                String selection = new BufferedReader(new InputStreamReader(System.in)).readLine();
+                if (selection != null && selection.equalsIgnoreCase("y")) {
                     rdbm.grantLoyalty(id);
                     return String.format("Customer %d has been placed on Loyalty Card scheme!", id);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
+                Instrumentation.failed();
             }
         }
         return "Customer not placed on loyalty scheme.\n";
     }
 
+    /**
+     * Enrol a customer on the Loyalty Card scheme, with the customer's answer given up front rather than asked for.
+     *
+     * @param id        The ID of the customer.
+     * @param confirmed Whether the customer wants to join the scheme if they are eligible.
+     * @return Whether the customer was added to the scheme
+     */
+    @Override
+    public @NotNull
+    String enrolOnLoyaltyCardScheme(int id, boolean confirmed) {
+        if (confirmed && rdbm.checkLoyaltyCardEligibility(id) && rdbm.grantLoyalty(id)) {
+            return String.format("Customer %d has been placed on Loyalty Card scheme!", id);
+        }
+        return "Customer not placed on loyalty scheme.\n";
+    }
+
     public String stockMonitor() {
         List<Integer> lowStock = rdbm.stockMonitor();
 
@@ -146,4 +277,78 @@ public record Controller(RemoteDatabaseManager rdbm) implements RemoteController
         }
         return "No report to be generated.";
     }
+
+    /**
+     * Export the transactions made between two dates, with their products and customers, to a compressed file that
+     * can be reported on later without the database.
+     *
+     * @param from The first day, as yyyy-MM-dd, or blank for the first transaction.
+     * @param to   The last day, as yyyy-MM-dd, or blank for the last transaction.
+     * @param file The file to write.
+     * @return How many transactions were exported, and the size of the file.
+     */
+    @Override
+    public @NotNull
+    String exportTransactions(@NotNull String from, @NotNull String to, @NotNull String file) {
+        Instant start;
+        Instant end;
+        try {
+            start = startOfDay(from, 0);
+            end = startOfDay(to, 1);
+        } catch (DateTimeParseException e) {
+            return "[!] Dates must be given as yyyy-MM-dd.";
+        }
+
+        TransactionExport.Result result = rdbm.exportTransactions(start, end, file);
+        if (result == null) return "[!] The transactions have not been exported.";
+        return String.format("%,d transactions exported to %s in %.1f s (%,d bytes, %.1f bytes per transaction).", result.rows(), file,
+                result.elapsed().toMillis() / 1000.0, result.bytes(), result.rows() == 0 ? 0 : (double) result.bytes() / result.rows());
+    }
+
+    /**
+     * Produce a report of the transactions made between two dates from an export file, without the database.
+     *
+     * @param file The export file.
+     * @param from The first day, as yyyy-MM-dd, or blank for the first transaction.
+     * @param to   The last day, as yyyy-MM-dd, or blank for the last transaction.
+     * @return The report.
+     */
+    @Override
+    public @NotNull
+    String reportFromExport(@NotNull String file, @NotNull String from, @NotNull String to) {
+        SalesSummary summary;
+        try (TransactionExport.Reader reader = TransactionExport.Reader.open(Path.of(file))) {
+            summary = reader.salesSummary(startOfDay(from, 0), startOfDay(to, 1));
+        } catch (DateTimeParseException e) {
+            return "[!] Dates must be given as yyyy-MM-dd.";
+        } catch (IOException e) {
+            e.printStackTrace();
+            Instrumentation.failed();
+            return "[!] " + file + " could not be read.";
+        }
+
+        Map<String, Object> map = summary.report();
+        return String.format("""
+                        REPORT FROM %s
+                        Total purchases made: %s
+                        Total revenue: %s
+                        Most popular item: %s
+                        """,
+                file,
+                map.get("purchases"),
+                map.get("revenue"),
+                map.get("most-popular"));
+    }
+
+    /**
+     * Find when a day starts in the local time zone.
+     *
+     * @param date  The day, as yyyy-MM-dd, or blank for none.
+     * @param after The number of days after it to go to, such as 1 for the end of the day.
+     * @return The start of the day, or null if none was given.
+     */
+    private static @Nullable Instant startOfDay(@NotNull String date, int after) {
+        if (date.isBlank()) return null;
+        return LocalDate.parse(date.trim()).plusDays(after).atStartOfDay(ZoneId.systemDefault()).toInstant();
+    }
 }
@@ -6,13 +6,20 @@ import uk.ac.napier.sa.model.RemoteDatabaseManager
 interface RemoteController {
     fun retrieveProduct(id: Int): String?
     fun changePrice(id: Int, newPrice: Double): String
+    fun changePrice(id: Int, newPrice: Double, username: String, password: String): String
+    fun changePrices(file: String, username: String, password: String): String
+    fun importCatalog(directory: String): String
     fun purchase(customer: Int, product: Int): String
+    fun purchaseBasket(customer: Int, items: Map<Int, Int>): String
     fun enrolOnLoyaltyCardScheme(id: Int): String?
+    fun enrolOnLoyaltyCardScheme(id: Int, confirmed: Boolean): String
 
     @Contract(pure = true)
     fun finance(choice: Char): String
     fun printLastNPurchases(n: Int)
     fun generateReport(): String?
+    fun exportTransactions(from: String, to: String, file: String): String
+    fun reportFromExport(file: String, from: String, to: String): String
     fun rdbm(): RemoteDatabaseManager?
     fun stockMonitor(): String?
     fun addSale(id: Int, selected: Int): String?
@@ -0,0 +1,43 @@
+package uk.ac.napier.sa.controller.adt
+
+import java.math.BigDecimal
+
+/**
+ * This class is used to represent the outcome of a completed basket purchase.
+ *
+ * @property customerId The ID of the customer who made the purchase.
+ * @property lines      One line per product bought, in product ID order.
+ * @property delivery   The delivery charge, which is zero if any product has free delivery.
+ * @property total      The total cost charged to the customer.
+ */
+data class BasketReceipt(
+    val customerId: Int,
+    val lines: List<Line>,
+    val delivery: BigDecimal,
+    val total: BigDecimal
+) {
+    /**
+     * One product of a basket purchase.
+     *
+     * @property productId The ID of the product purchased.
+     * @property quantity  The number of units purchased.
+     * @property price     The price of one unit before any promotion or discount.
+     * @property promotion The saving from the product's promotion.
+     * @property discount  The loyalty card discount taken off the line.
+     * @property cost      The cost charged for the line.
+     */
+    data class Line(
+        val productId: Int,
+        val quantity: Int,
+        val price: BigDecimal,
+        val promotion: BigDecimal,
+        val discount: BigDecimal,
+        val cost: BigDecimal
+    )
+
+    /**
+     * The total saved through promotions and the loyalty card discount.
+     */
+    val savings: BigDecimal
+        get() = lines.fold(BigDecimal.ZERO) { sum, line -> sum.add(line.promotion).add(line.discount) }
+}
@@ -1,12 +1,8 @@
 package uk.ac.napier.sa.controller.adt
 
-import java.text.DecimalFormat
-import java.math.RoundingMode
-import java.lang.StringBuilder
-import java.util.ArrayList
-
 /**
  * This class is used to represent all products in a ORM-based fashion.
+ * The price is held in pence and the sales as a bit mask of sale types, so a product is a few primitive fields and a name.
  */
 class Product {
     /**
@@ -14,30 +10,48 @@ class Product {
      *
      * @return The product ID.
      */
-    private var id = 0
+    var id = 0
+        private set
 
     /**
      * Obtain the product name.
      *
      * @return The product name.
      */
-    private var name: String? = null
+    var name: String? = null
+        private set
 
     /**
      * Obtain the product quantity
      *
      * @return The quantity of the product
      */
-    private var quantity = 0
+    var quantity = 0
+        private set
+
+    /**
+     * Obtain the price per unit in pence
+     *
+     * @return The price per unit in pence
+     */
+    var pricePence = 0L
+        private set
+
+    /**
+     * Obtain the types of sale applied to the product, as a mask with bit n - 1 set for sale type n.
+     *
+     * @return The sale type mask
+     */
+    var saleTypes = 0
+        private set
 
     /**
      * Obtain the price per unit
      *
      * @return The price per unit
      */
-    private var price = 0.0
-
-    private var sales: List<Int>? = null
+    val price: Double
+        get() = pricePence / 100.0
 
     private constructor() {}
 
@@ -54,31 +68,74 @@ class Product {
         this.id = id
         this.name = name
         this.quantity = quantity
-        this.price = price
-        this.sales = (sales ?: ArrayList()) as List<Int>?
+        this.pricePence = Math.round(price * 100)
+        this.saleTypes = sales?.fold(0) { mask, type -> if (type == null) mask else mask or saleMask(type) } ?: 0
     }
 
     /**
-     * The list of sale types attributed to this item.
+     * Create a product from its stored form.
      *
-     * @return A copy of the list of sale types.
+     * @param id         The identification number allocated to the product from the database.
+     * @param name       The name of the product.
+     * @param quantity   The quantity of the item.
+     * @param pricePence The price of the item in pence.
+     * @param saleTypes  The mask of sale types applied to the item, as built by [saleMask].
      */
-    private fun getSales(): String {
-        return sales!!.toTypedArray().contentToString()
+    constructor(id: Int, name: String?, quantity: Int, pricePence: Long, saleTypes: Int) {
+        this.id = id
+        this.name = name
+        this.quantity = quantity
+        this.pricePence = pricePence
+        this.saleTypes = saleTypes
+    }
+
+    /**
+     * Check whether a type of sale is applied to this item.
+     *
+     * @param type The sale type.
+     * @return True if the sale applies.
+     */
+    fun hasSale(type: Int): Boolean {
+        return saleTypes and saleMask(type) != 0
     }
 
     override fun toString(): String {
-        val df = DecimalFormat("#.##")
-        df.roundingMode = RoundingMode.UP
-        return String.format(
-            StringBuilder().append("Product (ID): %d\n").append("Product (Name): %s\n")
-                .append("Product (Price): £%s/unit\n").append("Product (Stock): %d\n").append("Product (Sales): %s\n")
-                .toString(),
-            id, name, df.format(price), quantity,
-            if (getSales().contains("1")) "3 for 2" else if (getSales().contains("2")) "Buy One Get One Free" else if (getSales().contains(
-                    "3"
-                )
-            ) "Free Delivery" else "N/A"
-        )
+        val sb = StringBuilder(128)
+        sb.append("Product (ID): ").append(id).append('\n')
+        sb.append("Product (Name): ").append(name).append('\n')
+        sb.append("Product (Price): £")
+        appendPrice(sb, pricePence)
+        sb.append("/unit\n")
+        sb.append("Product (Stock): ").append(quantity).append('\n')
+        sb.append("Product (Sales): ").append(
+            if (hasSale(1)) "3 for 2" else if (hasSale(2)) "Buy One Get One Free" else if (hasSale(3)) "Free Delivery" else "N/A"
+        ).append('\n')
+        return sb.toString()
+    }
+
+    companion object {
+        /**
+         * Obtain the mask bit of a sale type.
+         *
+         * @param type The sale type, from 1 to 31.
+         * @return The bit for the type, or 0 if the type is out of range.
+         */
+        @JvmStatic
+        fun saleMask(type: Int): Int {
+            return if (type in 1..31) 1 shl (type - 1) else 0
+        }
+
+        /**
+         * Write a price in pence as pounds, with as few decimal places as it needs, as "#.##" would.
+         */
+        private fun appendPrice(sb: StringBuilder, pence: Long) {
+            if (pence < 0) sb.append('-')
+            val abs = Math.abs(pence)
+            sb.append(abs / 100)
+            val fraction = (abs % 100).toInt()
+            if (fraction == 0) return
+            sb.append('.').append(fraction / 10)
+            if (fraction % 10 != 0) sb.append(fraction % 10)
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package uk.ac.napier.sa.controller.adt
+
+import java.math.BigDecimal
+import java.sql.Timestamp
+import java.time.Instant
+
+/**
+ * This class is used to represent a past purchase in the purchase history.
+ *
+ * @property transactionId The ID of the transaction recorded for the purchase.
+ * @property productName   The name of the product purchased.
+ * @property customerName  The name of the customer who made the purchase.
+ * @property cost          The total cost charged to the customer.
+ * @property purchased     When the purchase was made.
+ */
+data class Purchase(
+    val transactionId: Int,
+    val productName: String?,
+    val customerName: String?,
+    val cost: BigDecimal,
+    val purchased: Instant
+) {
+    override fun toString(): String {
+        return String.format(
+            StringBuilder().append("+-----------------------------------+\n")
+                .append("| Transaction ID: %s\t\t\t\t|\n").append("| Product Name: %s\t\t\t\t|\n")
+                .append("| Customer Name: %s\t|\n").append("| Cost (£): %s\t\t\t\t\t|\n")
+                .append("| Purchased: %s\t|\n").append("+-----------------------------------+\n")
+                .toString(),
+            transactionId, productName, customerName, cost.toPlainString(), Timestamp.from(purchased)
+        )
+    }
+}
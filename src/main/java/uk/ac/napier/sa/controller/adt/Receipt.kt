@@ -0,0 +1,28 @@
+package uk.ac.napier.sa.controller.adt
+
+import java.math.BigDecimal
+
+/**
+ * This class is used to represent the outcome of a completed purchase.
+ *
+ * @property transactionId The ID of the transaction recorded for the purchase.
+ * @property customerId    The ID of the customer who made the purchase.
+ * @property productId     The ID of the product purchased.
+ * @property price         The price of the product before any discount.
+ * @property discount      The loyalty card discount taken off the price.
+ * @property cost          The total cost charged to the customer.
+ */
+data class Receipt(
+    val transactionId: Int,
+    val customerId: Int,
+    val productId: Int,
+    val price: BigDecimal,
+    val discount: BigDecimal,
+    val cost: BigDecimal
+) {
+    /**
+     * Whether the customer received a loyalty card discount.
+     */
+    val isDiscounted: Boolean
+        get() = discount.signum() > 0
+}
@@ -0,0 +1,148 @@
+package uk.ac.napier.sa.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps any implementation of an interface, such as a {@code RemoteDatabaseManager} or {@code RemoteController},
+ * so that every call is timed and counted.
+ * Each operation, named by its signature so that overloads are told apart, gets a {@link LatencyHistogram}, a call
+ * count and an error count, exported over JMX under {@code uk.ac.napier.sa:type=Operation}, and each call is also
+ * reported as an {@link OperationEvent} to JDK Flight Recorder when a recording has that event enabled.
+ * A call fails if it throws, or if the implementation reports a failure it has handled through {@link #failed()}.
+ */
+public final class Instrumentation {
+
+    private static final Map<String, Map<String, OperationMetrics>> COMPONENTS = new ConcurrentHashMap<>();
+
+    /**
+     * The innermost measured call in progress on each thread.
+     */
+    private static final ThreadLocal<Call> CURRENT = new ThreadLocal<>();
+
+    private Instrumentation() {
+    }
+
+    /**
+     * Wrap an implementation of an interface so that every call through the interface is measured.
+     *
+     * @param type      The interface.
+     * @param target    The implementation that calls are passed on to.
+     * @param component The name the operations are reported under, such as {@code database}.
+     * @param <T>       The type of the interface.
+     * @return A proxy implementing the interface.
+     */
+    public static <T> @NotNull T instrument(@NotNull Class<T> type, @NotNull T target, @NotNull String component) {
+        Map<String, OperationMetrics> metrics = COMPONENTS.computeIfAbsent(component, name -> new ConcurrentHashMap<>());
+        Map<Method, OperationMetrics> byMethod = new HashMap<>();
+
+        for (Method method : type.getMethods()) {
+            if (method.getDeclaringClass() == Object.class) continue;
+            OperationMetrics m = metrics.computeIfAbsent(signature(method), name -> register(component, name));
+            byMethod.put(method, m);
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new Handler(target, component, byMethod)));
+    }
+
+    /**
+     * Count a failure that an implementation has handled itself, such as an exception it has caught and reported,
+     * against every measured call in progress on this thread. Does nothing when no call is being measured.
+     */
+    public static void failed() {
+        for (Call call = CURRENT.get(); call != null; call = call.outer) {
+            call.failed = true;
+        }
+    }
+
+    /**
+     * Obtain the figures recorded for every operation of a component.
+     *
+     * @param component The name the operations are reported under.
+     * @return The figures, keyed by operation signature, such as {@code getProduct(int)}, which are empty if nothing
+     * has been instrumented under that name.
+     */
+    public static @NotNull Map<String, OperationMetrics> metrics(@NotNull String component) {
+        Map<String, OperationMetrics> metrics = COMPONENTS.get(component);
+        return metrics == null ? Map.of() : Collections.unmodifiableMap(new TreeMap<>(metrics));
+    }
+
+    private static @NotNull String signature(@NotNull Method method) {
+        StringJoiner parameters = new StringJoiner(",", method.getName() + "(", ")");
+        for (Class<?> type : method.getParameterTypes()) parameters.add(type.getSimpleName());
+        return parameters.toString();
+    }
+
+    private static @NotNull OperationMetrics register(@NotNull String component, @NotNull String operation) {
+        OperationMetrics metrics = new OperationMetrics(component, operation);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("uk.ac.napier.sa", new Hashtable<>(Map.of(
+                    "type", "Operation", "component", ObjectName.quote(component), "name", ObjectName.quote(operation))));
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        return metrics;
+    }
+
+    private record Handler(Object target, String component, Map<Method, OperationMetrics> metrics) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            OperationMetrics m = metrics.get(method);
+            if (m == null) return invokeTarget(method, args);
+
+            OperationEvent event = new OperationEvent();
+            event.begin();
+            Call call = new Call(CURRENT.get());
+            CURRENT.set(call);
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invokeTarget(method, args);
+                failed = call.failed;
+                return result;
+            } finally {
+                if (call.outer == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(call.outer);
+                }
+                m.record(System.nanoTime() - start, failed);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.component = component;
+                    event.operation = m.operation();
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class Call {
+        private final Call outer;
+        private boolean failed;
+
+        private Call(Call outer) {
+            this.outer = outer;
+        }
+    }
+}
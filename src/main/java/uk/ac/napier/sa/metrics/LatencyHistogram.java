@@ -0,0 +1,101 @@
+package uk.ac.napier.sa.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds.
+ * Values are counted in log-linear buckets: every power of two is split into 16 buckets, so any percentile is
+ * reported to within about 6% of the true value, from a fixed 960 counters whatever the range of values.
+ * Recording a value is a few atomic increments, so many threads can record at once without blocking each other.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - 1 - (SUB_BUCKET_BITS - 1)) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds; negative values are counted as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(index(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Take a snapshot of the latencies recorded so far.
+     * Values recorded while the snapshot is taken may or may not be included.
+     *
+     * @return The count, mean, maximum and the 50th, 99th and 99.9th percentiles.
+     */
+    public @NotNull Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            n += copy[i];
+        }
+
+        long highest = max.get();
+        return new Snapshot(n, n == 0 ? 0 : total.sum() / (double) n, highest,
+                percentile(copy, n, 0.50, highest), percentile(copy, n, 0.99, highest), percentile(copy, n, 0.999, highest));
+    }
+
+    private static long percentile(long[] counts, long n, double quantile, long highest) {
+        if (n == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestValue(i), highest);
+        }
+        return highest;
+    }
+
+    /**
+     * Find the bucket of a value. Values below 16 have a bucket each; above that, each power of two has 16 buckets.
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Find the highest value counted in a bucket.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+
+    /**
+     * The latencies recorded up to a point in time, in nanoseconds.
+     *
+     * @param count The number of latencies recorded.
+     * @param mean  The mean latency.
+     * @param max   The highest latency.
+     * @param p50   The median latency.
+     * @param p99   The latency 99% of calls were at or below.
+     * @param p999  The latency 99.9% of calls were at or below.
+     */
+    public record Snapshot(long count, double mean, long max, long p50, long p99, long p999) {
+    }
+}
@@ -0,0 +1,24 @@
+package uk.ac.napier.sa.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * A Flight Recorder event for a call to an instrumented operation.
+ * It is disabled unless a recording enables it, in which case a threshold can be set to record only slow calls.
+ */
+@Name("uk.ac.napier.sa.Operation")
+@Label("Store Operation")
+@Description("A call to a database manager or controller operation")
+@Category("DE-Store")
+@StackTrace(false)
+final class OperationEvent extends Event {
+
+    @Label("Component")
+    String component;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Failed")
+    boolean failed;
+}
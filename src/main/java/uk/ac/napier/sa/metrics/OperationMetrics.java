@@ -0,0 +1,91 @@
+package uk.ac.napier.sa.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The call count, error count and latency histogram of one operation.
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+
+    private final String component;
+    private final String operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationMetrics(@NotNull String component, @NotNull String operation) {
+        this.component = component;
+        this.operation = operation;
+    }
+
+    /**
+     * Record a call.
+     *
+     * @param nanos  How long the call took.
+     * @param failed Whether the call threw or reported a failure.
+     */
+    void record(long nanos, boolean failed) {
+        latencies.record(nanos);
+        if (failed) errors.increment();
+    }
+
+    public @NotNull String component() {
+        return component;
+    }
+
+    public @NotNull String operation() {
+        return operation;
+    }
+
+    /**
+     * Take a snapshot of the latencies recorded so far.
+     *
+     * @return The latency snapshot, in nanoseconds.
+     */
+    public @NotNull LatencyHistogram.Snapshot latencies() {
+        return latencies.snapshot();
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.snapshot().count();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.snapshot().mean() / 1_000.0d;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latencies.snapshot().p50() / 1_000.0d;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latencies.snapshot().p99() / 1_000.0d;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latencies.snapshot().p999() / 1_000.0d;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latencies.snapshot().max() / 1_000.0d;
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot s = latencies.snapshot();
+        return String.format("%s.%s: calls=%d errors=%d p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                component, operation, s.count(), errors.sum(), s.p50() / 1_000.0d, s.p99() / 1_000.0d, s.p999() / 1_000.0d, s.max() / 1_000.0d);
+    }
+}
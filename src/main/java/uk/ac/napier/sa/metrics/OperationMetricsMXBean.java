@@ -0,0 +1,22 @@
+package uk.ac.napier.sa.metrics;
+
+/**
+ * The figures for one operation, as exported over JMX.
+ * Latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+}
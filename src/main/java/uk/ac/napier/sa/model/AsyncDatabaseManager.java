@@ -0,0 +1,203 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
+import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Purchase;
+import uk.ac.napier.sa.controller.adt.Receipt;
+
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the operations of any {@link RemoteDatabaseManager} asynchronously, so callers can start several
+ * independent operations at once and combine their results without blocking a thread each.
+ */
+public final class AsyncDatabaseManager implements AsyncRemoteDatabaseManager, AutoCloseable {
+
+    private final RemoteDatabaseManager rdbm;
+    private final ExecutorService executor;
+
+    /**
+     * Run the operations of a database manager on virtual threads where available.
+     *
+     * @param rdbm The database manager whose operations are run.
+     */
+    public AsyncDatabaseManager(@NotNull RemoteDatabaseManager rdbm) {
+        this(rdbm, TaskExecutors.newExecutor("database"));
+    }
+
+    /**
+     * Run the operations of a database manager on the given executor.
+     *
+     * @param rdbm     The database manager whose operations are run.
+     * @param executor The executor the operations are run on, which is shut down when this is closed.
+     */
+    public AsyncDatabaseManager(@NotNull RemoteDatabaseManager rdbm, @NotNull ExecutorService executor) {
+        this.rdbm = rdbm;
+        this.executor = executor;
+    }
+
+    /**
+     * Obtain the database manager whose operations are run.
+     *
+     * @return The underlying database manager.
+     */
+    public @NotNull RemoteDatabaseManager rdbm() {
+        return rdbm;
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> init(String path) {
+        return supply(() -> rdbm.init(path));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> migrate(@NotNull String directory, @NotNull String profile) {
+        return supply(() -> rdbm.migrate(directory, profile));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> changePrice(int id, double price) {
+        return supply(() -> rdbm.changePrice(id, price));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> changePrice(int id, double price, @NotNull String username, @NotNull String password) {
+        return supply(() -> rdbm.changePrice(id, price, username, password));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<PriceList.Update> changePrices(@NotNull String file, @NotNull String username, @NotNull String password) {
+        return supply(() -> rdbm.changePrices(file, username, password));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<CatalogImporter.Result>> importCatalog(@NotNull String directory) {
+        return supply(() -> rdbm.importCatalog(directory));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> sell(int id, int saleType) {
+        return supply(() -> rdbm.sell(id, saleType));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> noStock() {
+        return supply(rdbm::noStock);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> setReorderLevel(int id, int reorderLevel) {
+        return supply(() -> rdbm.setReorderLevel(id, reorderLevel));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> purchase(int customerId, int productId) {
+        return supply(() -> rdbm.purchase(customerId, productId));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Receipt> completePurchase(int customerId, int productId) {
+        return supply(() -> rdbm.completePurchase(customerId, productId));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<BasketReceipt> purchaseBasket(int customerId, @NotNull Map<Integer, Integer> items) {
+        return supply(() -> rdbm.purchaseBasket(customerId, items));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> checkLoyaltyCardEligibility(int id) {
+        return supply(() -> rdbm.checkLoyaltyCardEligibility(id));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> grantLoyalty(int id) {
+        return supply(() -> rdbm.grantLoyalty(id));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<Integer>> grantAllEligibleLoyalty() {
+        return supply(rdbm::grantAllEligibleLoyalty);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Void> printLastNPurchases(int n) {
+        return CompletableFuture.runAsync(() -> rdbm.printLastNPurchases(n), executor);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<TransactionExport.Result> exportTransactions(Instant from, Instant to, @NotNull String file) {
+        return supply(() -> rdbm.exportTransactions(from, to, file));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<Purchase>> purchasesBefore(Purchase before, int limit) {
+        return supply(() -> rdbm.purchasesBefore(before, limit));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Boolean> forEachPurchase(int limit, @NotNull Consumer<Purchase> action) {
+        return supply(() -> rdbm.forEachPurchase(limit, action));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Product> getProduct(int id) {
+        return supply(() -> rdbm.getProduct(id));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<Product>> getProducts(@NotNull Collection<Integer> ids) {
+        return supply(() -> rdbm.getProducts(ids));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<Product>> getAllProducts() {
+        return supply(rdbm::getAllProducts);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<ResultSet> query(@NotNull String sql) {
+        return supply(() -> rdbm.query(sql));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<String> retrieveProductName(int id) {
+        return supply(() -> rdbm.retrieveProductName(id));
+    }
+
+    @Override
+    public @NotNull CompletableFuture<List<Integer>> stockMonitor() {
+        return supply(rdbm::stockMonitor);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<Map<String, Object>> generateReport() {
+        return supply(rdbm::generateReport);
+    }
+
+    @Override
+    public @NotNull CompletableFuture<SalesSummary> salesSummary() {
+        return supply(rdbm::salesSummary);
+    }
+
+    /**
+     * Stop accepting operations. Operations already started are allowed to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> @NotNull CompletableFuture<T> supply(@NotNull Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, executor);
+    }
+}
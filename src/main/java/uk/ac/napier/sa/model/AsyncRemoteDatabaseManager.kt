@@ -0,0 +1,40 @@
+package uk.ac.napier.sa.model
+
+import uk.ac.napier.sa.controller.adt.BasketReceipt
+import uk.ac.napier.sa.controller.adt.Product
+import uk.ac.napier.sa.controller.adt.Purchase
+import uk.ac.napier.sa.controller.adt.Receipt
+import java.sql.ResultSet
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.function.Consumer
+
+interface AsyncRemoteDatabaseManager {
+    fun init(path: String?): CompletableFuture<Boolean>
+    fun migrate(directory: String, profile: String): CompletableFuture<Boolean>
+    fun changePrice(id: Int, price: Double): CompletableFuture<Boolean>
+    fun changePrice(id: Int, price: Double, username: String, password: String): CompletableFuture<Boolean>
+    fun changePrices(file: String, username: String, password: String): CompletableFuture<PriceList.Update?>
+    fun importCatalog(directory: String): CompletableFuture<List<CatalogImporter.Result>?>
+    fun sell(id: Int, saleType: Int): CompletableFuture<Boolean>
+    fun noStock(): CompletableFuture<Boolean>
+    fun setReorderLevel(id: Int, reorderLevel: Int): CompletableFuture<Boolean>
+    fun purchase(customerId: Int, productId: Int): CompletableFuture<Boolean>
+    fun completePurchase(customerId: Int, productId: Int): CompletableFuture<Receipt?>
+    fun purchaseBasket(customerId: Int, items: Map<Int, Int>): CompletableFuture<BasketReceipt?>
+    fun checkLoyaltyCardEligibility(id: Int): CompletableFuture<Boolean>
+    fun grantLoyalty(id: Int): CompletableFuture<Boolean>
+    fun grantAllEligibleLoyalty(): CompletableFuture<List<Int>>
+    fun printLastNPurchases(n: Int): CompletableFuture<Void?>
+    fun exportTransactions(from: Instant?, to: Instant?, file: String): CompletableFuture<TransactionExport.Result?>
+    fun purchasesBefore(before: Purchase?, limit: Int): CompletableFuture<List<Purchase>?>
+    fun forEachPurchase(limit: Int, action: Consumer<Purchase>): CompletableFuture<Boolean>
+    fun getProduct(id: Int): CompletableFuture<Product?>
+    fun getProducts(ids: Collection<Int>): CompletableFuture<List<Product>>
+    fun getAllProducts(): CompletableFuture<List<Product>>
+    fun query(sql: String): CompletableFuture<ResultSet?>
+    fun retrieveProductName(id: Int): CompletableFuture<String?>
+    fun stockMonitor(): CompletableFuture<List<Int?>>
+    fun generateReport(): CompletableFuture<Map<String?, Any?>>
+    fun salesSummary(): CompletableFuture<SalesSummary?>
+}
@@ -0,0 +1,808 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Loads large CSV files of customers, products, sales and transactions, one file per table, such as
+ * {@code customer.csv}. Rows keep the IDs given in the files, so the files may refer to each other, and the tables
+ * are loaded in foreign key order: customers and products together, then sales, then transactions.
+ * <p>
+ * Each file is split into chunks at line boundaries, and the chunks are mapped into memory and parsed in parallel on
+ * a fork-join pool, a byte at a time, with nothing allocated per field but the names. Each batch of parsed rows is
+ * handed to a {@link Sink}, which for MySQL writes it through its own pooled connection with multi-row inserts and
+ * commits it on its own, so a large file is never held in memory or in one transaction.
+ * <p>
+ * Lines that cannot be parsed are skipped and reported, as with {@link PriceList}. A batch the sink rejects stops
+ * the import; the batches committed before it are kept.
+ */
+public final class CatalogImporter {
+
+    /**
+     * The most errors kept from a file, so that a file in the wrong format does not produce one per line.
+     */
+    public static final int MAX_ERRORS = 100;
+
+    /**
+     * The value of a time column that was left empty.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final int MAX_POUND_DIGITS = 14;
+    private static final Table[][] PHASES = {{Table.CUSTOMER, Table.PRODUCT}, {Table.SALE}, {Table.TRANSACTION}};
+
+    /**
+     * What a column of a file holds.
+     */
+    public enum Kind {
+        /**
+         * A whole number from 1 up, which may refer to a row of another file.
+         */
+        ID,
+        /**
+         * A reference to a row of another file, or empty for none, held as 0.
+         */
+        OPTIONAL_ID,
+        /**
+         * A whole number from 0 up.
+         */
+        COUNT,
+        /**
+         * 0 or 1.
+         */
+        FLAG,
+        /**
+         * An amount in pounds with at most two decimal places, held in pence.
+         */
+        MONEY,
+        /**
+         * Text, in double quotes if it holds a comma or a quote, with quotes inside doubled.
+         */
+        TEXT,
+        /**
+         * A time as {@code yyyy-MM-dd HH:mm:ss}, with optional fractions of a second, held in milliseconds since
+         * the epoch, or empty for {@link #NO_TIME}.
+         */
+        TIME
+    }
+
+    /**
+     * The tables that can be imported, with the columns of their files in order.
+     */
+    public enum Table {
+        CUSTOMER("customer", List.of("id", "name", "loyal"), List.of(Kind.ID, Kind.TEXT, Kind.FLAG), 3),
+        PRODUCT("product", List.of("id", "name", "stock", "price", "reorder_level"),
+                List.of(Kind.ID, Kind.TEXT, Kind.COUNT, Kind.MONEY, Kind.COUNT), 4),
+        SALE("sale", List.of("id", "product", "type"), List.of(Kind.ID, Kind.ID, Kind.COUNT), 3),
+        TRANSACTION("transaction", List.of("id", "product", "customer", "sale", "cost", "purchased"),
+                List.of(Kind.ID, Kind.ID, Kind.ID, Kind.OPTIONAL_ID, Kind.MONEY, Kind.TIME), 6);
+
+        private final String table;
+        private final List<String> columns;
+        private final List<Kind> kinds;
+        private final int required;
+
+        Table(String table, List<String> columns, List<Kind> kinds, int required) {
+            this.table = table;
+            this.columns = columns;
+            this.kinds = kinds;
+            this.required = required;
+        }
+
+        /**
+         * Obtain the name of the table in the database.
+         *
+         * @return The table name.
+         */
+        public @NotNull String table() {
+            return table;
+        }
+
+        /**
+         * Obtain the name of the file the table is imported from.
+         *
+         * @return The file name, such as {@code customer.csv}.
+         */
+        public @NotNull String file() {
+            return table + ".csv";
+        }
+
+        /**
+         * Obtain the columns of the file, which are also the columns written to.
+         *
+         * @return The column names, in order.
+         */
+        public @NotNull List<String> columns() {
+            return columns;
+        }
+
+        /**
+         * Obtain what each column of the file holds.
+         *
+         * @return The column kinds, in order.
+         */
+        public @NotNull List<Kind> kinds() {
+            return kinds;
+        }
+
+        /**
+         * Obtain how many columns every line must have. Lines without the rest take the column's default, which is
+         * {@link LowStockIndex#DEFAULT_REORDER_LEVEL} for a product's reorder level.
+         *
+         * @return The number of leading columns that are required.
+         */
+        public int required() {
+            return required;
+        }
+    }
+
+    /**
+     * Where parsed rows go. A sink is called from several threads at once, each with its own batch.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Store a batch of rows, all or none of them.
+         *
+         * @param rows The rows, which are reused once this returns.
+         * @throws SQLException If the rows could not be stored, which stops the import.
+         */
+        void write(@NotNull Rows rows) throws SQLException;
+    }
+
+    /**
+     * A batch of parsed rows of one table, held in primitive arrays.
+     */
+    public static final class Rows {
+        private final Table table;
+        private final int width;
+        private long[] values;
+        private String[] texts;
+        private int size;
+
+        Rows(@NotNull Table table, int capacity) {
+            this.table = table;
+            this.width = table.kinds.size();
+            this.values = new long[capacity * width];
+            this.texts = new String[capacity];
+        }
+
+        public @NotNull Table table() {
+            return table;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Obtain a value of a row.
+         *
+         * @param row    The row, from 0 to {@link #size()} - 1.
+         * @param column The column, in the order of {@link Table#columns()}.
+         * @return The value, in the units of the column's {@link Kind}.
+         */
+        public long value(int row, int column) {
+            return values[row * width + column];
+        }
+
+        /**
+         * Obtain the text column of a row.
+         *
+         * @param row The row, from 0 to {@link #size()} - 1.
+         * @return The text, or null if the table has no text column.
+         */
+        public @Nullable String text(int row) {
+            return texts[row];
+        }
+
+        private int add() {
+            if (size == texts.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                texts = Arrays.copyOf(texts, texts.length * 2);
+            }
+            texts[size] = null;
+            return size++;
+        }
+
+        private void set(int row, int column, long value) {
+            values[row * width + column] = value;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+    }
+
+    private final Settings settings;
+
+    public CatalogImporter(@NotNull Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Import every table that has a file in a directory.
+     *
+     * @param directory The directory holding the files, any of which may be missing.
+     * @param sink      Where the rows go.
+     * @param progress  Told of the progress of each table about once a second, or null.
+     * @return The outcome for each table imported, in the order they were imported.
+     * @throws IOException  If a file cannot be read.
+     * @throws SQLException If the sink rejected a batch.
+     */
+    public @NotNull List<Result> load(@NotNull Path directory, @NotNull Sink sink, @Nullable Consumer<Progress> progress) throws IOException, SQLException {
+        List<Result> results = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(settings.parallelism());
+        try {
+            for (Table[] phase : PHASES) {
+                List<Job> jobs = new ArrayList<>();
+                // Opened inside the try, so the files already opened are closed if a later one cannot be.
+                try {
+                    for (Table table : phase) {
+                        Path file = directory.resolve(table.file());
+                        if (Files.isRegularFile(file)) jobs.add(new Job(table, file, sink, progress));
+                    }
+                    if (jobs.isEmpty()) continue;
+
+                    try {
+                        pool.invoke(new RecursiveAction() {
+                            private static final long serialVersionUID = 1L;
+
+                            @Override
+                            protected void compute() {
+                                invokeAll(jobs.stream().map(job -> new Load(job, 0, job.size)).toList());
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        rethrow(e);
+                    }
+                } finally {
+                    for (Job job : jobs) job.channel.close();
+                }
+                for (Job job : jobs) results.add(job.result());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Write a batch of rows to MySQL in one transaction, in multi-row inserts of {@link Settings#rowsPerInsert()}
+     * rows at a time.
+     *
+     * @param c    The connection to write through.
+     * @param rows The rows.
+     * @throws SQLException If the rows could not be written, in which case none of them were.
+     */
+    public void insert(@NotNull PooledConnection c, @NotNull Rows rows) throws SQLException {
+        Table table = rows.table;
+        int perInsert = settings.rowsPerInsert();
+        c.connection().setAutoCommit(false);
+        try {
+            int row = 0;
+            if (rows.size >= perInsert) {
+                PreparedStatement many = c.prepare(insertSql(table, perInsert));
+                for (; row + perInsert <= rows.size; row += perInsert) {
+                    for (int i = 0; i < perInsert; i++) bind(many, rows, row + i, i * rows.width);
+                    many.addBatch();
+                }
+                many.executeBatch();
+            }
+            if (row < rows.size) {
+                PreparedStatement one = c.prepare(insertSql(table, 1));
+                for (; row < rows.size; row++) {
+                    bind(one, rows, row, 0);
+                    one.addBatch();
+                }
+                one.executeBatch();
+            }
+            c.connection().commit();
+        } catch (SQLException e) {
+            c.connection().rollback();
+            throw e;
+        }
+    }
+
+    private static @NotNull String insertSql(@NotNull Table table, int rows) {
+        String columns = String.join(", ", table.columns.stream().map(column -> '`' + column + '`').toList());
+        String values = "(" + String.join(", ", Collections.nCopies(table.columns.size(), "?")) + ")";
+        return "INSERT INTO `" + table.table + "` (" + columns + ") VALUES " + String.join(", ", Collections.nCopies(rows, values));
+    }
+
+    private static void bind(@NotNull PreparedStatement stmt, @NotNull Rows rows, int row, int offset) throws SQLException {
+        List<Kind> kinds = rows.table.kinds;
+        for (int column = 0; column < kinds.size(); column++) {
+            long value = rows.value(row, column);
+            int index = offset + column + 1;
+            switch (kinds.get(column)) {
+                case ID, COUNT, FLAG -> stmt.setInt(index, (int) value);
+                case OPTIONAL_ID -> {
+                    if (value == 0) {
+                        stmt.setNull(index, Types.INTEGER);
+                    } else {
+                        stmt.setInt(index, (int) value);
+                    }
+                }
+                case MONEY -> stmt.setBigDecimal(index, BigDecimal.valueOf(value, 2));
+                case TEXT -> stmt.setString(index, rows.text(row));
+                case TIME -> stmt.setTimestamp(index, value == NO_TIME ? new Timestamp(System.currentTimeMillis()) : new Timestamp(value));
+            }
+        }
+    }
+
+    private static void rethrow(@NotNull RuntimeException e) throws IOException, SQLException {
+        // The fork-join pool may wrap a task's exception in a copy of it, so the cause chain is searched.
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sql) throw sql;
+            if (t instanceof IOException io) throw io;
+        }
+        throw e;
+    }
+
+    /**
+     * One file being imported, shared by the tasks loading its chunks.
+     */
+    private final class Job {
+        private final Table table;
+        private final Path file;
+        private final FileChannel channel;
+        private final long size;
+        private final Sink sink;
+        private final @Nullable Consumer<Progress> progress;
+        private final long started = System.nanoTime();
+        private final AtomicLong lastReport = new AtomicLong(started);
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final List<String> errors = new ArrayList<>();
+        private volatile boolean failed;
+
+        private Job(@NotNull Table table, @NotNull Path file, @NotNull Sink sink, @Nullable Consumer<Progress> progress) throws IOException {
+            this.table = table;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                this.size = channel.size();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            this.sink = sink;
+            this.progress = progress;
+        }
+
+        private void error(long offset, @NotNull String message) {
+            rejected.increment();
+            synchronized (errors) {
+                if (errors.size() < MAX_ERRORS) errors.add(file.getFileName() + " at byte " + offset + ": " + message);
+            }
+        }
+
+        private void written(int count, long chunkBytes) {
+            rows.add(count);
+            bytes.add(chunkBytes);
+            if (progress == null) return;
+
+            long now = System.nanoTime();
+            long last = lastReport.get();
+            if (now - last >= PROGRESS_INTERVAL_NANOS && lastReport.compareAndSet(last, now)) {
+                progress.accept(new Progress(table, rows.sum(), bytes.sum(), size, Duration.ofNanos(now - started)));
+            }
+        }
+
+        private @NotNull Result result() {
+            List<String> kept;
+            synchronized (errors) {
+                kept = List.copyOf(errors);
+            }
+            return new Result(table, rows.sum(), rejected.sum(), kept, size, Duration.ofNanos(System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Loads the lines of a file from {@code from} up to {@code to}, which both fall at the start of a line, splitting
+     * the range in two until it is no larger than a chunk.
+     */
+    private final class Load extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Job job;
+        private final long from;
+        private final long to;
+
+        private Load(@NotNull Job job, long from, long to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (job.failed) return;
+            try {
+                if (to - from > settings.chunkBytes()) {
+                    long middle = lineStart(from + (to - from) / 2);
+                    if (middle < to) {
+                        invokeAll(new Load(job, from, middle), new Load(job, middle, to));
+                        return;
+                    }
+                }
+                parse(job.channel.map(FileChannel.MapMode.READ_ONLY, from, to - from));
+            } catch (IOException | SQLException e) {
+                job.failed = true;
+                throw new IllegalStateException(e);
+            } catch (RuntimeException e) {
+                job.failed = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Find the start of the first line that begins after a position.
+         */
+        private long lineStart(long position) throws IOException {
+            ByteBuffer probe = ByteBuffer.allocate(4_096);
+            long at = position;
+            while (at < to) {
+                probe.clear();
+                int read = job.channel.read(probe, at);
+                if (read <= 0) break;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') return at + i + 1;
+                }
+                at += read;
+            }
+            return to;
+        }
+
+        private void parse(@NotNull MappedByteBuffer chunk) throws SQLException {
+            Table table = job.table;
+            Rows rows = new Rows(table, Math.min(settings.rowsPerCommit(), 1_024));
+            Cursor cursor = new Cursor(chunk);
+            int end = chunk.limit();
+            int at = 0;
+            int batchStart = 0;
+            boolean first = from == 0;
+
+            while (at < end) {
+                int eol = at;
+                while (eol < end && chunk.get(eol) != '\n') eol++;
+                int next = eol + 1;
+                while (eol > at && (chunk.get(eol - 1) == '\r' || chunk.get(eol - 1) == ' ' || chunk.get(eol - 1) == '\t')) eol--;
+                while (at < eol && (chunk.get(at) == ' ' || chunk.get(at) == '\t')) at++;
+
+                boolean content = at < eol && chunk.get(at) != '#';
+                boolean header = content && first && !Cursor.isDigit(chunk.get(at));
+                first &= !content;
+                if (content && !header) {
+                    cursor.reset(at, eol);
+                    String problem = cursor.row(rows);
+                    if (problem != null) job.error(from + at, problem);
+                }
+                at = next;
+
+                if (rows.size == settings.rowsPerCommit()) {
+                    flush(rows, Math.min(at, end) - batchStart);
+                    batchStart = Math.min(at, end);
+                    if (job.failed) return;
+                }
+            }
+            flush(rows, end - batchStart);
+        }
+
+        private void flush(@NotNull Rows rows, long chunkBytes) throws SQLException {
+            int count = rows.size;
+            if (count > 0) job.sink.write(rows);
+            rows.clear();
+            job.written(count, chunkBytes);
+        }
+    }
+
+    /**
+     * Reads the fields of one line of a mapped chunk.
+     */
+    private static final class Cursor {
+        private final MappedByteBuffer chunk;
+        private byte[] scratch = new byte[256];
+        private int at;
+        private int eol;
+
+        private Cursor(@NotNull MappedByteBuffer chunk) {
+            this.chunk = chunk;
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private void reset(int at, int eol) {
+            this.at = at;
+            this.eol = eol;
+        }
+
+        /**
+         * Parse the line into a new row.
+         *
+         * @return What was wrong with the line, in which case no row was added, or null.
+         */
+        private @Nullable String row(@NotNull Rows rows) {
+            Table table = rows.table;
+            List<Kind> kinds = table.kinds;
+            int row = rows.add();
+
+            for (int column = 0; column < kinds.size(); column++) {
+                if (column > 0) {
+                    skipSpaces();
+                    if (at == eol && column >= table.required) {
+                        rows.set(row, column, LowStockIndex.DEFAULT_REORDER_LEVEL);
+                        continue;
+                    }
+                    if (at == eol || chunk.get(at) != ',') return reject(rows, "expected " + kinds.size() + " columns");
+                    at++;
+                    skipSpaces();
+                }
+
+                Kind kind = kinds.get(column);
+                long value;
+                switch (kind) {
+                    case ID -> value = number(Integer.MAX_VALUE);
+                    case OPTIONAL_ID -> value = at == eol || chunk.get(at) == ',' ? 0 : number(Integer.MAX_VALUE);
+                    case COUNT -> value = number(Integer.MAX_VALUE);
+                    case FLAG -> value = number(1);
+                    case MONEY -> value = money();
+                    case TIME -> value = at == eol || chunk.get(at) == ',' ? NO_TIME : time();
+                    case TEXT -> {
+                        String text = text();
+                        if (text == null) return reject(rows, "expected the " + table.columns.get(column) + " to end with a quote");
+                        rows.texts[row] = text;
+                        value = 0;
+                    }
+                    default -> throw new IllegalStateException(kind.name());
+                }
+                skipSpaces();
+                boolean ended = at == eol || chunk.get(at) == ',';
+                if (!ended || value < 0 && value != NO_TIME || kind == Kind.ID && value == 0) {
+                    return reject(rows, "expected the " + table.columns.get(column) + " to be " + describe(kind));
+                }
+                rows.set(row, column, value);
+            }
+            skipSpaces();
+            return at == eol ? null : reject(rows, "expected " + kinds.size() + " columns");
+        }
+
+        private static @NotNull String reject(@NotNull Rows rows, @NotNull String problem) {
+            rows.size--;
+            return problem;
+        }
+
+        private static @NotNull String describe(@NotNull Kind kind) {
+            return switch (kind) {
+                case ID, OPTIONAL_ID -> "an ID";
+                case COUNT -> "a whole number";
+                case FLAG -> "0 or 1";
+                case MONEY -> "an amount in pounds with at most two decimal places";
+                case TEXT -> "text";
+                case TIME -> "a time as yyyy-MM-dd HH:mm:ss";
+            };
+        }
+
+        private void skipSpaces() {
+            while (at < eol && chunk.get(at) == ' ') at++;
+        }
+
+        /**
+         * Parse a whole number of at most 10 digits.
+         *
+         * @return The number, or -1 if there is none or it is larger than the maximum.
+         */
+        private long number(long max) {
+            long value = 0;
+            int digits = 0;
+            while (at < eol && isDigit(chunk.get(at)) && digits <= 10) {
+                value = value * 10 + (chunk.get(at++) - '0');
+                digits++;
+            }
+            return digits == 0 || digits > 10 || value > max ? -1 : value;
+        }
+
+        private long money() {
+            long pence = 0;
+            int pounds = 0;
+            while (at < eol && isDigit(chunk.get(at)) && pounds <= MAX_POUND_DIGITS) {
+                pence = pence * 10 + (chunk.get(at++) - '0');
+                pounds++;
+            }
+            int decimals = 0;
+            if (at < eol && chunk.get(at) == '.') {
+                at++;
+                while (at < eol && isDigit(chunk.get(at)) && decimals <= 2) {
+                    pence = pence * 10 + (chunk.get(at++) - '0');
+                    decimals++;
+                }
+            }
+            if (pounds == 0 || pounds > MAX_POUND_DIGITS || decimals > 2) return -1;
+            for (int d = decimals; d < 2; d++) pence *= 10;
+            return pence;
+        }
+
+        private long time() {
+            int year = digits(4, '-');
+            int month = digits(2, '-');
+            int day = digits(2, ' ');
+            int hour = digits(2, ':');
+            int minute = digits(2, ':');
+            int second = digits(2, '\0');
+            if ((year | month | day | hour | minute | second) < 0) return -1;
+
+            int nanos = 0;
+            if (at < eol && chunk.get(at) == '.') {
+                at++;
+                int scale = 100_000_000;
+                while (at < eol && isDigit(chunk.get(at))) {
+                    nanos += (chunk.get(at++) - '0') * scale;
+                    scale /= 10;
+                }
+            }
+            try {
+                return Timestamp.valueOf(LocalDateTime.of(year, month, day, hour, minute, second, nanos)).getTime();
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Parse a fixed number of digits, followed by a separator unless it is 0.
+         *
+         * @return The number, or -1 if the digits or the separator are missing.
+         */
+        private int digits(int count, char separator) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                if (at == eol || !isDigit(chunk.get(at))) return -1;
+                value = value * 10 + (chunk.get(at++) - '0');
+            }
+            if (separator == 0) return value;
+            if (at == eol || chunk.get(at) != separator) return -1;
+            at++;
+            return value;
+        }
+
+        /**
+         * Parse a text field, unquoted up to the next comma, or in double quotes with quotes inside doubled.
+         *
+         * @return The text, or null if a quote is not closed.
+         */
+        private @Nullable String text() {
+            int length = 0;
+            if (at < eol && chunk.get(at) == '"') {
+                at++;
+                while (true) {
+                    if (at == eol) return null;
+                    byte b = chunk.get(at++);
+                    if (b == '"') {
+                        if (at < eol && chunk.get(at) == '"') {
+                            at++;
+                        } else {
+                            break;
+                        }
+                    }
+                    if (length == scratch.length) scratch = Arrays.copyOf(scratch, length * 2);
+                    scratch[length++] = b;
+                }
+            } else {
+                int start = at;
+                while (at < eol && chunk.get(at) != ',') at++;
+                int stop = at;
+                while (stop > start && chunk.get(stop - 1) == ' ') stop--;
+                length = stop - start;
+                if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+                chunk.get(start, scratch, 0, length);
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * How far the import of a table has got.
+     *
+     * @param table      The table.
+     * @param rows       The rows stored so far.
+     * @param bytes      The bytes of the file parsed and stored so far.
+     * @param totalBytes The size of the file.
+     * @param elapsed    How long the table has been importing for.
+     */
+    public record Progress(@NotNull Table table, long rows, long bytes, long totalBytes, @NotNull Duration elapsed) {
+
+        /**
+         * Obtain the share of the file done.
+         *
+         * @return The share, from 0 to 1.
+         */
+        public double fraction() {
+            return totalBytes == 0 ? 1 : (double) bytes / totalBytes;
+        }
+
+        /**
+         * Obtain the rate rows have been stored at so far.
+         *
+         * @return The rows stored per second.
+         */
+        public double rowsPerSecond() {
+            return rows / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+        }
+    }
+
+    /**
+     * The outcome of importing a table.
+     *
+     * @param table    The table.
+     * @param rows     The number of rows stored.
+     * @param rejected The number of lines skipped as they could not be parsed.
+     * @param errors   Why the first {@link #MAX_ERRORS} lines were skipped, each naming its byte offset in the file.
+     * @param bytes    The size of the file.
+     * @param elapsed  How long the table took to import.
+     */
+    public record Result(@NotNull Table table, long rows, long rejected, @NotNull List<String> errors, long bytes, @NotNull Duration elapsed) {
+
+        /**
+         * Obtain the rate rows were stored at.
+         *
+         * @return The rows stored per second.
+         */
+        public double rowsPerSecond() {
+            return rows / Math.max(elapsed.toNanos() / 1e9, 1e-9);
+        }
+    }
+
+    /**
+     * Settings for an importer.
+     *
+     * @param parallelism   How many chunks are parsed and written at once, which should be no more than the
+     *                      connections available to write them.
+     * @param chunkBytes    The largest part of a file one task maps and parses.
+     * @param rowsPerInsert How many rows each multi-row {@code INSERT} statement writes.
+     * @param rowsPerCommit How many rows are written in each transaction.
+     */
+    public record Settings(int parallelism, int chunkBytes, int rowsPerInsert, int rowsPerCommit) {
+
+        public Settings {
+            if (parallelism < 1 || chunkBytes < 1 || rowsPerInsert < 1 || rowsPerCommit < 1) {
+                throw new IllegalArgumentException("Import settings must all be at least 1.");
+            }
+        }
+
+        /**
+         * Settings that keep every processor busy, in chunks of 8 MiB written 256 rows to a statement.
+         *
+         * @return The default importer settings.
+         */
+        public static @NotNull Settings defaults() {
+            return new Settings(Runtime.getRuntime().availableProcessors(), 8 << 20, 256, 16_384);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.adt.Product;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable, read-optimised copy of the product catalogue, held as one primitive array per column.
+ * Products are stored in ID order, each in a slot, so a product costs about 24 bytes plus its name, which is shared
+ * with every other product of the same name. A product is found by arithmetic when IDs have no gaps, and by binary
+ * search otherwise. Snapshots are built in a single scan, or from an older snapshot and the products changed since,
+ * and replaced whole, never changed in place.
+ */
+public final class CatalogSnapshot {
+
+    private final int[] ids;
+    private final String[] names;
+    private final int[] stock;
+    private final long[] pricePence;
+    private final int[] saleTypes;
+    private final int size;
+    private final boolean dense;
+
+    private CatalogSnapshot(int[] ids, String[] names, int[] stock, long[] pricePence, int[] saleTypes, int size) {
+        this.ids = ids;
+        this.names = names;
+        this.stock = stock;
+        this.pricePence = pricePence;
+        this.saleTypes = saleTypes;
+        this.size = size;
+        this.dense = size == 0 || ids[size - 1] - ids[0] == size - 1;
+    }
+
+    /**
+     * Build a snapshot from the rows of a product and sale join, ordered by product ID, in a single pass.
+     *
+     * @param results The rows, with columns ID, name, stock, price and sale type, the last null for a product with no sales.
+     * @return The snapshot.
+     * @throws SQLException If the rows cannot be read.
+     */
+    public static @NotNull CatalogSnapshot read(@NotNull ResultSet results) throws SQLException {
+        int capacity = 1_024;
+        int[] ids = new int[capacity];
+        String[] names = new String[capacity];
+        int[] stock = new int[capacity];
+        long[] pricePence = new long[capacity];
+        int[] saleTypes = new int[capacity];
+        Map<String, String> interned = new HashMap<>();
+        int size = 0;
+
+        while (results.next()) {
+            int id = results.getInt(1);
+            if (size == 0 || ids[size - 1] != id) {
+                if (size == capacity) {
+                    capacity *= 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    names = Arrays.copyOf(names, capacity);
+                    stock = Arrays.copyOf(stock, capacity);
+                    pricePence = Arrays.copyOf(pricePence, capacity);
+                    saleTypes = Arrays.copyOf(saleTypes, capacity);
+                }
+                String name = results.getString(2);
+                ids[size] = id;
+                names[size] = name == null ? null : interned.computeIfAbsent(name, n -> n);
+                stock[size] = results.getInt(3);
+                pricePence[size] = results.getBigDecimal(4).movePointRight(2).longValue();
+                size++;
+            }
+
+            int type = results.getInt(5);
+            if (!results.wasNull()) saleTypes[size - 1] |= Product.saleMask(type);
+        }
+
+        return new CatalogSnapshot(Arrays.copyOf(ids, size), Arrays.copyOf(names, size), Arrays.copyOf(stock, size),
+                Arrays.copyOf(pricePence, size), Arrays.copyOf(saleTypes, size), size);
+    }
+
+    /**
+     * Build a snapshot from this one with some products read again, in a single pass over this one.
+     *
+     * @param productIds The IDs of the products read again.
+     * @param changed    The products as read again, keyed by ID; a product not among them no longer exists.
+     * @return The new snapshot.
+     */
+    public @NotNull CatalogSnapshot with(@NotNull Collection<Integer> productIds, @NotNull Map<Integer, Product> changed) {
+        int[] updated = productIds.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        int capacity = size + updated.length;
+        int[] mergedIds = new int[capacity];
+        String[] mergedNames = new String[capacity];
+        int[] mergedStock = new int[capacity];
+        long[] mergedPricePence = new long[capacity];
+        int[] mergedSaleTypes = new int[capacity];
+        int n = 0;
+
+        for (int slot = 0, next = 0; slot < size || next < updated.length; ) {
+            if (next == updated.length || (slot < size && ids[slot] < updated[next])) {
+                mergedIds[n] = ids[slot];
+                mergedNames[n] = names[slot];
+                mergedStock[n] = stock[slot];
+                mergedPricePence[n] = pricePence[slot];
+                mergedSaleTypes[n] = saleTypes[slot];
+                n++;
+                slot++;
+                continue;
+            }
+
+            int id = updated[next++];
+            String name = slot < size && ids[slot] == id ? names[slot++] : null;
+            Product product = changed.get(id);
+            if (product == null) continue;
+            mergedIds[n] = id;
+            // A product that kept its name keeps sharing it.
+            mergedNames[n] = Objects.equals(name, product.getName()) ? name : product.getName();
+            mergedStock[n] = product.getQuantity();
+            mergedPricePence[n] = product.getPricePence();
+            mergedSaleTypes[n] = product.getSaleTypes();
+            n++;
+        }
+
+        return new CatalogSnapshot(Arrays.copyOf(mergedIds, n), Arrays.copyOf(mergedNames, n), Arrays.copyOf(mergedStock, n),
+                Arrays.copyOf(mergedPricePence, n), Arrays.copyOf(mergedSaleTypes, n), n);
+    }
+
+    /**
+     * Obtain the number of products.
+     *
+     * @return The number of products in the snapshot.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find the slot a product is stored in.
+     *
+     * @param id The ID of the product.
+     * @return The slot, or -1 if the product is not in the snapshot.
+     */
+    public int slot(int id) {
+        if (size == 0) return -1;
+        if (dense) {
+            int slot = id - ids[0];
+            return slot >= 0 && slot < size ? slot : -1;
+        }
+        int slot = Arrays.binarySearch(ids, 0, size, id);
+        return slot >= 0 ? slot : -1;
+    }
+
+    /**
+     * Obtain the ID of the product in a slot.
+     *
+     * @param slot The slot, from 0 to {@link #size()} - 1.
+     * @return The ID of the product.
+     */
+    public int id(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * Obtain the stock of the product in a slot when the snapshot was taken.
+     *
+     * @param slot The slot, from 0 to {@link #size()} - 1.
+     * @return The stock held.
+     */
+    public int stock(int slot) {
+        return stock[slot];
+    }
+
+    /**
+     * Build a product from a slot.
+     *
+     * @param slot  The slot, from 0 to {@link #size()} - 1.
+     * @param stock The stock to report, which may be more recent than the snapshot.
+     * @return The product.
+     */
+    public @NotNull Product product(int slot, int stock) {
+        return new Product(ids[slot], names[slot], stock, pricePence[slot], saleTypes[slot]);
+    }
+}
@@ -0,0 +1,361 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of JDBC connections, shared by every operation of the {@link DatabaseManager}.
+ * Connections are validated on borrow, evicted once they have been idle for too long and
+ * replaced so that the pool never shrinks below its minimum size.
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Connections that were handed back within this window are trusted without a validation round trip.
+     */
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final Settings settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private int total;
+    private boolean closed;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    /**
+     * Create a pool and open its minimum number of connections.
+     *
+     * @param url      The JDBC url of the database.
+     * @param user     The username.
+     * @param pass     The password.
+     * @param settings The sizing and timeout settings of the pool.
+     * @throws SQLException If the initial connections cannot be opened.
+     */
+    public ConnectionPool(@NotNull String url, @NotNull String user, @NotNull String pass, @NotNull Settings settings) throws SQLException {
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.settings = settings;
+
+        lock.lock();
+        try {
+            while (total < settings.minSize()) {
+                idle.offerFirst(open());
+                total++;
+            }
+        } catch (SQLException e) {
+            idle.forEach(PooledConnection::discard);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000L, settings.idleTimeoutMillis() / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool, waiting up to the borrow timeout for one to become free.
+     * The connection must be handed back by closing it, ideally with a try-with-resources block.
+     *
+     * @return A validated connection for the exclusive use of the caller.
+     * @throws SQLException If the pool is closed, exhausted for longer than the timeout, or the database is unreachable.
+     */
+    public @NotNull PooledConnection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(settings.borrowTimeoutMillis());
+
+        while (true) {
+            PooledConnection pc;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Connection pool is closed.");
+                    pc = idle.pollFirst();
+                    if (pc != null) break;
+                    if (total < settings.maxSize()) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    if (remaining <= 0L) {
+                        timeouts.increment();
+                        throw new SQLTimeoutException("Timed out after " + settings.borrowTimeoutMillis() + "ms waiting for a database connection.");
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection.", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    pc = open();
+                } catch (SQLException e) {
+                    forget();
+                    throw e;
+                }
+            } else if (!validate(pc)) {
+                pc.discard();
+                forget();
+                continue;
+            }
+
+            pc.lease();
+            long waited = System.nanoTime() - start;
+            borrows.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            return pc;
+        }
+    }
+
+    /**
+     * Hand a connection back to the pool, resetting any transaction it was left in.
+     *
+     * @param pc The connection being returned.
+     */
+    void release(@NotNull PooledConnection pc) {
+        boolean healthy = pc.reset();
+
+        lock.lock();
+        try {
+            if (healthy && !closed) {
+                pc.touch();
+                idle.offerFirst(pc);
+                available.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        pc.discard();
+        forget();
+    }
+
+    /**
+     * Obtain a snapshot of the pool's utilisation and wait times.
+     *
+     * @return The current pool statistics.
+     */
+    public @NotNull Statistics statistics() {
+        int idleCount;
+        int totalCount;
+
+        lock.lock();
+        try {
+            idleCount = idle.size();
+            totalCount = total;
+        } finally {
+            lock.unlock();
+        }
+
+        long count = borrows.sum();
+        return new Statistics(idleCount, totalCount - idleCount, settings.maxSize(), count, timeouts.sum(),
+                evictions.sum(), count == 0 ? 0L : waitNanos.sum() / count, maxWaitNanos.get());
+    }
+
+    /**
+     * Obtain the hit, miss and eviction counts of the prepared statement caches of every connection in the pool.
+     *
+     * @return The current statement cache statistics.
+     */
+    public @NotNull StatementCache.Statistics statementStatistics() {
+        return statementCounters.snapshot();
+    }
+
+    /**
+     * Close every idle connection and stop handing out new ones.
+     * Connections that are still borrowed are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> drained;
+
+        lock.lock();
+        try {
+            closed = true;
+            drained = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        evictor.shutdownNow();
+        drained.forEach(PooledConnection::discard);
+    }
+
+    private @NotNull PooledConnection open() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, user, pass);
+        return new PooledConnection(this, conn, new StatementCache(conn, settings.statementCacheSize(), statementCounters));
+    }
+
+    private boolean validate(@NotNull PooledConnection pc) {
+        if (System.nanoTime() - pc.lastUsed() < VALIDATION_BYPASS_NANOS) return true;
+        try {
+            return pc.connection().isValid(settings.validationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void forget() {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close connections that have sat idle for longer than the idle timeout, then top the pool back up to its minimum size.
+     */
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMillis());
+        List<PooledConnection> expired = new ArrayList<>();
+        int missing;
+
+        lock.lock();
+        try {
+            Iterator<PooledConnection> oldest = idle.descendingIterator();
+            while (oldest.hasNext() && total > settings.minSize()) {
+                PooledConnection pc = oldest.next();
+                if (pc.lastUsed() - cutoff >= 0) break;
+                oldest.remove();
+                expired.add(pc);
+                total--;
+            }
+            missing = closed ? 0 : settings.minSize() - total;
+            total += Math.max(missing, 0);
+        } finally {
+            lock.unlock();
+        }
+
+        expired.forEach(PooledConnection::discard);
+        evictions.add(expired.size());
+
+        for (int i = 0; i < missing; i++) {
+            try {
+                PooledConnection pc = open();
+                boolean kept = false;
+                lock.lock();
+                try {
+                    // The pool may have been closed while the connection was being opened.
+                    if (!closed) {
+                        idle.offerLast(pc);
+                        available.signal();
+                        kept = true;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (!kept) {
+                    pc.discard();
+                    forget();
+                }
+            } catch (SQLException e) {
+                forget();
+            }
+        }
+    }
+
+    /**
+     * The sizing and timeout settings of a {@link ConnectionPool}.
+     *
+     * @param minSize                  The number of connections kept open even when idle.
+     * @param maxSize                  The maximum number of connections open at once.
+     * @param borrowTimeoutMillis      How long a caller waits for a free connection before giving up.
+     * @param idleTimeoutMillis        How long a connection may sit idle before it is evicted.
+     * @param validationTimeoutSeconds How long a validation check on borrow may take.
+     * @param statementCacheSize       How many prepared statements each connection keeps open for reuse.
+     */
+    public record Settings(int minSize, int maxSize, long borrowTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds,
+                           int statementCacheSize) {
+
+        public Settings {
+            if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+                throw new IllegalArgumentException("Pool size must satisfy 0 <= min <= max and max >= 1.");
+            }
+            if (statementCacheSize < 1) {
+                throw new IllegalArgumentException("Statement cache size must be at least 1.");
+            }
+        }
+
+        /**
+         * Settings suitable for a single store's tills.
+         *
+         * @return The default pool settings.
+         */
+        public static @NotNull Settings defaults() {
+            return new Settings(2, 16, 5_000L, 300_000L, 2, 64);
+        }
+    }
+
+    /**
+     * A snapshot of the state of a {@link ConnectionPool}.
+     *
+     * @param idle             The number of idle connections.
+     * @param active           The number of borrowed connections.
+     * @param maxSize          The maximum size of the pool.
+     * @param borrows          The total number of successful borrows.
+     * @param timeouts         The number of borrows that timed out waiting for a connection.
+     * @param evictions        The number of connections closed for being idle too long.
+     * @param averageWaitNanos The mean time spent waiting to borrow a connection.
+     * @param maxWaitNanos     The longest time spent waiting to borrow a connection.
+     */
+    public record Statistics(int idle, int active, int maxSize, long borrows, long timeouts, long evictions,
+                             long averageWaitNanos, long maxWaitNanos) {
+
+        /**
+         * The fraction of the pool's capacity that is currently borrowed.
+         *
+         * @return A value between 0 and 1.
+         */
+        public double utilisation() {
+            return (double) active / maxSize;
+        }
+    }
+}
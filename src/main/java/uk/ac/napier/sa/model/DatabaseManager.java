@@ -2,27 +2,118 @@ package uk.ac.napier.sa.model;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
 import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Purchase;
+import uk.ac.napier.sa.controller.adt.Receipt;
+import uk.ac.napier.sa.metrics.Instrumentation;
 
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.math.RoundingMode;
+import java.math.BigDecimal;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.sql.*;
-import java.text.DecimalFormat;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public final class DatabaseManager implements RemoteDatabaseManager {
 
     private volatile static DatabaseManager instance;
-    private Connection conn;
+    private volatile ConnectionPool pool;
+    private final ProductCache products = new ProductCache(1_024, Duration.ofSeconds(30));
+    private volatile CatalogSnapshot catalog;
+    private final Map<Integer, Long> catalogChanges = new ConcurrentHashMap<>();
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Object catalogRefresh = new Object();
+    private volatile SalesAggregator sales;
+    private final LowStockIndex stockLevels = new LowStockIndex();
+    private volatile boolean stockLevelsLoaded;
+    private final LoyaltyIndex loyalty = new LoyaltyIndex();
+    private volatile boolean loyaltyLoaded;
+    private volatile long loyaltySeen;
+    private volatile WriteBehindQueue writeBehind;
+    private volatile ReplicaSet replicas;
+    private volatile ScheduledExecutorService reconciler;
+    private volatile ReplenishmentEngine replenishment = new ReplenishmentEngine(ReplenishmentEngine.Settings.defaults(), StockSupplier.local());
+    private volatile PricingEngine pricing = new PricingEngine(PricingEngine.Settings.defaults());
+    private volatile CatalogImporter.Settings importSettings = CatalogImporter.Settings.defaults();
+    private volatile TransactionExport.Settings exportSettings = TransactionExport.Settings.defaults();
+
+    /**
+     * How often what is held in memory is checked in full against the database, to pick up changes made by other processes.
+     */
+    private static final Duration RECONCILE_INTERVAL = Duration.ofMinutes(10);
+
+    /**
+     * How often purchases and product changes are caught up with between full reconciliations.
+     */
+    private static final Duration CATCH_UP_INTERVAL = Duration.ofSeconds(30);
+
+    private static final int MAX_PRODUCTS_PER_QUERY = 256;
+    private static final String PRODUCT_COLUMNS = "SELECT p.id, p.name, p.stock, p.price, s.type FROM product p LEFT JOIN sale s ON s.product = p.id";
+    private static final String ALL_PRODUCTS = PRODUCT_COLUMNS + " ORDER BY p.id, s.id";
+    private static final int HISTORY_PAGE_SIZE = 500;
+    private static final String PURCHASE_HISTORY = "SELECT t.id, p.name, c.name, t.cost, t.purchased FROM transaction t " +
+                                                   "JOIN product p ON p.id = t.product JOIN customer c ON c.id = t.customer";
+    private static final String EXPORT_TRANSACTIONS = "SELECT t.id, t.purchased, t.cost, t.sale, p.id, p.name, c.id, c.name, c.loyal FROM transaction t " +
+                                                      "JOIN product p ON p.id = t.product JOIN customer c ON c.id = t.customer";
+    private static final String[] PRODUCTS_BY_ID = new String[Integer.numberOfTrailingZeros(MAX_PRODUCTS_PER_QUERY) + 1];
+    private static final String CUSTOMER_PURCHASES = "SELECT c.id, c.loyal, COUNT(t.id) FROM customer c " +
+                                                     "LEFT JOIN transaction t ON t.customer = c.id GROUP BY c.id, c.loyal";
+    private static final String RECENT_CUSTOMER_PURCHASES = "SELECT c.id, c.loyal, COUNT(t.id) FROM customer c " +
+                                                            "JOIN transaction t ON t.customer = c.id " +
+                                                            "WHERE c.id IN (SELECT customer FROM transaction WHERE id > ? AND id <= ?) " +
+                                                            "GROUP BY c.id, c.loyal";
+    private static final String ELIGIBLE_CUSTOMERS = "loyal = 0 AND id IN " +
+                                                     "(SELECT customer FROM transaction GROUP BY customer HAVING COUNT(*) >= ?)";
+    private static final String[] LOCK_PRODUCTS_BY_ID = new String[PRODUCTS_BY_ID.length];
+    private static final String[] SALES_BY_PRODUCT_ID = new String[PRODUCTS_BY_ID.length];
+    private static final String[] REPRICE_BY_ID = new String[PRODUCTS_BY_ID.length];
+
+    static {
+        for (int i = 0; i < PRODUCTS_BY_ID.length; i++) {
+            String params = String.join(", ", Collections.nCopies(1 << i, "?"));
+            PRODUCTS_BY_ID[i] = PRODUCT_COLUMNS + " WHERE p.id IN (" + params + ") ORDER BY p.id, s.id";
+            LOCK_PRODUCTS_BY_ID[i] = "SELECT id, stock, price FROM product WHERE id IN (" + params + ") ORDER BY id FOR UPDATE";
+            SALES_BY_PRODUCT_ID[i] = "SELECT product, id, type FROM sale WHERE product IN (" + params + ") ORDER BY product, id";
+            String prices = "CASE id" + " WHEN ? THEN ?".repeat(1 << i) + " END";
+            REPRICE_BY_ID[i] = "UPDATE product SET price = " + prices + " WHERE id IN (" + params + ") AND price <> " + prices;
+        }
+    }
 
     private DatabaseManager() {
     }
 
+    /**
+     * Report a failure that has been handled, and count it against the operation being measured, if any,
+     * as the caller only sees a false or null result.
+     */
+    private static void failed(@NotNull Exception e) {
+        e.printStackTrace();
+        Instrumentation.failed();
+    }
+
+    /**
+     * Create a database manager of its own, rather than the shared instance, for deployments that connect to
+     * several databases at once, such as one per store.
+     *
+     * @return A new, unconnected database manager.
+     */
+    public static @NotNull DatabaseManager create() {
+        return new DatabaseManager();
+    }
+
     /**
      * A thread-safe way of instantiating the {@link DatabaseManager} class.
      *
@@ -55,16 +146,41 @@ public final class DatabaseManager implements RemoteDatabaseManager {
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            failed(e);
             return false;
         }
 
+        return connect(mysqlUrl(host, port, database, useSSL), user, pass, ConnectionPool.Settings.defaults());
+    }
+
+    private static @NotNull String mysqlUrl(@NotNull String host, int port, @NotNull String database, boolean useSSL) {
+        return "jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=" + useSSL + "&allowPublicKeyRetrieval=true&useServerPrepStmts=true&rewriteBatchedStatements=true&useLocalSessionState=true";
+    }
+
+    /**
+     * Create a pool of connections to the database at the given JDBC url.
+     * Any pool left over from a previous connection is closed first.
+     *
+     * @param url      The JDBC url of the database (MySQL, or an embedded database for testing).
+     * @param user     The username.
+     * @param pass     The password.
+     * @param settings The sizing and timeout settings of the connection pool.
+     * @return True if the database can be connected to, otherwise false.
+     */
+    public boolean connect(@NotNull String url, @NotNull String user, @NotNull String pass, @NotNull ConnectionPool.Settings settings) {
         try {
-            conn = DriverManager.getConnection("jdbc:mysql://" + host + ":" + port + "/" + database + "?useSSL=" + useSSL + "&allowPublicKeyRetrieval=true", user, pass);
+            ConnectionPool previous = pool;
+            stopReconciler();
+            closeWriteBehind();
+            closeReplicas();
+            pool = new ConnectionPool(url, user, pass, settings);
+            if (previous != null) previous.close();
+            reload();
+            startReconciler();
             System.out.println("Successfully connected to database!");
             return true;
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(e);
         }
         return false;
     }
@@ -76,424 +192,1723 @@ public final class DatabaseManager implements RemoteDatabaseManager {
      */
     @Override
     public boolean disconnect() {
-        if (conn != null) {
-            try {
-                conn.close();
-                return true;
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        stopReconciler();
+        closeWriteBehind();
+        closeReplicas();
+        ConnectionPool p = pool;
+        if (p != null) {
+            pool = null;
+            p.close();
+            return true;
         }
         return false;
     }
 
     /**
-     * Query the database.
+     * Queue sale and transaction inserts and commit them in batches from a background writer, instead of committing
+     * each one as it is made. Stock is still taken, and checked, in the purchase's own transaction.
+     * Receipts of queued purchases carry a transaction ID of 0, as the ID is not known until the batch is written.
+     * The queue is flushed and closed on {@link #disconnect()}, and must be enabled again after reconnecting.
      *
-     * @param sql The sql statement being used to query the database.
-     * @return the set of results from the query.
+     * @param settings How large the queue and its batches may grow, and where the journal is kept.
+     * @return True if write-behind is enabled, false if not connected or the journal cannot be replayed.
      */
-    @Override
-    public @Nullable ResultSet query(@NotNull String sql) {
+    public boolean enableWriteBehind(@NotNull WriteBehindQueue.Settings settings) {
         try {
-            PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
-            return stmt.executeQuery();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            ConnectionPool p = pool;
+            if (p == null) throw new SQLException("Not connected to the database.");
+            closeWriteBehind();
+            writeBehind = new WriteBehindQueue(p, settings, this::productChanged);
+            reload();
+            return true;
+        } catch (IOException | SQLException e) {
+            failed(e);
         }
-        return null;
+        return false;
+    }
+
+    /**
+     * Write everything waiting in the write-behind queue, then go back to committing each insert as it is made.
+     */
+    public void disableWriteBehind() {
+        closeWriteBehind();
     }
 
     /**
-     * Update the database.
+     * Wait until every insert queued so far has been committed.
      *
-     * @param sql The sql statement being used to update the database.
-     * @return True: If the update could execute successfully, false otherwise.
+     * @return True once the queue is empty, or if write-behind is not enabled; false if the wait was interrupted.
      */
-    private boolean execute(@NotNull String sql) {
-        try {
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            return stmt.execute();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return false;
+    public boolean flushWriteBehind() {
+        WriteBehindQueue queue = writeBehind;
+        return queue == null || queue.flush();
+    }
+
+    /**
+     * Obtain a snapshot of the write-behind queue's size, batch sizes and flush latencies.
+     *
+     * @return The queue statistics, or null if write-behind is not enabled.
+     */
+    public @Nullable WriteBehindQueue.Statistics writeBehindStatistics() {
+        WriteBehindQueue queue = writeBehind;
+        return queue == null ? null : queue.statistics();
     }
 
+    private void closeWriteBehind() {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            writeBehind = null;
+            queue.close();
+        }
+    }
 
     /**
-     * The method that has to be called to initialise the database.
+     * Read from replicas of the database, so that reports and product lookups do not hold up purchases on the primary.
+     * Product lookups, stock monitoring, reports, purchase history and exports are spread over the replicas that are
+     * fresh enough, and everything else, including every write, still goes to the primary. A product that has changed
+     * is read from the primary until the replicas have caught up with the change.
+     * The replicas are disconnected on {@link #disconnect()}, and must be connected again after reconnecting.
      *
-     * @param p The path of the file to be executed to initialise the database.
-     * @return True: Initialisation is successful, false otherwise.
+     * @param endpoints The replicas.
+     * @param settings  How stale a replica may be, and whether reports must see the latest purchases.
+     * @return True if every replica is connected, false if not connected to the primary or a replica cannot be reached.
      */
-    @Override
-    public boolean init(String p) {
+    public boolean connectReplicas(@NotNull List<ReplicaSet.Endpoint> endpoints, @NotNull ReplicaSet.Settings settings) {
         try {
-            List<String> lines = FileManager.getInstance().read(Path.of(p));
-            CompletableFuture<Void> future = CompletableFuture.supplyAsync(() -> {
-                for (String s : lines) execute(s);
-                return null;
-            });
-            future.join();
+            ConnectionPool p = pool;
+            if (p == null) throw new SQLException("Not connected to the database.");
+            closeReplicas();
+            replicas = new ReplicaSet(p, endpoints, settings);
             return true;
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        } catch (SQLException e) {
+            failed(e);
         }
         return false;
     }
 
     /**
-     * Asynchronously obtain product data from the database.
+     * Read from MySQL replicas of the database, with the default pool and staleness settings.
      *
-     * @param id The identification number of the product
-     * @return The product requested.
+     * @param hosts    The host addresses of the replicas.
+     * @param port     The port allocated to the SQL database on each replica.
+     * @param database The database to be used for the connection.
+     * @param useSSL   Whether to use SSL for the connection.
+     * @param user     The username.
+     * @param pass     The password.
+     * @return True if every replica is connected, false otherwise.
      */
-    @Override
-    public Product getProduct(int id) {
-        String name = "";
-        int stock = 0;
-        double price = 0.0d;
+    public boolean connectReplicas(@NotNull List<String> hosts, int port, @NotNull String database, boolean useSSL, @NotNull String user, @NotNull String pass) {
+        List<ReplicaSet.Endpoint> endpoints = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            endpoints.add(new ReplicaSet.Endpoint(mysqlUrl(host, port, database, useSSL), user, pass, ConnectionPool.Settings.defaults()));
+        }
+        return connectReplicas(endpoints, ReplicaSet.Settings.defaults());
+    }
 
-        List<Integer> sales = new ArrayList<>();
-        try {
-            ResultSet results = query("SELECT * FROM product WHERE ID = " + id);
+    /**
+     * Stop reading from replicas, and send every read to the primary again.
+     */
+    public void disconnectReplicas() {
+        closeReplicas();
+    }
 
-            while (true) {
-                assert results != null;
-                if (!results.next()) break;
-                name = results.getString("name");
-                stock = results.getInt("stock");
-                price = results.getDouble("price");
-            }
+    /**
+     * Obtain how far behind each replica is and how reads have been shared between them.
+     *
+     * @return The replica statistics, or null if no replicas are connected.
+     */
+    public @Nullable ReplicaSet.Statistics replicaStatistics() {
+        ReplicaSet set = replicas;
+        return set == null ? null : set.statistics();
+    }
 
-            results = query("SELECT * FROM sale WHERE ID = " + id);
+    private void closeReplicas() {
+        ReplicaSet set = replicas;
+        if (set != null) {
+            replicas = null;
+            set.close();
+        }
+    }
 
-            while (true) {
-                assert results != null;
-                if (!results.next()) break;
-                sales.add(results.getInt("type"));
-            }
+    private void startReconciler() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "database-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = RECONCILE_INTERVAL.toMillis();
+        executor.scheduleWithFixedDelay(this::reconcile, period, period, TimeUnit.MILLISECONDS);
+        period = CATCH_UP_INTERVAL.toMillis();
+        executor.scheduleWithFixedDelay(this::catchUp, period, period, TimeUnit.MILLISECONDS);
+        reconciler = executor;
+    }
 
-            results.close();
-            return new Product(id, name, stock, price, sales);
-        } catch (SQLException e) {
-            e.printStackTrace();
+    private void stopReconciler() {
+        ScheduledExecutorService executor = reconciler;
+        if (executor != null) {
+            reconciler = null;
+            executor.shutdownNow();
         }
-        return null;
     }
 
     /**
-     * Obtain a product's name from the database.
-     *
-     * @param id The ID of the product.
-     * @return The name of the product.
+     * Bring what is held in memory back in line with the database, which other processes sharing it may have changed.
+     * Runs every {@link #RECONCILE_INTERVAL} while connected.
      */
-    @Override
-    public @Nullable String retrieveProductName(int id) {
+    void reconcile() {
         try {
-            ResultSet results = query(String.format("SELECT name FROM product WHERE ID = %d", id));
+            reconcileStockLevels();
+            reconcileLoyalty();
+            refreshCatalog();
+        } catch (RuntimeException e) {
+            failed(e);
+        }
+    }
 
-            assert results != null;
-            if (results.first()) {
-                return results.getString("name");
-            }
-            results.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /**
+     * Catch up with the purchases and product changes made since the last check, without a full scan of the stock levels.
+     * Runs every {@link #CATCH_UP_INTERVAL} while connected.
+     */
+    void catchUp() {
+        try {
+            catchUpLoyalty();
+            refreshChangedProducts();
+        } catch (RuntimeException e) {
+            failed(e);
         }
-        return null;
     }
 
     /**
-     * Change the price of an item in the database.
+     * Obtain a snapshot of the connection pool's utilisation and wait times.
      *
-     * @param id    The id number of the product.
-     * @param price The new price to be assigned to the item.
-     * @return True if the price can be updated, false otherwise.
+     * @return The pool statistics, or null if not connected.
      */
-    @Override
-    public boolean changePrice(int id, double price) {
-        try (BufferedReader input = new BufferedReader(new InputStreamReader(System.in))) {
-            System.out.print("""
-                    *************************************
-                    ***           ATTENTION           ***
-                    *************************************
-                                        
-                    ---> Only managers can modify the prices of items.
-                    ** Unauthorised access to this system constitutes an offence
-                    ** under Section 1 of the Computer Misuse Act 1990.
-                                        
-                    Manager username: """);
-            String username = input.readLine();
-            System.out.print("\nManager password: ");
-            String password = input.readLine();
-
-            if (username.equalsIgnoreCase("StoreManager") && password.equals("************")) {
-                try {
-                    ResultSet results = query("SELECT * FROM product WHERE id = " + id);
-                    assert results != null;
-                    while (results.next()) {
-                        results.updateDouble("price", price);
-                        results.updateRow();
-                    }
-                    System.out.format("Product %d has had price updated to %f", id, price);
-                    return true;
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                System.out.println("""
-                        **************************
-                        ** Invalid Credentials! **
-                        **************************
-                        """);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+    public @Nullable ConnectionPool.Statistics poolStatistics() {
+        ConnectionPool p = pool;
+        return p == null ? null : p.statistics();
     }
 
     /**
-     * Create a new sale and add it to the database.
+     * Obtain the hit, miss and eviction counts of the prepared statement caches.
      *
-     * @param id       The ID of the product
-     * @param saleType The type of sale (1, 2, or 3)
-     * @return True if the sale can be added to the database, false otherwise.
+     * @return The statement cache statistics, or null if not connected.
      */
-    @Override
-    public boolean sell(int id, int saleType) {
-        return execute(String.format("INSERT INTO sale (`product`, `type`) VALUES (%d, %d)", id, saleType));
+    public @Nullable StatementCache.Statistics statementCacheStatistics() {
+        ConnectionPool p = pool;
+        return p == null ? null : p.statementStatistics();
     }
 
     /**
-     * Retrieve a list of stock that has a low quantity.
-     * This function should be validated using the size of the collection returned,
+     * Obtain the hit ratio and load latency of the product cache.
      *
-     * @return A list of stock that has a low quantity, if there isn't any, then an empty collection.
+     * @return The product cache statistics.
      */
-    @Override
-    public @NotNull List<Integer> stockMonitor() {
-        try {
-            ResultSet results = query("SELECT id FROM product WHERE stock <= 5");
-            List<Integer> lowProducts = new ArrayList<>();
+    public @NotNull ProductCache.Statistics productCacheStatistics() {
+        return products.statistics();
+    }
 
-            while (results.next()) {
-                lowProducts.add(results.getInt("id"));
-            }
-            results.close();
-            return lowProducts;
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return Collections.emptyList();
+    /**
+     * Borrow a connection from the pool.
+     *
+     * @return A connection that must be closed to hand it back to the pool.
+     * @throws SQLException If there is no connection to the database or none becomes free in time.
+     */
+    private @NotNull PooledConnection borrow() throws SQLException {
+        ConnectionPool p = pool;
+        if (p == null) throw new SQLException("Not connected to the database.");
+        return p.borrow();
     }
 
     /**
-     * Check the database for products that have no stock.
-     * Then, given them a new stock value of a case of items (24x the product)
+     * Borrow a connection to read products from, from a replica that has every change made to them if there is one.
      *
-     * @return True if there is no stock (order some more), false if no items have no stock.
+     * @param ids The IDs of the products.
+     * @return A connection that must be closed to hand it back to its pool.
+     * @throws SQLException If there is no connection to the database or none becomes free in time.
+     */
+    private @NotNull PooledConnection borrowForProducts(int @NotNull [] ids) throws SQLException {
+        ReplicaSet set = replicas;
+        return set == null ? borrow() : set.borrowForProducts(ids);
+    }
+
+    /**
+     * Borrow a connection to read every product from, from a replica that has every change made to them if there is one.
+     *
+     * @return A connection that must be closed to hand it back to its pool.
+     * @throws SQLException If there is no connection to the database or none becomes free in time.
+     */
+    private @NotNull PooledConnection borrowForCatalog() throws SQLException {
+        ReplicaSet set = replicas;
+        return set == null ? borrow() : set.borrowForCatalog();
+    }
+
+    /**
+     * Borrow a connection to read purchases, stock levels or reports from, from a replica if one is fresh enough.
+     *
+     * @return A connection that must be closed to hand it back to its pool.
+     * @throws SQLException If there is no connection to the database or none becomes free in time.
+     */
+    private @NotNull PooledConnection borrowForPurchases() throws SQLException {
+        ReplicaSet set = replicas;
+        return set == null ? borrow() : set.borrowForPurchases();
+    }
+
+    /**
+     * Query the database.
+     * The results are read in full and the connection handed straight back to the pool,
+     * so the returned set stays usable after the query has completed.
+     *
+     * @param sql The sql statement being used to query the database.
+     * @return the set of results from the query.
      */
     @Override
-    public boolean noStock() {
-        try {
-            ResultSet results = query("SELECT * FROM product WHERE stock = 0");
+    public @Nullable ResultSet query(@NotNull String sql) {
+        try (PooledConnection c = borrow();
+             ResultSet results = c.prepare(sql).executeQuery()) {
+            CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+            rows.populate(results);
+            return rows;
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return null;
+    }
 
-            assert results != null;
-            if (results.next()) {
-                while (results.next()) {
-                    results.updateInt("stock", 24);
-                    results.updateRow();
-                }
-                results.close();
-                return true;
-            }
+    /**
+     * Run a cached update statement that takes a single integer parameter.
+     *
+     * @param sql   The SQL template.
+     * @param value The value bound to the parameter.
+     * @return True if at least one row was changed, false otherwise.
+     */
+    private boolean update(@NotNull String sql, int value) {
+        try (PooledConnection c = borrow()) {
+            PreparedStatement stmt = c.prepare(sql);
+            stmt.setInt(1, value);
+            return stmt.executeUpdate() > 0;
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(e);
         }
         return false;
     }
 
+
     /**
-     * Create a new purchase transaction and add it to the database.
+     * The method that has to be called to initialise the database.
+     * The script is streamed statement by statement and run in a single transaction, with INSERTs sent in batches.
      *
-     * @param customerId The ID of the customer making the transaction.
-     * @param productId  The ID of the product that is in use of the transaction.
-     * @return True if the transaction is successful, false otherwise.
+     * @param p The path of the file to be executed to initialise the database.
+     * @return True: Initialisation is successful, false otherwise.
      */
     @Override
-    public boolean purchase(int customerId, int productId) {
-        DecimalFormat df = new DecimalFormat("#.##");
-        df.setRoundingMode(RoundingMode.UP);
-
-        double cost = 0;
-
-        if (execute(String.format("UPDATE product SET stock = stock - 1 WHERE id = %d AND stock > 0", productId))) {
-            try {
-                ResultSet results = query(String.format("SELECT price FROM product WHERE id = %d", productId));
-                while (true) {
-                    assert results != null;
-                    if (!results.next()) break;
-                    cost += results.getDouble("price");
-                }
-
-                System.out.printf("\nProduct price: £%s\n", df.format(cost));
-
-                results = query(String.format("SELECT loyal FROM customer WHERE ID = %d", customerId));
-
-                while (true) {
-                    assert results != null;
-                    if (!results.next()) break;
-                    if (results.getInt("loyalty") == 1) {
-                        cost *= 0.9;
-                        System.out.println("Customer is on loyalty card scheme. 10% discount has been applied.");
-                        System.out.printf("Discounted price: £%s\n", df.format(cost));
-                    }
-                }
-
-                cost *= 1.05;
-                System.out.printf("Total cost: £%s\n", df.format(cost));
-
-                int saleId = 0;
-                results = query("SELECT id FROM sale WHERE product = " + productId + " ORDER BY id DESC");
-                assert results != null;
-
-                if (results.first())
-                    saleId = results.getInt("id");
-
-                results.close();
-                return execute(String.format("INSERT INTO transaction (`customer`, `sale`, `cost`) VALUES (%d, %d, %s)", customerId, saleId, df.format(cost)));
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+    public boolean init(String p) {
+        try (BufferedReader script = FileManager.getInstance().open(Path.of(p));
+             PooledConnection c = borrow()) {
+            if (script == null) return false;
+            new SqlScriptRunner(c.connection()).run(script);
+            return true;
+        } catch (IOException | SQLException e) {
+            failed(e);
+        } finally {
+            reload();
         }
         return false;
     }
 
     /**
-     * Check if a customer is eligible for a loyalty card, based on purchases.
+     * Bring the database schema up to date, applying only the migrations that have not been applied before.
+     * Seed data migrations are only applied in the {@code dev} and {@code test} profiles.
+     * Nothing is applied if a migration that has already been applied has been edited since, as the schema would no
+     * longer be the one the scripts describe.
      *
-     * @param id The ID of the customer.
-     * @return True if the customer has had more than 2 purchases & not already on the loyalty scheme. False otherwise.
+     * @param directory The directory holding the migration scripts.
+     * @param profile   The profile being run, such as {@code dev}, {@code test} or {@code prod}.
+     * @return True if the database is up to date, false otherwise.
      */
     @Override
-    public boolean checkLoyaltyCardEligibility(int id) {
-        int purchaseCount = 0;
-        int customerCard = 0;
-
-        try {
-            ResultSet results = query(String.format("SELECT COUNT(id) AS transactions FROM transaction WHERE CUSTOMER = %d", id));
-
-            while (true) {
-                assert results != null;
-                if (!results.next()) break;
-                purchaseCount = results.getInt("transactions");
+    public boolean migrate(@NotNull String directory, @NotNull String profile) {
+        try (PooledConnection c = borrow()) {
+            SchemaMigrator migrator = new SchemaMigrator(Path.of(directory), profile);
+            List<SchemaMigrator.Migration> modified = migrator.validate(c.connection());
+            for (SchemaMigrator.Migration m : modified) {
+                System.err.printf("The %s migration V%d (%s) has been modified since it was applied%n", m.kind(), m.version(), m.description());
             }
+            if (!modified.isEmpty()) return false;
 
-            results = query(String.format("SELECT loyal FROM customer WHERE ID = %d", id));
-            assert results != null;
-
-            if (results.first()) {
-                customerCard = results.getInt("loyal");
+            List<SchemaMigrator.Migration> applied = migrator.migrate(c.connection());
+            for (SchemaMigrator.Migration m : applied) {
+                System.out.printf("Applied %s migration V%d (%s)%n", m.kind(), m.version(), m.description());
             }
-
-            results.close();
-            return ((purchaseCount > 2) && (customerCard != 1));
-        } catch (SQLException e) {
-            e.printStackTrace();
+            if (!applied.isEmpty()) reload();
+            return true;
+        } catch (IOException | SQLException e) {
+            failed(e);
         }
         return false;
     }
 
     /**
-     * Grant a customer a loyalty card.
+     * Load large CSV files of customers, products, sales and transactions, keeping the IDs in the files.
+     * The files are parsed in parallel and written through as many pooled connections, each batch of rows in its own
+     * transaction, and progress is reported to the console about once a second.
      *
-     * @param id The ID of the customer.
-     * @return True if the database transaction has been complete. False otherwise.
+     * @param directory The directory holding {@code customer.csv}, {@code product.csv}, {@code sale.csv} and
+     *                  {@code transaction.csv}, any of which may be missing.
+     * @return The outcome for each table imported, or null if a file could not be read or a batch could not be
+     * written, in which case the batches written before it are kept.
      */
     @Override
-    public boolean grantLoyalty(int id) {
-        return execute(String.format("UPDATE customer SET loyal = 1 WHERE id = %d", id));
+    public @Nullable List<CatalogImporter.Result> importCatalog(@NotNull String directory) {
+        ConnectionPool p = pool;
+        if (p == null) return null;
+
+        // Every task holds a connection while it writes, so there are never more tasks than connections.
+        CatalogImporter.Settings s = importSettings;
+        CatalogImporter importer = new CatalogImporter(new CatalogImporter.Settings(Math.min(s.parallelism(), p.statistics().maxSize()),
+                s.chunkBytes(), s.rowsPerInsert(), s.rowsPerCommit()));
+        try {
+            return importer.load(Path.of(directory), rows -> {
+                try (PooledConnection c = borrow()) {
+                    importer.insert(c, rows);
+                }
+            }, progress -> System.out.printf("Importing %s: %,d rows (%.0f%%), %,.0f rows/s%n", progress.table().file(), progress.rows(),
+                    progress.fraction() * 100, progress.rowsPerSecond()));
+        } catch (IOException | SQLException e) {
+            failed(e);
+            return null;
+        } finally {
+            reload();
+        }
     }
 
     /**
-     * Produce a report of that month's operations.
+     * Obtain product data, from the catalogue snapshot, or from the product cache if it has changed since the snapshot.
+     * A product changed by another process is seen once the snapshot is next refreshed.
      *
-     * @return A map of purchases, revenue and popular items.
+     * @param id The identification number of the product
+     * @return The product requested, or null if it does not exist.
      */
     @Override
-    public @NotNull Map<String, Object> generateReport() {
-        Map<String, Object> stats = new HashMap<>(Collections.emptyMap());
-
-        int purchases = 0;
-        double revenue = 0;
-        int popularItem = 0;
-
-        try {
-            ResultSet results = query("SELECT COUNT(id) FROM transaction WHERE purchased > NOW() - INTERVAL 1 MONTH");
-
-            assert results != null;
-            if (results.first()) {
-                purchases = results.getInt(1);
-            }
+    public @Nullable Product getProduct(int id) {
+        Product product = fromCatalog(catalog, id);
+        return product != null ? product : products.get(id, i -> loadProducts(List.of(i)).get(i));
+    }
 
-            results = query("SELECT SUM(cost) FROM transaction WHERE purchased > NOW() - INTERVAL 1 MONTH");
+    /**
+     * Obtain data for several products at once.
+     * Products that are neither in the catalogue snapshot nor cached are loaded, together with their sales, in a single query.
+     *
+     * @param ids The identification numbers of the products.
+     * @return The products that exist, in the order their IDs were given.
+     */
+    @Override
+    public @NotNull List<Product> getProducts(@NotNull Collection<Integer> ids) {
+        CatalogSnapshot snapshot = catalog;
+        Map<Integer, Product> found = new HashMap<>(ids.size() * 2);
+        List<Integer> missing = new ArrayList<>();
 
-            assert results != null;
-            if (results.first()) {
-                revenue = results.getDouble(1);
+        for (Integer id : ids) {
+            Product product = fromCatalog(snapshot, id);
+            if (product != null) {
+                found.put(id, product);
+            } else {
+                missing.add(id);
             }
+        }
+        if (!missing.isEmpty()) found.putAll(products.getAll(missing, this::loadProducts));
 
-            results = query("SELECT MAX(product_count) FROM (SELECT product, COUNT(product) AS product_count FROM transaction GROUP BY product) AS alias");
+        List<Product> ordered = new ArrayList<>(found.size());
+        for (Integer id : ids) {
+            Product product = found.get(id);
+            if (product != null) ordered.add(product);
+        }
+        return ordered;
+    }
 
-            assert results != null;
-            if (results.first()) {
-                popularItem = results.getInt(1);
+    /**
+     * Obtain data for every product, from the catalogue snapshot if there is one, and otherwise in one query.
+     * Products that have changed since the snapshot was taken are read again from the database.
+     *
+     * @return Every product, in order of ID.
+     */
+    @Override
+    public @NotNull List<Product> getAllProducts() {
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null) {
+            List<Product> all = new ArrayList<>(snapshot.size());
+            Map<Integer, Product> changed = catalogChanges.isEmpty() ? Map.of() : loadProducts(new ArrayList<>(catalogChanges.keySet()));
+            for (int slot = 0; slot < snapshot.size(); slot++) {
+                Product product = changed.get(snapshot.id(slot));
+                all.add(product != null ? product : catalogSlot(snapshot, slot));
             }
+            return all;
+        }
 
-            results.close();
+        List<Product> all = new ArrayList<>();
 
-            stats.put("purchases", purchases);
-            stats.put("revenue", revenue);
-            stats.put("most-popular", popularItem);
+        try (PooledConnection c = borrowForCatalog();
+             ResultSet results = c.prepare(ALL_PRODUCTS).executeQuery()) {
+            readProducts(results, all::add);
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(e);
         }
-        return stats;
+        return all;
     }
 
     /**
-     * A function used to print the last N purchases from the database.
+     * Load product data from the database, with as few round trips as possible.
+     * The IDs are sent in lists whose length is rounded up to a power of two, so that only a handful of statements are cached.
      *
-     * @param n The number of purchases to see.
+     * @param ids The identification numbers of the products.
+     * @return The products that exist, keyed by ID.
      */
-    @Override
-    public void printLastNPurchases(int n) {
+    private @NotNull Map<Integer, Product> loadProducts(@NotNull Collection<Integer> ids) {
+        Map<Integer, Product> loaded = new HashMap<>(ids.size() * 2);
         try {
-            ResultSet results = query("SELECT id, " +
-                                      "(SELECT name FROM product WHERE id = transaction.product) as product_name, " +
-                                      "(SELECT name FROM customer WHERE id = transaction.customer) AS customer_id, " +
-                                      "cost, purchased FROM transaction ORDER BY purchased DESC LIMIT " + n);
-            while (true) {
-                assert results != null;
-                if (!results.next()) break;
-                System.out.printf("""
-                                +-----------------------------------+
-                                | Transaction ID: %s\t\t\t\t|
-                                | Product Name: %s\t\t\t\t|
-                                | Customer Name: %s\t|
-                                | Cost (£): %s\t\t\t\t\t|
-                                | Purchased: %s\t|
-                                +-----------------------------------+
-                                """,
-                        results.getInt("id"), results.getString("product_name"), results.getString("customer_id"),
-                        results.getDouble("cost"), results.getTimestamp("purchased"));
-            }
-            results.close();
+            loadProducts(ids, loaded);
         } catch (SQLException e) {
-            e.printStackTrace();
+            failed(e);
+        }
+        return loaded;
+    }
+
+    /**
+     * Load product data from the database into a map, stopping at the first failure.
+     *
+     * @param ids    The identification numbers of the products.
+     * @param loaded The map the products that exist are put in, keyed by ID.
+     * @throws SQLException If the products cannot all be read.
+     */
+    private void loadProducts(@NotNull Collection<Integer> ids, @NotNull Map<Integer, Product> loaded) throws SQLException {
+        int[] distinct = ids.stream().mapToInt(Integer::intValue).distinct().toArray();
+
+        try (PooledConnection c = borrowForProducts(distinct)) {
+            for (int from = 0; from < distinct.length; from += MAX_PRODUCTS_PER_QUERY) {
+                int count = Math.min(MAX_PRODUCTS_PER_QUERY, distinct.length - from);
+                int slots = Integer.bitCount(count) == 1 ? count : Integer.highestOneBit(count) << 1;
+
+                PreparedStatement stmt = c.prepare(PRODUCTS_BY_ID[Integer.numberOfTrailingZeros(slots)]);
+                for (int i = 0; i < slots; i++) {
+                    stmt.setInt(i + 1, distinct[from + Math.min(i, count - 1)]);
+                }
+
+                try (ResultSet results = stmt.executeQuery()) {
+                    readProducts(results, product -> loaded.put(product.getId(), product));
+                }
+            }
+        }
+    }
+
+    /**
+     * Build products from the rows of a product and sale join, ordered by product ID, in a single pass.
+     *
+     * @param results The rows of the join.
+     * @param sink    Receives each product once all of its sales have been read.
+     */
+    private static void readProducts(@NotNull ResultSet results, @NotNull Consumer<Product> sink) throws SQLException {
+        int id = 0;
+        String name = null;
+        int stock = 0;
+        long price = 0;
+        int sales = 0;
+        boolean any = false;
+
+        while (results.next()) {
+            int rowId = results.getInt(1);
+            if (!any || rowId != id) {
+                if (any) sink.accept(new Product(id, name, stock, price, sales));
+                id = rowId;
+                name = results.getString(2);
+                stock = results.getInt(3);
+                price = results.getBigDecimal(4).movePointRight(2).longValue();
+                sales = 0;
+                any = true;
+            }
+
+            int type = results.getInt(5);
+            if (!results.wasNull()) sales |= Product.saleMask(type);
+        }
+
+        if (any) sink.accept(new Product(id, name, stock, price, sales));
+    }
+
+    /**
+     * Obtain a product's name from the database.
+     *
+     * @param id The ID of the product.
+     * @return The name of the product.
+     */
+    @Override
+    public @Nullable String retrieveProductName(int id) {
+        Product product = getProduct(id);
+        return product == null ? null : product.getName();
+    }
+
+    /**
+     * Change the price of an item in the database.
+     *
+     * @param id    The id number of the product.
+     * @param price The new price to be assigned to the item.
+     * @return True if the price can be updated, false otherwise.
+     */
+    @Override
+    public boolean changePrice(int id, double price) {
+        return ManagerAuthorisation.authorise() && updatePrice(id, price);
+    }
+
+    /**
+     * Change the price of an item in the database for a manager whose credentials come with the request,
+     * so the change can be made without prompting on the console.
+     *
+     * @param id       The id number of the product.
+     * @param price    The new price to be assigned to the item.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return True if the credentials are valid and the price can be updated, false otherwise.
+     */
+    @Override
+    public boolean changePrice(int id, double price, @NotNull String username, @NotNull String password) {
+        return ManagerAuthorisation.authorise(username, password) && updatePrice(id, price);
+    }
+
+    /**
+     * Reprice every product in a price list file, as described by {@link PriceList}, in a single transaction.
+     * The manager is authorised once for the whole file, the file is validated before anything is changed, and the
+     * prices are set a few hundred products to a statement, in lists rounded up to a power of two as products are loaded.
+     *
+     * @param file     The path of the price list.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return The outcome, which lists the file's errors if it was not valid, or null if the credentials are not valid,
+     * the file cannot be read, or the update fails.
+     */
+    @Override
+    public @Nullable PriceList.Update changePrices(@NotNull String file, @NotNull String username, @NotNull String password) {
+        if (!ManagerAuthorisation.authorise(username, password)) return null;
+
+        long started = System.nanoTime();
+        PriceList prices;
+        try {
+            prices = PriceList.read(Path.of(file));
+        } catch (IOException e) {
+            failed(e);
+            return null;
+        }
+        Duration reading = Duration.ofNanos(System.nanoTime() - started);
+        if (!prices.errors().isEmpty()) return new PriceList.Update(prices.size(), 0, prices.errors(), reading, Duration.ZERO);
+
+        started = System.nanoTime();
+        int changed = 0;
+        try (PooledConnection c = borrow()) {
+            Connection conn = c.connection();
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < prices.size(); from += MAX_PRODUCTS_PER_QUERY) {
+                    int count = Math.min(MAX_PRODUCTS_PER_QUERY, prices.size() - from);
+                    int slots = Integer.bitCount(count) == 1 ? count : Integer.highestOneBit(count) << 1;
+
+                    PreparedStatement stmt = c.prepare(REPRICE_BY_ID[Integer.numberOfTrailingZeros(slots)]);
+                    for (int i = 0; i < slots; i++) {
+                        int at = from + Math.min(i, count - 1);
+                        BigDecimal price = prices.price(at);
+                        stmt.setInt(2 * i + 1, prices.id(at));
+                        stmt.setBigDecimal(2 * i + 2, price);
+                        stmt.setInt(2 * slots + i + 1, prices.id(at));
+                        stmt.setInt(3 * slots + 2 * i + 1, prices.id(at));
+                        stmt.setBigDecimal(3 * slots + 2 * i + 2, price);
+                    }
+                    changed += stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            failed(e);
+            return null;
+        }
+
+        if (changed > 0) {
+            for (int i = 0; i < prices.size(); i++) {
+                productChanged(prices.id(i));
+            }
+            refreshChangedProducts();
+        }
+        return new PriceList.Update(prices.size(), changed, prices.errors(), reading, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private boolean updatePrice(int id, double price) {
+        try (PooledConnection c = borrow()) {
+            PreparedStatement stmt = c.prepare("UPDATE product SET price = ? WHERE id = ?");
+            stmt.setDouble(1, price);
+            stmt.setInt(2, id);
+            if (stmt.executeUpdate() == 0) return false;
+            productChanged(id);
+            System.out.format("Product %d has had price updated to %f", id, price);
+            return true;
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Create a new sale and add it to the database.
+     *
+     * @param id       The ID of the product
+     * @param saleType The type of sale (1, 2, or 3)
+     * @return True if the sale can be added to the database, false otherwise.
+     */
+    @Override
+    public boolean sell(int id, int saleType) {
+        WriteBehindQueue queue = writeBehind;
+        if (queue != null) {
+            // A sale for a product that does not exist would otherwise only be found out once its batch is written.
+            try (PooledConnection c = borrow()) {
+                PreparedStatement stmt = c.prepare("SELECT 1 FROM product WHERE id = ?");
+                stmt.setInt(1, id);
+                try (ResultSet results = stmt.executeQuery()) {
+                    return results.next() && queue.sale(id, saleType);
+                }
+            } catch (SQLException e) {
+                failed(e);
+            }
+            return false;
+        }
+
+        try (PooledConnection c = borrow()) {
+            PreparedStatement stmt = c.prepare("INSERT INTO sale (`product`, `type`) VALUES (?, ?)");
+            stmt.setInt(1, id);
+            stmt.setInt(2, saleType);
+            int inserted = stmt.executeUpdate();
+            productChanged(id);
+            return inserted > 0;
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Retrieve a list of stock that has a low quantity.
+     * This function should be validated using the size of the collection returned,
+     * The list comes from the low stock index, which also sees changes made by other processes once it has been
+     * reconciled with the database, at most {@link #RECONCILE_INTERVAL} later.
+     *
+     * @return The products at or below their reorder level, if there aren't any, then an empty collection.
+     */
+    @Override
+    public @NotNull List<Integer> stockMonitor() {
+        if (stockLevelsLoaded) return stockLevels.lowStock();
+
+        try (PooledConnection c = borrowForPurchases();
+             ResultSet results = c.prepare("SELECT id FROM product WHERE stock <= reorder_level").executeQuery()) {
+            List<Integer> lowProducts = new ArrayList<>();
+
+            while (results.next()) {
+                lowProducts.add(results.getInt("id"));
+            }
+            return lowProducts;
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Check for products that have no stock, and reorder them all together through the replenishment engine.
+     * Each product is ordered enough stock to cover its recent sales, in whole cases.
+     *
+     * @return True if there is no stock (order some more), false if no items have no stock.
+     */
+    @Override
+    public boolean noStock() {
+        List<Integer> empty = stockLevelsLoaded ? stockLevels.outOfStock() : outOfStock();
+        if (empty.isEmpty()) return false;
+
+        try (PooledConnection c = borrow()) {
+            List<ReplenishmentEngine.Order> orders = replenishment.replenish(c, empty);
+            for (ReplenishmentEngine.Order order : orders) {
+                stockLevels.adjust(order.productId(), order.quantity());
+                stockChanged(order.productId());
+            }
+            return !orders.isEmpty();
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Find the products with no stock by querying the database, for use until the low stock index has loaded.
+     *
+     * @return The IDs of the products.
+     */
+    private @NotNull List<Integer> outOfStock() {
+        List<Integer> empty = new ArrayList<>();
+        try (PooledConnection c = borrow();
+             ResultSet results = c.prepare("SELECT id FROM product WHERE stock = 0").executeQuery()) {
+            while (results.next()) {
+                empty.add(results.getInt(1));
+            }
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return empty;
+    }
+
+    /**
+     * Change how reorders are sized and who they are placed with.
+     *
+     * @param engine The replenishment engine used by {@link #noStock()}.
+     */
+    public void setReplenishment(@NotNull ReplenishmentEngine engine) {
+        replenishment = engine;
+    }
+
+    /**
+     * Change the rates purchases are priced at.
+     *
+     * @param engine The pricing engine used by {@link #completePurchase(int, int)} and {@link #purchaseBasket(int, Map)}.
+     */
+    public void setPricing(@NotNull PricingEngine engine) {
+        pricing = engine;
+    }
+
+    /**
+     * Change how {@link #exportTransactions(Instant, Instant, String)} groups and compresses its files.
+     *
+     * @param settings The export settings.
+     */
+    public void setExportSettings(@NotNull TransactionExport.Settings settings) {
+        exportSettings = settings;
+    }
+
+    /**
+     * Change how {@link #importCatalog(String)} splits and writes its files.
+     *
+     * @param settings The import settings, whose parallelism is capped at the size of the connection pool.
+     */
+    public void setImportSettings(@NotNull CatalogImporter.Settings settings) {
+        importSettings = settings;
+    }
+
+    /**
+     * Change the stock level at or below which a product is reported as low in stock.
+     *
+     * @param id           The ID of the product.
+     * @param reorderLevel The new reorder level.
+     * @return True if the reorder level has been changed, false otherwise.
+     */
+    @Override
+    public boolean setReorderLevel(int id, int reorderLevel) {
+        try (PooledConnection c = borrow()) {
+            PreparedStatement stmt = c.prepare("UPDATE product SET reorder_level = ? WHERE id = ?");
+            stmt.setInt(1, reorderLevel);
+            stmt.setInt(2, id);
+            if (stmt.executeUpdate() == 0) return false;
+            stockLevels.setReorderLevel(id, reorderLevel);
+            return true;
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Be told whenever a product's stock crosses its reorder level.
+     *
+     * @param listener The listener to notify.
+     */
+    public void addStockListener(@NotNull StockListener listener) {
+        stockLevels.addListener(listener);
+    }
+
+    /**
+     * Stop being told about reorder level crossings.
+     *
+     * @param listener The listener to stop notifying.
+     */
+    public void removeStockListener(@NotNull StockListener listener) {
+        stockLevels.removeListener(listener);
+    }
+
+    /**
+     * Create a new purchase transaction and add it to the database.
+     *
+     * @param customerId The ID of the customer making the transaction.
+     * @param productId  The ID of the product that is in use of the transaction.
+     * @return True if the transaction is successful, false otherwise.
+     */
+    @Override
+    public boolean purchase(int customerId, int productId) {
+        return completePurchase(customerId, productId) != null;
+    }
+
+    /**
+     * Purchase a product as a single database transaction.
+     * The stock is taken, the price, loyalty status and latest sale are read together, and the transaction is recorded,
+     * all or nothing, so concurrent tills can neither oversell a product nor leave stock taken without a transaction.
+     * With write-behind enabled, the stock is committed on its own and the transaction is queued to be written later.
+     *
+     * @param customerId The ID of the customer making the transaction.
+     * @param productId  The ID of the product that is in use of the transaction.
+     * @return The receipt for the purchase, or null if the product is out of stock, either ID does not exist, or the transaction fails.
+     */
+    @Override
+    public @Nullable Receipt completePurchase(int customerId, int productId) {
+        WriteBehindQueue queue = writeBehind;
+        Receipt queued = null;
+        int queuedSaleId = 0;
+
+        try (PooledConnection c = borrow()) {
+            Connection conn = c.connection();
+            if (conn.getTransactionIsolation() != Connection.TRANSACTION_READ_COMMITTED) {
+                conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            }
+            conn.setAutoCommit(false);
+
+            try {
+                // Taking the stock first locks the product row until the transaction ends.
+                PreparedStatement stmt = c.prepare("UPDATE product SET stock = stock - 1 WHERE id = ? AND stock > 0");
+                stmt.setInt(1, productId);
+                if (stmt.executeUpdate() == 0) {
+                    conn.rollback();
+                    return null;
+                }
+
+                BigDecimal price;
+                boolean loyal;
+                int saleId;
+
+                stmt = c.prepare("SELECT p.price, c.loyal, (SELECT MAX(s.id) FROM sale s WHERE s.product = p.id) AS sale " +
+                                 "FROM product p JOIN customer c ON c.id = ? WHERE p.id = ?");
+                stmt.setInt(1, customerId);
+                stmt.setInt(2, productId);
+                try (ResultSet results = stmt.executeQuery()) {
+                    if (!results.next()) {
+                        conn.rollback();
+                        return null;
+                    }
+                    price = results.getBigDecimal("price");
+                    loyal = results.getInt("loyal") == 1;
+                    saleId = results.getInt("sale");
+                    if (results.wasNull()) saleId = 0;
+                }
+
+                PricingEngine engine = pricing;
+                long pricePence = price.movePointRight(2).longValue();
+                BigDecimal cost = BigDecimal.valueOf(engine.cost(pricePence, loyal), 2);
+                BigDecimal discount = BigDecimal.valueOf(engine.loyaltyDiscount(pricePence, loyal), 2);
+
+                if (queue == null) {
+                    int transactionId = insertTransaction(c, productId, customerId, saleId, cost);
+                    conn.commit();
+                    purchaseWritten();
+                    stockLevels.adjust(productId, -1);
+                    loyalty.recordPurchase(customerId, loyal);
+
+                    SalesAggregator aggregator = sales;
+                    if (aggregator != null) aggregator.record(productId, cost.movePointRight(2).longValue(), Instant.now());
+                    return new Receipt(transactionId, customerId, productId, price, discount, cost);
+                }
+
+                // Only the stock is committed here. The connection is handed back before the transaction is queued,
+                // so a till waiting for room in the queue holds neither the row lock nor a connection the writer needs.
+                conn.commit();
+                stockLevels.adjust(productId, -1);
+                loyalty.recordPurchase(customerId, loyal);
+                queued = new Receipt(0, customerId, productId, price, discount, cost);
+                queuedSaleId = saleId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                stockChanged(productId);
+            }
+        } catch (SQLException e) {
+            failed(e);
+            return null;
+        }
+
+        Instant purchased = Instant.now();
+        if (!queue.transaction(productId, customerId, queuedSaleId, queued.getCost(), purchased)) {
+            // The queue was closed in the meantime, so the transaction is recorded directly instead.
+            try (PooledConnection c = borrow()) {
+                int transactionId = insertTransaction(c, productId, customerId, queuedSaleId, queued.getCost());
+                queued = new Receipt(transactionId, customerId, productId, queued.getPrice(), queued.getDiscount(), queued.getCost());
+            } catch (SQLException e) {
+                failed(e);
+                return null;
+            }
+        }
+
+        purchaseWritten();
+        SalesAggregator aggregator = sales;
+        if (aggregator != null) aggregator.record(productId, queued.getCost().movePointRight(2).longValue(), purchased);
+        return queued;
+    }
+
+    /**
+     * Purchase several products at once as a single database transaction.
+     * The products are locked in ID order, so tills buying the same products cannot deadlock, and their stock, prices
+     * and sales are read with one query each. The basket is priced by the pricing engine, promotions included, and one
+     * transaction is recorded per unit bought, with each line's cost spread over its units, so that reports and
+     * loyalty counts see the same purchases as they would from single purchases. Nothing is written unless every
+     * product has enough stock. Baskets are written directly even when write-behind is enabled.
+     *
+     * @param customerId The ID of the customer making the purchase.
+     * @param items      The number of units wanted of each product, keyed by product ID.
+     * @return The receipt for the basket, or null if the basket is empty, a product is short of stock, either ID does not exist, or the transaction fails.
+     * @throws IllegalArgumentException If a quantity is not positive, or the basket holds more than 256 products.
+     */
+    @Override
+    public @Nullable BasketReceipt purchaseBasket(int customerId, @NotNull Map<Integer, Integer> items) {
+        int size = items.size();
+        if (size == 0) return null;
+        if (size > MAX_PRODUCTS_PER_QUERY) {
+            throw new IllegalArgumentException("A basket holds at most " + MAX_PRODUCTS_PER_QUERY + " products");
+        }
+
+        int[] ids = new int[size];
+        int[] quantities = new int[size];
+        int line = 0;
+        for (Map.Entry<Integer, Integer> item : new TreeMap<>(items).entrySet()) {
+            if (item.getValue() <= 0) throw new IllegalArgumentException("Quantity of product " + item.getKey() + " must be positive");
+            ids[line] = item.getKey();
+            quantities[line++] = item.getValue();
+        }
+        int slots = Integer.bitCount(size) == 1 ? size : Integer.highestOneBit(size) << 1;
+
+        PricingEngine engine = pricing;
+        PricingEngine.Basket basket = new PricingEngine.Basket(size);
+        PricingEngine.Quote quote = new PricingEngine.Quote();
+        long[] prices = new long[size];
+        int[] saleTypes = new int[size];
+        int[] saleIds = new int[size];
+        boolean loyal;
+
+        try (PooledConnection c = borrow()) {
+            Connection conn = c.connection();
+            if (conn.getTransactionIsolation() != Connection.TRANSACTION_READ_COMMITTED) {
+                conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            }
+            conn.setAutoCommit(false);
+
+            try {
+                PreparedStatement stmt = c.prepare(LOCK_PRODUCTS_BY_ID[Integer.numberOfTrailingZeros(slots)]);
+                for (int i = 0; i < slots; i++) {
+                    stmt.setInt(i + 1, ids[Math.min(i, size - 1)]);
+                }
+                line = 0;
+                try (ResultSet results = stmt.executeQuery()) {
+                    // Rows come back in ID order, so a missing product or a short stock leaves the lines unmatched.
+                    while (line >= 0 && results.next()) {
+                        if (results.getInt(1) != ids[line] || results.getInt(2) < quantities[line]) {
+                            line = -1;
+                        } else {
+                            prices[line++] = results.getBigDecimal(3).movePointRight(2).longValue();
+                        }
+                    }
+                }
+                if (line != size) {
+                    conn.rollback();
+                    return null;
+                }
+
+                stmt = c.prepare(SALES_BY_PRODUCT_ID[Integer.numberOfTrailingZeros(slots)]);
+                for (int i = 0; i < slots; i++) {
+                    stmt.setInt(i + 1, ids[Math.min(i, size - 1)]);
+                }
+                try (ResultSet results = stmt.executeQuery()) {
+                    while (results.next()) {
+                        int at = Arrays.binarySearch(ids, results.getInt(1));
+                        saleIds[at] = results.getInt(2);
+                        saleTypes[at] |= Product.saleMask(results.getInt(3));
+                    }
+                }
+
+                stmt = c.prepare("SELECT loyal FROM customer WHERE id = ?");
+                stmt.setInt(1, customerId);
+                try (ResultSet results = stmt.executeQuery()) {
+                    if (!results.next()) {
+                        conn.rollback();
+                        return null;
+                    }
+                    loyal = results.getInt(1) == 1;
+                }
+
+                for (int i = 0; i < size; i++) {
+                    basket.add(ids[i], quantities[i], prices[i], saleTypes[i]);
+                }
+                engine.price(basket, loyal, quote);
+
+                stmt = c.prepare("UPDATE product SET stock = stock - ? WHERE id = ?");
+                for (int i = 0; i < size; i++) {
+                    stmt.setInt(1, quantities[i]);
+                    stmt.setInt(2, ids[i]);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                stmt = c.prepare("INSERT INTO transaction (`product`, `customer`, `sale`, `cost`) VALUES (?, ?, ?, ?)");
+                for (int i = 0; i < size; i++) {
+                    for (int unit = 0; unit < quantities[i]; unit++) {
+                        stmt.setInt(1, ids[i]);
+                        stmt.setInt(2, customerId);
+                        if (saleIds[i] == 0) {
+                            stmt.setNull(3, Types.INTEGER);
+                        } else {
+                            stmt.setInt(3, saleIds[i]);
+                        }
+                        stmt.setBigDecimal(4, BigDecimal.valueOf(quote.unitCost(i, unit), 2));
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                for (int id : ids) stockChanged(id);
+            }
+        } catch (SQLException e) {
+            failed(e);
+            return null;
+        }
+
+        purchaseWritten();
+        SalesAggregator aggregator = sales;
+        Instant purchased = Instant.now();
+        List<BasketReceipt.Line> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stockLevels.adjust(ids[i], -quantities[i]);
+            for (int unit = 0; unit < quantities[i]; unit++) {
+                loyalty.recordPurchase(customerId, loyal);
+                if (aggregator != null) aggregator.record(ids[i], quote.unitCost(i, unit), purchased);
+            }
+            lines.add(new BasketReceipt.Line(ids[i], quantities[i], BigDecimal.valueOf(prices[i], 2),
+                    BigDecimal.valueOf(quote.promotion(i), 2), BigDecimal.valueOf(quote.discount(i), 2), BigDecimal.valueOf(quote.cost(i), 2)));
+        }
+        return new BasketReceipt(customerId, lines, BigDecimal.valueOf(quote.delivery(), 2), BigDecimal.valueOf(quote.total(), 2));
+    }
+
+    /**
+     * Record a purchase in the transaction table.
+     *
+     * @return The ID of the new transaction, or 0 if the database did not report it.
+     */
+    private static int insertTransaction(@NotNull PooledConnection c, int productId, int customerId, int saleId, @NotNull BigDecimal cost) throws SQLException {
+        PreparedStatement stmt = c.prepareReturningKeys("INSERT INTO transaction (`product`, `customer`, `sale`, `cost`) VALUES (?, ?, ?, ?)");
+        stmt.setInt(1, productId);
+        stmt.setInt(2, customerId);
+        if (saleId == 0) {
+            stmt.setNull(3, Types.INTEGER);
+        } else {
+            stmt.setInt(3, saleId);
+        }
+        stmt.setBigDecimal(4, cost);
+        stmt.executeUpdate();
+
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            return keys.next() ? keys.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Check if a customer is eligible for a loyalty card, based on purchases.
+     * The answer comes from the loyalty index, which also sees purchases recorded by other processes at most
+     * {@link #CATCH_UP_INTERVAL} later, and cards they grant at most {@link #RECONCILE_INTERVAL} later.
+     *
+     * @param id The ID of the customer.
+     * @return True if the customer has had more than 2 purchases & not already on the loyalty scheme. False otherwise.
+     */
+    @Override
+    public boolean checkLoyaltyCardEligibility(int id) {
+        if (loyaltyLoaded) return loyalty.isEligible(id);
+
+        int purchaseCount = 0;
+        int customerCard = 0;
+
+        try (PooledConnection c = borrow()) {
+            PreparedStatement stmt = c.prepare("SELECT COUNT(id) AS transactions FROM transaction WHERE customer = ?");
+            stmt.setInt(1, id);
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    purchaseCount = results.getInt("transactions");
+                }
+            }
+
+            stmt = c.prepare("SELECT loyal FROM customer WHERE id = ?");
+            stmt.setInt(1, id);
+            try (ResultSet results = stmt.executeQuery()) {
+                if (results.next()) {
+                    customerCard = results.getInt("loyal");
+                }
+            }
+
+            return ((purchaseCount >= LoyaltyIndex.QUALIFYING_PURCHASES) && (customerCard != 1));
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Grant a customer a loyalty card.
+     *
+     * @param id The ID of the customer.
+     * @return True if the database transaction has been complete. False otherwise.
+     */
+    @Override
+    public boolean grantLoyalty(int id) {
+        if (!update("UPDATE customer SET loyal = 1 WHERE id = ?", id)) return false;
+        loyalty.grant(id);
+        return true;
+    }
+
+    /**
+     * Grant a loyalty card to every customer who is eligible for one, in a single transaction.
+     * The eligible customers are found and locked by the database, then granted their cards in one set-based update,
+     * so customers who became eligible through other processes are granted theirs too. The loyalty index is then
+     * updated from the customers granted.
+     *
+     * @return The IDs of the customers granted a card, in order, which is empty if there were none or the update failed.
+     */
+    @Override
+    public @NotNull List<Integer> grantAllEligibleLoyalty() {
+        try (PooledConnection c = borrow()) {
+            Connection conn = c.connection();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement stmt = c.prepare("SELECT id FROM customer WHERE " + ELIGIBLE_CUSTOMERS + " ORDER BY id FOR UPDATE");
+                stmt.setInt(1, LoyaltyIndex.QUALIFYING_PURCHASES);
+                List<Integer> eligible = new ArrayList<>();
+                try (ResultSet results = stmt.executeQuery()) {
+                    while (results.next()) {
+                        eligible.add(results.getInt(1));
+                    }
+                }
+
+                stmt = c.prepare("UPDATE customer SET loyal = 1 WHERE " + ELIGIBLE_CUSTOMERS);
+                stmt.setInt(1, LoyaltyIndex.QUALIFYING_PURCHASES);
+                int granted = stmt.executeUpdate();
+                conn.commit();
+
+                eligible.forEach(loyalty::grant);
+                // A customer whose qualifying purchase was committed between the two statements is granted a card
+                // that the list does not show, so the index is read again rather than left thinking them eligible.
+                if (granted != eligible.size()) reconcileLoyalty();
+                return eligible;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Drop everything held in memory about the database and load it again, after the data has been replaced.
+     */
+    private void reload() {
+        products.invalidateAll();
+        loadSales();
+        loadStockLevels();
+        loadLoyalty();
+        refreshCatalog();
+    }
+
+    /**
+     * Replace the catalogue snapshot with a new one, built in a single scan of the product and sale tables.
+     * Until the first refresh succeeds, every product read goes through the product cache. The snapshot is rebuilt
+     * every {@link #RECONCILE_INTERVAL} while connected, so prices and sales changed by other processes are seen.
+     *
+     * @return True if the snapshot was replaced, false otherwise.
+     */
+    public boolean refreshCatalog() {
+        synchronized (catalogRefresh) {
+            long version = catalogVersion.get();
+            try (PooledConnection c = borrow()) {
+                PreparedStatement stmt = c.prepare(ALL_PRODUCTS);
+                stmt.setFetchSize(HISTORY_PAGE_SIZE);
+                try (ResultSet results = stmt.executeQuery()) {
+                    catalog = CatalogSnapshot.read(results);
+                }
+                // Changes made after the scan began may have been missed, so they are still read from the database.
+                catalogChanges.values().removeIf(changed -> changed <= version);
+                return true;
+            } catch (SQLException e) {
+                failed(e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Bring the catalogue snapshot up to date with the products changed through this manager since it was taken,
+     * reading only those products, and nothing at all if none has changed. Runs every {@link #CATCH_UP_INTERVAL}
+     * while connected and after prices are changed.
+     */
+    private void refreshChangedProducts() {
+        if (catalog == null) {
+            refreshCatalog();
+            return;
+        }
+        if (catalogChanges.isEmpty()) return;
+
+        synchronized (catalogRefresh) {
+            long version = catalogVersion.get();
+            List<Integer> ids = new ArrayList<>(catalogChanges.keySet());
+            Map<Integer, Product> changed = new HashMap<>(ids.size() * 2);
+            try {
+                loadProducts(ids, changed);
+            } catch (SQLException e) {
+                failed(e);
+                return;
+            }
+            CatalogSnapshot snapshot = catalog;
+            catalog = snapshot.with(ids, changed);
+            // A product changed again since the version was taken is still read from the database.
+            for (int id : ids) catalogChanges.computeIfPresent(id, (key, at) -> at <= version ? null : at);
+        }
+    }
+
+    /**
+     * Record that a product's price or sales have changed, so it is no longer read from the catalogue snapshot.
+     *
+     * @param id The ID of the product.
+     */
+    private void productChanged(int id) {
+        catalogChanges.put(id, catalogVersion.incrementAndGet());
+        stockChanged(id);
+    }
+
+    /**
+     * Record that a product's stock has changed, so it is read again, and from the primary until the replicas have
+     * caught up.
+     *
+     * @param id The ID of the product.
+     */
+    private void stockChanged(int id) {
+        products.invalidate(id);
+        ReplicaSet set = replicas;
+        if (set != null) set.productWritten(id);
+    }
+
+    /**
+     * Record that a purchase has been committed, for replica reads that must see it.
+     */
+    private void purchaseWritten() {
+        ReplicaSet set = replicas;
+        if (set != null) set.purchaseWritten();
+    }
+
+    /**
+     * Read a product from the catalogue snapshot, with its stock taken from the low stock index, which is kept up to date.
+     *
+     * @param snapshot The catalogue snapshot, which may be null.
+     * @param id       The ID of the product.
+     * @return The product, or null if it is not in the snapshot or has changed since.
+     */
+    private @Nullable Product fromCatalog(@Nullable CatalogSnapshot snapshot, int id) {
+        if (snapshot == null || catalogChanges.containsKey(id)) return null;
+        int slot = snapshot.slot(id);
+        return slot < 0 ? null : catalogSlot(snapshot, slot);
+    }
+
+    private @NotNull Product catalogSlot(@NotNull CatalogSnapshot snapshot, int slot) {
+        int stock = stockLevelsLoaded ? stockLevels.stock(snapshot.id(slot)) : -1;
+        return snapshot.product(slot, stock >= 0 ? stock : snapshot.stock(slot));
+    }
+
+    /**
+     * Apply the purchase counts and loyalty cards in the database to the loyalty index, so that purchases made and
+     * cards granted by other processes show in eligibility checks.
+     */
+    private void reconcileLoyalty() {
+        if (!loyaltyLoaded) {
+            loadLoyalty();
+            return;
+        }
+
+        long asOf = loyalty.version();
+        try (PooledConnection c = borrow()) {
+            long latest = latestTransaction(c);
+            try (ResultSet results = c.prepare(CUSTOMER_PURCHASES).executeQuery()) {
+                while (results.next()) {
+                    loyalty.reconcile(results.getInt(1), results.getInt(3), results.getInt(2) == 1, asOf);
+                }
+            }
+            loyaltySeen = latest;
+        } catch (SQLException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Bring the loyalty index up to date with the customers who have bought anything since it was last read, so that
+     * catching up costs as much as the purchases made since rather than a count over every transaction.
+     * Cards granted by other processes to customers who have not bought anything since are left to
+     * {@link #reconcileLoyalty()}, as are purchases committed out of order with the ones already seen.
+     */
+    private void catchUpLoyalty() {
+        if (!loyaltyLoaded) {
+            loadLoyalty();
+            return;
+        }
+
+        long asOf = loyalty.version();
+        try (PooledConnection c = borrow()) {
+            long seen = loyaltySeen;
+            long latest = latestTransaction(c);
+            if (latest <= seen) return;
+
+            PreparedStatement stmt = c.prepare(RECENT_CUSTOMER_PURCHASES);
+            stmt.setLong(1, seen);
+            stmt.setLong(2, latest);
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    loyalty.reconcile(results.getInt(1), results.getInt(3), results.getInt(2) == 1, asOf);
+                }
+            }
+            loyaltySeen = latest;
+        } catch (SQLException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Obtain the ID of the latest transaction, read before the purchases counted with it.
+     *
+     * @return The ID, or 0 if there are no transactions.
+     */
+    private static long latestTransaction(@NotNull PooledConnection c) throws SQLException {
+        try (ResultSet results = c.prepare("SELECT MAX(id) FROM transaction").executeQuery()) {
+            return results.next() ? results.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Rebuild the loyalty index from the customer and transaction tables, in one grouped query.
+     * Until this succeeds, eligibility checks query the database instead.
+     */
+    private void loadLoyalty() {
+        loyaltyLoaded = false;
+        loyalty.clear();
+
+        try (PooledConnection c = borrow()) {
+            long latest = latestTransaction(c);
+            try (ResultSet results = c.prepare(CUSTOMER_PURCHASES).executeQuery()) {
+                while (results.next()) {
+                    loyalty.put(results.getInt(1), results.getInt(3), results.getInt(2) == 1);
+                }
+            }
+            loyaltySeen = latest;
+            loyaltyLoaded = true;
+        } catch (SQLException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Apply the stock and reorder levels in the product table to the low stock index, so that stock taken or added by
+     * other processes shows in stock monitoring, replenishment and product lookups.
+     * The scan is read from a replica that has every change made through this manager, if there is one.
+     */
+    private void reconcileStockLevels() {
+        if (!stockLevelsLoaded) {
+            loadStockLevels();
+            return;
+        }
+
+        long asOf = stockLevels.version();
+        try (PooledConnection c = borrowForCatalog();
+             ResultSet results = c.prepare("SELECT id, stock, reorder_level FROM product").executeQuery()) {
+            while (results.next()) {
+                stockLevels.reconcile(results.getInt(1), results.getInt(2), results.getInt(3), asOf);
+            }
+        } catch (SQLException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Rebuild the low stock index from the product table.
+     * Until this succeeds, stock checks query the database instead.
+     */
+    private void loadStockLevels() {
+        stockLevelsLoaded = false;
+        stockLevels.clear();
+
+        try (PooledConnection c = borrow();
+             ResultSet results = c.prepare("SELECT id, stock, reorder_level FROM product").executeQuery()) {
+            while (results.next()) {
+                stockLevels.put(results.getInt(1), results.getInt(2), results.getInt(3));
+            }
+            stockLevelsLoaded = true;
+        } catch (SQLException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Rebuild the in-memory sales figures from the transaction table.
+     * Until this succeeds, reports are produced by querying the database instead.
+     */
+    private void loadSales() {
+        SalesAggregator aggregator = new SalesAggregator();
+        Timestamp start = Timestamp.from(aggregator.windowStart());
+
+        try (PooledConnection c = borrow()) {
+            PreparedStatement stmt = c.prepare("SELECT product, cost, purchased FROM transaction WHERE purchased > ?");
+            stmt.setTimestamp(1, start);
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    aggregator.record(results.getInt(1), results.getBigDecimal(2).movePointRight(2).longValue(), results.getTimestamp(3).toInstant());
+                }
+            }
+
+            stmt = c.prepare("SELECT product, COUNT(id) FROM transaction WHERE purchased <= ? OR purchased IS NULL GROUP BY product");
+            stmt.setTimestamp(1, start);
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    aggregator.recordHistoric(results.getInt(1), results.getLong(2));
+                }
+            }
+            sales = aggregator;
+        } catch (SQLException e) {
+            sales = null;
+            failed(e);
+        }
+    }
+
+    /**
+     * Produce a report of that month's operations.
+     * The figures come from the in-memory sales aggregates, which are kept up to date by every purchase.
+     *
+     * @return A map of purchases, revenue and popular items.
+     */
+    @Override
+    public @NotNull Map<String, Object> generateReport() {
+        SalesAggregator aggregator = sales;
+        if (aggregator == null) return generateReportFromDatabase();
+
+        SalesAggregator.Snapshot snapshot = aggregator.snapshot();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("purchases", (int) snapshot.purchases());
+        stats.put("revenue", snapshot.revenuePence() / 100.0d);
+        stats.put("most-popular", (int) snapshot.mostPopularCount());
+        return stats;
+    }
+
+    /**
+     * Obtain the figures behind the monthly report in a form that can be added to those of other stores.
+     *
+     * @return The sales summary, or null if it cannot be read.
+     */
+    @Override
+    public @Nullable SalesSummary salesSummary() {
+        SalesAggregator aggregator = sales;
+        if (aggregator != null) return aggregator.summary();
+
+        try (PooledConnection c = borrowForPurchases()) {
+            long purchases = 0;
+            long revenuePence = 0;
+            Map<Integer, Long> counts = new HashMap<>();
+
+            PreparedStatement stmt = c.prepare("SELECT COUNT(id), SUM(cost) FROM transaction WHERE purchased > ?");
+            stmt.setTimestamp(1, Timestamp.from(ZonedDateTime.now().minusMonths(1).toInstant()));
+            try (ResultSet results = stmt.executeQuery()) {
+                if (results.next()) {
+                    purchases = results.getLong(1);
+                    BigDecimal revenue = results.getBigDecimal(2);
+                    if (revenue != null) revenuePence = revenue.movePointRight(2).longValue();
+                }
+            }
+
+            try (ResultSet results = c.prepare("SELECT product, COUNT(id) FROM transaction GROUP BY product").executeQuery()) {
+                while (results.next()) {
+                    counts.put(results.getInt(1), results.getLong(2));
+                }
+            }
+            return new SalesSummary(purchases, revenuePence, counts);
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return null;
+    }
+
+    /**
+     * Produce a report of that month's operations by aggregating the transaction table.
+     *
+     * @return A map of purchases, revenue and popular items.
+     */
+    @NotNull Map<String, Object> generateReportFromDatabase() {
+        Map<String, Object> stats = new HashMap<>(Collections.emptyMap());
+
+        int purchases = 0;
+        double revenue = 0;
+        int popularItem = 0;
+
+        try (PooledConnection c = borrowForPurchases()) {
+            try (ResultSet results = c.prepare("SELECT COUNT(id) FROM transaction WHERE purchased > NOW() - INTERVAL '1' MONTH").executeQuery()) {
+                if (results.next()) {
+                    purchases = results.getInt(1);
+                }
+            }
+
+            try (ResultSet results = c.prepare("SELECT SUM(cost) FROM transaction WHERE purchased > NOW() - INTERVAL '1' MONTH").executeQuery()) {
+                if (results.next()) {
+                    revenue = results.getDouble(1);
+                }
+            }
+
+            try (ResultSet results = c.prepare("SELECT MAX(product_count) FROM (SELECT product, COUNT(product) AS product_count FROM transaction GROUP BY product) AS alias").executeQuery()) {
+                if (results.next()) {
+                    popularItem = results.getInt(1);
+                }
+            }
+
+            stats.put("purchases", purchases);
+            stats.put("revenue", revenue);
+            stats.put("most-popular", popularItem);
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return stats;
+    }
+
+    /**
+     * Export every transaction made in a period, with its product and customer, to a compressed columnar file that
+     * {@link TransactionExport.Reader} can query without the database.
+     * The transactions are streamed from a forward-only cursor in time order and written a group at a time, so the
+     * export takes the same memory however long the period is.
+     *
+     * @param from The start of the period, or null for the first transaction.
+     * @param to   The end of the period, which is not included, or null for the last transaction.
+     * @param file The file to write, which is replaced if it exists.
+     * @return The number of transactions exported and the size of the file, or null if the export failed, in which
+     * case the file is removed.
+     */
+    @Override
+    public @Nullable TransactionExport.Result exportTransactions(@Nullable Instant from, @Nullable Instant to, @NotNull String file) {
+        String where = from == null && to == null ? "" : from == null ? " WHERE t.purchased < ?"
+                : to == null ? " WHERE t.purchased >= ?" : " WHERE t.purchased >= ? AND t.purchased < ?";
+        Path path = Path.of(file);
+
+        try (PooledConnection c = borrowForPurchases();
+             TransactionExport.Writer writer = new TransactionExport.Writer(path, exportSettings)) {
+            PreparedStatement stmt = c.prepare(EXPORT_TRANSACTIONS + where + " ORDER BY t.purchased, t.id");
+            int index = 1;
+            if (from != null) stmt.setTimestamp(index++, Timestamp.from(from));
+            if (to != null) stmt.setTimestamp(index, Timestamp.from(to));
+
+            // MySQL Connector/J only streams a result row by row, rather than reading it all into memory, when asked
+            // for a fetch size of Integer.MIN_VALUE, which other drivers reject.
+            boolean mysql = c.connection().getMetaData().getDriverName().contains("MySQL");
+            stmt.setFetchSize(mysql ? Integer.MIN_VALUE : HISTORY_PAGE_SIZE);
+
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    writer.add(results.getInt(1), results.getTimestamp(2).getTime(), results.getBigDecimal(3).movePointRight(2).longValueExact(),
+                            results.getInt(4), results.getInt(5), results.getString(6), results.getInt(7), results.getString(8), results.getBoolean(9));
+                }
+            }
+            return writer.finish();
+        } catch (IOException | SQLException | ArithmeticException e) {
+            failed(e);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+                // The failure has been reported already.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A function used to print the last N purchases from the database.
+     * The purchases are read a page at a time, so only one page is held in memory however large N is.
+     *
+     * @param n The number of purchases to see.
+     */
+    @Override
+    public void printLastNPurchases(int n) {
+        if (!forEachPurchase(n, System.out::print)) {
+            System.out.println("The rest of the purchase history could not be read.");
+        }
+    }
+
+    /**
+     * Obtain a page of the purchase history, newest first.
+     * Pages are found by seeking to the last purchase of the previous page on the {@code (purchased, id)} index,
+     * so every page costs the same however far back it is.
+     *
+     * @param before The last purchase of the previous page, or null for the first page.
+     * @param limit  The most purchases to return.
+     * @return The purchases made before the given one, newest first, or null if the history could not be read.
+     */
+    @Override
+    public @Nullable List<Purchase> purchasesBefore(@Nullable Purchase before, int limit) {
+        List<Purchase> page = new ArrayList<>(Math.min(Math.max(limit, 0), HISTORY_PAGE_SIZE));
+        if (limit <= 0) return page;
+
+        try (PooledConnection c = borrowForPurchases()) {
+            PreparedStatement stmt;
+            if (before == null) {
+                stmt = c.prepare(PURCHASE_HISTORY + " ORDER BY t.purchased DESC, t.id DESC LIMIT ?");
+                stmt.setInt(1, limit);
+            } else {
+                Timestamp purchased = Timestamp.from(before.getPurchased());
+                stmt = c.prepare(PURCHASE_HISTORY + " WHERE t.purchased < ? OR (t.purchased = ? AND t.id < ?) ORDER BY t.purchased DESC, t.id DESC LIMIT ?");
+                stmt.setTimestamp(1, purchased);
+                stmt.setTimestamp(2, purchased);
+                stmt.setInt(3, before.getTransactionId());
+                stmt.setInt(4, limit);
+            }
+            stmt.setFetchSize(Math.min(limit, HISTORY_PAGE_SIZE));
+
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    page.add(new Purchase(results.getInt(1), results.getString(2), results.getString(3),
+                            results.getBigDecimal(4), results.getTimestamp(5).toInstant()));
+                }
+            }
+            return page;
+        } catch (SQLException e) {
+            failed(e);
+        }
+        return null;
+    }
+
+    /**
+     * Pass the last N purchases, newest first, to an action.
+     * The purchases are read a page at a time, and no connection is held while the action runs.
+     *
+     * @param limit  The number of purchases.
+     * @param action Receives each purchase.
+     * @return True if every purchase asked for, or the whole history if it is shorter, was passed to the action;
+     * false if a page could not be read, in which case the action has received only the purchases before it.
+     */
+    @Override
+    public boolean forEachPurchase(int limit, @NotNull Consumer<Purchase> action) {
+        Purchase last = null;
+        int remaining = limit;
+
+        while (remaining > 0) {
+            List<Purchase> page = purchasesBefore(last, Math.min(remaining, HISTORY_PAGE_SIZE));
+            if (page == null) return false;
+            page.forEach(action);
+            if (page.size() < Math.min(remaining, HISTORY_PAGE_SIZE)) return true;
+
+            last = page.get(page.size() - 1);
+            remaining -= page.size();
         }
+        return true;
     }
 }
\ No newline at end of file
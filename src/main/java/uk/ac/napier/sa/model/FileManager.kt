@@ -1,12 +1,11 @@
 package uk.ac.napier.sa.model
 
 import kotlin.Throws
-import java.util.concurrent.ExecutionException
-import java.lang.InterruptedException
 import java.nio.file.Path
-import java.util.concurrent.CompletableFuture
 import java.nio.file.Files
 import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.io.BufferedReader
 import java.io.IOException
 import java.util.ArrayList
 import kotlin.jvm.Volatile
@@ -14,25 +13,31 @@ import kotlin.jvm.Synchronized
 
 internal class FileManager private constructor() : RemoteFileManager {
     /**
-     * Asynchronously read in a specified file and have it returned as a list of strings.
+     * Read in a specified file and have it returned as a list of strings.
+     * The file is read on the calling thread; callers that must not block should use [AsyncDatabaseManager] or [open].
      *
      * @param p The path of the file
      * @return The file, expressed as a list of strings.
-     * @throws ExecutionException   If the result retrieved from a task is aborted by a thrown exception.
-     * @throws InterruptedException When the thread is occupied and interrupted either before or during a certain activity.
      */
-    @Throws(ExecutionException::class, InterruptedException::class)
     override fun read(p: Path?): List<String?>? {
-        val future = CompletableFuture.supplyAsync {
-            var list: List<String?>? = null
-            try {
-                list = Files.readAllLines(p, Charset.defaultCharset())
-            } catch (e: IOException) {
-                e.printStackTrace()
-            }
-            list
+        return try {
+            Files.readAllLines(p, Charset.defaultCharset())
+        } catch (e: IOException) {
+            e.printStackTrace()
+            ArrayList()
         }
-        return if (future.join() != null) future.get() else ArrayList()
+    }
+
+    /**
+     * Open a specified file for streaming, so that it can be processed without being loaded into memory in full.
+     *
+     * @param p The path of the file
+     * @return A buffered reader over the file, which the caller must close.
+     * @throws IOException If the file cannot be opened.
+     */
+    @Throws(IOException::class)
+    override fun open(p: Path?): BufferedReader? {
+        return Files.newBufferedReader(p, StandardCharsets.UTF_8)
     }
 
     companion object {
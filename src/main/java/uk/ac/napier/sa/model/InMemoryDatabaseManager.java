@@ -0,0 +1,1009 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
+import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Purchase;
+import uk.ac.napier.sa.controller.adt.Receipt;
+import uk.ac.napier.sa.metrics.Instrumentation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A database manager that keeps the whole store in memory, for edge stores and test rigs that have no MySQL server.
+ * Each table is held column by column in primitive arrays indexed by ID, so every operation is a handful of array
+ * accesses rather than a network round trip, and the results are the same as those of {@link DatabaseManager}.
+ * <p>
+ * Data is loaded from the same {@code INSERT} scripts as the MySQL database, through {@link #init(String)} or the seed
+ * migrations of {@link #migrate(String, String)}; other statements in the scripts are skipped, as the tables are fixed.
+ * Single product lookups read optimistically without taking a lock, scans share a read lock, and changes take the
+ * write lock only for the few array writes they make.
+ */
+public final class InMemoryDatabaseManager implements RemoteDatabaseManager {
+
+    private static final int HISTORY_PAGE_SIZE = 500;
+
+    private static final Pattern INSERT = Pattern.compile("INSERT\\s+INTO\\s+`?(\\w+)`?\\s*\\(([^)]*)\\)\\s*VALUES\\s*(.+)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private final StampedLock lock = new StampedLock();
+    private final SalesAggregator sales = new SalesAggregator();
+    private final LowStockIndex stockLevels = new LowStockIndex();
+    private volatile ReplenishmentEngine replenishment = new ReplenishmentEngine(ReplenishmentEngine.Settings.defaults(), StockSupplier.local());
+    private volatile PricingEngine pricing = new PricingEngine(PricingEngine.Settings.defaults());
+    private final Set<String> appliedMigrations = new HashSet<>();
+
+    // Customers, indexed by ID; a null name marks an ID that is not in use.
+    private String[] customerNames = new String[64];
+    private boolean[] loyal = new boolean[64];
+    private int[] customerPurchases = new int[64];
+    private int lastCustomer;
+
+    // Products, indexed by ID, with the IDs of each product's sales in the order they were added.
+    private String[] productNames = new String[64];
+    private int[] stock = new int[64];
+    private long[] pricePence = new long[64];
+    private int[][] productSales = new int[64][];
+    private int lastProduct;
+
+    // Sales, indexed by ID; a product of 0 marks an ID that is not in use.
+    private int[] saleProducts = new int[64];
+    private int[] saleTypes = new int[64];
+    private int lastSale;
+
+    // Transactions, indexed by ID; a sale of 0 means no sale applied.
+    private int[] transactionProducts = new int[256];
+    private int[] transactionCustomers = new int[256];
+    private int[] transactionSales = new int[256];
+    private long[] transactionCosts = new long[256];
+    private long[] transactionTimes = new long[256];
+    private int lastTransaction;
+
+    // Transaction IDs in order of (purchased, id), oldest first, for paging through the purchase history.
+    private int[] history = new int[256];
+    private int historySize;
+
+    private final List<ReplenishmentEngine.Order> purchaseOrders = new ArrayList<>();
+
+    /**
+     * There is no server to connect to, so this always succeeds.
+     *
+     * @return True.
+     */
+    @Override
+    public boolean connect(@NotNull String host, int port, @NotNull String database, boolean useSSL, @NotNull String user, @NotNull String pass) {
+        return true;
+    }
+
+    /**
+     * There is no server to disconnect from; the data is kept.
+     *
+     * @return True.
+     */
+    @Override
+    public boolean disconnect() {
+        return true;
+    }
+
+    /**
+     * Load the rows inserted by a script.
+     *
+     * @param p The path of the script.
+     * @return True if every row was loaded, false otherwise.
+     */
+    @Override
+    public boolean init(String p) {
+        try (BufferedReader script = FileManager.getInstance().open(Path.of(p))) {
+            if (script == null) return false;
+            load(script);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            Instrumentation.failed();
+        }
+        return false;
+    }
+
+    /**
+     * Load the seed data migrations that have not been loaded before.
+     * Schema migrations are recorded but not run, as the tables of this store are fixed.
+     *
+     * @param directory The directory holding the migration scripts.
+     * @param profile   The profile being run, which decides whether seed data is loaded.
+     * @return True if the store is up to date, false otherwise.
+     */
+    @Override
+    public boolean migrate(@NotNull String directory, @NotNull String profile) {
+        try {
+            for (SchemaMigrator.Migration m : new SchemaMigrator(Path.of(directory), profile).available()) {
+                String key = m.kind() + ':' + m.version();
+                synchronized (appliedMigrations) {
+                    if (appliedMigrations.contains(key)) continue;
+                    if (m.kind().equals(SchemaMigrator.Migration.SEED)) {
+                        try (BufferedReader script = Files.newBufferedReader(m.script())) {
+                            load(script);
+                        }
+                    }
+                    appliedMigrations.add(key);
+                }
+                System.out.printf("Applied %s migration V%d (%s)%n", m.kind(), m.version(), m.description());
+            }
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            Instrumentation.failed();
+        }
+        return false;
+    }
+
+    /**
+     * Load CSV files of customers, products, sales and transactions, keeping the IDs in the files.
+     * The files are read in order on one thread, as every row is written under the one write lock, and transactions
+     * kept in the order of the file stay in time order without being moved.
+     *
+     * @param directory The directory holding {@code customer.csv}, {@code product.csv}, {@code sale.csv} and
+     *                  {@code transaction.csv}, any of which may be missing.
+     * @return The outcome for each table imported, or null if a file could not be read or a row refers to one that
+     * does not exist, in which case the rows loaded before it are kept.
+     */
+    @Override
+    public @Nullable List<CatalogImporter.Result> importCatalog(@NotNull String directory) {
+        CatalogImporter.Settings defaults = CatalogImporter.Settings.defaults();
+        CatalogImporter importer = new CatalogImporter(new CatalogImporter.Settings(1, defaults.chunkBytes(), defaults.rowsPerInsert(), defaults.rowsPerCommit()));
+        try {
+            return importer.load(Path.of(directory), this::insert, null);
+        } catch (IOException | SQLException | IllegalArgumentException e) {
+            e.printStackTrace();
+            Instrumentation.failed();
+        }
+        return null;
+    }
+
+    /**
+     * Add a customer.
+     *
+     * @param name  The name of the customer.
+     * @param loyal Whether the customer is on the loyalty card scheme.
+     * @return The ID given to the customer.
+     */
+    public int addCustomer(@NotNull String name, boolean loyal) {
+        long stamp = lock.writeLock();
+        try {
+            return insertCustomer(lastCustomer + 1, name, loyal);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Add a product.
+     *
+     * @param name  The name of the product.
+     * @param stock The quantity in stock.
+     * @param price The price per unit.
+     * @return The ID given to the product.
+     */
+    public int addProduct(@NotNull String name, int stock, @NotNull BigDecimal price) {
+        long stamp = lock.writeLock();
+        try {
+            return insertProduct(lastProduct + 1, name, stock, pence(price), LowStockIndex.DEFAULT_REORDER_LEVEL);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public @Nullable Product getProduct(int id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Product product = readProduct(id);
+                if (lock.validate(stamp)) return product;
+            } catch (RuntimeException e) {
+                // The arrays were replaced part way through the read; it is retried under the lock below.
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return readProduct(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public @NotNull List<Product> getProducts(@NotNull Collection<Integer> ids) {
+        List<Product> found = new ArrayList<>(ids.size());
+        long stamp = lock.readLock();
+        try {
+            for (Integer id : ids) {
+                Product product = readProduct(id);
+                if (product != null) found.add(product);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return found;
+    }
+
+    @Override
+    public @NotNull List<Product> getAllProducts() {
+        long stamp = lock.readLock();
+        try {
+            List<Product> all = new ArrayList<>(lastProduct);
+            for (int id = 1; id <= lastProduct; id++) {
+                Product product = readProduct(id);
+                if (product != null) all.add(product);
+            }
+            return all;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Build a product from its columns. The caller must hold a lock, or validate an optimistic read afterwards.
+     */
+    private @Nullable Product readProduct(int id) {
+        String[] names = productNames;
+        if (id <= 0 || id >= names.length || names[id] == null) return null;
+
+        int[] saleIds = productSales[id];
+        int types = 0;
+        if (saleIds != null) {
+            for (int sale : saleIds) types |= Product.saleMask(saleTypes[sale]);
+        }
+        return new Product(id, names[id], stock[id], pricePence[id], types);
+    }
+
+    @Override
+    public @Nullable String retrieveProductName(int id) {
+        long stamp = lock.tryOptimisticRead();
+        String[] names = productNames;
+        String name = id > 0 && id < names.length ? names[id] : null;
+        if (lock.validate(stamp)) return name;
+
+        stamp = lock.readLock();
+        try {
+            return id > 0 && id < productNames.length ? productNames[id] : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * There is no SQL engine behind this store.
+     *
+     * @param sql Ignored.
+     * @return Null.
+     */
+    @Override
+    public @Nullable ResultSet query(@NotNull String sql) {
+        return null;
+    }
+
+    @Override
+    public boolean changePrice(int id, double price) {
+        return ManagerAuthorisation.authorise() && updatePrice(id, price);
+    }
+
+    @Override
+    public boolean changePrice(int id, double price, @NotNull String username, @NotNull String password) {
+        return ManagerAuthorisation.authorise(username, password) && updatePrice(id, price);
+    }
+
+    @Override
+    public @Nullable PriceList.Update changePrices(@NotNull String file, @NotNull String username, @NotNull String password) {
+        if (!ManagerAuthorisation.authorise(username, password)) return null;
+
+        long started = System.nanoTime();
+        PriceList prices;
+        try {
+            prices = PriceList.read(Path.of(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            Instrumentation.failed();
+            return null;
+        }
+        Duration reading = Duration.ofNanos(System.nanoTime() - started);
+        if (!prices.errors().isEmpty()) return new PriceList.Update(prices.size(), 0, prices.errors(), reading, Duration.ZERO);
+
+        started = System.nanoTime();
+        int changed = 0;
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < prices.size(); i++) {
+                int id = prices.id(i);
+                if (productExists(id) && pricePence[id] != prices.pricePence(i)) {
+                    pricePence[id] = prices.pricePence(i);
+                    changed++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return new PriceList.Update(prices.size(), changed, prices.errors(), reading, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private boolean updatePrice(int id, double price) {
+        long stamp = lock.writeLock();
+        try {
+            if (!productExists(id)) return false;
+            pricePence[id] = pence(BigDecimal.valueOf(price));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        System.out.format("Product %d has had price updated to %f", id, price);
+        return true;
+    }
+
+    @Override
+    public boolean sell(int id, int saleType) {
+        long stamp = lock.writeLock();
+        try {
+            if (!productExists(id)) return false;
+            insertSale(lastSale + 1, id, saleType);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public @NotNull List<Integer> stockMonitor() {
+        return stockLevels.lowStock();
+    }
+
+    @Override
+    public boolean noStock() {
+        ReplenishmentEngine engine = replenishment;
+        List<ReplenishmentEngine.Order> orders = new ArrayList<>();
+
+        long stamp = lock.writeLock();
+        try {
+            List<Integer> empty = stockLevels.outOfStock();
+            if (empty.isEmpty()) return false;
+
+            long[] recentSales = recentSales(empty, engine.settings().salesWindow().toMillis());
+            for (int id : empty) {
+                int reorderLevel = stockLevels.reorderLevel(id);
+                if (stock[id] <= reorderLevel) {
+                    orders.add(new ReplenishmentEngine.Order(id, engine.quantity(stock[id], reorderLevel, recentSales[id])));
+                }
+            }
+            if (orders.isEmpty()) return false;
+
+            engine.supplier().order(Collections.unmodifiableList(orders));
+            for (ReplenishmentEngine.Order order : orders) stock[order.productId()] += order.quantity();
+            purchaseOrders.addAll(orders);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        for (ReplenishmentEngine.Order order : orders) stockLevels.adjust(order.productId(), order.quantity());
+        return true;
+    }
+
+    /**
+     * Count the units of some products sold over a window ending now. The caller must hold a lock.
+     *
+     * @return The number sold, indexed by product ID.
+     */
+    private long[] recentSales(@NotNull List<Integer> productIds, long windowMillis) {
+        BitSet wanted = new BitSet();
+        productIds.forEach(wanted::set);
+
+        long since = System.currentTimeMillis() - windowMillis;
+        long[] counts = new long[lastProduct + 1];
+        for (int id = 1; id <= lastTransaction; id++) {
+            int product = transactionProducts[id];
+            if (transactionTimes[id] > since && wanted.get(product)) counts[product]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Obtain every purchase order placed by {@link #noStock()}.
+     *
+     * @return A copy of the orders, oldest first.
+     */
+    public @NotNull List<ReplenishmentEngine.Order> purchaseOrders() {
+        long stamp = lock.readLock();
+        try {
+            return new ArrayList<>(purchaseOrders);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Change how reorders are sized and who they are placed with.
+     *
+     * @param engine The replenishment engine used by {@link #noStock()}.
+     */
+    public void setReplenishment(@NotNull ReplenishmentEngine engine) {
+        replenishment = engine;
+    }
+
+    /**
+     * Change the rates purchases are priced at.
+     *
+     * @param engine The pricing engine used by {@link #completePurchase(int, int)} and {@link #purchaseBasket(int, Map)}.
+     */
+    public void setPricing(@NotNull PricingEngine engine) {
+        pricing = engine;
+    }
+
+    @Override
+    public boolean setReorderLevel(int id, int reorderLevel) {
+        long stamp = lock.readLock();
+        try {
+            if (!productExists(id)) return false;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stockLevels.setReorderLevel(id, reorderLevel);
+        return true;
+    }
+
+    /**
+     * Be told whenever a product's stock crosses its reorder level.
+     *
+     * @param listener The listener to notify.
+     */
+    public void addStockListener(@NotNull StockListener listener) {
+        stockLevels.addListener(listener);
+    }
+
+    /**
+     * Stop being told about reorder level crossings.
+     *
+     * @param listener The listener to stop notifying.
+     */
+    public void removeStockListener(@NotNull StockListener listener) {
+        stockLevels.removeListener(listener);
+    }
+
+    @Override
+    public boolean purchase(int customerId, int productId) {
+        return completePurchase(customerId, productId) != null;
+    }
+
+    @Override
+    public @Nullable Receipt completePurchase(int customerId, int productId) {
+        BigDecimal price;
+        BigDecimal discount;
+        BigDecimal cost;
+        int transactionId;
+
+        long stamp = lock.writeLock();
+        try {
+            if (!productExists(productId) || !customerExists(customerId) || stock[productId] <= 0) return null;
+
+            PricingEngine engine = pricing;
+            price = BigDecimal.valueOf(pricePence[productId], 2);
+            cost = BigDecimal.valueOf(engine.cost(pricePence[productId], loyal[customerId]), 2);
+            discount = BigDecimal.valueOf(engine.loyaltyDiscount(pricePence[productId], loyal[customerId]), 2);
+
+            int[] saleIds = productSales[productId];
+            int sale = saleIds == null ? 0 : saleIds[saleIds.length - 1];
+
+            stock[productId]--;
+            transactionId = insertTransaction(lastTransaction + 1, productId, customerId, sale, pence(cost), System.currentTimeMillis());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        stockLevels.adjust(productId, -1);
+        return new Receipt(transactionId, customerId, productId, price, discount, cost);
+    }
+
+    @Override
+    public @Nullable BasketReceipt purchaseBasket(int customerId, @NotNull Map<Integer, Integer> items) {
+        if (items.isEmpty()) return null;
+        for (Map.Entry<Integer, Integer> item : items.entrySet()) {
+            if (item.getValue() <= 0) throw new IllegalArgumentException("Quantity of product " + item.getKey() + " must be positive");
+        }
+
+        PricingEngine.Basket basket = new PricingEngine.Basket(items.size());
+        PricingEngine.Quote quote = new PricingEngine.Quote();
+        boolean isLoyal;
+
+        long stamp = lock.writeLock();
+        try {
+            if (!customerExists(customerId)) return null;
+            for (Map.Entry<Integer, Integer> item : new TreeMap<>(items).entrySet()) {
+                int id = item.getKey();
+                if (!productExists(id) || stock[id] < item.getValue()) return null;
+                int mask = 0;
+                int[] saleIds = productSales[id];
+                if (saleIds != null) {
+                    for (int sale : saleIds) mask |= Product.saleMask(saleTypes[sale]);
+                }
+                basket.add(id, item.getValue(), pricePence[id], mask);
+            }
+            isLoyal = loyal[customerId];
+            pricing.price(basket, isLoyal, quote);
+
+            long purchased = System.currentTimeMillis();
+            for (int i = 0; i < basket.size(); i++) {
+                int id = basket.productId(i);
+                int[] saleIds = productSales[id];
+                int sale = saleIds == null ? 0 : saleIds[saleIds.length - 1];
+
+                stock[id] -= basket.quantity(i);
+                for (int unit = 0; unit < basket.quantity(i); unit++) {
+                    insertTransaction(lastTransaction + 1, id, customerId, sale, quote.unitCost(i, unit), purchased);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        List<BasketReceipt.Line> lines = new ArrayList<>(basket.size());
+        for (int i = 0; i < basket.size(); i++) {
+            stockLevels.adjust(basket.productId(i), -basket.quantity(i));
+            lines.add(new BasketReceipt.Line(basket.productId(i), basket.quantity(i), BigDecimal.valueOf(basket.unitPence(i), 2),
+                    BigDecimal.valueOf(quote.promotion(i), 2), BigDecimal.valueOf(quote.discount(i), 2), BigDecimal.valueOf(quote.cost(i), 2)));
+        }
+        return new BasketReceipt(customerId, lines, BigDecimal.valueOf(quote.delivery(), 2), BigDecimal.valueOf(quote.total(), 2));
+    }
+
+    @Override
+    public boolean checkLoyaltyCardEligibility(int id) {
+        long stamp = lock.readLock();
+        try {
+            return customerExists(id) && customerPurchases[id] >= LoyaltyIndex.QUALIFYING_PURCHASES && !loyal[id];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean grantLoyalty(int id) {
+        long stamp = lock.writeLock();
+        try {
+            if (!customerExists(id)) return false;
+            loyal[id] = true;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public @NotNull List<Integer> grantAllEligibleLoyalty() {
+        List<Integer> granted = new ArrayList<>();
+        long stamp = lock.writeLock();
+        try {
+            for (int id = 1; id <= lastCustomer; id++) {
+                if (customerNames[id] != null && customerPurchases[id] >= LoyaltyIndex.QUALIFYING_PURCHASES && !loyal[id]) {
+                    loyal[id] = true;
+                    granted.add(id);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return granted;
+    }
+
+    @Override
+    public @NotNull Map<String, Object> generateReport() {
+        SalesAggregator.Snapshot snapshot = sales.snapshot();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("purchases", (int) snapshot.purchases());
+        stats.put("revenue", snapshot.revenuePence() / 100.0d);
+        stats.put("most-popular", (int) snapshot.mostPopularCount());
+        return stats;
+    }
+
+    @Override
+    public @NotNull SalesSummary salesSummary() {
+        return sales.summary();
+    }
+
+    /**
+     * Export every transaction made in a period to a file that {@link TransactionExport.Reader} can query.
+     * The history is copied a page at a time under the read lock, so changes can be made between pages.
+     *
+     * @param from The start of the period, or null for the first transaction.
+     * @param to   The end of the period, which is not included, or null for the last transaction.
+     * @param file The file to write, which is replaced if it exists.
+     * @return The number of transactions exported and the size of the file, or null if it could not be written.
+     */
+    @Override
+    public @Nullable TransactionExport.Result exportTransactions(@Nullable Instant from, @Nullable Instant to, @NotNull String file) {
+        long end = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        long lastPurchased = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        int lastId = Integer.MIN_VALUE;
+
+        try (TransactionExport.Writer writer = new TransactionExport.Writer(Path.of(file), TransactionExport.Settings.defaults())) {
+            boolean more = true;
+            while (more) {
+                long stamp = lock.readLock();
+                try {
+                    // The first transaction after the last one exported, or at or after the start of the period.
+                    int i = seek(lastPurchased, lastId) + 1;
+                    if (i < historySize && history[i] == lastId && transactionTimes[lastId] == lastPurchased) i++;
+                    int stop = Math.min(historySize, i + HISTORY_PAGE_SIZE);
+                    for (; i < stop && transactionTimes[history[i]] < end; i++) {
+                        int id = history[i];
+                        int customer = transactionCustomers[id];
+                        writer.add(id, transactionTimes[id], transactionCosts[id], transactionSales[id], transactionProducts[id],
+                                productNames[transactionProducts[id]], customer, customerNames[customer], loyal[customer]);
+                        lastPurchased = transactionTimes[id];
+                        lastId = id;
+                    }
+                    more = i == stop && stop < historySize;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            e.printStackTrace();
+            Instrumentation.failed();
+        }
+        return null;
+    }
+
+    @Override
+    public void printLastNPurchases(int n) {
+        forEachPurchase(n, System.out::print);
+    }
+
+    @Override
+    public @NotNull List<Purchase> purchasesBefore(@Nullable Purchase before, int limit) {
+        List<Purchase> page = new ArrayList<>(Math.min(Math.max(limit, 0), HISTORY_PAGE_SIZE));
+        if (limit <= 0) return page;
+
+        long stamp = lock.readLock();
+        try {
+            int from = before == null ? historySize - 1
+                    : seek(before.getPurchased().toEpochMilli(), before.getTransactionId());
+            for (int i = from; i >= 0 && page.size() < limit; i--) {
+                int id = history[i];
+                page.add(new Purchase(id, productNames[transactionProducts[id]], customerNames[transactionCustomers[id]],
+                        BigDecimal.valueOf(transactionCosts[id], 2), Instant.ofEpochMilli(transactionTimes[id])));
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return page;
+    }
+
+    @Override
+    public boolean forEachPurchase(int limit, @NotNull Consumer<Purchase> action) {
+        Purchase last = null;
+        int remaining = limit;
+
+        while (remaining > 0) {
+            List<Purchase> page = purchasesBefore(last, Math.min(remaining, HISTORY_PAGE_SIZE));
+            page.forEach(action);
+            if (page.size() < Math.min(remaining, HISTORY_PAGE_SIZE)) return true;
+
+            last = page.get(page.size() - 1);
+            remaining -= page.size();
+        }
+        return true;
+    }
+
+    /**
+     * Find the position in the history of the newest transaction made before a given one. The caller must hold a lock.
+     *
+     * @return The position, or -1 if there is none.
+     */
+    private int seek(long purchased, int id) {
+        int low = 0;
+        int high = historySize - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (historyCompare(history[mid], purchased, id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private int historyCompare(int transaction, long purchased, int id) {
+        int c = Long.compare(transactionTimes[transaction], purchased);
+        return c != 0 ? c : Integer.compare(transaction, id);
+    }
+
+    private boolean productExists(int id) {
+        return id > 0 && id <= lastProduct && productNames[id] != null;
+    }
+
+    private boolean customerExists(int id) {
+        return id > 0 && id <= lastCustomer && customerNames[id] != null;
+    }
+
+    private int insertCustomer(int id, @NotNull String name, boolean isLoyal) {
+        if (id >= customerNames.length) {
+            int size = capacity(id);
+            customerNames = Arrays.copyOf(customerNames, size);
+            loyal = Arrays.copyOf(loyal, size);
+            customerPurchases = Arrays.copyOf(customerPurchases, size);
+        }
+        if (customerNames[id] != null) throw new IllegalArgumentException("Duplicate customer " + id);
+
+        customerNames[id] = name;
+        loyal[id] = isLoyal;
+        lastCustomer = Math.max(lastCustomer, id);
+        return id;
+    }
+
+    private int insertProduct(int id, @NotNull String name, int quantity, long price, int reorderLevel) {
+        if (id >= productNames.length) {
+            int size = capacity(id);
+            productNames = Arrays.copyOf(productNames, size);
+            stock = Arrays.copyOf(stock, size);
+            pricePence = Arrays.copyOf(pricePence, size);
+            productSales = Arrays.copyOf(productSales, size);
+        }
+        if (productNames[id] != null) throw new IllegalArgumentException("Duplicate product " + id);
+
+        productNames[id] = name;
+        stock[id] = quantity;
+        pricePence[id] = price;
+        lastProduct = Math.max(lastProduct, id);
+        stockLevels.put(id, quantity, reorderLevel);
+        return id;
+    }
+
+    private void insertSale(int id, int product, int type) {
+        if (!productExists(product)) throw new IllegalArgumentException("Sale " + id + " refers to unknown product " + product);
+        if (id >= saleProducts.length) {
+            int size = capacity(id);
+            saleProducts = Arrays.copyOf(saleProducts, size);
+            saleTypes = Arrays.copyOf(saleTypes, size);
+        }
+        if (saleProducts[id] != 0) throw new IllegalArgumentException("Duplicate sale " + id);
+
+        saleProducts[id] = product;
+        saleTypes[id] = type;
+        lastSale = Math.max(lastSale, id);
+
+        // Sales are kept in ID order, so the last one is the latest, as the purchase query expects.
+        int[] saleIds = productSales[product];
+        if (saleIds == null) {
+            productSales[product] = new int[]{id};
+        } else {
+            int[] grown = Arrays.copyOf(saleIds, saleIds.length + 1);
+            int i = grown.length - 1;
+            while (i > 0 && grown[i - 1] > id) grown[i] = grown[--i];
+            grown[i] = id;
+            productSales[product] = grown;
+        }
+    }
+
+    private int insertTransaction(int id, int product, int customer, int sale, long cost, long purchased) {
+        appendTransaction(id, product, customer, sale, cost, purchased);
+
+        // Purchases mostly arrive in time order, so this rarely has to move more than the last entry.
+        int i = historySize - 1;
+        while (i > 0 && historyCompare(history[i - 1], purchased, id) > 0) history[i] = history[--i];
+        history[i] = id;
+        return id;
+    }
+
+    /**
+     * Add a transaction, leaving it at the end of the purchase history, out of order until {@link #sortHistory(int)}.
+     */
+    private void appendTransaction(int id, int product, int customer, int sale, long cost, long purchased) {
+        if (!productExists(product)) throw new IllegalArgumentException("Transaction " + id + " refers to unknown product " + product);
+        if (!customerExists(customer)) throw new IllegalArgumentException("Transaction " + id + " refers to unknown customer " + customer);
+        if (sale != 0 && (sale > lastSale || saleProducts[sale] == 0)) {
+            throw new IllegalArgumentException("Transaction " + id + " refers to unknown sale " + sale);
+        }
+        if (id >= transactionProducts.length) {
+            int size = capacity(id);
+            transactionProducts = Arrays.copyOf(transactionProducts, size);
+            transactionCustomers = Arrays.copyOf(transactionCustomers, size);
+            transactionSales = Arrays.copyOf(transactionSales, size);
+            transactionCosts = Arrays.copyOf(transactionCosts, size);
+            transactionTimes = Arrays.copyOf(transactionTimes, size);
+        }
+        if (transactionProducts[id] != 0) throw new IllegalArgumentException("Duplicate transaction " + id);
+
+        transactionProducts[id] = product;
+        transactionCustomers[id] = customer;
+        transactionSales[id] = sale;
+        transactionCosts[id] = cost;
+        transactionTimes[id] = purchased;
+        lastTransaction = Math.max(lastTransaction, id);
+
+        if (historySize == history.length) history = Arrays.copyOf(history, historySize * 2);
+        history[historySize++] = id;
+
+        customerPurchases[customer]++;
+        sales.record(product, cost, Instant.ofEpochMilli(purchased));
+    }
+
+    /**
+     * Put the transactions appended to the purchase history since a position into order, by sorting them and merging
+     * them in from the first transaction they go before, so a batch in time order costs no more than its own size.
+     */
+    private void sortHistory(int from) {
+        if (from >= historySize) return;
+        int[] added = Arrays.stream(history, from, historySize).boxed()
+                .sorted((a, b) -> historyCompare(a, transactionTimes[b], b))
+                .mapToInt(Integer::intValue).toArray();
+
+        int lo = 0;
+        int hi = from;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (historyCompare(history[mid], transactionTimes[added[0]], added[0]) > 0) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        int[] moved = Arrays.copyOfRange(history, lo, from);
+        int i = 0;
+        int j = 0;
+        int k = lo;
+        while (i < moved.length && j < added.length) {
+            history[k++] = historyCompare(moved[i], transactionTimes[added[j]], added[j]) <= 0 ? moved[i++] : added[j++];
+        }
+        while (i < moved.length) history[k++] = moved[i++];
+        while (j < added.length) history[k++] = added[j++];
+    }
+
+    private static int capacity(int id) {
+        return Math.max(id + 1, Integer.highestOneBit(id) << 1);
+    }
+
+    private static long pence(@NotNull BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Load the rows of every {@code INSERT} statement in a script, skipping any other statement.
+     *
+     * @param script The script.
+     * @throws IOException              If the script cannot be read.
+     * @throws IllegalArgumentException If a statement inserts into an unknown table or breaks a key.
+     */
+    private void load(@NotNull Reader script) throws IOException {
+        SqlScriptReader statements = new SqlScriptReader(script);
+        String sql;
+
+        while ((sql = statements.next()) != null) {
+            Matcher m = INSERT.matcher(sql);
+            if (!m.matches()) continue;
+
+            String table = m.group(1).toLowerCase(Locale.ROOT);
+            String[] columns = m.group(2).replace("`", "").split(",");
+            for (int i = 0; i < columns.length; i++) columns[i] = columns[i].trim().toLowerCase(Locale.ROOT);
+
+            long stamp = lock.writeLock();
+            try {
+                for (String[] values : rows(m.group(3))) {
+                    Map<String, String> row = new HashMap<>();
+                    for (int i = 0; i < columns.length; i++) row.put(columns[i], values[i]);
+                    insert(table, row);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private void insert(@NotNull String table, @NotNull Map<String, String> row) {
+        switch (table) {
+            case "customer" -> insertCustomer(id(row, lastCustomer), row.get("name"), "1".equals(row.get("loyal")));
+            case "product" -> {
+                String reorderLevel = row.get("reorder_level");
+                insertProduct(id(row, lastProduct), row.get("name"), Integer.parseInt(row.get("stock")), pence(new BigDecimal(row.get("price"))),
+                        reorderLevel == null ? LowStockIndex.DEFAULT_REORDER_LEVEL : Integer.parseInt(reorderLevel));
+            }
+            case "sale" -> insertSale(id(row, lastSale), Integer.parseInt(row.get("product")), Integer.parseInt(row.get("type")));
+            case "transaction" -> {
+                String sale = row.get("sale");
+                String purchased = row.get("purchased");
+                insertTransaction(id(row, lastTransaction), Integer.parseInt(row.get("product")), Integer.parseInt(row.get("customer")),
+                        sale == null ? 0 : Integer.parseInt(sale), pence(new BigDecimal(row.get("cost"))),
+                        purchased == null ? System.currentTimeMillis() : Timestamp.valueOf(purchased).getTime());
+            }
+            default -> throw new IllegalArgumentException("Unknown table " + table);
+        }
+    }
+
+    private void insert(@NotNull CatalogImporter.Rows rows) {
+        long stamp = lock.writeLock();
+        int from = historySize;
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                switch (rows.table()) {
+                    case CUSTOMER -> insertCustomer((int) rows.value(i, 0), Objects.requireNonNull(rows.text(i)), rows.value(i, 2) == 1);
+                    case PRODUCT -> insertProduct((int) rows.value(i, 0), Objects.requireNonNull(rows.text(i)), (int) rows.value(i, 2),
+                            rows.value(i, 3), (int) rows.value(i, 4));
+                    case SALE -> insertSale((int) rows.value(i, 0), (int) rows.value(i, 1), (int) rows.value(i, 2));
+                    case TRANSACTION -> {
+                        long purchased = rows.value(i, 5);
+                        appendTransaction((int) rows.value(i, 0), (int) rows.value(i, 1), (int) rows.value(i, 2), (int) rows.value(i, 3),
+                                rows.value(i, 4), purchased == CatalogImporter.NO_TIME ? System.currentTimeMillis() : purchased);
+                    }
+                }
+            }
+        } finally {
+            sortHistory(from);
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static int id(@NotNull Map<String, String> row, int last) {
+        String id = row.get("id");
+        return id == null ? last + 1 : Integer.parseInt(id);
+    }
+
+    /**
+     * Split the {@code VALUES} clause of an insert into rows of literal values, with SQL {@code NULL} as null.
+     */
+    private static @NotNull List<String[]> rows(@NotNull String values) {
+        List<String[]> rows = new ArrayList<>();
+        List<String> row = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        int depth = 0;
+
+        for (int i = 0; i < values.length(); i++) {
+            char c = values.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < values.length()) {
+                    value.append(values.charAt(++i));
+                } else if (c == '\'' && i + 1 < values.length() && values.charAt(i + 1) == '\'') {
+                    value.append('\'');
+                    i++;
+                } else if (c == '\'') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '\'') {
+                quoted = true;
+                wasQuoted = true;
+                value.setLength(0);
+            } else if (c == '(') {
+                depth++;
+            } else if ((c == ',' && depth == 1) || c == ')') {
+                String literal = wasQuoted ? value.toString() : value.toString().trim();
+                row.add(!wasQuoted && literal.equalsIgnoreCase("NULL") ? null : literal);
+                value.setLength(0);
+                wasQuoted = false;
+                if (c == ')') {
+                    depth--;
+                    rows.add(row.toArray(new String[0]));
+                    row.clear();
+                }
+            } else if (depth == 1 && !wasQuoted) {
+                value.append(c);
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,266 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the stock of every product against its reorder level as stock changes, so that finding the products that
+ * are low or out of stock is a read of two bit sets rather than a scan of the product table.
+ * Stock and reorder levels are held in arrays indexed by product ID, and {@link StockListener}s are told whenever a
+ * product crosses its reorder level in either direction.
+ * Changes made by other processes are picked up by {@link #reconcile(int, int, int, long)}, which every change made
+ * through the index since the database was read takes precedence over.
+ */
+public final class LowStockIndex {
+
+    /**
+     * The reorder level of a product that has not been given one.
+     */
+    public static final int DEFAULT_REORDER_LEVEL = 5;
+
+    private final List<StockListener> listeners = new CopyOnWriteArrayList<>();
+
+    private int[] stock = new int[64];
+    private int[] reorderLevels = new int[64];
+    private long[] changed = new long[64];
+    private long version;
+    private final BitSet known = new BitSet();
+    private final BitSet low = new BitSet();
+    private final BitSet out = new BitSet();
+
+    /**
+     * Register a listener for reorder level crossings.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(@NotNull StockListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stop notifying a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeListener(@NotNull StockListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Add a product, or replace everything known about it, without notifying listeners.
+     *
+     * @param productId    The ID of the product.
+     * @param stock        The stock held.
+     * @param reorderLevel The stock level at or below which the product is reordered.
+     */
+    public synchronized void put(int productId, int stock, int reorderLevel) {
+        ensureCapacity(productId);
+        known.set(productId);
+        this.stock[productId] = stock;
+        reorderLevels[productId] = reorderLevel;
+        changed[productId] = ++version;
+        low.set(productId, stock <= reorderLevel);
+        out.set(productId, stock == 0);
+    }
+
+    /**
+     * Obtain the number of changes made through the index, to pass to {@link #reconcile(int, int, int, long)}.
+     *
+     * @return The current version, which is taken before the database is read.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Record a product's stock and reorder level as read from the database, notifying listeners if it has crossed its
+     * reorder level. A product not in the index is added. A product changed through the index after {@code asOf} is
+     * left alone, as the read may have started before that change was committed.
+     *
+     * @param productId    The ID of the product.
+     * @param stock        The stock held.
+     * @param reorderLevel The stock level at or below which the product is reordered.
+     * @param asOf         The {@link #version()} taken before the database was read.
+     */
+    public void reconcile(int productId, int stock, int reorderLevel, long asOf) {
+        boolean wasLow;
+        boolean isLow;
+
+        synchronized (this) {
+            boolean isKnown = known.get(productId);
+            if (isKnown && (changed[productId] > asOf
+                            || (this.stock[productId] == stock && reorderLevels[productId] == reorderLevel))) return;
+
+            ensureCapacity(productId);
+            wasLow = isKnown && low.get(productId);
+            isLow = stock <= reorderLevel;
+
+            known.set(productId);
+            this.stock[productId] = stock;
+            reorderLevels[productId] = reorderLevel;
+            low.set(productId, isLow);
+            out.set(productId, stock == 0);
+        }
+        notify(productId, stock, reorderLevel, wasLow, isLow);
+    }
+
+    /**
+     * Record a product's new stock level, notifying listeners if it has crossed its reorder level.
+     * Products that are not in the index are ignored.
+     *
+     * @param productId The ID of the product.
+     * @param stock     The stock now held.
+     */
+    public void update(int productId, int stock) {
+        change(productId, stock, false);
+    }
+
+    /**
+     * Add to or take from a product's stock level, notifying listeners if it has crossed its reorder level.
+     * Concurrent changes to the same product may be recorded in any order, as they are applied as differences.
+     * Products that are not in the index are ignored.
+     *
+     * @param productId The ID of the product.
+     * @param delta     The change in stock, negative when stock is taken.
+     */
+    public void adjust(int productId, int delta) {
+        change(productId, delta, true);
+    }
+
+    private void change(int productId, int value, boolean relative) {
+        int current;
+        int reorderLevel;
+        boolean wasLow;
+        boolean isLow;
+
+        synchronized (this) {
+            if (!known.get(productId)) return;
+            current = relative ? stock[productId] + value : value;
+            reorderLevel = reorderLevels[productId];
+            wasLow = low.get(productId);
+            isLow = current <= reorderLevel;
+
+            stock[productId] = current;
+            changed[productId] = ++version;
+            low.set(productId, isLow);
+            out.set(productId, current == 0);
+        }
+        notify(productId, current, reorderLevel, wasLow, isLow);
+    }
+
+    /**
+     * Change a product's reorder level, notifying listeners if that moves it across the level.
+     * Products that are not in the index are ignored.
+     *
+     * @param productId    The ID of the product.
+     * @param reorderLevel The stock level at or below which the product is reordered.
+     */
+    public void setReorderLevel(int productId, int reorderLevel) {
+        int current;
+        boolean wasLow;
+        boolean isLow;
+
+        synchronized (this) {
+            if (!known.get(productId)) return;
+            current = stock[productId];
+            wasLow = low.get(productId);
+            isLow = current <= reorderLevel;
+
+            reorderLevels[productId] = reorderLevel;
+            changed[productId] = ++version;
+            low.set(productId, isLow);
+        }
+        notify(productId, current, reorderLevel, wasLow, isLow);
+    }
+
+    /**
+     * Remove every product, without notifying listeners.
+     */
+    public synchronized void clear() {
+        known.clear();
+        low.clear();
+        out.clear();
+    }
+
+    /**
+     * Obtain the products at or below their reorder level.
+     *
+     * @return The IDs of the products, in order.
+     */
+    public synchronized @NotNull List<Integer> lowStock() {
+        return ids(low);
+    }
+
+    /**
+     * Obtain the products that have no stock.
+     *
+     * @return The IDs of the products, in order.
+     */
+    public synchronized @NotNull List<Integer> outOfStock() {
+        return ids(out);
+    }
+
+    /**
+     * Check whether any product has run out of stock.
+     *
+     * @return True if at least one product has no stock.
+     */
+    public synchronized boolean anyOutOfStock() {
+        return !out.isEmpty();
+    }
+
+    /**
+     * Obtain the stock level last recorded for a product.
+     *
+     * @param productId The ID of the product.
+     * @return The stock held, or -1 if the product is not in the index.
+     */
+    public synchronized int stock(int productId) {
+        return known.get(productId) ? stock[productId] : -1;
+    }
+
+    /**
+     * Obtain a product's reorder level.
+     *
+     * @param productId The ID of the product.
+     * @return The reorder level, or -1 if the product is not in the index.
+     */
+    public synchronized int reorderLevel(int productId) {
+        return known.get(productId) ? reorderLevels[productId] : -1;
+    }
+
+    private void notify(int productId, int stock, int reorderLevel, boolean wasLow, boolean isLow) {
+        if (wasLow == isLow) return;
+
+        for (StockListener listener : listeners) {
+            try {
+                if (isLow) {
+                    listener.lowStock(productId, stock, reorderLevel);
+                } else {
+                    listener.restocked(productId, stock);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void ensureCapacity(int productId) {
+        if (productId < stock.length) return;
+        int size = Math.max(productId + 1, stock.length * 2);
+        stock = Arrays.copyOf(stock, size);
+        reorderLevels = Arrays.copyOf(reorderLevels, size);
+        changed = Arrays.copyOf(changed, size);
+    }
+
+    private static @NotNull List<Integer> ids(@NotNull BitSet set) {
+        List<Integer> ids = new ArrayList<>(set.cardinality());
+        for (int id = set.nextSetBit(0); id >= 0; id = set.nextSetBit(id + 1)) ids.add(id);
+        return ids;
+    }
+}
@@ -0,0 +1,153 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tracks every customer's purchase count and loyalty card status as purchases are made and cards are granted,
+ * so checking a customer's eligibility for a card is an array read rather than a count over the transaction table.
+ * The customers who are eligible are kept in a bit set, so all of them can be found at once.
+ * Purchases and cards recorded by other processes are picked up by {@link #reconcile(int, int, boolean, long)}.
+ */
+public final class LoyaltyIndex {
+
+    /**
+     * The number of purchases a customer must have made to be offered a loyalty card.
+     */
+    public static final int QUALIFYING_PURCHASES = 3;
+
+    private int[] purchases = new int[64];
+    private long[] changed = new long[64];
+    private long version;
+    private final BitSet known = new BitSet();
+    private final BitSet loyal = new BitSet();
+    private final BitSet eligible = new BitSet();
+
+    /**
+     * Add a customer, or replace everything known about them.
+     *
+     * @param customerId The ID of the customer.
+     * @param purchases  The number of purchases they have made.
+     * @param isLoyal    Whether they are on the loyalty card scheme.
+     */
+    public synchronized void put(int customerId, int purchases, boolean isLoyal) {
+        ensureCapacity(customerId);
+        known.set(customerId);
+        this.purchases[customerId] = purchases;
+        changed[customerId] = ++version;
+        loyal.set(customerId, isLoyal);
+        refresh(customerId);
+    }
+
+    /**
+     * Obtain the version of the index, which is advanced by every change made through it.
+     *
+     * @return The current version, which is taken before the database is read.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Record a customer's purchase count and loyalty card status as read from the database. A customer not in the
+     * index is added. A customer changed through the index after {@code asOf} is left alone, as the read may have
+     * started before that change was committed.
+     *
+     * @param customerId The ID of the customer.
+     * @param purchases  The number of purchases they have made.
+     * @param isLoyal    Whether they are on the loyalty card scheme.
+     * @param asOf       The {@link #version()} taken before the database was read.
+     */
+    public synchronized void reconcile(int customerId, int purchases, boolean isLoyal, long asOf) {
+        if (known.get(customerId) && changed[customerId] > asOf) return;
+        ensureCapacity(customerId);
+        known.set(customerId);
+        this.purchases[customerId] = purchases;
+        loyal.set(customerId, isLoyal);
+        refresh(customerId);
+    }
+
+    /**
+     * Count a purchase made by a customer.
+     * A customer who is not in the index, such as one added since it was loaded, is added with this as their first purchase.
+     *
+     * @param customerId The ID of the customer.
+     * @param isLoyal    Whether they are on the loyalty card scheme, as read when the purchase was made.
+     */
+    public synchronized void recordPurchase(int customerId, boolean isLoyal) {
+        if (!known.get(customerId)) {
+            put(customerId, 1, isLoyal);
+            return;
+        }
+        purchases[customerId]++;
+        changed[customerId] = ++version;
+        refresh(customerId);
+    }
+
+    /**
+     * Record that a customer has been granted a loyalty card. Customers who are not in the index are ignored.
+     *
+     * @param customerId The ID of the customer.
+     */
+    public synchronized void grant(int customerId) {
+        if (!known.get(customerId)) return;
+        changed[customerId] = ++version;
+        loyal.set(customerId);
+        eligible.clear(customerId);
+    }
+
+    /**
+     * Check whether a customer has made enough purchases for a loyalty card and does not already have one.
+     *
+     * @param customerId The ID of the customer.
+     * @return True if the customer is eligible, false otherwise or if they are not in the index.
+     */
+    public synchronized boolean isEligible(int customerId) {
+        return customerId >= 0 && eligible.get(customerId);
+    }
+
+    /**
+     * Obtain every customer who is eligible for a loyalty card.
+     *
+     * @return The IDs of the customers, in order.
+     */
+    public synchronized @NotNull List<Integer> eligible() {
+        List<Integer> ids = new ArrayList<>(eligible.cardinality());
+        for (int id = eligible.nextSetBit(0); id >= 0; id = eligible.nextSetBit(id + 1)) ids.add(id);
+        return ids;
+    }
+
+    /**
+     * Obtain the number of purchases last recorded for a customer.
+     *
+     * @param customerId The ID of the customer.
+     * @return The number of purchases, or -1 if the customer is not in the index.
+     */
+    public synchronized int purchases(int customerId) {
+        return customerId >= 0 && known.get(customerId) ? purchases[customerId] : -1;
+    }
+
+    /**
+     * Remove every customer.
+     */
+    public synchronized void clear() {
+        known.clear();
+        loyal.clear();
+        eligible.clear();
+    }
+
+    private void refresh(int customerId) {
+        eligible.set(customerId, purchases[customerId] >= QUALIFYING_PURCHASES && !loyal.get(customerId));
+    }
+
+    private void ensureCapacity(int customerId) {
+        if (customerId < purchases.length) return;
+        int size = Math.max(customerId + 1, purchases.length * 2);
+        purchases = Arrays.copyOf(purchases, size);
+        changed = Arrays.copyOf(changed, size);
+    }
+}
@@ -0,0 +1,63 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Asks for a manager's credentials before a restricted operation, such as a price change, is carried out.
+ */
+final class ManagerAuthorisation {
+
+    // The console is left open, as the menu goes on reading from it after the prompt.
+    private static final BufferedReader CONSOLE = new BufferedReader(new InputStreamReader(System.in));
+
+    private ManagerAuthorisation() {
+    }
+
+    /**
+     * Prompt for a manager's username and password on the console.
+     *
+     * @return True if valid manager credentials were entered, false otherwise.
+     */
+    static boolean authorise() {
+        try {
+            System.out.print("""
+                    *************************************
+                    ***           ATTENTION           ***
+                    *************************************
+                                        
+                    ---> Only managers can modify the prices of items.
+                    ** Unauthorised access to this system constitutes an offence
+                    ** under Section 1 of the Computer Misuse Act 1990.
+                                        
+                    Manager username: """);
+            String username = CONSOLE.readLine();
+            System.out.print("\nManager password: ");
+            String password = CONSOLE.readLine();
+
+            if (authorise(username, password)) return true;
+            System.out.println("""
+                    **************************
+                    ** Invalid Credentials! **
+                    **************************
+                    """);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Check a manager's credentials given with a request, without prompting.
+     *
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return True if the credentials are valid, false otherwise.
+     */
+    static boolean authorise(@Nullable String username, @Nullable String password) {
+        return username != null && password != null && username.equalsIgnoreCase("StoreManager") && password.equals("************");
+    }
+}
@@ -0,0 +1,117 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A connection borrowed from a {@link ConnectionPool}.
+ * Closing it hands the underlying connection back to the pool rather than closing it.
+ */
+public final class PooledConnection implements AutoCloseable {
+
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final StatementCache statements;
+    private long lastUsed;
+    private boolean released = true;
+
+    PooledConnection(@NotNull ConnectionPool pool, @NotNull Connection connection, @NotNull StatementCache statements) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statements = statements;
+        this.lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Obtain the underlying JDBC connection.
+     * It must not be closed directly; close this object instead.
+     *
+     * @return The physical connection.
+     */
+    public @NotNull Connection connection() {
+        return connection;
+    }
+
+    /**
+     * Obtain a cached prepared statement for a SQL template with {@code ?} parameters.
+     * The statement stays open for reuse, so only its result sets should be closed.
+     *
+     * @param sql The SQL template.
+     * @return The prepared statement, with any previous parameters still bound.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public @NotNull PreparedStatement prepare(@NotNull String sql) throws SQLException {
+        return statements.prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Obtain a cached prepared statement for an INSERT whose generated keys are wanted.
+     *
+     * @param sql The SQL template.
+     * @return The prepared statement, which returns generated keys.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public @NotNull PreparedStatement prepareReturningKeys(@NotNull String sql) throws SQLException {
+        return statements.prepare(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * Return the connection to the pool. Closing it again does nothing, so it cannot be handed out twice.
+     */
+    @Override
+    public void close() {
+        if (released) return;
+        released = true;
+        pool.release(this);
+    }
+
+    /**
+     * Mark the connection as borrowed, so that the next {@link #close()} hands it back.
+     */
+    void lease() {
+        released = false;
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * Roll back any transaction left open by the borrower, and clear any batch or parameters it left on a cached
+     * statement, so the next borrower starts clean.
+     *
+     * @return True if the connection is still usable, false otherwise.
+     */
+    boolean reset() {
+        try {
+            if (connection.isClosed()) return false;
+            statements.reset();
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Physically close the connection.
+     */
+    void discard() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A validated price list, read from a file with one {@code product ID,price} line per product, such as
+ * {@code 42,3.99}. Blank lines and lines starting with {@code #} are skipped, as is a first line that does not start
+ * with a digit, taken to be a header. Prices are in pounds with at most two decimal places.
+ * <p>
+ * The file is mapped into memory and parsed a byte at a time, with no string built per line, so a file of tens of
+ * thousands of products is read in a few milliseconds. Every line is checked, and a product listed twice is an
+ * error. The products are held in ID order, which is the order they are updated in.
+ */
+public final class PriceList {
+
+    /**
+     * The most errors kept from a file, so that a file in the wrong format does not produce one per line.
+     */
+    public static final int MAX_ERRORS = 100;
+
+    // The price column is decimal(16, 2), which holds at most 14 digits of pounds.
+    private static final int MAX_POUND_DIGITS = 14;
+
+    private final int[] ids;
+    private final long[] pricePence;
+    private final List<String> errors;
+
+    private PriceList(int[] ids, long[] pricePence, List<String> errors) {
+        this.ids = ids;
+        this.pricePence = pricePence;
+        this.errors = errors;
+    }
+
+    /**
+     * Read and validate a price list.
+     *
+     * @param path The file.
+     * @return The price list, whose {@link #errors()} say what was wrong with the file, if anything.
+     * @throws IOException If the file cannot be read.
+     */
+    public static @NotNull PriceList read(@NotNull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException(path + " is too large for a price list");
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private static @NotNull PriceList parse(@NotNull MappedByteBuffer file) {
+        int capacity = 1_024;
+        int[] ids = new int[capacity];
+        long[] prices = new long[capacity];
+        int[] lines = new int[capacity];
+        List<String> errors = new ArrayList<>();
+        int size = 0;
+        int line = 0;
+        boolean first = true;
+
+        int end = file.limit();
+        int at = 0;
+        while (at < end) {
+            line++;
+            int eol = at;
+            while (eol < end && file.get(eol) != '\n') eol++;
+            int next = eol + 1;
+            while (eol > at && (file.get(eol - 1) == '\r' || file.get(eol - 1) == ' ' || file.get(eol - 1) == '\t')) eol--;
+            while (at < eol && (file.get(at) == ' ' || file.get(at) == '\t')) at++;
+
+            boolean content = at < eol && file.get(at) != '#';
+            boolean header = content && first && !isDigit(file.get(at));
+            first &= !content;
+            if (!content || header) {
+                at = next;
+                continue;
+            }
+
+            // The product ID.
+            long id = 0;
+            int digits = 0;
+            while (at < eol && isDigit(file.get(at)) && digits <= 10) {
+                id = id * 10 + (file.get(at++) - '0');
+                digits++;
+            }
+            while (at < eol && file.get(at) == ' ') at++;
+            if (digits == 0 || digits > 10 || id <= 0 || id > Integer.MAX_VALUE || at == eol || file.get(at) != ',') {
+                error(errors, line, "expected a product ID and a comma");
+                at = next;
+                continue;
+            }
+            at++;
+            while (at < eol && file.get(at) == ' ') at++;
+
+            // The price, in pounds and pence.
+            long pence = 0;
+            int pounds = 0;
+            while (at < eol && isDigit(file.get(at)) && pounds <= MAX_POUND_DIGITS) {
+                pence = pence * 10 + (file.get(at++) - '0');
+                pounds++;
+            }
+            int decimals = 0;
+            if (at < eol && file.get(at) == '.') {
+                at++;
+                while (at < eol && isDigit(file.get(at)) && decimals <= 2) {
+                    pence = pence * 10 + (file.get(at++) - '0');
+                    decimals++;
+                }
+            }
+            if (pounds == 0 || pounds > MAX_POUND_DIGITS || decimals > 2 || at != eol) {
+                error(errors, line, "expected a price in pounds with at most two decimal places");
+                at = next;
+                continue;
+            }
+            for (int d = decimals; d < 2; d++) pence *= 10;
+
+            if (size == capacity) {
+                capacity *= 2;
+                ids = Arrays.copyOf(ids, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            ids[size] = (int) id;
+            prices[size] = pence;
+            lines[size] = line;
+            size++;
+            at = next;
+        }
+
+        // Sort by ID, keeping each product's position so its price and line go with it.
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (long) ids[i] << 32 | i;
+        }
+        Arrays.sort(order);
+
+        int[] sortedIds = new int[size];
+        long[] sortedPrices = new long[size];
+        for (int i = 0; i < size; i++) {
+            int from = (int) order[i];
+            sortedIds[i] = ids[from];
+            sortedPrices[i] = prices[from];
+            if (i > 0 && sortedIds[i] == sortedIds[i - 1]) {
+                error(errors, lines[from], "product " + sortedIds[i] + " is already priced on line " + lines[(int) order[i - 1]]);
+            }
+        }
+        return new PriceList(sortedIds, sortedPrices, Collections.unmodifiableList(errors));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static void error(@NotNull List<String> errors, int line, @NotNull String message) {
+        if (errors.size() < MAX_ERRORS) errors.add("Line " + line + ": " + message);
+    }
+
+    /**
+     * Obtain the number of products priced.
+     *
+     * @return The number of valid lines.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Obtain the ID of a product.
+     *
+     * @param index The position of the product in ID order, from 0 to {@link #size()} - 1.
+     * @return The product ID.
+     */
+    public int id(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Obtain the new price of a product.
+     *
+     * @param index The position of the product in ID order, from 0 to {@link #size()} - 1.
+     * @return The price in pence.
+     */
+    public long pricePence(int index) {
+        return pricePence[index];
+    }
+
+    /**
+     * Obtain the new price of a product as stored in the database.
+     *
+     * @param index The position of the product in ID order, from 0 to {@link #size()} - 1.
+     * @return The price in pounds.
+     */
+    public @NotNull BigDecimal price(int index) {
+        return BigDecimal.valueOf(pricePence[index], 2);
+    }
+
+    /**
+     * Obtain what was wrong with the file. A price list with errors must not be applied.
+     *
+     * @return Up to {@link #MAX_ERRORS} errors, each naming its line, or an empty list if the file is valid.
+     */
+    public @NotNull List<String> errors() {
+        return errors;
+    }
+
+    /**
+     * The outcome of applying a price list.
+     *
+     * @param rows     The number of products in the file.
+     * @param changed  The number of products whose price was changed, which leaves out those already at the new
+     *                 price and those that do not exist.
+     * @param errors   What was wrong with the file, in which case nothing was changed.
+     * @param reading  How long the file took to read and validate.
+     * @param applying How long the changes took to make.
+     */
+    public record Update(int rows, int changed, @NotNull List<String> errors, @NotNull Duration reading, @NotNull Duration applying) {
+
+        /**
+         * Check whether the price list was applied.
+         *
+         * @return True if the file was valid and its changes were made.
+         */
+        public boolean applied() {
+            return errors.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Prices purchases in whole pence, applying the promotions on each product, the loyalty card discount and the surcharge.
+ * The engine holds no state beyond its settings, so one engine can be shared by every till. Baskets and quotes hold
+ * their lines in primitive arrays which are reused from one basket to the next, so pricing a basket allocates nothing
+ * once they have grown to the largest basket seen.
+ * <p>
+ * Each line is priced on its own: the promotion takes free units off the quantity, the loyalty discount comes off
+ * what is left, and the surcharge is added to that, rounding up to the penny as a single purchase always has.
+ * Where a product has more than one promotion, whichever saves the customer most is applied. Any delivery charge is
+ * shared between every unit in the basket, so the units recorded as purchases add up to what the customer paid.
+ */
+public final class PricingEngine {
+
+    /**
+     * The sale type of the "3 for 2" promotion, under which every third unit of a product is free.
+     */
+    public static final int THREE_FOR_TWO = 1;
+
+    /**
+     * The sale type of the "buy one get one free" promotion, under which every second unit of a product is free.
+     */
+    public static final int BUY_ONE_GET_ONE_FREE = 2;
+
+    /**
+     * The sale type of the free delivery promotion, under which the basket is delivered without charge.
+     */
+    public static final int FREE_DELIVERY = 3;
+
+    private static final long BASIS = 10_000;
+
+    private final Settings settings;
+    private final long keep;
+    private final long uplift;
+
+    public PricingEngine(@NotNull Settings settings) {
+        this.settings = settings;
+        this.keep = BASIS - settings.loyaltyDiscountBasisPoints();
+        this.uplift = BASIS + settings.surchargeBasisPoints();
+    }
+
+    /**
+     * Obtain the settings the engine prices with.
+     *
+     * @return The settings.
+     */
+    public @NotNull Settings settings() {
+        return settings;
+    }
+
+    /**
+     * Work out what a customer pays for an amount before the loyalty discount and surcharge.
+     *
+     * @param pence The amount, in pence.
+     * @param loyal Whether the customer is on the loyalty card scheme.
+     * @return The cost in pence, rounded up.
+     * @throws ArithmeticException If the amount is too large to price.
+     */
+    public long cost(long pence, boolean loyal) {
+        long scaled = Math.multiplyExact(Math.multiplyExact(pence, loyal ? keep : BASIS), uplift);
+        return Math.floorDiv(scaled + BASIS * BASIS - 1, BASIS * BASIS);
+    }
+
+    /**
+     * Work out the loyalty card discount on an amount.
+     *
+     * @param pence The amount, in pence.
+     * @param loyal Whether the customer is on the loyalty card scheme.
+     * @return The discount in pence, rounded half up, or 0 if the customer is not on the scheme.
+     */
+    public long loyaltyDiscount(long pence, boolean loyal) {
+        if (!loyal) return 0;
+        return Math.floorDiv(Math.multiplyExact(pence, (long) settings.loyaltyDiscountBasisPoints()) + BASIS / 2, BASIS);
+    }
+
+    /**
+     * Work out how many units of a product are free under the best of its promotions.
+     *
+     * @param quantity  The number of units bought.
+     * @param saleTypes The mask of sale types applied to the product.
+     * @return The number of units the customer does not pay for.
+     */
+    public static int freeUnits(int quantity, int saleTypes) {
+        int free = 0;
+        if ((saleTypes & mask(THREE_FOR_TWO)) != 0) free = quantity / 3;
+        if ((saleTypes & mask(BUY_ONE_GET_ONE_FREE)) != 0) free = Math.max(free, quantity / 2);
+        return free;
+    }
+
+    /**
+     * Price a basket for a customer.
+     *
+     * @param basket The basket.
+     * @param loyal  Whether the customer is on the loyalty card scheme.
+     * @param quote  Receives the price of each line and the totals, replacing anything it held.
+     * @throws ArithmeticException If the basket is too large to price.
+     */
+    public void price(@NotNull Basket basket, boolean loyal, @NotNull Quote quote) {
+        int size = basket.size;
+        quote.ensureCapacity(size);
+        quote.size = size;
+
+        long subtotal = 0;
+        long promotions = 0;
+        long discounts = 0;
+        long total = 0;
+        int units = 0;
+        boolean freeDelivery = false;
+
+        for (int i = 0; i < size; i++) {
+            int quantity = basket.quantities[i];
+            long unit = basket.unitPence[i];
+            int saleTypes = basket.saleTypes[i];
+
+            long gross = Math.multiplyExact(unit, (long) quantity);
+            long promotion = unit * freeUnits(quantity, saleTypes);
+            long charged = gross - promotion;
+            long discount = loyaltyDiscount(charged, loyal);
+            long cost = cost(charged, loyal);
+
+            quote.quantities[i] = quantity;
+            quote.firstUnits[i] = units;
+            quote.promotions[i] = promotion;
+            quote.discounts[i] = discount;
+            quote.costs[i] = cost;
+
+            subtotal = Math.addExact(subtotal, gross);
+            promotions += promotion;
+            discounts += discount;
+            total = Math.addExact(total, cost);
+            units = Math.addExact(units, quantity);
+            freeDelivery |= (saleTypes & mask(FREE_DELIVERY)) != 0;
+        }
+
+        long delivery = size == 0 || freeDelivery ? 0 : settings.deliveryPence();
+        quote.subtotal = subtotal;
+        quote.promotionTotal = promotions;
+        quote.discountTotal = discounts;
+        quote.units = units;
+        quote.delivery = delivery;
+        quote.total = Math.addExact(total, delivery);
+    }
+
+    /**
+     * Spread an amount, such as the cost of a line, over a number of units, one pence apart at most, so that each unit
+     * can be recorded as a purchase.
+     *
+     * @param cost     The amount in pence.
+     * @param quantity The number of units.
+     * @param unit     Which unit, from 0 to quantity - 1.
+     * @return The share of the amount charged for the unit.
+     */
+    public static long unitShare(long cost, int quantity, int unit) {
+        long share = cost / quantity;
+        return unit < cost % quantity ? share + 1 : share;
+    }
+
+    private static int mask(int type) {
+        return 1 << (type - 1);
+    }
+
+    /**
+     * The rates the engine prices with.
+     *
+     * @param loyaltyDiscountBasisPoints The discount given to customers on the loyalty card scheme, in hundredths of a percent.
+     * @param surchargeBasisPoints       The surcharge added to every purchase, in hundredths of a percent.
+     * @param deliveryPence              The charge for delivering a basket with no free delivery promotion, in pence.
+     */
+    public record Settings(int loyaltyDiscountBasisPoints, int surchargeBasisPoints, long deliveryPence) {
+
+        public Settings {
+            if (loyaltyDiscountBasisPoints < 0 || loyaltyDiscountBasisPoints > BASIS) {
+                throw new IllegalArgumentException("Loyalty discount must be from 0 to " + BASIS + " basis points");
+            }
+            if (surchargeBasisPoints < 0) throw new IllegalArgumentException("Surcharge must not be negative");
+            if (deliveryPence < 0) throw new IllegalArgumentException("Delivery charge must not be negative");
+        }
+
+        /**
+         * Obtain the store's rates: 10% off for loyalty card holders, a 5% surcharge, and no delivery charge at the till.
+         *
+         * @return The default settings.
+         */
+        public static @NotNull Settings defaults() {
+            return new Settings(1_000, 500, 0);
+        }
+    }
+
+    /**
+     * The lines of a basket, one per product, held in primitive arrays that are kept when the basket is cleared.
+     */
+    public static final class Basket {
+        private int[] productIds;
+        private int[] quantities;
+        private long[] unitPence;
+        private int[] saleTypes;
+        private int size;
+
+        public Basket() {
+            this(16);
+        }
+
+        public Basket(int capacity) {
+            productIds = new int[capacity];
+            quantities = new int[capacity];
+            unitPence = new long[capacity];
+            saleTypes = new int[capacity];
+        }
+
+        /**
+         * Add a line to the basket.
+         *
+         * @param productId The ID of the product.
+         * @param quantity  The number of units, at least 1.
+         * @param unitPence The price of one unit in pence.
+         * @param saleTypes The mask of sale types applied to the product.
+         */
+        public void add(int productId, int quantity, long unitPence, int saleTypes) {
+            if (quantity <= 0) throw new IllegalArgumentException("Quantity of product " + productId + " must be positive");
+            if (size == productIds.length) {
+                int capacity = Math.max(16, size * 2);
+                productIds = Arrays.copyOf(productIds, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                this.unitPence = Arrays.copyOf(this.unitPence, capacity);
+                this.saleTypes = Arrays.copyOf(this.saleTypes, capacity);
+            }
+            productIds[size] = productId;
+            quantities[size] = quantity;
+            this.unitPence[size] = unitPence;
+            this.saleTypes[size] = saleTypes;
+            size++;
+        }
+
+        /**
+         * Remove every line, keeping the space they took.
+         */
+        public void clear() {
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int productId(int line) {
+            return productIds[line];
+        }
+
+        public int quantity(int line) {
+            return quantities[line];
+        }
+
+        public long unitPence(int line) {
+            return unitPence[line];
+        }
+
+        public int saleTypes(int line) {
+            return saleTypes[line];
+        }
+    }
+
+    /**
+     * The price of a basket, line by line and in total, all in pence.
+     * A quote is filled in by {@link #price(Basket, boolean, Quote)} and can be reused for the next basket.
+     */
+    public static final class Quote {
+        private int[] quantities = new int[16];
+        private int[] firstUnits = new int[16];
+        private long[] promotions = new long[16];
+        private long[] discounts = new long[16];
+        private long[] costs = new long[16];
+        private int size;
+        private int units;
+        private long subtotal;
+        private long promotionTotal;
+        private long discountTotal;
+        private long delivery;
+        private long total;
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Obtain the saving from promotions on a line.
+         */
+        public long promotion(int line) {
+            return promotions[line];
+        }
+
+        /**
+         * Obtain the loyalty card discount on a line.
+         */
+        public long discount(int line) {
+            return discounts[line];
+        }
+
+        /**
+         * Obtain what the customer pays for a line.
+         */
+        public long cost(int line) {
+            return costs[line];
+        }
+
+        /**
+         * Obtain what is recorded as paid for one unit of a line: its share of the line's cost and of the delivery
+         * charge. The units of every line add up to {@link #total()}.
+         *
+         * @param line The line.
+         * @param unit Which unit of the line, from 0 to its quantity - 1.
+         * @return The amount in pence.
+         */
+        public long unitCost(int line, int unit) {
+            long share = unitShare(costs[line], quantities[line], unit);
+            return delivery == 0 ? share : share + unitShare(delivery, units, firstUnits[line] + unit);
+        }
+
+        /**
+         * Obtain the price of the basket before any promotion or discount.
+         */
+        public long subtotal() {
+            return subtotal;
+        }
+
+        public long promotionTotal() {
+            return promotionTotal;
+        }
+
+        public long discountTotal() {
+            return discountTotal;
+        }
+
+        public long delivery() {
+            return delivery;
+        }
+
+        /**
+         * Obtain what the customer pays for the basket, including delivery.
+         */
+        public long total() {
+            return total;
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= costs.length) return;
+            int capacity = Math.max(size, costs.length * 2);
+            quantities = Arrays.copyOf(quantities, capacity);
+            firstUnits = Arrays.copyOf(firstUnits, capacity);
+            promotions = Arrays.copyOf(promotions, capacity);
+            discounts = Arrays.copyOf(discounts, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+        }
+    }
+}
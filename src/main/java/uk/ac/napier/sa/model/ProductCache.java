@@ -0,0 +1,236 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.adt.Product;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * A bounded, read-through cache of {@link Product}s keyed by product ID.
+ * Entries are evicted when the cache is full (least recently used first) or once they are older than their time to live,
+ * and must be invalidated by any local write to a product so that stock and prices are never served stale.
+ * <p>
+ * An invalidated product is replaced by a tombstone stamped with the time of the write, so that a load of that
+ * product which began before the write is not cached, while loads of other products still are.
+ */
+public final class ProductCache {
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    /**
+     * Stamps invalidations, and the start of every load, in order.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Loads that began before this stamp are not cached: it is raised when a tombstone is evicted, as the write it
+     * recorded can no longer be checked, and when the whole cache is invalidated. Guarded by {@code entries}.
+     */
+    private long floor;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * Create an empty cache.
+     *
+     * @param capacity The maximum number of products held.
+     * @param ttl      How long a product may be served before it is reloaded.
+     */
+    public ProductCache(int capacity, @NotNull Duration ttl) {
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(Math.min(capacity, 1_024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() <= ProductCache.this.capacity) return false;
+                Entry entry = eldest.getValue();
+                if (entry.product() == null) {
+                    floor = Math.max(floor, entry.stamp());
+                } else {
+                    evictions.increment();
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Obtain a product, loading it with the given function if it is not cached or has expired.
+     *
+     * @param id     The ID of the product.
+     * @param loader The function that loads the product from the database, returning null on failure.
+     * @return The product, or null if it could not be loaded.
+     */
+    public @Nullable Product get(int id, @NotNull IntFunction<Product> loader) {
+        Product cached = lookup(id);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        long stamp = clock.get();
+        long start = System.nanoTime();
+        Product loaded = loader.apply(id);
+        long now = System.nanoTime();
+        loadNanos.add(now - start);
+
+        if (loaded != null) {
+            synchronized (entries) {
+                store(id, loaded, stamp, now);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Obtain several products, loading every one that is not cached with a single call to the given function.
+     *
+     * @param ids    The IDs of the products.
+     * @param loader The function that loads a set of products from the database, keyed by ID.
+     *               Products that do not exist are left out of the map it returns.
+     * @return The products that exist, keyed by ID.
+     */
+    public @NotNull Map<Integer, Product> getAll(@NotNull Collection<Integer> ids,
+                                                 @NotNull Function<Collection<Integer>, Map<Integer, Product>> loader) {
+        Map<Integer, Product> found = new HashMap<>(ids.size() * 2);
+        Set<Integer> missing = new LinkedHashSet<>();
+
+        for (Integer id : ids) {
+            if (found.containsKey(id) || missing.contains(id)) continue;
+            Product cached = lookup(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        hits.add(found.size());
+        if (missing.isEmpty()) return found;
+
+        misses.add(missing.size());
+        long stamp = clock.get();
+        long start = System.nanoTime();
+        Map<Integer, Product> loaded = loader.apply(missing);
+        long now = System.nanoTime();
+        loadNanos.add(now - start);
+
+        synchronized (entries) {
+            loaded.forEach((id, product) -> store(id, product, stamp, now));
+        }
+        found.putAll(loaded);
+        return found;
+    }
+
+    /**
+     * Remove a product from the cache after it has been written to.
+     *
+     * @param id The ID of the product.
+     */
+    public void invalidate(int id) {
+        synchronized (entries) {
+            entries.put(id, new Entry(null, 0L, clock.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Remove every product from the cache, for writes that may have touched any number of products.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            floor = clock.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    /**
+     * Obtain the hit ratio and load latency of the cache.
+     *
+     * @return A snapshot of the cache statistics.
+     */
+    public @NotNull Statistics statistics() {
+        int size = 0;
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (entry.product() != null) size++;
+            }
+        }
+        return new Statistics(size, hits.sum(), misses.sum(), evictions.sum(), loadNanos.sum());
+    }
+
+    /**
+     * Cache a loaded product, unless it was invalidated after the load began. Must be called holding {@code entries}.
+     *
+     * @param stamp    The clock when the load began.
+     * @param loadedAt When the load finished, in nanoseconds.
+     */
+    private void store(int id, @NotNull Product product, long stamp, long loadedAt) {
+        if (stamp < floor) return;
+        Entry current = entries.get(id);
+        if (current != null && current.product() == null && current.stamp() > stamp) return;
+        entries.put(id, new Entry(product, loadedAt, 0L));
+    }
+
+    private @Nullable Product lookup(int id) {
+        synchronized (entries) {
+            Entry entry = entries.get(id);
+            if (entry == null || entry.product() == null) return null;
+            if (System.nanoTime() - entry.loadedAt() > ttlNanos) {
+                entries.remove(id);
+                evictions.increment();
+                return null;
+            }
+            return entry.product();
+        }
+    }
+
+    /**
+     * A cached product, or a tombstone with no product, stamped with when its product was invalidated.
+     */
+    private record Entry(@Nullable Product product, long loadedAt, long stamp) {
+    }
+
+    /**
+     * A snapshot of the state of a {@link ProductCache}.
+     *
+     * @param size           The number of products currently cached.
+     * @param hits           The number of lookups answered from the cache.
+     * @param misses         The number of lookups that went to the database.
+     * @param evictions      The number of products dropped for lack of room or for expiring.
+     * @param totalLoadNanos The total time spent loading products on a miss.
+     */
+    public record Statistics(int size, long hits, long misses, long evictions, long totalLoadNanos) {
+
+        /**
+         * The fraction of lookups answered from the cache.
+         *
+         * @return A value between 0 and 1.
+         */
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0d : (double) hits / lookups;
+        }
+
+        /**
+         * The mean time taken to load a product on a miss.
+         * Products loaded together share the cost of their load.
+         *
+         * @return The mean load latency, in nanoseconds.
+         */
+        public long averageLoadNanos() {
+            return misses == 0 ? 0L : totalLoadNanos / misses;
+        }
+    }
+}
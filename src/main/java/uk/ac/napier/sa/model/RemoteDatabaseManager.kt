@@ -1,7 +1,12 @@
 package uk.ac.napier.sa.model
 
+import uk.ac.napier.sa.controller.adt.BasketReceipt
 import uk.ac.napier.sa.controller.adt.Product
+import uk.ac.napier.sa.controller.adt.Purchase
+import uk.ac.napier.sa.controller.adt.Receipt
 import java.sql.ResultSet
+import java.time.Instant
+import java.util.function.Consumer
 
 interface RemoteDatabaseManager {
     fun connect(host: String, port: Int, database: String, useSSL: Boolean, user: String, pass: String): Boolean {
@@ -16,10 +21,26 @@ interface RemoteDatabaseManager {
         return false
     }
 
+    fun migrate(directory: String, profile: String): Boolean {
+        return false
+    }
+
     fun changePrice(id: Int, price: Double): Boolean {
         return false
     }
 
+    fun changePrice(id: Int, price: Double, username: String, password: String): Boolean {
+        return false
+    }
+
+    fun changePrices(file: String, username: String, password: String): PriceList.Update? {
+        return null
+    }
+
+    fun importCatalog(directory: String): List<CatalogImporter.Result>? {
+        return null
+    }
+
     fun sell(id: Int, saleType: Int): Boolean {
         return false
     }
@@ -28,10 +49,22 @@ interface RemoteDatabaseManager {
         return false
     }
 
+    fun setReorderLevel(id: Int, reorderLevel: Int): Boolean {
+        return false
+    }
+
     fun purchase(customerId: Int, productId: Int): Boolean {
         return false
     }
 
+    fun completePurchase(customerId: Int, productId: Int): Receipt? {
+        return null
+    }
+
+    fun purchaseBasket(customerId: Int, items: Map<Int, Int>): BasketReceipt? {
+        return null
+    }
+
     fun checkLoyaltyCardEligibility(id: Int): Boolean {
         return false
     }
@@ -40,11 +73,35 @@ interface RemoteDatabaseManager {
         return false
     }
 
+    fun grantAllEligibleLoyalty(): List<Int> {
+        return emptyList()
+    }
+
     fun printLastNPurchases(n: Int)
+    fun exportTransactions(from: Instant?, to: Instant?, file: String): TransactionExport.Result? {
+        return null
+    }
+
+    fun purchasesBefore(before: Purchase?, limit: Int): List<Purchase>? {
+        return null
+    }
+
+    fun forEachPurchase(limit: Int, action: Consumer<Purchase>): Boolean {
+        return false
+    }
+
     fun getProduct(id: Int): Product? {
         return null
     }
 
+    fun getProducts(ids: Collection<Int>): List<Product> {
+        return emptyList()
+    }
+
+    fun getAllProducts(): List<Product> {
+        return emptyList()
+    }
+
     fun query(sql: String): ResultSet? {
         return null
     }
@@ -60,4 +117,8 @@ interface RemoteDatabaseManager {
     fun generateReport(): Map<String?, Any?> {
         return emptyMap<String?, Any>()
     }
+
+    fun salesSummary(): SalesSummary? {
+        return null
+    }
 }
\ No newline at end of file
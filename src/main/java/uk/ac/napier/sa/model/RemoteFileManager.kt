@@ -3,6 +3,8 @@ package uk.ac.napier.sa.model
 import kotlin.Throws
 import java.util.concurrent.ExecutionException
 import java.lang.InterruptedException
+import java.io.BufferedReader
+import java.io.IOException
 import java.nio.file.Path
 
 interface RemoteFileManager {
@@ -11,4 +13,9 @@ interface RemoteFileManager {
     fun read(p: Path?): List<String?>? {
         return null
     }
+
+    @Throws(IOException::class)
+    fun open(p: Path?): BufferedReader? {
+        return null
+    }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Reorders stock for many products at once.
+ * Each product is ordered enough stock to cover its recent sales for a number of days on top of its reorder level,
+ * rounded up to whole cases, and the stock changes and purchase orders for every product are written in a single
+ * transaction with batched statements, so a restock of thousands of products costs a handful of round trips.
+ * Orders are only placed with the supplier once that transaction has committed.
+ */
+public final class ReplenishmentEngine {
+
+    /**
+     * The most products locked or looked up by a single statement.
+     */
+    private static final int MAX_PRODUCTS_PER_QUERY = 500;
+
+    private final Settings settings;
+    private final StockSupplier supplier;
+
+    /**
+     * Create an engine that places its orders with a supplier.
+     *
+     * @param settings How much stock is ordered.
+     * @param supplier The supplier orders are placed with.
+     */
+    public ReplenishmentEngine(@NotNull Settings settings, @NotNull StockSupplier supplier) {
+        this.settings = settings;
+        this.supplier = supplier;
+    }
+
+    /**
+     * Work out how much of a product to order.
+     *
+     * @param stock        The stock held.
+     * @param reorderLevel The stock level at or below which the product is reordered.
+     * @param recentSales  The number of units sold over {@link Settings#salesWindow()}.
+     * @return The number of units to order, a whole number of cases and at least one case.
+     */
+    public int quantity(int stock, int reorderLevel, long recentSales) {
+        double perDay = recentSales / (double) settings.salesWindow().toDays();
+        long target = reorderLevel + (long) Math.ceil(perDay * settings.coverDays());
+        long shortfall = Math.max(target - stock, 1);
+        long cases = (shortfall + settings.caseSize() - 1) / settings.caseSize();
+        return (int) Math.min(cases * settings.caseSize(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Obtain the supplier orders are placed with.
+     *
+     * @return The supplier.
+     */
+    @NotNull StockSupplier supplier() {
+        return supplier;
+    }
+
+    /**
+     * Obtain how much stock is ordered.
+     *
+     * @return The settings.
+     */
+    public @NotNull Settings settings() {
+        return settings;
+    }
+
+    /**
+     * Reorder every product in a set that is still at or below its reorder level.
+     * The products are locked while their stock is read, so a product restocked concurrently is not ordered twice.
+     * The orders are placed once the restock has committed; if the supplier refuses them, the restock is taken back.
+     *
+     * @param c          The connection the restock is run on, in a transaction of its own.
+     * @param productIds The products to consider.
+     * @return The orders placed, which are empty if no product needed restocking.
+     * @throws SQLException If the restock fails, in which case nothing is ordered.
+     */
+    public @NotNull List<Order> replenish(@NotNull PooledConnection c, @NotNull Collection<Integer> productIds) throws SQLException {
+        if (productIds.isEmpty()) return List.of();
+
+        int[] ids = productIds.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+        Connection conn = c.connection();
+        conn.setAutoCommit(false);
+
+        List<Order> orders = new ArrayList<>();
+        int[] recorded;
+        try {
+            Map<Integer, Long> sales = recentSales(c, ids);
+
+            for (int from = 0; from < ids.length; from += MAX_PRODUCTS_PER_QUERY) {
+                int count = Math.min(MAX_PRODUCTS_PER_QUERY, ids.length - from);
+                PreparedStatement stmt = c.prepare("SELECT id, stock, reorder_level FROM product WHERE id IN (" + params(count) + ") FOR UPDATE");
+                for (int i = 0; i < count; i++) stmt.setInt(i + 1, ids[from + i]);
+
+                try (ResultSet results = stmt.executeQuery()) {
+                    while (results.next()) {
+                        int id = results.getInt(1);
+                        int stock = results.getInt(2);
+                        int reorderLevel = results.getInt(3);
+                        if (stock <= reorderLevel) {
+                            orders.add(new Order(id, quantity(stock, reorderLevel, sales.getOrDefault(id, 0L))));
+                        }
+                    }
+                }
+            }
+
+            if (orders.isEmpty()) {
+                conn.rollback();
+                return List.of();
+            }
+
+            PreparedStatement restock = c.prepare("UPDATE product SET stock = stock + ? WHERE id = ?");
+            PreparedStatement record = c.prepareReturningKeys("INSERT INTO purchase_order (`product`, `quantity`) VALUES (?, ?)");
+            for (Order order : orders) {
+                restock.setInt(1, order.quantity());
+                restock.setInt(2, order.productId());
+                restock.addBatch();
+
+                record.setInt(1, order.productId());
+                record.setInt(2, order.quantity());
+                record.addBatch();
+            }
+            restock.executeBatch();
+            record.executeBatch();
+            recorded = keys(record, orders.size());
+
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        }
+
+        try {
+            supplier.order(Collections.unmodifiableList(orders));
+        } catch (RuntimeException e) {
+            try {
+                cancel(c, orders, recorded);
+            } catch (SQLException cancelled) {
+                e.addSuppressed(cancelled);
+            }
+            throw e;
+        }
+        return orders;
+    }
+
+    private static int[] keys(@NotNull PreparedStatement record, int count) throws SQLException {
+        int[] keys = new int[count];
+        try (ResultSet results = record.getGeneratedKeys()) {
+            for (int i = 0; i < count && results.next(); i++) keys[i] = results.getInt(1);
+        }
+        return keys;
+    }
+
+    /**
+     * Take back the stock and purchase orders recorded for orders the supplier refused.
+     */
+    private static void cancel(@NotNull PooledConnection c, @NotNull List<Order> orders, int[] recorded) throws SQLException {
+        Connection conn = c.connection();
+        try {
+            PreparedStatement unstock = c.prepare("UPDATE product SET stock = stock - ? WHERE id = ?");
+            PreparedStatement forget = c.prepare("DELETE FROM purchase_order WHERE id = ?");
+            for (int i = 0; i < orders.size(); i++) {
+                unstock.setInt(1, orders.get(i).quantity());
+                unstock.setInt(2, orders.get(i).productId());
+                unstock.addBatch();
+
+                forget.setInt(1, recorded[i]);
+                forget.addBatch();
+            }
+            unstock.executeBatch();
+            forget.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Count the units of each product sold over the sales window.
+     */
+    private @NotNull Map<Integer, Long> recentSales(@NotNull PooledConnection c, int[] ids) throws SQLException {
+        Map<Integer, Long> sales = new HashMap<>(ids.length * 2);
+        Timestamp since = Timestamp.from(Instant.now().minus(settings.salesWindow()));
+
+        for (int from = 0; from < ids.length; from += MAX_PRODUCTS_PER_QUERY) {
+            int count = Math.min(MAX_PRODUCTS_PER_QUERY, ids.length - from);
+            PreparedStatement stmt = c.prepare("SELECT product, COUNT(id) FROM transaction WHERE purchased > ? AND product IN (" + params(count) + ") GROUP BY product");
+            stmt.setTimestamp(1, since);
+            for (int i = 0; i < count; i++) stmt.setInt(i + 2, ids[from + i]);
+
+            try (ResultSet results = stmt.executeQuery()) {
+                while (results.next()) {
+                    sales.put(results.getInt(1), results.getLong(2));
+                }
+            }
+        }
+        return sales;
+    }
+
+    private static @NotNull String params(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    /**
+     * How much stock is ordered.
+     *
+     * @param caseSize    The number of units in a case; orders are made in whole cases.
+     * @param coverDays   The number of days of sales each order should cover on top of the reorder level.
+     * @param salesWindow How far back sales are counted to work out how fast a product sells.
+     */
+    public record Settings(int caseSize, int coverDays, Duration salesWindow) {
+
+        public Settings {
+            if (caseSize < 1) throw new IllegalArgumentException("caseSize must be at least 1");
+            if (coverDays < 0) throw new IllegalArgumentException("coverDays must not be negative");
+            if (salesWindow.toDays() < 1) throw new IllegalArgumentException("salesWindow must be at least a day");
+        }
+
+        /**
+         * Cases of 24 units, covering two weeks of sales measured over the last 30 days.
+         *
+         * @return The default settings.
+         */
+        public static @NotNull Settings defaults() {
+            return new Settings(24, 14, Duration.ofDays(30));
+        }
+    }
+
+    /**
+     * A purchase order.
+     *
+     * @param productId The ID of the product ordered.
+     * @param quantity  The number of units ordered.
+     */
+    public record Order(int productId, int quantity) {
+    }
+}
@@ -0,0 +1,346 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The read replicas of a primary database, each with a connection pool of its own, and how far behind the primary
+ * each one is.
+ * <p>
+ * Every heartbeat, this set's row of the {@code replica_heartbeat} table is stamped with the time on the primary and
+ * read back from every replica. A replica has applied every write committed on the primary before the stamp it
+ * returns, so it is at most as stale as the time since that stamp. Reads take the replicas in turn, passing over any
+ * that is further behind than the settings allow, has not yet applied a write the read must see, or could not be
+ * reached at the last heartbeat. When no replica will do, the read goes to the primary.
+ * <p>
+ * Changes to products are recorded, so that a product is read from the primary until the replica has applied its
+ * latest change. With read-your-writes set, reads of purchases wait in the same way for the latest purchase.
+ */
+public final class ReplicaSet implements AutoCloseable {
+
+    /**
+     * Heartbeat rows left by managers that did not close cleanly are removed once they are this old.
+     */
+    private static final Duration ABANDONED_AFTER = Duration.ofDays(1);
+
+    private final ConnectionPool primary;
+    private final List<Replica> replicas;
+    private final Settings settings;
+    private final long source = ThreadLocalRandom.current().nextLong();
+    private final ScheduledExecutorService heartbeat;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Integer, Long> productWrites = new ConcurrentHashMap<>();
+    private final AtomicLong purchaseWritten = new AtomicLong();
+    private volatile long caughtUp;
+
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    /**
+     * Open a pool to every replica and start the heartbeat.
+     * Until the first heartbeat has been read back from a replica, its reads go to the primary.
+     *
+     * @param primary   The pool of the primary, which heartbeats and reads that no replica can take are made through.
+     * @param endpoints The replicas.
+     * @param settings  How stale a replica may be, and how often that is checked.
+     * @throws SQLException If the heartbeat cannot be written to the primary, or a replica cannot be connected to.
+     */
+    public ReplicaSet(@NotNull ConnectionPool primary, @NotNull List<Endpoint> endpoints, @NotNull Settings settings) throws SQLException {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("At least one replica is needed");
+        this.primary = primary;
+        this.settings = settings;
+
+        try (PooledConnection c = primary.borrow()) {
+            PreparedStatement stmt = c.prepare("DELETE FROM replica_heartbeat WHERE beat < ?");
+            stmt.setLong(1, now() - ABANDONED_AFTER.toMillis());
+            stmt.executeUpdate();
+
+            stmt = c.prepare("INSERT INTO replica_heartbeat (source, beat) VALUES (?, ?)");
+            stmt.setLong(1, source);
+            stmt.setLong(2, now());
+            stmt.executeUpdate();
+        }
+
+        List<Replica> opened = new ArrayList<>(endpoints.size());
+        try {
+            for (Endpoint endpoint : endpoints) {
+                opened.add(new Replica(endpoint.url(), new ConnectionPool(endpoint.url(), endpoint.user(), endpoint.pass(), endpoint.pool())));
+            }
+        } catch (SQLException e) {
+            opened.forEach(replica -> replica.pool.close());
+            forgetHeartbeat();
+            throw e;
+        }
+        replicas = List.copyOf(opened);
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = settings.heartbeatInterval().toMillis();
+        heartbeat.scheduleWithFixedDelay(this::beat, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record that a product's price, sales or stock have changed, so that it is read from the primary until the
+     * replicas have caught up.
+     *
+     * @param id The ID of the product.
+     */
+    public void productWritten(int id) {
+        productWrites.put(id, now());
+    }
+
+    /**
+     * Record that a purchase has been committed, which reads of purchases wait for if read-your-writes is set.
+     */
+    public void purchaseWritten() {
+        purchaseWritten.accumulateAndGet(now(), Math::max);
+    }
+
+    /**
+     * Borrow a connection to read products from, which has every change made to them through this set.
+     *
+     * @param ids The IDs of the products.
+     * @return A connection to a replica, or to the primary if no replica has caught up.
+     * @throws SQLException If no connection can be borrowed from the primary either.
+     */
+    public @NotNull PooledConnection borrowForProducts(int @NotNull [] ids) throws SQLException {
+        long written = 0;
+        if (!productWrites.isEmpty()) {
+            for (int id : ids) {
+                Long at = productWrites.get(id);
+                if (at != null) written = Math.max(written, at);
+            }
+        }
+        return borrow(written);
+    }
+
+    /**
+     * Borrow a connection to read every product from, which has every change made to them through this set.
+     *
+     * @return A connection to a replica, or to the primary if no replica has caught up.
+     * @throws SQLException If no connection can be borrowed from the primary either.
+     */
+    public @NotNull PooledConnection borrowForCatalog() throws SQLException {
+        long written = 0;
+        for (long at : productWrites.values()) written = Math.max(written, at);
+        return borrow(written);
+    }
+
+    /**
+     * Borrow a connection to read purchases, stock levels or reports from.
+     *
+     * @return A connection to a replica, or to the primary if no replica is fresh enough.
+     * @throws SQLException If no connection can be borrowed from the primary either.
+     */
+    public @NotNull PooledConnection borrowForPurchases() throws SQLException {
+        return borrow(settings.readYourWrites() ? purchaseWritten.get() : 0);
+    }
+
+    /**
+     * Obtain how far behind each replica is and how reads have been shared between them.
+     *
+     * @return The current statistics.
+     */
+    public @NotNull Statistics statistics() {
+        long now = now();
+        List<ReplicaStatistics> each = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            long applied = replica.applied;
+            each.add(new ReplicaStatistics(replica.url, applied > 0, applied > 0 ? now - applied : -1, replica.reads.sum(), replica.pool.statistics()));
+        }
+        return new Statistics(each, primaryReads.sum(), failovers.sum(), productWrites.size());
+    }
+
+    /**
+     * Stop the heartbeat, remove this set's heartbeat row from the primary and close the replicas' pools.
+     * The primary's pool is left open.
+     */
+    @Override
+    public void close() {
+        heartbeat.shutdownNow();
+        try {
+            heartbeat.awaitTermination(settings.heartbeatInterval().toMillis() + 1_000L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        forgetHeartbeat();
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    /**
+     * Borrow from the next replica that is fresh enough and has applied the writes made up to a time.
+     *
+     * @param written The time of the latest write the read must see, or 0 if there is none.
+     */
+    private @NotNull PooledConnection borrow(long written) throws SQLException {
+        long oldest = now() - settings.maxLag().toMillis();
+        int count = replicas.size();
+        int first = Math.floorMod(next.getAndIncrement(), count);
+
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas.get((first + i) % count);
+            long applied = replica.applied;
+            // A replica that was out of reach when product changes were last forgotten must first catch up with them.
+            if (applied > written && applied >= oldest && applied >= caughtUp) {
+                try {
+                    PooledConnection c = replica.pool.borrow();
+                    replica.reads.increment();
+                    return c;
+                } catch (SQLException e) {
+                    // The replica is left out until a heartbeat reaches it again.
+                    replica.applied = 0;
+                    failovers.increment();
+                }
+            }
+        }
+
+        primaryReads.increment();
+        return primary.borrow();
+    }
+
+    /**
+     * Stamp the heartbeat on the primary, then read back how far each replica has got.
+     */
+    private void beat() {
+        try (PooledConnection c = primary.borrow()) {
+            PreparedStatement stmt = c.prepare("UPDATE replica_heartbeat SET beat = ? WHERE source = ?");
+            stmt.setLong(1, now());
+            stmt.setLong(2, source);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // The replicas are still read, so that they are left out once they fall too far behind.
+        }
+
+        long reached = Long.MAX_VALUE;
+        for (Replica replica : replicas) {
+            try (PooledConnection c = replica.pool.borrow()) {
+                PreparedStatement stmt = c.prepare("SELECT beat FROM replica_heartbeat WHERE source = ?");
+                stmt.setLong(1, source);
+                try (ResultSet results = stmt.executeQuery()) {
+                    replica.applied = results.next() ? results.getLong(1) : 0;
+                }
+            } catch (SQLException e) {
+                replica.applied = 0;
+            }
+            // A replica out of reach is not read from, so it does not hold back forgetting product changes.
+            if (replica.applied > 0) reached = Math.min(reached, replica.applied);
+        }
+        if (reached == Long.MAX_VALUE) return;
+
+        // Products changed before the heartbeat of every replica reached can be read from any of them.
+        long applied = Math.max(caughtUp, reached);
+        caughtUp = applied;
+        productWrites.values().removeIf(written -> written < applied);
+    }
+
+    private void forgetHeartbeat() {
+        try (PooledConnection c = primary.borrow()) {
+            PreparedStatement stmt = c.prepare("DELETE FROM replica_heartbeat WHERE source = ?");
+            stmt.setLong(1, source);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // The row is removed by the next set opened once it is old enough.
+        }
+    }
+
+    /**
+     * Obtain the time in milliseconds, never going back, so that a write is never taken to come before a heartbeat
+     * stamped earlier.
+     */
+    private long now() {
+        return clock.accumulateAndGet(System.currentTimeMillis(), Math::max);
+    }
+
+    private static final class Replica {
+        private final String url;
+        private final ConnectionPool pool;
+        private final LongAdder reads = new LongAdder();
+        private volatile long applied;
+
+        private Replica(@NotNull String url, @NotNull ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * Where a replica is and how to connect to it.
+     *
+     * @param url  The JDBC url of the replica.
+     * @param user The username.
+     * @param pass The password.
+     * @param pool The sizing and timeout settings of the replica's connection pool.
+     */
+    public record Endpoint(@NotNull String url, @NotNull String user, @NotNull String pass, @NotNull ConnectionPool.Settings pool) {
+    }
+
+    /**
+     * How stale a replica may be, and how often that is checked.
+     *
+     * @param maxLag            The longest a replica may be behind the primary and still be read from.
+     * @param heartbeatInterval The time between heartbeats, which must be shorter than the maximum lag.
+     * @param readYourWrites    Whether reads of purchases, stock levels and reports must see every purchase made
+     *                          through this set, rather than only those older than the maximum lag.
+     */
+    public record Settings(@NotNull Duration maxLag, @NotNull Duration heartbeatInterval, boolean readYourWrites) {
+
+        public Settings {
+            if (heartbeatInterval.toMillis() < 1) throw new IllegalArgumentException("heartbeatInterval must be at least 1ms");
+            if (maxLag.compareTo(heartbeatInterval) <= 0) {
+                throw new IllegalArgumentException("maxLag must be longer than heartbeatInterval, or no replica is ever read from");
+            }
+        }
+
+        /**
+         * Replicas up to 5 seconds behind are read from, checked every 250ms, and reports need not see the latest purchases.
+         *
+         * @return The default settings.
+         */
+        public static @NotNull Settings defaults() {
+            return new Settings(Duration.ofSeconds(5), Duration.ofMillis(250), false);
+        }
+    }
+
+    /**
+     * A snapshot of the replicas.
+     *
+     * @param replicas       Each replica, in the order they were given.
+     * @param primaryReads   The reads that went to the primary because no replica would do.
+     * @param failovers      The reads that went elsewhere because a replica could not be borrowed from.
+     * @param fencedProducts The products read from the primary until the replicas catch up with their changes.
+     */
+    public record Statistics(@NotNull List<ReplicaStatistics> replicas, long primaryReads, long failovers, int fencedProducts) {
+    }
+
+    /**
+     * A snapshot of one replica.
+     *
+     * @param url       The JDBC url of the replica.
+     * @param available Whether the last heartbeat reached the replica.
+     * @param lagMillis How long ago the newest heartbeat the replica has applied was stamped, or -1 if unavailable.
+     * @param reads     The reads made from the replica.
+     * @param pool      The replica's connection pool.
+     */
+    public record ReplicaStatistics(@NotNull String url, boolean available, long lagMillis, long reads, @NotNull ConnectionPool.Statistics pool) {
+    }
+}
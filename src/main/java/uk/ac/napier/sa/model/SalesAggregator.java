@@ -0,0 +1,263 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the figures behind the monthly report up to date as purchases are made, so that a report can be produced
+ * without scanning the transaction table.
+ * Purchases are bucketed by the hour over a rolling one-month window; purchases that fall out of the window are
+ * subtracted from the running totals as time moves on, each exactly once, so every update and every read costs
+ * amortised constant time. The bucket the window starts in is trimmed to the millisecond, so the totals match the
+ * report query exactly.
+ * Per-product purchase counts are also kept for all time, matching the report's most popular item figure.
+ */
+public final class SalesAggregator {
+
+    private static final long BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Enough hourly buckets for the longest month, plus the current hour.
+     */
+    private static final int BUCKETS = 32 * 24;
+
+    private final Clock clock;
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    private long windowPurchases;
+    private long windowRevenuePence;
+    private final Map<Integer, long[]> windowProducts = new HashMap<>();
+
+    private final Map<Integer, long[]> allTimeProducts = new HashMap<>();
+    private long allTimeMostPopular;
+
+    /**
+     * Every purchase made at or before this time, in milliseconds since the epoch, has been subtracted from the window
+     * totals, matching the report query's {@code purchased > NOW() - INTERVAL '1' MONTH}.
+     */
+    private long windowStart = Long.MIN_VALUE;
+
+    /**
+     * Every bucket for an hour before this one has been emptied.
+     */
+    private long expiredHour = Long.MIN_VALUE;
+    private long advancedAt = Long.MIN_VALUE;
+
+    /**
+     * Create an empty aggregator that reads the time from the system clock.
+     */
+    public SalesAggregator() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * Create an empty aggregator.
+     *
+     * @param clock The clock that decides which purchases have fallen out of the window.
+     */
+    public SalesAggregator(@NotNull Clock clock) {
+        this.clock = clock;
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new Bucket();
+    }
+
+    /**
+     * Record a purchase.
+     *
+     * @param productId The ID of the product purchased.
+     * @param costPence The total cost of the purchase, in pence.
+     * @param purchased When the purchase was made.
+     */
+    public synchronized void record(int productId, long costPence, @NotNull Instant purchased) {
+        long count = ++allTimeProducts.computeIfAbsent(productId, id -> new long[1])[0];
+        if (count > allTimeMostPopular) allTimeMostPopular = count;
+
+        long now = clock.millis();
+        advance(now);
+
+        long time = Math.min(purchased.toEpochMilli(), now);
+        if (time <= windowStart) return;
+
+        long hour = Math.floorDiv(time, BUCKET_MILLIS);
+        Bucket bucket = buckets[index(hour)];
+        if (bucket.hour != hour) bucket.reset(hour);
+        bucket.add(time, costPence, productId);
+
+        windowPurchases++;
+        windowRevenuePence += costPence;
+        windowProducts.computeIfAbsent(productId, id -> new long[1])[0]++;
+    }
+
+    /**
+     * Add to the all-time purchase count of a product without touching the monthly window,
+     * for loading purchases too old to fall inside it.
+     *
+     * @param productId The ID of the product.
+     * @param purchases The number of purchases to add.
+     */
+    public synchronized void recordHistoric(int productId, long purchases) {
+        long count = allTimeProducts.computeIfAbsent(productId, id -> new long[1])[0] += purchases;
+        if (count > allTimeMostPopular) allTimeMostPopular = count;
+    }
+
+    /**
+     * Obtain the start of the rolling window, before which purchases only count towards all-time figures.
+     *
+     * @return One month before now.
+     */
+    public @NotNull Instant windowStart() {
+        return ZonedDateTime.now(clock).minusMonths(1).toInstant();
+    }
+
+    /**
+     * Take a consistent snapshot of the figures.
+     *
+     * @return The purchase count and revenue over the last month, and the purchase count of the most popular product.
+     */
+    public synchronized @NotNull Snapshot snapshot() {
+        advance(clock.millis());
+        return new Snapshot(windowPurchases, windowRevenuePence, allTimeMostPopular);
+    }
+
+    /**
+     * Obtain the number of purchases of each product over the last month.
+     *
+     * @return A copy of the per-product purchase counts.
+     */
+    public synchronized @NotNull Map<Integer, Long> productCounts() {
+        advance(clock.millis());
+        Map<Integer, Long> counts = new HashMap<>(windowProducts.size() * 2);
+        windowProducts.forEach((id, count) -> counts.put(id, count[0]));
+        return counts;
+    }
+
+    /**
+     * Take a consistent snapshot of the figures in a form that can be added to those of other stores.
+     *
+     * @return The purchase count and revenue over the last month, and the all-time purchase count of every product.
+     */
+    public synchronized @NotNull SalesSummary summary() {
+        advance(clock.millis());
+        Map<Integer, Long> counts = new HashMap<>(allTimeProducts.size() * 2);
+        allTimeProducts.forEach((id, count) -> counts.put(id, count[0]));
+        return new SalesSummary(windowPurchases, windowRevenuePence, counts);
+    }
+
+    /**
+     * Subtract every purchase that has fallen out of the window from the running totals: whole buckets for the hours
+     * before the window start, and purchase by purchase for the hour the window starts in.
+     *
+     * @param now The current time, in milliseconds since the epoch.
+     */
+    private void advance(long now) {
+        if (now == advancedAt) return;
+        advancedAt = now;
+
+        long start = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), clock.getZone()).minusMonths(1).toInstant().toEpochMilli();
+        if (start <= windowStart) return;
+        windowStart = start;
+
+        long startHour = Math.floorDiv(start, BUCKET_MILLIS);
+        long from = expiredHour == Long.MIN_VALUE ? startHour - BUCKETS : Math.max(expiredHour, startHour - BUCKETS);
+        for (long hour = from; hour < startHour; hour++) {
+            Bucket bucket = buckets[index(hour)];
+            if (bucket.hour != hour) continue;
+
+            while (bucket.trimmed < bucket.size) expire(bucket, bucket.trimmed++);
+            bucket.reset(Long.MIN_VALUE);
+        }
+        expiredHour = startHour;
+
+        Bucket edge = buckets[index(startHour)];
+        if (edge.hour != startHour) return;
+        edge.sort();
+        while (edge.trimmed < edge.size && edge.times[edge.trimmed] <= start) expire(edge, edge.trimmed++);
+    }
+
+    private void expire(@NotNull Bucket bucket, int i) {
+        windowPurchases--;
+        windowRevenuePence -= bucket.costs[i];
+        long[] total = windowProducts.get(bucket.products[i]);
+        if (--total[0] == 0) windowProducts.remove(bucket.products[i]);
+    }
+
+    private static int index(long hour) {
+        return (int) Math.floorMod(hour, (long) BUCKETS);
+    }
+
+    /**
+     * The purchases made in one hour, kept individually so that the hour the window starts in can be trimmed to the
+     * exact window start. Entries before {@link #trimmed} have already been subtracted from the window totals.
+     */
+    private static final class Bucket {
+        private long hour = Long.MIN_VALUE;
+        private int size;
+        private int trimmed;
+        private boolean sorted = true;
+        private long[] times = new long[0];
+        private long[] costs = new long[0];
+        private int[] products = new int[0];
+
+        private void reset(long hour) {
+            this.hour = hour;
+            size = 0;
+            trimmed = 0;
+            sorted = true;
+        }
+
+        private void add(long time, long costPence, int productId) {
+            if (size == times.length) {
+                int capacity = Math.max(16, size * 2);
+                times = Arrays.copyOf(times, capacity);
+                costs = Arrays.copyOf(costs, capacity);
+                products = Arrays.copyOf(products, capacity);
+            }
+            if (size > trimmed && time < times[size - 1]) sorted = false;
+            times[size] = time;
+            costs[size] = costPence;
+            products[size] = productId;
+            size++;
+        }
+
+        /**
+         * Put the entries that have not been trimmed into time order. Purchases are almost always recorded in order,
+         * so this only does any work after a bulk load.
+         */
+        private void sort() {
+            if (sorted) return;
+            Integer[] order = new Integer[size - trimmed];
+            for (int i = 0; i < order.length; i++) order[i] = trimmed + i;
+            Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+
+            long[] t = new long[order.length];
+            long[] c = new long[order.length];
+            int[] p = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                t[i] = times[order[i]];
+                c[i] = costs[order[i]];
+                p[i] = products[order[i]];
+            }
+            System.arraycopy(t, 0, times, trimmed, t.length);
+            System.arraycopy(c, 0, costs, trimmed, c.length);
+            System.arraycopy(p, 0, products, trimmed, p.length);
+            sorted = true;
+        }
+    }
+
+    /**
+     * The figures behind the monthly report.
+     *
+     * @param purchases        The number of purchases over the last month.
+     * @param revenuePence     The revenue over the last month, in pence.
+     * @param mostPopularCount The number of purchases of the most purchased product.
+     */
+    public record Snapshot(long purchases, long revenuePence, long mostPopularCount) {
+    }
+}
@@ -0,0 +1,61 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The partial figures behind the monthly report, in a form that can be added up across several databases.
+ *
+ * @param purchases     The number of purchases over the last month.
+ * @param revenuePence  The revenue over the last month, in pence.
+ * @param productCounts The number of purchases of each product, for all time, keyed by product ID.
+ */
+public record SalesSummary(long purchases, long revenuePence, @NotNull Map<Integer, Long> productCounts) {
+
+    /**
+     * A summary of no purchases.
+     *
+     * @return The empty summary.
+     */
+    public static @NotNull SalesSummary empty() {
+        return new SalesSummary(0, 0, Map.of());
+    }
+
+    /**
+     * Add two summaries together. Purchases of the same product ID are counted together.
+     *
+     * @param other The summary to add to this one.
+     * @return The combined summary.
+     */
+    public @NotNull SalesSummary merge(@NotNull SalesSummary other) {
+        Map<Integer, Long> counts = new HashMap<>(productCounts);
+        other.productCounts.forEach((id, count) -> counts.merge(id, count, Long::sum));
+        return new SalesSummary(purchases + other.purchases, revenuePence + other.revenuePence, counts);
+    }
+
+    /**
+     * Obtain the number of purchases of the most purchased product.
+     *
+     * @return The highest product count, or 0 if nothing has been purchased.
+     */
+    public long mostPopularCount() {
+        long most = 0;
+        for (long count : productCounts.values()) most = Math.max(most, count);
+        return most;
+    }
+
+    /**
+     * Produce the monthly report from this summary.
+     *
+     * @return A map of purchases, revenue and popular items, as {@link RemoteDatabaseManager#generateReport()} returns.
+     */
+    public @NotNull Map<String, Object> report() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("purchases", (int) purchases);
+        stats.put("revenue", revenuePence / 100.0d);
+        stats.put("most-popular", (int) mostPopularCount());
+        return stats;
+    }
+}
@@ -0,0 +1,192 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Brings a database up to date by running only the migration scripts it has not seen before.
+ * Scripts are named {@code V<version>__<description>.sql}; schema migrations live in the migration directory itself
+ * and seed data migrations in its {@code seed} sub-directory. Every script that is applied is recorded, with a checksum
+ * of its contents, in the {@code schema_history} table, so a database that is already up to date costs one query to check.
+ */
+public final class SchemaMigrator {
+
+    /**
+     * The profiles in which seed data is loaded. Any other profile, such as {@code prod}, only receives schema migrations.
+     */
+    private static final Set<String> SEED_PROFILES = Set.of("dev", "test");
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private static final String CREATE_HISTORY = "CREATE TABLE IF NOT EXISTS schema_history (" +
+                                                 "kind varchar(16) NOT NULL, " +
+                                                 "version int NOT NULL, " +
+                                                 "description varchar(255) NOT NULL, " +
+                                                 "checksum bigint NOT NULL, " +
+                                                 "applied TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                                                 "PRIMARY KEY (kind, version))";
+
+    private final Path directory;
+    private final String profile;
+
+    /**
+     * Create a migrator for a directory of migration scripts.
+     *
+     * @param directory The directory holding the schema migrations, and the seed migrations in its {@code seed} sub-directory.
+     * @param profile   The profile being run, which decides whether seed data is loaded.
+     */
+    public SchemaMigrator(@NotNull Path directory, @NotNull String profile) {
+        this.directory = directory;
+        this.profile = profile;
+    }
+
+    /**
+     * Apply every pending migration, schema migrations first, each in version order.
+     *
+     * @param conn The connection the migrations are run on.
+     * @return The migrations that were applied, which is empty if the database was already up to date.
+     * @throws IOException  If a script cannot be read.
+     * @throws SQLException If a script fails, in which case no later migration is attempted.
+     */
+    public @NotNull List<Migration> migrate(@NotNull Connection conn) throws IOException, SQLException {
+        createHistory(conn);
+
+        Map<String, Map<Integer, Long>> applied = applied(conn);
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : available()) {
+            if (!applied.getOrDefault(migration.kind(), Map.of()).containsKey(migration.version())) {
+                pending.add(migration);
+            }
+        }
+
+        for (Migration migration : pending) {
+            apply(conn, migration);
+        }
+        return pending;
+    }
+
+    /**
+     * Check that no migration which has already been applied has been edited since.
+     * A database with no history yet is created one, and passes.
+     *
+     * @param conn The connection to the database being checked.
+     * @return The applied migrations whose scripts no longer match their recorded checksum.
+     * @throws IOException  If a script cannot be read.
+     * @throws SQLException If the history cannot be read.
+     */
+    public @NotNull List<Migration> validate(@NotNull Connection conn) throws IOException, SQLException {
+        createHistory(conn);
+        Map<String, Map<Integer, Long>> applied = applied(conn);
+        List<Migration> modified = new ArrayList<>();
+
+        for (Migration migration : available()) {
+            Long checksum = applied.getOrDefault(migration.kind(), Map.of()).get(migration.version());
+            if (checksum != null && checksum != checksum(migration.script())) {
+                modified.add(migration);
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Find the migration scripts that apply to this profile.
+     *
+     * @return The schema migrations in version order, followed by the seed migrations in version order.
+     * @throws IOException If a migration directory cannot be listed.
+     */
+    public @NotNull List<Migration> available() throws IOException {
+        List<Migration> migrations = new ArrayList<>(scripts(Migration.SCHEMA, directory));
+        if (SEED_PROFILES.contains(profile)) {
+            migrations.addAll(scripts(Migration.SEED, directory.resolve("seed")));
+        }
+        return migrations;
+    }
+
+    private static @NotNull List<Migration> scripts(@NotNull String kind, @NotNull Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return List.of();
+
+        List<Migration> migrations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher m = SCRIPT_NAME.matcher(file.getFileName().toString());
+                if (m.matches() && Files.isRegularFile(file)) {
+                    migrations.add(new Migration(kind, Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '), file));
+                }
+            }
+        }
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        return migrations;
+    }
+
+    private static void createHistory(@NotNull Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_HISTORY);
+        }
+    }
+
+    private static @NotNull Map<String, Map<Integer, Long>> applied(@NotNull Connection conn) throws SQLException {
+        Map<String, Map<Integer, Long>> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet results = stmt.executeQuery("SELECT kind, version, checksum FROM schema_history")) {
+            while (results.next()) {
+                applied.computeIfAbsent(results.getString(1), k -> new HashMap<>()).put(results.getInt(2), results.getLong(3));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Run a migration script and record it in the history, checksumming the script as it is streamed.
+     */
+    private static void apply(@NotNull Connection conn, @NotNull Migration migration) throws IOException, SQLException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(migration.script()), crc);
+             BufferedReader script = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            new SqlScriptRunner(conn).run(script);
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO schema_history (kind, version, description, checksum) VALUES (?, ?, ?, ?)")) {
+            stmt.setString(1, migration.kind());
+            stmt.setInt(2, migration.version());
+            stmt.setString(3, migration.description());
+            stmt.setLong(4, crc.getValue());
+            stmt.executeUpdate();
+        }
+    }
+
+    private static long checksum(@NotNull Path script) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(script), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * A migration script.
+     *
+     * @param kind        Either {@link #SCHEMA} or {@link #SEED}.
+     * @param version     The version of the script within its kind.
+     * @param description What the script does, taken from its file name.
+     * @param script      The path of the script.
+     */
+    public record Migration(String kind, int version, String description, Path script) {
+        public static final String SCHEMA = "schema";
+        public static final String SEED = "seed";
+    }
+}
@@ -0,0 +1,490 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
+import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Purchase;
+import uk.ac.napier.sa.controller.adt.Receipt;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Spreads a chain of stores over several databases, one shard per store or region.
+ * Product, customer and transaction operations belong to a single store and take its ID, which routes them to its
+ * shard. Chain-wide operations, such as the monthly report and the stock monitor, are sent to every shard at once and
+ * their partial results merged, so they take as long as the slowest shard rather than the sum of them all.
+ * Product IDs are taken to come from one catalogue shared by every store, so purchases of the same product in
+ * different stores are counted together, and prices are the same in every store.
+ * <p>
+ * This is not a {@link RemoteDatabaseManager} itself, as most of its operations only mean something for one store.
+ */
+public final class ShardedDatabaseManager implements AutoCloseable {
+
+    private static final int HISTORY_PAGE_SIZE = 500;
+
+    private final Map<Integer, RemoteDatabaseManager> shards;
+    private final ExecutorService executor;
+
+    /**
+     * Spread the stores over the given shards, querying them on virtual threads where available.
+     *
+     * @param shards The database manager of every store, keyed by store ID. Stores may share a manager.
+     */
+    public ShardedDatabaseManager(@NotNull Map<Integer, ? extends RemoteDatabaseManager> shards) {
+        this(shards, TaskExecutors.newExecutor("shard"));
+    }
+
+    /**
+     * Spread the stores over the given shards, querying them on the given executor.
+     *
+     * @param shards   The database manager of every store, keyed by store ID. Stores may share a manager.
+     * @param executor The executor the shards are queried on, which is shut down when this is closed.
+     */
+    public ShardedDatabaseManager(@NotNull Map<Integer, ? extends RemoteDatabaseManager> shards, @NotNull ExecutorService executor) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("At least one store is required");
+        this.shards = Collections.unmodifiableMap(new TreeMap<>(shards));
+        this.executor = executor;
+    }
+
+    /**
+     * Obtain the shard that holds a store's products and transactions, for operations that are not routed here.
+     *
+     * @param storeId The ID of the store.
+     * @return The store's database manager.
+     * @throws IllegalArgumentException If there is no such store.
+     */
+    public @NotNull RemoteDatabaseManager store(int storeId) {
+        RemoteDatabaseManager shard = shards.get(storeId);
+        if (shard == null) throw new IllegalArgumentException("Unknown store " + storeId);
+        return shard;
+    }
+
+    /**
+     * Obtain the IDs of every store.
+     *
+     * @return The store IDs, in ascending order.
+     */
+    public @NotNull Set<Integer> stores() {
+        return shards.keySet();
+    }
+
+    /**
+     * Initialise every shard with the same script.
+     *
+     * @param path The path of the script.
+     * @return True if every shard was initialised, false otherwise.
+     */
+    public boolean init(@NotNull String path) {
+        return all(shard -> shard.init(path));
+    }
+
+    /**
+     * Bring every shard's schema up to date.
+     *
+     * @param directory The directory holding the migration scripts.
+     * @param profile   The profile being run.
+     * @return True if every shard is up to date, false otherwise.
+     */
+    public boolean migrate(@NotNull String directory, @NotNull String profile) {
+        return all(shard -> shard.migrate(directory, profile));
+    }
+
+    /**
+     * Disconnect from every shard.
+     *
+     * @return True if every shard disconnected, false otherwise.
+     */
+    public boolean disconnect() {
+        return all(RemoteDatabaseManager::disconnect);
+    }
+
+    /**
+     * Reorder every out of stock product in every store.
+     *
+     * @return True if any store placed an order, false otherwise.
+     */
+    public boolean noStock() {
+        return gather(RemoteDatabaseManager::noStock).values().stream().anyMatch(Boolean::booleanValue);
+    }
+
+    /**
+     * Find the products that are low in stock in any store.
+     *
+     * @return The IDs of the products, in ascending order and without repeats.
+     */
+    public @NotNull List<Integer> stockMonitor() {
+        SortedSet<Integer> low = new TreeSet<>();
+        lowStockByStore().values().forEach(low::addAll);
+        return new ArrayList<>(low);
+    }
+
+    /**
+     * Find the products that are low in stock in each store.
+     *
+     * @return The IDs of the low stock products, keyed by store ID.
+     */
+    public @NotNull Map<Integer, List<Integer>> lowStockByStore() {
+        Map<Integer, List<Integer>> low = new TreeMap<>();
+        gather(RemoteDatabaseManager::stockMonitor).forEach((store, ids) -> {
+            List<Integer> list = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                if (id != null) list.add(id);
+            }
+            low.put(store, list);
+        });
+        return low;
+    }
+
+    /**
+     * Grant a loyalty card to every eligible customer of every store.
+     *
+     * @return The IDs of the customers granted a card, in ascending order and without repeats.
+     */
+    public @NotNull List<Integer> grantAllEligibleLoyalty() {
+        SortedSet<Integer> granted = new TreeSet<>();
+        gather(RemoteDatabaseManager::grantAllEligibleLoyalty).values().forEach(granted::addAll);
+        return new ArrayList<>(granted);
+    }
+
+    /**
+     * Produce the monthly report for the whole chain by adding up the sales summary of every shard.
+     *
+     * @return A map of purchases, revenue and popular items, or an empty map if any shard could not report.
+     */
+    public @NotNull Map<String, Object> generateReport() {
+        SalesSummary summary = salesSummary();
+        return summary == null ? Collections.emptyMap() : summary.report();
+    }
+
+    /**
+     * Add up the sales summary of every shard.
+     *
+     * @return The chain-wide summary, or null if any shard could not report.
+     */
+    public @Nullable SalesSummary salesSummary() {
+        SalesSummary total = SalesSummary.empty();
+        for (SalesSummary summary : gather(RemoteDatabaseManager::salesSummary).values()) {
+            if (summary == null) return null;
+            total = total.merge(summary);
+        }
+        return total;
+    }
+
+    /**
+     * A function used to print the last N purchases made anywhere in the chain.
+     *
+     * @param n The number of purchases to see.
+     */
+    public void printLastNPurchases(int n) {
+        if (!forEachPurchase(n, System.out::print)) {
+            System.out.println("The rest of the purchase history could not be read.");
+        }
+    }
+
+    /**
+     * Pass the last N purchases made anywhere in the chain, newest first, to an action.
+     * Every shard is paged through independently and the pages merged, so no more than a page per shard is held in memory.
+     *
+     * @param limit  The number of purchases.
+     * @param action Receives each purchase.
+     * @return True if every purchase asked for was passed to the action, false if a store's history could not be read,
+     * in which case the action has received only the purchases before the first page that failed.
+     */
+    public boolean forEachPurchase(int limit, @NotNull Consumer<Purchase> action) {
+        if (limit <= 0) return true;
+        int pageSize = Math.min(limit, HISTORY_PAGE_SIZE);
+
+        List<Cursor> cursors = new ArrayList<>();
+        Map<Integer, List<Purchase>> first = gather(shard -> shard.purchasesBefore(null, pageSize));
+        if (first.containsValue(null)) return false;
+        first.forEach((store, page) -> cursors.add(new Cursor(shards.get(store), page, pageSize)));
+
+        PriorityQueue<Cursor> newest = new PriorityQueue<>(Comparator
+                .comparing((Cursor c) -> c.head().getPurchased()).reversed()
+                .thenComparing(Comparator.comparingInt((Cursor c) -> c.head().getTransactionId()).reversed()));
+        for (Cursor cursor : cursors) {
+            if (cursor.head() != null) newest.add(cursor);
+        }
+
+        for (int remaining = limit; remaining > 0 && !newest.isEmpty(); remaining--) {
+            Cursor cursor = newest.poll();
+            action.accept(cursor.next());
+            if (cursor.failed) return false;
+            if (cursor.head() != null) newest.add(cursor);
+        }
+        return true;
+    }
+
+    /**
+     * Change the price of a product in every store, as prices are the same across the chain.
+     *
+     * @param id       The ID of the product.
+     * @param price    The new price.
+     * @param username The manager's username.
+     * @param password The manager's password.
+     * @return True if every shard changed the price, false otherwise.
+     */
+    public boolean changePrice(int id, double price, @NotNull String username, @NotNull String password) {
+        return all(shard -> shard.changePrice(id, price, username, password));
+    }
+
+    /**
+     * Apply a price list to every shard at once, as prices are the same in every store.
+     *
+     * @return The outcome, with the products changed summed over the shards and the slowest shard's timings,
+     * or null if any shard could not apply it.
+     */
+    public @Nullable PriceList.Update changePrices(@NotNull String file, @NotNull String username, @NotNull String password) {
+        PriceList.Update merged = null;
+        for (PriceList.Update update : gather(shard -> shard.changePrices(file, username, password)).values()) {
+            if (update == null) return null;
+            merged = merged == null ? update : new PriceList.Update(update.rows(), merged.changed() + update.changed(), update.errors(),
+                    max(merged.reading(), update.reading()), max(merged.applying(), update.applying()));
+        }
+        return merged;
+    }
+
+    /**
+     * Stop querying the shards. The shards themselves are left connected.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Obtain a product as one store holds it, with that store's stock.
+     *
+     * @param storeId The ID of the store.
+     * @param id      The ID of the product.
+     * @return The product, or null if the store does not have it.
+     */
+    public @Nullable Product getProduct(int storeId, int id) {
+        return store(storeId).getProduct(id);
+    }
+
+    /**
+     * Obtain several products as one store holds them.
+     *
+     * @param storeId The ID of the store.
+     * @param ids     The IDs of the products.
+     * @return The products the store has, in ID order.
+     */
+    public @NotNull List<Product> getProducts(int storeId, @NotNull Collection<Integer> ids) {
+        return store(storeId).getProducts(ids);
+    }
+
+    /**
+     * Obtain every product one store holds.
+     *
+     * @param storeId The ID of the store.
+     * @return The products, in ID order.
+     */
+    public @NotNull List<Product> getAllProducts(int storeId) {
+        return store(storeId).getAllProducts();
+    }
+
+    /**
+     * Obtain the name of a product in one store.
+     *
+     * @param storeId The ID of the store.
+     * @param id      The ID of the product.
+     * @return The name, or null if the store does not have the product.
+     */
+    public @Nullable String retrieveProductName(int storeId, int id) {
+        return store(storeId).retrieveProductName(id);
+    }
+
+    /**
+     * Apply a sale to a product in one store.
+     *
+     * @param storeId  The ID of the store.
+     * @param id       The ID of the product.
+     * @param saleType The type of sale.
+     * @return True if the sale was added, false otherwise.
+     */
+    public boolean sell(int storeId, int id, int saleType) {
+        return store(storeId).sell(id, saleType);
+    }
+
+    /**
+     * Change a product's reorder level in one store.
+     *
+     * @param storeId      The ID of the store.
+     * @param id           The ID of the product.
+     * @param reorderLevel The stock level at or below which the product is reordered.
+     * @return True if the level was changed, false otherwise.
+     */
+    public boolean setReorderLevel(int storeId, int id, int reorderLevel) {
+        return store(storeId).setReorderLevel(id, reorderLevel);
+    }
+
+    /**
+     * Make a purchase in one store.
+     *
+     * @param storeId    The ID of the store.
+     * @param customerId The ID of the customer.
+     * @param productId  The ID of the product.
+     * @return True if the purchase was made, false otherwise.
+     */
+    public boolean purchase(int storeId, int customerId, int productId) {
+        return store(storeId).purchase(customerId, productId);
+    }
+
+    /**
+     * Make a purchase in one store and obtain its receipt.
+     *
+     * @param storeId    The ID of the store.
+     * @param customerId The ID of the customer.
+     * @param productId  The ID of the product.
+     * @return The receipt, or null if the purchase could not be made.
+     */
+    public @Nullable Receipt completePurchase(int storeId, int customerId, int productId) {
+        return store(storeId).completePurchase(customerId, productId);
+    }
+
+    /**
+     * Buy a basket of products in one store.
+     *
+     * @param storeId    The ID of the store.
+     * @param customerId The ID of the customer.
+     * @param items      The number of units of each product, keyed by product ID.
+     * @return The receipt, or null if the basket could not be bought.
+     */
+    public @Nullable BasketReceipt purchaseBasket(int storeId, int customerId, @NotNull Map<Integer, Integer> items) {
+        return store(storeId).purchaseBasket(customerId, items);
+    }
+
+    /**
+     * Check whether a customer of one store may be given a loyalty card.
+     *
+     * @param storeId The ID of the store.
+     * @param id      The ID of the customer.
+     * @return True if the customer is eligible, false otherwise.
+     */
+    public boolean checkLoyaltyCardEligibility(int storeId, int id) {
+        return store(storeId).checkLoyaltyCardEligibility(id);
+    }
+
+    /**
+     * Give a customer of one store a loyalty card.
+     *
+     * @param storeId The ID of the store.
+     * @param id      The ID of the customer.
+     * @return True if the card was granted, false otherwise.
+     */
+    public boolean grantLoyalty(int storeId, int id) {
+        return store(storeId).grantLoyalty(id);
+    }
+
+    /**
+     * Obtain a page of one store's purchase history, newest first.
+     *
+     * @param storeId The ID of the store.
+     * @param before  The last purchase of the previous page, or null for the first page.
+     * @param limit   The most purchases to return.
+     * @return The purchases, or null if the history could not be read.
+     */
+    public @Nullable List<Purchase> purchasesBefore(int storeId, @Nullable Purchase before, int limit) {
+        return store(storeId).purchasesBefore(before, limit);
+    }
+
+    /**
+     * Export one store's transactions made in a period.
+     *
+     * @param storeId The ID of the store.
+     * @param from    The start of the period, or null for the first transaction.
+     * @param to      The end of the period, which is not included, or null for the last transaction.
+     * @param file    The file to write, which is replaced if it exists.
+     * @return The number of transactions exported and the size of the file, or null if the export failed.
+     */
+    public @Nullable TransactionExport.Result exportTransactions(int storeId, @Nullable Instant from, @Nullable Instant to, @NotNull String file) {
+        return store(storeId).exportTransactions(from, to, file);
+    }
+
+    /**
+     * Load one store's customers, products, sales and transactions from CSV files.
+     *
+     * @param storeId   The ID of the store.
+     * @param directory The directory holding the files.
+     * @return The outcome for each table imported, or null if the import failed.
+     */
+    public @Nullable List<CatalogImporter.Result> importCatalog(int storeId, @NotNull String directory) {
+        return store(storeId).importCatalog(directory);
+    }
+
+    private static @NotNull Duration max(@NotNull Duration a, @NotNull Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private boolean all(@NotNull Function<RemoteDatabaseManager, Boolean> operation) {
+        return gather(operation).values().stream().allMatch(Boolean::booleanValue);
+    }
+
+    /**
+     * Run an operation on every distinct shard at once and wait for them all.
+     *
+     * @param operation The operation to run.
+     * @return The result of every store, keyed by store ID in ascending order.
+     */
+    private <T> @NotNull Map<Integer, T> gather(@NotNull Function<RemoteDatabaseManager, T> operation) {
+        Map<RemoteDatabaseManager, CompletableFuture<T>> futures = new IdentityHashMap<>();
+        for (RemoteDatabaseManager shard : shards.values()) {
+            futures.computeIfAbsent(shard, s -> CompletableFuture.supplyAsync(() -> operation.apply(s), executor));
+        }
+
+        Map<Integer, T> results = new TreeMap<>();
+        Map<RemoteDatabaseManager, Boolean> reported = new IdentityHashMap<>();
+        try {
+            for (Map.Entry<Integer, RemoteDatabaseManager> store : shards.entrySet()) {
+                // A shard shared by several stores reports once, under its lowest store ID.
+                if (reported.put(store.getValue(), Boolean.TRUE) != null) continue;
+                results.put(store.getKey(), futures.get(store.getValue()).join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Walks one shard's purchase history a page at a time.
+     */
+    private static final class Cursor {
+        private final RemoteDatabaseManager shard;
+        private final int pageSize;
+        private List<Purchase> page;
+        private int position;
+        private boolean failed;
+
+        private Cursor(@NotNull RemoteDatabaseManager shard, @NotNull List<Purchase> page, int pageSize) {
+            this.shard = shard;
+            this.page = page;
+            this.pageSize = pageSize;
+        }
+
+        private @Nullable Purchase head() {
+            return position < page.size() ? page.get(position) : null;
+        }
+
+        private @NotNull Purchase next() {
+            Purchase purchase = page.get(position++);
+            if (position == page.size() && page.size() == pageSize) {
+                List<Purchase> next = shard.purchasesBefore(purchase, pageSize);
+                failed = next == null;
+                page = failed ? List.of() : next;
+                position = 0;
+            }
+            return purchase;
+        }
+    }
+}
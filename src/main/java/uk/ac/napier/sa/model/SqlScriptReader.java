@@ -0,0 +1,141 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a SQL script into statements as it is streamed in, without ever holding more than one statement in memory.
+ * Statements end at a semicolon that is not inside a quoted string, identifier or comment, so statements may span
+ * several lines and several statements may share a line. Comments are stripped from the statements returned.
+ */
+public final class SqlScriptReader {
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private final StringBuilder statement = new StringBuilder(256);
+    private int position;
+    private int limit;
+
+    /**
+     * Create a reader over a SQL script.
+     *
+     * @param in The script, which is read in large chunks and so need not be buffered.
+     */
+    public SqlScriptReader(@NotNull Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next statement from the script.
+     *
+     * @return The statement, without its terminating semicolon, or null once the script is exhausted.
+     * @throws IOException If the script cannot be read.
+     */
+    public @Nullable String next() throws IOException {
+        statement.setLength(0);
+        int c;
+
+        while ((c = read()) != -1) {
+            switch (c) {
+                case ';' -> {
+                    String sql = statement.toString().trim();
+                    statement.setLength(0);
+                    if (!sql.isEmpty()) return sql;
+                }
+                case '\'', '"', '`' -> quoted((char) c);
+                case '#' -> skipLine();
+                case '-' -> {
+                    if (peek() != '-') {
+                        statement.append('-');
+                        break;
+                    }
+                    read();
+                    int after = peek();
+                    if (after == -1 || Character.isWhitespace(after)) {
+                        skipLine();
+                    } else {
+                        statement.append("--");
+                    }
+                }
+                case '/' -> {
+                    if (peek() == '*') {
+                        read();
+                        skipBlock();
+                    } else {
+                        statement.append('/');
+                    }
+                }
+                default -> statement.append((char) c);
+            }
+        }
+
+        String sql = statement.toString().trim();
+        statement.setLength(0);
+        return sql.isEmpty() ? null : sql;
+    }
+
+    /**
+     * Copy a quoted string or identifier into the statement, honouring doubled quotes and backslash escapes.
+     *
+     * @param quote The opening quote character.
+     */
+    private void quoted(char quote) throws IOException {
+        statement.append(quote);
+        int c;
+
+        while ((c = read()) != -1) {
+            statement.append((char) c);
+            if (c == '\\' && quote != '`') {
+                int escaped = read();
+                if (escaped == -1) return;
+                statement.append((char) escaped);
+            } else if (c == quote) {
+                if (peek() != quote) return;
+                statement.append((char) read());
+            }
+        }
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '\n') break;
+        }
+        statement.append('\n');
+    }
+
+    private void skipBlock() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '*' && peek() == '/') {
+                read();
+                break;
+            }
+        }
+        statement.append(' ');
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) return false;
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
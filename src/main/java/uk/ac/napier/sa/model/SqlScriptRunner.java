@@ -0,0 +1,81 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Runs a SQL script against a connection inside a single transaction.
+ * Consecutive INSERT statements are sent to the server as JDBC batches rather than one round trip each,
+ * and the script is streamed statement by statement, so memory use does not grow with the size of the script.
+ */
+public final class SqlScriptRunner {
+
+    private static final int BATCH_SIZE = 1_000;
+
+    private final Connection connection;
+
+    /**
+     * Create a runner for a connection.
+     *
+     * @param connection The connection the script is run on.
+     */
+    public SqlScriptRunner(@NotNull Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Run every statement of a script and commit them together.
+     * If any statement fails, the work is rolled back (DDL statements aside, which MySQL always commits).
+     *
+     * @param script The script to be run.
+     * @return The number of statements run.
+     * @throws IOException  If the script cannot be read.
+     * @throws SQLException If a statement fails.
+     */
+    public int run(@NotNull Reader script) throws IOException, SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (Statement stmt = connection.createStatement()) {
+            SqlScriptReader reader = new SqlScriptReader(script);
+            int executed = 0;
+            int batched = 0;
+            String sql;
+
+            while ((sql = reader.next()) != null) {
+                if (isInsert(sql)) {
+                    stmt.addBatch(sql);
+                    if (++batched == BATCH_SIZE) {
+                        stmt.executeBatch();
+                        batched = 0;
+                    }
+                } else {
+                    if (batched > 0) {
+                        stmt.executeBatch();
+                        batched = 0;
+                    }
+                    stmt.execute(sql);
+                }
+                executed++;
+            }
+
+            if (batched > 0) stmt.executeBatch();
+            connection.commit();
+            return executed;
+        } catch (IOException | SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean isInsert(@NotNull String sql) {
+        return sql.regionMatches(true, 0, "INSERT", 0, 6);
+    }
+}
@@ -0,0 +1,122 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A least-recently-used cache of prepared statements belonging to a single pooled connection.
+ * Statements are keyed by their SQL template, so every query must bind its values through {@code ?} parameters.
+ * A cache is only ever used by the thread that has borrowed its connection, so it needs no locking of its own.
+ */
+public final class StatementCache {
+
+    private final Connection connection;
+    private final Counters counters;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    StatementCache(@NotNull Connection connection, int capacity, @NotNull Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= capacity) return false;
+                counters.evictions.increment();
+                close(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Obtain the prepared statement for a SQL template, preparing it on first use.
+     * The statement belongs to the cache and must not be closed by the caller.
+     *
+     * @param sql               The SQL template.
+     * @param autoGeneratedKeys Either {@link java.sql.Statement#RETURN_GENERATED_KEYS} or {@link java.sql.Statement#NO_GENERATED_KEYS}.
+     * @return The prepared statement.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    @NotNull PreparedStatement prepare(@NotNull String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            counters.hits.increment();
+            return stmt;
+        }
+
+        counters.misses.increment();
+        stmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, stmt);
+        return stmt;
+    }
+
+    /**
+     * Clear the batches and parameters a borrower left on its statements, so the next borrower cannot execute them.
+     * A statement that cannot be cleared is closed and forgotten.
+     */
+    void reset() {
+        Iterator<PreparedStatement> it = statements.values().iterator();
+        while (it.hasNext()) {
+            PreparedStatement stmt = it.next();
+            try {
+                stmt.clearBatch();
+                stmt.clearParameters();
+            } catch (SQLException e) {
+                close(stmt);
+                it.remove();
+            }
+        }
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) {
+    }
+
+    private static void close(@NotNull PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Hit, miss and eviction counters shared by every statement cache of a pool.
+     */
+    static final class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        @NotNull Statistics snapshot() {
+            return new Statistics(hits.sum(), misses.sum(), evictions.sum());
+        }
+    }
+
+    /**
+     * A snapshot of statement cache usage across a pool.
+     *
+     * @param hits      The number of lookups answered by an already-prepared statement.
+     * @param misses    The number of lookups that had to prepare a new statement.
+     * @param evictions The number of statements closed to make room for others.
+     */
+    public record Statistics(long hits, long misses, long evictions) {
+
+        /**
+         * The fraction of lookups answered from the cache.
+         *
+         * @return A value between 0 and 1.
+         */
+        public double hitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0d : (double) hits / lookups;
+        }
+    }
+}
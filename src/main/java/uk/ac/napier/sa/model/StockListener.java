@@ -0,0 +1,27 @@
+package uk.ac.napier.sa.model;
+
+/**
+ * Notified when a product's stock crosses its reorder level.
+ * Notifications are delivered on the thread that changed the stock, after the change has been made, so listeners
+ * should return quickly and hand any slow work, such as placing an order, to another thread.
+ */
+public interface StockListener {
+
+    /**
+     * A product's stock has fallen to or below its reorder level.
+     *
+     * @param productId    The ID of the product.
+     * @param stock        The stock now held.
+     * @param reorderLevel The stock level at or below which the product is reordered.
+     */
+    void lowStock(int productId, int stock, int reorderLevel);
+
+    /**
+     * A product's stock has risen back above its reorder level.
+     *
+     * @param productId The ID of the product.
+     * @param stock     The stock now held.
+     */
+    default void restocked(int productId, int stock) {
+    }
+}
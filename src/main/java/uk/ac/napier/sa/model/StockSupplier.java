@@ -0,0 +1,30 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * A supplier that purchase orders are placed with.
+ */
+public interface StockSupplier {
+
+    /**
+     * Place a set of purchase orders.
+     * The orders have already been recorded, and the stock is taken to have arrived once this returns; if it throws,
+     * the stock and the records of every order are taken back.
+     *
+     * @param orders The orders, at most one per product.
+     */
+    void order(@NotNull List<ReplenishmentEngine.Order> orders);
+
+    /**
+     * A supplier that delivers every order straight away, for use until a real supplier is connected.
+     *
+     * @return The supplier.
+     */
+    static @NotNull StockSupplier local() {
+        return orders -> {
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that asynchronous operations run on.
+ */
+public final class TaskExecutors {
+
+    private TaskExecutors() {
+    }
+
+    /**
+     * Create an executor for blocking database work.
+     * On JDK 21 and later every task gets its own virtual thread, so a task blocked on the database costs no platform thread.
+     * On older JDKs a bounded pool of daemon platform threads is used instead.
+     *
+     * @param name The prefix for the names of the executor's threads.
+     * @return A new executor, which the caller must shut down.
+     */
+    public static @NotNull ExecutorService newExecutor(@NotNull String name) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return newPlatformExecutor(name, Math.max(4, Runtime.getRuntime().availableProcessors() * 4));
+        }
+    }
+
+    /**
+     * Create a bounded pool of daemon platform threads, whose threads time out when idle.
+     *
+     * @param name    The prefix for the names of the pool's threads.
+     * @param threads The maximum number of threads.
+     * @return A new executor, which the caller must shut down.
+     */
+    public static @NotNull ExecutorService newPlatformExecutor(@NotNull String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,586 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compact, column-oriented file of transactions with their products and customers, written as the transactions
+ * are streamed from the database and read back without it.
+ * <p>
+ * The file starts with {@link #MAGIC} and a version, followed by groups of up to {@link Settings#rowsPerGroup()}
+ * transactions in time order. Each group has a header giving its number of rows, its earliest and latest purchase
+ * times and the lengths of its columns, followed by each column on its own, encoded and then deflated. IDs and times
+ * are stored as variable-length differences from the row before, amounts as variable-length pence, and names as a
+ * dictionary of the group's distinct names followed by an index per row. Memory use depends on the group size alone,
+ * however many transactions are exported, and a reader skips any group outside the period it asks for, and decodes
+ * only the columns it needs.
+ */
+public final class TransactionExport {
+
+    /**
+     * The bytes every export starts with.
+     */
+    public static final int MAGIC = 0x44535458;
+
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+
+    private static final int ID = 0;
+    private static final int PURCHASED = 1;
+    private static final int COST = 2;
+    private static final int SALE = 3;
+    private static final int PRODUCT = 4;
+    private static final int PRODUCT_NAME = 5;
+    private static final int CUSTOMER = 6;
+    private static final int CUSTOMER_NAME = 7;
+    private static final int LOYAL = 8;
+    private static final int COLUMNS = 9;
+    private static final int GROUP_HEADER_BYTES = 4 + 8 + 8 + COLUMNS * 8;
+
+    private TransactionExport() {
+    }
+
+    /**
+     * Streams transactions into an export file, one group at a time.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final Deflater deflater;
+        private final long started = System.nanoTime();
+
+        private final int[] ids;
+        private final long[] purchased;
+        private final long[] costs;
+        private final int[] sales;
+        private final int[] products;
+        private final String[] productNames;
+        private final int[] customers;
+        private final String[] customerNames;
+        private final boolean[] loyal;
+        private int size;
+
+        private final Bytes raw = new Bytes();
+        private final Bytes payload = new Bytes();
+        private final int[] codes;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER_BYTES);
+        private long rows;
+        private long groups;
+        private long bytes = FILE_HEADER_BYTES;
+
+        /**
+         * Create an export file, replacing any file already there.
+         *
+         * @param file     The file.
+         * @param settings The size of the groups and how hard they are compressed.
+         * @throws IOException If the file cannot be created.
+         */
+        public Writer(@NotNull Path file, @NotNull Settings settings) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.deflater = new Deflater(settings.compressionLevel());
+
+            int n = settings.rowsPerGroup();
+            ids = new int[n];
+            purchased = new long[n];
+            costs = new long[n];
+            sales = new int[n];
+            products = new int[n];
+            productNames = new String[n];
+            customers = new int[n];
+            customerNames = new String[n];
+            loyal = new boolean[n];
+            codes = new int[n];
+
+            ByteBuffer start = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+            while (start.hasRemaining()) channel.write(start);
+        }
+
+        /**
+         * Add a transaction. Transactions should be added in time order, so that readers can skip whole groups.
+         *
+         * @param id           The ID of the transaction.
+         * @param purchased    When it was made, in milliseconds since the epoch.
+         * @param costPence    What the customer paid, in pence.
+         * @param sale         The ID of the sale applied, or 0 for none.
+         * @param product      The ID of the product.
+         * @param productName  The name of the product.
+         * @param customer     The ID of the customer.
+         * @param customerName The name of the customer.
+         * @param isLoyal      Whether the customer is on the loyalty card scheme.
+         * @throws IOException If a full group cannot be written.
+         */
+        public void add(int id, long purchased, long costPence, int sale, int product, @NotNull String productName,
+                        int customer, @NotNull String customerName, boolean isLoyal) throws IOException {
+            ids[size] = id;
+            this.purchased[size] = purchased;
+            costs[size] = costPence;
+            sales[size] = sale;
+            products[size] = product;
+            productNames[size] = productName;
+            customers[size] = customer;
+            customerNames[size] = customerName;
+            loyal[size] = isLoyal;
+            if (++size == ids.length) flush();
+        }
+
+        /**
+         * Write the last group and close the file.
+         *
+         * @return The number of transactions written, the size of the file and how long it took.
+         * @throws IOException If the last group cannot be written.
+         */
+        public @NotNull Result finish() throws IOException {
+            flush();
+            channel.force(false);
+            close();
+            return new Result(rows, groups, bytes, Duration.ofNanos(System.nanoTime() - started));
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            channel.close();
+        }
+
+        private void flush() throws IOException {
+            if (size == 0) return;
+            long min = purchased[0];
+            long max = purchased[0];
+            for (int i = 1; i < size; i++) {
+                min = Math.min(min, purchased[i]);
+                max = Math.max(max, purchased[i]);
+            }
+            header.clear().putInt(size).putLong(min).putLong(max);
+            payload.clear();
+
+            for (int column = 0; column < COLUMNS; column++) {
+                raw.clear();
+                switch (column) {
+                    case ID -> deltas(ids);
+                    case PURCHASED -> deltas(purchased);
+                    case COST -> {
+                        for (int i = 0; i < size; i++) raw.putVarLong(zigzag(costs[i]));
+                    }
+                    case SALE -> values(sales);
+                    case PRODUCT -> values(products);
+                    case PRODUCT_NAME -> names(productNames);
+                    case CUSTOMER -> values(customers);
+                    case CUSTOMER_NAME -> names(customerNames);
+                    case LOYAL -> {
+                        for (int i = 0; i < size; i++) raw.put((byte) (loyal[i] ? 1 : 0));
+                    }
+                    default -> throw new IllegalStateException("Unknown column " + column);
+                }
+                int before = payload.size;
+                deflate(raw, payload);
+                header.putInt(raw.size).putInt(payload.size - before);
+            }
+
+            ByteBuffer[] group = {header.flip(), ByteBuffer.wrap(payload.bytes, 0, payload.size)};
+            long length = GROUP_HEADER_BYTES + payload.size;
+            long written = 0;
+            while (written < length) written += channel.write(group);
+
+            rows += size;
+            groups++;
+            bytes += length;
+            size = 0;
+            Arrays.fill(productNames, null);
+            Arrays.fill(customerNames, null);
+        }
+
+        private void deltas(int[] column) {
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                raw.putVarLong(zigzag(column[i] - previous));
+                previous = column[i];
+            }
+        }
+
+        private void deltas(long[] column) {
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                raw.putVarLong(zigzag(column[i] - previous));
+                previous = column[i];
+            }
+        }
+
+        private void values(int[] column) {
+            for (int i = 0; i < size; i++) raw.putVarLong(column[i] & 0xFFFFFFFFL);
+        }
+
+        private void names(String[] column) {
+            dictionary.clear();
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Integer code = dictionary.get(column[i]);
+                if (code == null) {
+                    code = entries.size();
+                    dictionary.put(column[i], code);
+                    entries.add(column[i]);
+                }
+                codes[i] = code;
+            }
+            raw.putVarLong(entries.size());
+            for (String entry : entries) {
+                byte[] utf8 = entry.getBytes(StandardCharsets.UTF_8);
+                raw.putVarLong(utf8.length);
+                raw.put(utf8, 0, utf8.length);
+            }
+            for (int i = 0; i < size; i++) raw.putVarLong(codes[i]);
+        }
+
+        private void deflate(@NotNull Bytes from, @NotNull Bytes to) {
+            deflater.reset();
+            deflater.setInput(from.bytes, 0, from.size);
+            deflater.finish();
+            while (!deflater.finished()) {
+                to.ensure(Math.max(64, from.size / 4));
+                to.size += deflater.deflate(to.bytes, to.size, to.bytes.length - to.size);
+            }
+        }
+    }
+
+    /**
+     * Reads an export file a group at a time.
+     */
+    public static final class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final Inflater inflater = new Inflater();
+        private final ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER_BYTES);
+        private final int[] rawLengths = new int[COLUMNS];
+        private final int[] compressedLengths = new int[COLUMNS];
+        private final Bytes compressed = new Bytes();
+        private final Bytes raw = new Bytes();
+        private int position;
+
+        private int[] ids = new int[0];
+        private long[] purchased = new long[0];
+        private long[] costs = new long[0];
+        private int[] sales = new int[0];
+        private int[] products = new int[0];
+        private String[] productNames = new String[0];
+        private int[] customers = new int[0];
+        private String[] customerNames = new String[0];
+        private boolean[] loyal = new boolean[0];
+
+        private Reader(@NotNull FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Open an export file.
+         *
+         * @param file The file.
+         * @return The reader, which must be closed.
+         * @throws IOException If the file cannot be read or is not an export.
+         */
+        public static @NotNull Reader open(@NotNull Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                ByteBuffer start = ByteBuffer.allocate(FILE_HEADER_BYTES);
+                readFully(channel, start, 0);
+                if (start.getInt(0) != MAGIC || start.getInt(4) != VERSION) throw new IOException(file + " is not a transaction export");
+                return new Reader(channel);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Visit every transaction made in a period, in the order they were exported.
+         *
+         * @param from   The start of the period, or null for the first transaction.
+         * @param to     The end of the period, which is not included, or null for the last transaction.
+         * @param action What to do with each transaction.
+         * @throws IOException If the file cannot be read or is damaged.
+         */
+        public void forEach(@Nullable Instant from, @Nullable Instant to, @NotNull Consumer<Row> action) throws IOException {
+            scan(from, to, (1 << COLUMNS) - 1, i -> action.accept(new Row(ids[i], Instant.ofEpochMilli(purchased[i]), costs[i], sales[i],
+                    products[i], productNames[i], customers[i], customerNames[i], loyal[i])));
+        }
+
+        /**
+         * Add up the purchases made in a period, reading only the times, costs and products.
+         *
+         * @param from The start of the period, or null for the first transaction.
+         * @param to   The end of the period, which is not included, or null for the last transaction.
+         * @return The number of purchases, the revenue and the purchases of each product, all over the period.
+         * @throws IOException If the file cannot be read or is damaged.
+         */
+        public @NotNull SalesSummary salesSummary(@Nullable Instant from, @Nullable Instant to) throws IOException {
+            long[] totals = new long[2];
+            Map<Integer, Long> counts = new HashMap<>();
+            scan(from, to, 1 << PURCHASED | 1 << COST | 1 << PRODUCT, i -> {
+                totals[0]++;
+                totals[1] += costs[i];
+                counts.merge(products[i], 1L, Long::sum);
+            });
+            return new SalesSummary(totals[0], totals[1], counts);
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            channel.close();
+        }
+
+        /**
+         * Decode the given columns of every group that overlaps the period, and visit the rows within it.
+         */
+        private void scan(@Nullable Instant from, @Nullable Instant to, int columns, @NotNull RowVisitor visitor) throws IOException {
+            long start = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+            long end = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+            long at = FILE_HEADER_BYTES;
+            long size = channel.size();
+
+            while (at < size) {
+                header.clear();
+                readFully(channel, header, at);
+                int count = header.getInt(0);
+                long min = header.getLong(4);
+                long max = header.getLong(12);
+                long payload = 0;
+                for (int column = 0; column < COLUMNS; column++) {
+                    rawLengths[column] = header.getInt(20 + column * 8);
+                    compressedLengths[column] = header.getInt(24 + column * 8);
+                    payload += compressedLengths[column];
+                }
+                if (count <= 0 || payload < 0) throw new IOException("Damaged group at byte " + at);
+
+                long columnAt = at + GROUP_HEADER_BYTES;
+                at = columnAt + payload;
+                if (max < start || min >= end) continue;
+
+                ensure(count);
+                for (int column = 0; column < COLUMNS; column++) {
+                    // The time is always needed to filter the rows.
+                    if (((columns | 1 << PURCHASED) & 1 << column) != 0) decode(column, columnAt, count);
+                    columnAt += compressedLengths[column];
+                }
+                for (int i = 0; i < count; i++) {
+                    if (purchased[i] >= start && purchased[i] < end) visitor.visit(i);
+                }
+            }
+        }
+
+        private void decode(int column, long at, int count) throws IOException {
+            compressed.clear();
+            compressed.ensure(compressedLengths[column]);
+            readFully(channel, ByteBuffer.wrap(compressed.bytes, 0, compressedLengths[column]), at);
+
+            raw.clear();
+            raw.ensure(rawLengths[column]);
+            inflater.reset();
+            inflater.setInput(compressed.bytes, 0, compressedLengths[column]);
+            try {
+                while (raw.size < rawLengths[column] && !inflater.finished()) {
+                    int n = inflater.inflate(raw.bytes, raw.size, rawLengths[column] - raw.size);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    raw.size += n;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Damaged column at byte " + at, e);
+            }
+            if (raw.size != rawLengths[column]) throw new IOException("Damaged column at byte " + at);
+
+            position = 0;
+            try {
+                decode(column, count);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Damaged column at byte " + at, e);
+            }
+        }
+
+        private void decode(int column, int count) throws IOException {
+            switch (column) {
+                case ID -> {
+                    long previous = 0;
+                    for (int i = 0; i < count; i++) ids[i] = (int) (previous += unzigzag(varLong()));
+                }
+                case PURCHASED -> {
+                    long previous = 0;
+                    for (int i = 0; i < count; i++) purchased[i] = previous += unzigzag(varLong());
+                }
+                case COST -> {
+                    for (int i = 0; i < count; i++) costs[i] = unzigzag(varLong());
+                }
+                case SALE -> {
+                    for (int i = 0; i < count; i++) sales[i] = (int) varLong();
+                }
+                case PRODUCT -> {
+                    for (int i = 0; i < count; i++) products[i] = (int) varLong();
+                }
+                case PRODUCT_NAME -> names(productNames, count);
+                case CUSTOMER -> {
+                    for (int i = 0; i < count; i++) customers[i] = (int) varLong();
+                }
+                case CUSTOMER_NAME -> names(customerNames, count);
+                case LOYAL -> {
+                    for (int i = 0; i < count; i++) loyal[i] = raw.bytes[position++] != 0;
+                }
+                default -> throw new IllegalStateException("Unknown column " + column);
+            }
+        }
+
+        private void names(String[] column, int count) throws IOException {
+            int entries = (int) varLong();
+            if (entries < 0 || entries > count) throw new IOException("Damaged dictionary");
+            String[] dictionary = new String[entries];
+            for (int e = 0; e < entries; e++) {
+                int length = (int) varLong();
+                dictionary[e] = new String(raw.bytes, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+            for (int i = 0; i < count; i++) column[i] = dictionary[(int) varLong()];
+        }
+
+        private long varLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = raw.bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private void ensure(int count) {
+            if (ids.length >= count) return;
+            ids = new int[count];
+            purchased = new long[count];
+            costs = new long[count];
+            sales = new int[count];
+            products = new int[count];
+            productNames = new String[count];
+            customers = new int[count];
+            customerNames = new String[count];
+            loyal = new boolean[count];
+        }
+
+        private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, at + buffer.position()) < 0) throw new EOFException("Export ends part way through a group");
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        void visit(int row);
+    }
+
+    /**
+     * A growable array of bytes.
+     */
+    private static final class Bytes {
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+
+        private void clear() {
+            size = 0;
+        }
+
+        private void ensure(int more) {
+            if (bytes.length - size < more) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+        }
+
+        private void put(byte b) {
+            ensure(1);
+            bytes[size++] = b;
+        }
+
+        private void put(byte[] from, int offset, int length) {
+            ensure(length);
+            System.arraycopy(from, offset, bytes, size, length);
+            size += length;
+        }
+
+        private void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * A transaction read back from an export.
+     *
+     * @param id           The ID of the transaction.
+     * @param purchased    When it was made.
+     * @param costPence    What the customer paid, in pence.
+     * @param sale         The ID of the sale applied, or 0 for none.
+     * @param product      The ID of the product.
+     * @param productName  The name of the product.
+     * @param customer     The ID of the customer.
+     * @param customerName The name of the customer.
+     * @param loyal        Whether the customer was on the loyalty card scheme when the export was made.
+     */
+    public record Row(int id, @NotNull Instant purchased, long costPence, int sale, int product, @NotNull String productName,
+                      int customer, @NotNull String customerName, boolean loyal) {
+    }
+
+    /**
+     * The outcome of an export.
+     *
+     * @param rows    The number of transactions written.
+     * @param groups  The number of groups they were written in.
+     * @param bytes   The size of the file.
+     * @param elapsed How long the export took.
+     */
+    public record Result(long rows, long groups, long bytes, @NotNull Duration elapsed) {
+    }
+
+    /**
+     * Settings for writing an export.
+     *
+     * @param rowsPerGroup     How many transactions are held in memory and written together. Larger groups compress
+     *                         better, smaller ones let readers skip more precisely.
+     * @param compressionLevel The {@link Deflater} level, from 0 for none to 9 for the smallest files.
+     */
+    public record Settings(int rowsPerGroup, int compressionLevel) {
+
+        public Settings {
+            if (rowsPerGroup < 1) throw new IllegalArgumentException("Groups must hold at least one row.");
+            if (compressionLevel < 0 || compressionLevel > 9) throw new IllegalArgumentException("Compression level must be from 0 to 9.");
+        }
+
+        /**
+         * Settings that write groups of 65,536 transactions at the default compression level.
+         *
+         * @return The default export settings.
+         */
+        public static @NotNull Settings defaults() {
+            return new Settings(65_536, 6);
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Takes sale and transaction inserts off the caller's thread and writes them to the database in batches,
+ * so a burst of checkouts costs one commit per batch instead of one per row.
+ * A batch is written once it reaches a size, or once its oldest write has waited long enough, whichever comes first.
+ * <p>
+ * Every write is appended to a journal before it is queued, and the sequence number of the last write committed is
+ * stored in the queue's row of the {@code write_behind_checkpoint} table in the same transaction as each batch.
+ * Writes left in the journal when the process stops are replayed when the next queue with the same source is opened,
+ * and none is inserted twice. The journal is handed to the operating system, not forced to disk, so it survives the
+ * process dying but not the machine losing power. At each checkpoint the committed writes are dropped from the journal,
+ * by emptying it or by moving the writes still pending into a fresh file, so it does not grow while the queue is busy.
+ * <p>
+ * A batch the database cannot be reached for is retried until it can be. A batch the database rejects, such as one
+ * with a transaction for a customer that does not exist, is split until the rejected writes are found, and those are
+ * set aside in a {@code .rejected} file next to the journal rather than retried.
+ * <p>
+ * Queued writes become visible to queries once their batch is committed.
+ */
+public final class WriteBehindQueue implements AutoCloseable {
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    private static final int RETRIES_ON_CLOSE = 3;
+
+    /**
+     * The fewest bytes of committed writes worth copying the rest of the journal to drop.
+     */
+    private static final long MIN_COMPACTION = 64 * 1024;
+
+    private final ConnectionPool pool;
+    private final Settings settings;
+    private final IntConsumer saleFlushed;
+
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Semaphore capacity;
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final Thread writer;
+
+    // The journal, and where its pending lines, its first byte and its committed lines end, counted from the first
+    // line ever written to it, all guarded by journalLock.
+    private @Nullable FileChannel journal;
+    private final ArrayDeque<long[]> journaled = new ArrayDeque<>();
+    private long journalStart;
+    private long journalCommitted;
+
+    private long sequence;
+    private volatile long flushed;
+    private volatile boolean closed;
+
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    /**
+     * Open a queue, first writing anything left in the journal by a queue that did not close cleanly.
+     *
+     * @param pool        The pool batches are written through.
+     * @param settings    The queue's source, how large it and its batches may grow, and where the journal is kept.
+     * @param saleFlushed Told the product ID of every sale once it has been committed.
+     * @throws IOException  If the journal cannot be opened or read.
+     * @throws SQLException If the journal cannot be replayed.
+     */
+    public WriteBehindQueue(@NotNull ConnectionPool pool, @NotNull Settings settings, @NotNull IntConsumer saleFlushed) throws IOException, SQLException {
+        this.pool = pool;
+        this.settings = settings;
+        this.saleFlushed = saleFlushed;
+        this.capacity = new Semaphore(settings.capacity());
+
+        if (settings.journal() == null) {
+            journal = null;
+        } else {
+            flushed = checkpoint();
+            sequence = flushed;
+            journal = FileChannel.open(settings.journal(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                replay();
+            } catch (IOException | SQLException e) {
+                journal.close();
+                throw e;
+            }
+        }
+
+        writer = new Thread(this::run, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Read this queue's checkpoint, creating it if the source has not been used before.
+     *
+     * @return The sequence number of the last write committed.
+     */
+    private long checkpoint() throws SQLException {
+        try (PooledConnection c = pool.borrow()) {
+            PreparedStatement stmt = c.prepare("SELECT flushed FROM write_behind_checkpoint WHERE source = ?");
+            stmt.setString(1, settings.source());
+            try (ResultSet results = stmt.executeQuery()) {
+                if (results.next()) return results.getLong(1);
+            }
+
+            stmt = c.prepare("INSERT INTO write_behind_checkpoint (source, flushed) VALUES (?, 0)");
+            stmt.setString(1, settings.source());
+            stmt.executeUpdate();
+            return 0;
+        }
+    }
+
+    /**
+     * Queue a sale insert.
+     *
+     * @param productId The ID of the product.
+     * @param type      The type of sale.
+     * @return True if the sale is queued, false if the queue is closed or the journal cannot be written.
+     */
+    public boolean sale(int productId, int type) {
+        return enqueue(seq -> new Sale(seq, productId, type));
+    }
+
+    /**
+     * Queue a transaction insert.
+     *
+     * @param productId  The ID of the product purchased.
+     * @param customerId The ID of the customer.
+     * @param saleId     The ID of the sale applied, or 0 for none.
+     * @param cost       The cost charged.
+     * @param purchased  When the purchase was made, which is recorded rather than the time it is written.
+     * @return True if the transaction is queued, false if the queue is closed or the journal cannot be written.
+     */
+    public boolean transaction(int productId, int customerId, int saleId, @NotNull BigDecimal cost, @NotNull Instant purchased) {
+        long pence = cost.movePointRight(2).longValueExact();
+        return enqueue(seq -> new Transaction(seq, productId, customerId, saleId, pence, purchased.toEpochMilli()));
+    }
+
+    /**
+     * Write every queued write to the database and wait for it to be committed.
+     *
+     * @return True once every write queued before the call is committed, false if the queue is closed or the wait was interrupted.
+     */
+    public boolean flush() {
+        Marker marker = new Marker(new CountDownLatch(1), false);
+        journalLock.lock();
+        try {
+            if (closed) return false;
+            queue.add(marker);
+        } finally {
+            journalLock.unlock();
+        }
+
+        try {
+            marker.done().await();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stop accepting writes, write everything already queued, and close the journal.
+     * If the database cannot be reached, unwritten writes are left in the journal for the next queue to replay.
+     */
+    @Override
+    public void close() {
+        Marker stop = new Marker(new CountDownLatch(1), true);
+        journalLock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            queue.add(stop);
+        } finally {
+            journalLock.unlock();
+        }
+
+        try {
+            stop.done().await();
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Obtain the size of the queue, and the sizes and latencies of the batches written so far.
+     *
+     * @return The current queue statistics.
+     */
+    public @NotNull Statistics statistics() {
+        return new Statistics(settings.capacity() - capacity.availablePermits(), settings.capacity(), writes.sum(),
+                stalls.sum(), failures.sum(), rejected.sum(), batchSizes.snapshot(), flushLatency.snapshot());
+    }
+
+    private boolean enqueue(@NotNull WriteFactory factory) {
+        if (closed) return false;
+
+        if (!capacity.tryAcquire()) {
+            stalls.increment();
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        journalLock.lock();
+        try {
+            if (closed) {
+                capacity.release();
+                return false;
+            }
+            Write write = factory.create(sequence + 1);
+            if (journal != null) {
+                ByteBuffer line = StandardCharsets.US_ASCII.encode(write.encode() + "\n");
+                while (line.hasRemaining()) journal.write(line, journal.size());
+                journaled.add(new long[]{write.sequence(), journalStart + journal.size()});
+            }
+            sequence = write.sequence();
+            queue.add(write);
+            return true;
+        } catch (IOException e) {
+            capacity.release();
+            e.printStackTrace();
+            return false;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Write the journaled writes that were never committed, then empty the journal.
+     */
+    private void replay() throws IOException, SQLException {
+        List<Write> pending = new ArrayList<>();
+        for (String line : Files.readAllLines(settings.journal(), StandardCharsets.US_ASCII)) {
+            Write write = Write.decode(line);
+            if (write == null) continue; // A line torn by the process dying mid-write was never queued.
+            sequence = Math.max(sequence, write.sequence());
+            if (write.sequence() > flushed) pending.add(write);
+        }
+
+        for (int from = 0; from < pending.size(); from += settings.batchSize()) {
+            writeOrReject(pending.subList(from, Math.min(pending.size(), from + settings.batchSize())));
+        }
+        if (!pending.isEmpty()) System.out.printf("Replayed %d queued writes from %s%n", pending.size(), settings.journal());
+
+        flushed = sequence;
+        journal.truncate(0);
+    }
+
+    /**
+     * Take batches off the queue and write them until the queue is closed.
+     */
+    private void run() {
+        long maxDelay = settings.maxDelay().toNanos();
+        List<Write> batch = new ArrayList<>(settings.batchSize());
+
+        while (true) {
+            Marker marker = null;
+            try {
+                Entry next = queue.take();
+                long deadline = System.nanoTime() + maxDelay;
+                while (next != null) {
+                    if (next instanceof Marker m) {
+                        marker = m;
+                        break;
+                    }
+                    batch.add((Write) next);
+                    if (batch.size() >= settings.batchSize()) break;
+                    next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            boolean stopping = marker != null && marker.stop();
+            if (!batch.isEmpty()) {
+                writeWithRetry(batch, stopping);
+                batch.clear();
+            }
+            if (marker != null) {
+                marker.done().countDown();
+                if (stopping) return;
+            }
+        }
+    }
+
+    /**
+     * Write a batch, retrying while the database cannot be reached.
+     * Once the queue is closing only a few attempts are made, leaving the batch in the journal if they all fail.
+     */
+    private void writeWithRetry(@NotNull List<Write> batch, boolean stopping) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                writeOrReject(batch);
+                break;
+            } catch (SQLException e) {
+                failures.increment();
+                e.printStackTrace();
+                if (stopping && attempt >= RETRIES_ON_CLOSE) return;
+                try {
+                    Thread.sleep(RETRY_DELAY.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        capacity.release(batch.size());
+        journalLock.lock();
+        try {
+            if (journal != null) compact();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the writes the checkpoint has passed from the front of the journal. The caller must hold the journal lock.
+     * The journal is emptied once every write is committed. Otherwise, once the committed writes take up more of it
+     * than the pending ones, the pending writes are copied to a new file that then replaces the journal, so a process
+     * dying part way through leaves one journal or the other whole.
+     */
+    private void compact() throws IOException {
+        while (!journaled.isEmpty() && journaled.peekFirst()[0] <= flushed) journalCommitted = journaled.pollFirst()[1];
+        long committed = journalCommitted - journalStart;
+        if (committed == 0) return;
+
+        long size = journal.size();
+        if (committed == size) {
+            journal.truncate(0);
+            journalStart = journalCommitted;
+            return;
+        }
+        if (committed < Math.max(size - committed, MIN_COMPACTION)) return;
+
+        Path file = settings.journal();
+        Path next = file.resolveSibling(file.getFileName() + ".next");
+        try (FileChannel out = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (long position = committed; position < size; ) {
+                position += journal.transferTo(position, size - position, out);
+            }
+        }
+        journal.close();
+        try {
+            Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journalStart = journalCommitted;
+        } finally {
+            journal = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Write a batch, splitting it to find and set aside any writes the database rejects.
+     * The writes either side of a rejected write are still committed in order.
+     *
+     * @throws SQLException If the database cannot be reached, in which case the batch may be retried as a whole.
+     */
+    private void writeOrReject(@NotNull List<Write> batch) throws SQLException {
+        try {
+            write(batch, batch.get(batch.size() - 1).sequence());
+        } catch (SQLException e) {
+            if (!rejected(e)) throw e;
+            if (batch.size() == 1) {
+                reject(batch.get(0), e);
+                return;
+            }
+            int half = batch.size() / 2;
+            writeOrReject(batch.subList(0, half));
+            writeOrReject(batch.subList(half, batch.size()));
+        }
+    }
+
+    /**
+     * Check whether the database refused a batch because of what is in it, so that retrying it can never succeed.
+     * A batch update's own exception says nothing about why, so the exceptions chained to it are checked as well.
+     */
+    private static boolean rejected(@NotNull SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLNonTransientException) return true;
+            if (t instanceof SQLException sql) {
+                for (SQLException next = sql.getNextException(); next != null; next = next.getNextException()) {
+                    if (next instanceof SQLNonTransientException) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set aside a write the database rejected, and move the checkpoint past it so it is not replayed.
+     */
+    private void reject(@NotNull Write write, @NotNull SQLException e) throws SQLException {
+        rejected.increment();
+        System.err.printf("Queued write %s was rejected and set aside: %s%n", write.encode(), e.getMessage());
+        Path journalFile = settings.journal();
+        if (journalFile != null) {
+            Path rejects = journalFile.resolveSibling(journalFile.getFileName() + ".rejected");
+            try {
+                Files.writeString(rejects, write.encode() + "\n", StandardCharsets.US_ASCII, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException io) {
+                io.printStackTrace();
+            }
+        }
+        write(List.of(), write.sequence());
+    }
+
+    /**
+     * Insert a batch of writes and advance the checkpoint, all in one transaction.
+     * Writes that an earlier attempt has already committed are left out, so a batch may be retried as a whole.
+     *
+     * @param batch   The writes, in sequence order.
+     * @param through The sequence number the checkpoint is advanced to.
+     */
+    private void write(@NotNull List<Write> batch, long through) throws SQLException {
+        long committed = flushed;
+        if (through <= committed) return;
+        long start = System.nanoTime();
+        int sales = 0;
+        batch = batch.stream().filter(w -> w.sequence() > committed).toList();
+
+        try (PooledConnection c = pool.borrow()) {
+            Connection conn = c.connection();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement saleStmt = null;
+                PreparedStatement transactionStmt = null;
+
+                for (Write write : batch) {
+                    if (write instanceof Sale s) {
+                        if (saleStmt == null) saleStmt = c.prepare("INSERT INTO sale (`product`, `type`) VALUES (?, ?)");
+                        saleStmt.setInt(1, s.productId());
+                        saleStmt.setInt(2, s.type());
+                        saleStmt.addBatch();
+                        sales++;
+                    } else if (write instanceof Transaction t) {
+                        if (transactionStmt == null) {
+                            transactionStmt = c.prepare("INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (?, ?, ?, ?, ?)");
+                        }
+                        transactionStmt.setInt(1, t.productId());
+                        transactionStmt.setInt(2, t.customerId());
+                        if (t.saleId() == 0) {
+                            transactionStmt.setNull(3, Types.INTEGER);
+                        } else {
+                            transactionStmt.setInt(3, t.saleId());
+                        }
+                        transactionStmt.setBigDecimal(4, BigDecimal.valueOf(t.costPence(), 2));
+                        transactionStmt.setTimestamp(5, Timestamp.from(Instant.ofEpochMilli(t.purchasedMillis())));
+                        transactionStmt.addBatch();
+                    }
+                }
+
+                // Sales go first, so a transaction never refers to a sale that has not been written.
+                if (saleStmt != null) saleStmt.executeBatch();
+                if (transactionStmt != null) transactionStmt.executeBatch();
+
+                // Without a journal there is nothing to replay, so no checkpoint is kept.
+                if (settings.journal() != null) {
+                    PreparedStatement checkpoint = c.prepare("UPDATE write_behind_checkpoint SET flushed = ? WHERE source = ?");
+                    checkpoint.setLong(1, through);
+                    checkpoint.setString(2, settings.source());
+                    checkpoint.executeUpdate();
+                }
+
+                conn.commit();
+                flushed = through;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+
+        if (batch.isEmpty()) return;
+        writes.add(batch.size());
+        batchSizes.record(batch.size());
+        flushLatency.record(System.nanoTime() - start);
+        if (sales > 0) {
+            for (Write write : batch) {
+                if (write instanceof Sale s) saleFlushed.accept(s.productId());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriteFactory {
+        @NotNull Write create(long sequence);
+    }
+
+    /**
+     * Something waiting in the queue for the writer.
+     */
+    private sealed interface Entry permits Write, Marker {
+    }
+
+    /**
+     * A write waiting in the queue, identified by its place in the journal.
+     */
+    private sealed interface Write extends Entry permits Sale, Transaction {
+        long sequence();
+
+        /**
+         * Write this as a line of the journal, which {@link #decode(String)} reads back.
+         */
+        @NotNull String encode();
+
+        static @Nullable Write decode(@NotNull String line) {
+            String[] fields = line.split(" ");
+            try {
+                if (fields.length == 4 && fields[1].equals("S")) {
+                    return new Sale(Long.parseLong(fields[0]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+                }
+                if (fields.length == 7 && fields[1].equals("T")) {
+                    return new Transaction(Long.parseLong(fields[0]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                            Integer.parseInt(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6]));
+                }
+            } catch (NumberFormatException ignored) {
+            }
+            return null;
+        }
+    }
+
+    private record Sale(long sequence, int productId, int type) implements Write {
+        @Override
+        public @NotNull String encode() {
+            return sequence + " S " + productId + " " + type;
+        }
+    }
+
+    private record Transaction(long sequence, int productId, int customerId, int saleId, long costPence,
+                               long purchasedMillis) implements Write {
+        @Override
+        public @NotNull String encode() {
+            return sequence + " T " + productId + " " + customerId + " " + saleId + " " + costPence + " " + purchasedMillis;
+        }
+    }
+
+    /**
+     * Placed in the queue to have everything ahead of it written at once, and optionally to stop the writer.
+     */
+    private record Marker(CountDownLatch done, boolean stop) implements Entry {
+    }
+
+    /**
+     * The queue's source, how large it and its batches may grow, and where the journal is kept.
+     *
+     * @param source    The name the queue's checkpoint is kept under, which must be different for every process
+     *                  writing through the same database, and the same for the process that replays its journal.
+     * @param capacity  The most writes waiting to be committed. Callers wait for room once the queue is full.
+     * @param batchSize The most writes committed together.
+     * @param maxDelay  The longest a write waits for its batch to fill before the batch is written anyway.
+     * @param journal   The file writes are journaled to, or null to keep them only in memory.
+     */
+    public record Settings(@NotNull String source, int capacity, int batchSize, Duration maxDelay, @Nullable Path journal) {
+
+        public Settings {
+            if (source.isBlank() || source.length() > 255) throw new IllegalArgumentException("source must be 1 to 255 characters");
+            if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+            if (batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+            if (maxDelay.isNegative()) throw new IllegalArgumentException("maxDelay must not be negative");
+        }
+
+        /**
+         * Up to 10,000 waiting writes, committed 500 at a time or after 20ms, journaled to the given file.
+         *
+         * @param source  The name the queue's checkpoint is kept under.
+         * @param journal The file writes are journaled to, or null to keep them only in memory.
+         * @return The default settings.
+         */
+        public static @NotNull Settings defaults(@NotNull String source, @Nullable Path journal) {
+            return new Settings(source, 10_000, 500, Duration.ofMillis(20), journal);
+        }
+    }
+
+    /**
+     * A snapshot of the queue.
+     *
+     * @param pending      The writes waiting to be committed.
+     * @param capacity     The most writes that may wait.
+     * @param written      The writes committed so far.
+     * @param stalls       The times a caller had to wait for room in the queue.
+     * @param failures     The batches that failed to be written and were retried.
+     * @param rejected     The writes the database rejected, which were set aside rather than retried.
+     * @param batchSizes   The number of writes in each batch committed.
+     * @param flushLatency The time taken to write and commit each batch, in nanoseconds.
+     */
+    public record Statistics(int pending, int capacity, long written, long stalls, long failures, long rejected,
+                             LatencyHistogram.Snapshot batchSizes, LatencyHistogram.Snapshot flushLatency) {
+    }
+}
@@ -0,0 +1,180 @@
+package uk.ac.napier.sa.server;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A till's connection to a {@link TillServer}.
+ * Each request method only queues its request and returns the request's ID; requests are sent together by
+ * {@link #flush()}, or by {@link #receive()} when it has to wait, and their responses are read back in order with
+ * {@link #receive()}. A client is for one thread at a time.
+ */
+public final class TillClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+    private ByteBuffer out = ByteBuffer.allocate(8 * 1024);
+    private ByteBuffer in = ByteBuffer.allocate(8 * 1024).flip();
+    private int nextId;
+    private int frameStart;
+
+    private TillClient(@NotNull SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Connect to a till server.
+     *
+     * @param address The address of the server.
+     * @return The connected client.
+     * @throws IOException If the server cannot be reached.
+     */
+    public static @NotNull TillClient connect(@NotNull InetSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return new TillClient(channel);
+    }
+
+    public int retrieveProduct(int id) {
+        int requestId = begin(TillProtocol.RETRIEVE_PRODUCT, 4);
+        out.putInt(id);
+        return end(requestId);
+    }
+
+    public int changePrice(int id, double price, @NotNull String username, @NotNull String password) {
+        int requestId = begin(TillProtocol.CHANGE_PRICE, 16 + 4 + 3 * (username.length() + password.length()));
+        out.putInt(id).putDouble(price);
+        TillProtocol.putString(out, username);
+        TillProtocol.putString(out, password);
+        return end(requestId);
+    }
+
+    public int purchase(int customer, int product) {
+        int requestId = begin(TillProtocol.PURCHASE, 8);
+        out.putInt(customer).putInt(product);
+        return end(requestId);
+    }
+
+    public int purchaseBasket(int customer, @NotNull Map<Integer, Integer> items) {
+        if (items.size() > 0xFFFF) throw new IllegalArgumentException("Too many products in one basket");
+        int requestId = begin(TillProtocol.PURCHASE_BASKET, 6 + 8 * items.size());
+        out.putInt(customer).putShort((short) items.size());
+        items.forEach((product, quantity) -> out.putInt(product).putInt(quantity));
+        return end(requestId);
+    }
+
+    public int enrolOnLoyaltyCardScheme(int id, boolean confirmed) {
+        int requestId = begin(TillProtocol.ENROL, 5);
+        out.putInt(id).put((byte) (confirmed ? 1 : 0));
+        return end(requestId);
+    }
+
+    public int finance(char choice) {
+        int requestId = begin(TillProtocol.FINANCE, 2);
+        out.putChar(choice);
+        return end(requestId);
+    }
+
+    public int generateReport() {
+        return end(begin(TillProtocol.GENERATE_REPORT, 0));
+    }
+
+    public int stockMonitor() {
+        return end(begin(TillProtocol.STOCK_MONITOR, 0));
+    }
+
+    public int addSale(int id, int saleType) {
+        int requestId = begin(TillProtocol.ADD_SALE, 8);
+        out.putInt(id).putInt(saleType);
+        return end(requestId);
+    }
+
+    /**
+     * Send every queued request.
+     *
+     * @throws IOException If the connection fails.
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Wait for the next response, sending any queued requests first.
+     *
+     * @return The response.
+     * @throws IOException If the connection fails or is closed by the server.
+     */
+    public @NotNull Response receive() throws IOException {
+        if (out.position() > 0) flush();
+        fill(4);
+        int length = in.getInt(in.position());
+        if (length < TillProtocol.HEADER_BYTES - 4 + 1 || length > TillProtocol.MAX_FRAME_BYTES) {
+            throw new IOException("Malformed response of " + length + " bytes");
+        }
+        fill(4 + length);
+        in.getInt();
+        int requestId = in.getInt();
+        byte status = in.get();
+        int textLength = length - (TillProtocol.HEADER_BYTES - 4 + 1);
+        String text = new String(in.array(), in.arrayOffset() + in.position(), textLength, StandardCharsets.UTF_8);
+        in.position(in.position() + textLength);
+        return new Response(requestId, status == TillProtocol.OK, text);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int begin(byte operation, int argumentBytes) {
+        int frameBytes = TillProtocol.HEADER_BYTES + 1 + argumentBytes;
+        if (out.remaining() < frameBytes) {
+            out = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + frameBytes)).put(out.flip());
+        }
+        int requestId = nextId++;
+        frameStart = out.position();
+        out.putInt(0).putInt(requestId).put(operation);
+        return requestId;
+    }
+
+    /**
+     * Fill in the length of the frame just written.
+     */
+    private int end(int requestId) {
+        out.putInt(frameStart, out.position() - frameStart - 4);
+        return requestId;
+    }
+
+    private void fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes) return;
+        if (in.capacity() < bytes) {
+            in = ByteBuffer.allocate(Math.max(bytes, in.capacity() * 2)).put(in).flip();
+        }
+        in.compact();
+        while (in.position() < bytes) {
+            if (channel.read(in) < 0) throw new EOFException("Connection closed by server");
+        }
+        in.flip();
+    }
+
+    /**
+     * The server's answer to one request.
+     *
+     * @param requestId The ID of the request answered.
+     * @param ok        Whether the request was carried out.
+     * @param text      The text returned by the controller, or why the request failed.
+     */
+    public record Response(int requestId, boolean ok, @NotNull String text) {
+    }
+}
@@ -0,0 +1,140 @@
+package uk.ac.napier.sa.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The wire format spoken between tills and the {@link TillServer}.
+ * <p>
+ * Every message is a frame: a 4 byte length, counting the bytes that follow it, then a 4 byte request ID chosen by
+ * the till. A request goes on with a 1 byte operation and its arguments; a response goes on with a 1 byte status and
+ * the text returned by the controller, in UTF-8, taking up the rest of the frame. Numbers are big-endian, strings in
+ * requests are a 2 byte length followed by UTF-8, and booleans are a single byte.
+ * <p>
+ * A till may send any number of requests without waiting. Requests on one connection are carried out in the order
+ * they were sent, and their responses come back in that order.
+ */
+public final class TillProtocol {
+
+    /**
+     * The port a till server listens on unless told otherwise.
+     */
+    public static final int DEFAULT_PORT = 7070;
+
+    /**
+     * The largest frame either side will accept, not counting its length.
+     */
+    public static final int MAX_FRAME_BYTES = 1 << 20;
+
+    /**
+     * The bytes of a frame before its operation or status: the length and the request ID.
+     */
+    public static final int HEADER_BYTES = 8;
+
+    /**
+     * Arguments: product ID (int).
+     */
+    public static final byte RETRIEVE_PRODUCT = 1;
+
+    /**
+     * Arguments: product ID (int), new price (double), manager username (string), manager password (string).
+     */
+    public static final byte CHANGE_PRICE = 2;
+
+    /**
+     * Arguments: customer ID (int), product ID (int).
+     */
+    public static final byte PURCHASE = 3;
+
+    /**
+     * Arguments: customer ID (int), number of lines (short), then product ID (int) and quantity (int) for each line.
+     */
+    public static final byte PURCHASE_BASKET = 4;
+
+    /**
+     * Arguments: customer ID (int), whether the customer agrees to join the scheme (boolean).
+     */
+    public static final byte ENROL = 5;
+
+    /**
+     * Arguments: the customer's choice (char).
+     */
+    public static final byte FINANCE = 6;
+
+    /**
+     * No arguments.
+     */
+    public static final byte GENERATE_REPORT = 7;
+
+    /**
+     * No arguments.
+     */
+    public static final byte STOCK_MONITOR = 8;
+
+    /**
+     * Arguments: product ID (int), sale type (int).
+     */
+    public static final byte ADD_SALE = 9;
+
+    /**
+     * The status of a response to a request that was carried out.
+     */
+    public static final byte OK = 0;
+
+    /**
+     * The status of a response to a request that failed, whose text says why.
+     */
+    public static final byte ERROR = 1;
+
+    private TillProtocol() {
+    }
+
+    /**
+     * Write a string argument.
+     *
+     * @param buffer The buffer to write to.
+     * @param value  The string, of at most 65535 bytes in UTF-8.
+     */
+    public static void putString(@NotNull ByteBuffer buffer, @NotNull String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) throw new IllegalArgumentException("String argument is too long");
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    /**
+     * Read a string argument.
+     *
+     * @param buffer The buffer to read from, holding one frame.
+     * @return The string.
+     * @throws IllegalArgumentException If the string's length runs past the end of the frame.
+     */
+    public static @NotNull String getString(@NotNull ByteBuffer buffer) {
+        if (buffer.remaining() < 2) throw new IllegalArgumentException("Malformed frame: string argument has no length");
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Malformed frame: string argument of " + length + " bytes, but only " +
+                                               buffer.remaining() + " left in the frame");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Build a response frame.
+     *
+     * @param requestId The ID of the request being answered.
+     * @param status    {@link #OK} or {@link #ERROR}.
+     * @param text      The text of the response, or null for none.
+     * @return The frame, ready to be written.
+     */
+    public static @NotNull ByteBuffer response(int requestId, byte status, @Nullable String text) {
+        byte[] bytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + 1 + bytes.length);
+        frame.putInt(HEADER_BYTES - 4 + 1 + bytes.length).putInt(requestId).put(status).put(bytes);
+        return frame.flip();
+    }
+}
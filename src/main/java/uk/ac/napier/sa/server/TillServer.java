@@ -0,0 +1,455 @@
+package uk.ac.napier.sa.server;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import uk.ac.napier.sa.controller.RemoteController;
+import uk.ac.napier.sa.model.TaskExecutors;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves the {@link RemoteController} operations to any number of tills over {@link TillProtocol}, without a console.
+ * <p>
+ * One thread accepts connections and hands them in turn to a few selector threads, which do all of the socket reads
+ * and writes without blocking. Requests are carried out on worker threads, as they block on the database: each
+ * connection has at most one worker at a time, which takes every request that has arrived, so a till that pipelines
+ * its requests has them answered in order and in batches, and many tills are served side by side. A connection with
+ * too many requests outstanding is not read from until the worker catches up.
+ * <p>
+ * Only the operations that need no console are offered: price changes carry the manager's credentials, and loyalty
+ * enrolment carries the customer's answer.
+ */
+public final class TillServer implements AutoCloseable {
+
+    private final RemoteController controller;
+    private final Settings settings;
+    private final ServerSocketChannel server;
+    private final Reactor[] reactors;
+    private final ExecutorService workers;
+    private final Thread acceptor;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger pausedConnections = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Start serving.
+     *
+     * @param controller The controller requests are carried out on.
+     * @param settings   Where to listen and how many threads to use.
+     * @throws IOException If the address cannot be listened on.
+     */
+    public TillServer(@NotNull RemoteController controller, @NotNull Settings settings) throws IOException {
+        this.controller = controller;
+        this.settings = settings;
+        this.server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(settings.address(), settings.backlog());
+
+        this.workers = TaskExecutors.newExecutor("till");
+        this.reactors = new Reactor[settings.selectorThreads()];
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(i);
+        }
+        this.acceptor = new Thread(this::accept, "till-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Obtain the address the server is listening on, which gives the port chosen when the settings asked for port 0.
+     *
+     * @return The local address.
+     */
+    public @NotNull InetSocketAddress address() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            return settings.address();
+        }
+    }
+
+    /**
+     * Obtain how busy the server has been since it started.
+     *
+     * @return The statistics.
+     */
+    public @NotNull Statistics statistics() {
+        return new Statistics(connections.get(), pausedConnections.get(), requests.sum(), failures.sum());
+    }
+
+    /**
+     * Wait until the server is closed.
+     *
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    public void await() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /**
+     * Stop accepting connections, close every open connection, and stop the server's threads.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+        for (Reactor reactor : reactors) {
+            try {
+                reactor.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.shutdown();
+    }
+
+    private void accept() {
+        int next = 0;
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                Reactor reactor = reactors[next];
+                next = (next + 1) % reactors.length;
+                reactor.execute(() -> reactor.register(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Carry out one request.
+     *
+     * @param frame The request frame, after its length.
+     * @return The response frame.
+     */
+    private @NotNull ByteBuffer handle(byte @NotNull [] frame) {
+        ByteBuffer request = ByteBuffer.wrap(frame);
+        int requestId = request.getInt();
+        requests.increment();
+        try {
+            return TillProtocol.response(requestId, TillProtocol.OK, dispatch(request.get(), request));
+        } catch (Throwable e) {
+            // Every request must be answered, or the till waits forever and the answers after it are misnumbered.
+            failures.increment();
+            return TillProtocol.response(requestId, TillProtocol.ERROR, e.toString());
+        }
+    }
+
+    private @Nullable String dispatch(byte operation, @NotNull ByteBuffer args) {
+        return switch (operation) {
+            case TillProtocol.RETRIEVE_PRODUCT -> controller.retrieveProduct(args.getInt());
+            case TillProtocol.CHANGE_PRICE -> controller.changePrice(args.getInt(), args.getDouble(),
+                    TillProtocol.getString(args), TillProtocol.getString(args));
+            case TillProtocol.PURCHASE -> controller.purchase(args.getInt(), args.getInt());
+            case TillProtocol.PURCHASE_BASKET -> {
+                int customer = args.getInt();
+                int lines = args.getShort() & 0xFFFF;
+                Map<Integer, Integer> items = new HashMap<>(lines * 2);
+                for (int i = 0; i < lines; i++) {
+                    items.merge(args.getInt(), args.getInt(), Integer::sum);
+                }
+                yield controller.purchaseBasket(customer, items);
+            }
+            case TillProtocol.ENROL -> controller.enrolOnLoyaltyCardScheme(args.getInt(), args.get() != 0);
+            case TillProtocol.FINANCE -> controller.finance(args.getChar());
+            case TillProtocol.GENERATE_REPORT -> controller.generateReport();
+            case TillProtocol.STOCK_MONITOR -> controller.stockMonitor();
+            case TillProtocol.ADD_SALE -> controller.addSale(args.getInt(), args.getInt());
+            default -> throw new IllegalArgumentException("Unknown operation " + operation);
+        };
+    }
+
+    /**
+     * A selector thread, which reads and writes for the connections registered with it.
+     */
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private Reactor(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "till-selector-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Run a task on the selector thread, which is the only thread that touches the connections' keys.
+         */
+        private void execute(@NotNull Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        private void register(@NotNull SocketChannel channel) {
+            try {
+                Connection connection = new Connection(channel, this);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.incrementAndGet();
+            } catch (IOException e) {
+                e.printStackTrace();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    for (Runnable task; (task = tasks.poll()) != null; ) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey key = selected.next();
+                        selected.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) connection.read();
+                        if (key.isValid() && key.isWritable()) connection.write();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * One till's connection. The buffers and key are only touched on its selector thread; requests and responses are
+     * handed between that thread and the worker through queues.
+     */
+    private final class Connection {
+        private static final int MAX_GATHER = 64;
+
+        private final SocketChannel channel;
+        private final Reactor reactor;
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(8 * 1024);
+        private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        private boolean paused;
+
+        private final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<ByteBuffer> answered = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean working = new AtomicBoolean();
+        private final AtomicBoolean flushing = new AtomicBoolean();
+
+        private Connection(@NotNull SocketChannel channel, @NotNull Reactor reactor) {
+            this.channel = channel;
+            this.reactor = reactor;
+        }
+
+        private void read() {
+            int frames = 0;
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < TillProtocol.HEADER_BYTES - 4 + 1 || length > TillProtocol.MAX_FRAME_BYTES) {
+                        close();
+                        return;
+                    }
+                    if (in.remaining() < 4 + length) {
+                        if (in.capacity() < 4 + length) {
+                            in = ByteBuffer.allocate(Math.max(4 + length, in.capacity() * 2)).put(in).flip();
+                        }
+                        break;
+                    }
+                    byte[] frame = new byte[length];
+                    in.position(in.position() + 4).get(frame);
+                    pending.add(frame);
+                    frames++;
+                }
+                in.compact();
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            if (frames == 0) return;
+            if (outstanding.addAndGet(frames) >= settings.maxPipelined()) {
+                paused = true;
+                pausedConnections.incrementAndGet();
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            if (working.compareAndSet(false, true)) workers.execute(this::work);
+        }
+
+        /**
+         * Carry out every request that has arrived, in order, on a worker thread.
+         */
+        private void work() {
+            do {
+                try {
+                    int batched = 0;
+                    for (byte[] frame; (frame = pending.poll()) != null; ) {
+                        answered.add(handle(frame));
+                        outstanding.decrementAndGet();
+                        if (pending.isEmpty() || ++batched == MAX_GATHER) {
+                            flush();
+                            batched = 0;
+                        }
+                    }
+                } finally {
+                    // Otherwise a worker that dies leaves the connection never to be worked on again.
+                    working.set(false);
+                }
+            } while (!pending.isEmpty() && working.compareAndSet(false, true));
+        }
+
+        private void flush() {
+            if (flushing.compareAndSet(false, true)) reactor.execute(this::write);
+        }
+
+        private void write() {
+            flushing.set(false);
+            if (!channel.isOpen()) return;
+            for (ByteBuffer response; (response = answered.poll()) != null; ) {
+                out.add(response);
+            }
+
+            try {
+                while (!out.isEmpty()) {
+                    int n = 0;
+                    for (ByteBuffer buffer : out) {
+                        gather[n++] = buffer;
+                        if (n == MAX_GATHER) break;
+                    }
+                    channel.write(gather, 0, n);
+                    while (!out.isEmpty() && !out.peekFirst().hasRemaining()) {
+                        out.pollFirst();
+                    }
+                    if (gather[n - 1].hasRemaining()) break;
+                }
+                Arrays.fill(gather, null);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            int ops = out.isEmpty() ? key.interestOps() & ~SelectionKey.OP_WRITE : key.interestOps() | SelectionKey.OP_WRITE;
+            if (paused && outstanding.get() < settings.maxPipelined() / 2) {
+                paused = false;
+                pausedConnections.decrementAndGet();
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        private void close() {
+            if (!channel.isOpen()) return;
+            connections.decrementAndGet();
+            if (paused) pausedConnections.decrementAndGet();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * How the server listens and how many threads it uses.
+     *
+     * @param address         The address to listen on; port 0 picks a free port.
+     * @param backlog         The number of connections that may wait to be accepted.
+     * @param selectorThreads The number of threads doing socket reads and writes.
+     * @param maxPipelined    The number of requests a connection may have outstanding before it stops being read from.
+     */
+    public record Settings(@NotNull InetSocketAddress address, int backlog, int selectorThreads, int maxPipelined) {
+
+        public Settings {
+            if (selectorThreads < 1) throw new IllegalArgumentException("At least one selector thread is needed");
+            if (maxPipelined < 2) throw new IllegalArgumentException("At least two requests must be allowed to be outstanding");
+        }
+
+        /**
+         * Obtain settings for listening on the loopback interface only, so that only tills on the same machine can
+         * connect, with a selector thread for every two processors.
+         *
+         * @param port The port to listen on.
+         * @return The default settings.
+         */
+        public static @NotNull Settings defaults(int port) {
+            return on(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+
+        /**
+         * Obtain settings for listening on every interface, so that tills on other machines can connect.
+         * The protocol is not encrypted and only price changes are authenticated, so this should only be used on a
+         * network that only tills can reach.
+         *
+         * @param port The port to listen on.
+         * @return The default settings, listening on every interface.
+         */
+        public static @NotNull Settings exposed(int port) {
+            return on(new InetSocketAddress(port));
+        }
+
+        private static @NotNull Settings on(@NotNull InetSocketAddress address) {
+            return new Settings(address, 1_024, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1_024);
+        }
+    }
+
+    /**
+     * How busy the server has been.
+     *
+     * @param connections The number of tills connected now.
+     * @param paused      The number of those not being read from until their outstanding requests are answered.
+     * @param requests    The number of requests carried out.
+     * @param failures    The number of requests that failed.
+     */
+    public record Statistics(int connections, int paused, long requests, long failures) {
+    }
+}
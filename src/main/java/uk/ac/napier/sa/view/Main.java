@@ -2,26 +2,54 @@ package uk.ac.napier.sa.view;
 
 import uk.ac.napier.sa.controller.Controller;
 import uk.ac.napier.sa.controller.RemoteController;
+import uk.ac.napier.sa.metrics.Instrumentation;
 import uk.ac.napier.sa.model.DatabaseManager;
 import uk.ac.napier.sa.model.RemoteDatabaseManager;
+import uk.ac.napier.sa.server.TillProtocol;
+import uk.ac.napier.sa.server.TillServer;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Scanner;
 
 public class Main {
     private static final Scanner s = new Scanner(System.in);
-    private static final RemoteDatabaseManager rdbm = DatabaseManager.getInstance();
+    private static final RemoteDatabaseManager rdbm = Instrumentation.instrument(RemoteDatabaseManager.class, DatabaseManager.getInstance(), "database");
     private static final RemoteController c;
 
     static {
         assert rdbm != null;
-        c = new Controller(rdbm);
+        c = Instrumentation.instrument(RemoteController.class, new Controller(rdbm), "controller");
     }
 
+    /**
+     * Run the menu on the console, or with {@code --serve [port]}, serve tills over the network with no console.
+     * Tills are only served on the loopback interface unless the {@code destore.expose} property is {@code true}.
+     * Reads are spread over the replica hosts listed in the {@code destore.replicas} property, separated by commas, if any.
+     * Sample data is only loaded when the {@code destore.profile} property is {@code dev} or {@code test}.
+     */
     public static void main(String[] args) {
         Objects.requireNonNull(DatabaseManager.getInstance()).connect("::1", 3306, "store", false, "root", "admin123");
-        Arrays.asList("src/schema.sql", "src/data.sql").forEach(DatabaseManager.getInstance()::init);
+        if (!DatabaseManager.getInstance().migrate("src/migrations", System.getProperty("destore.profile", "prod"))) {
+            System.err.println("The database could not be brought up to date.");
+            DatabaseManager.getInstance().disconnect();
+            return;
+        }
+        String replicas = System.getProperty("destore.replicas", "");
+        if (!replicas.isBlank()) {
+            DatabaseManager.getInstance().connectReplicas(Arrays.asList(replicas.split(",")), 3306, "store", false, "root", "admin123");
+        }
+
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : TillProtocol.DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--import")) {
+            System.out.print(c.importCatalog(args[1]));
+            DatabaseManager.getInstance().disconnect();
+            return;
+        }
         int choice = 0;
 
         while (choice != 7) {
@@ -42,6 +70,20 @@ public class Main {
         DatabaseManager.getInstance().disconnect();
     }
 
+    private static void serve(int port) {
+        TillServer.Settings settings = Boolean.getBoolean("destore.expose") ? TillServer.Settings.exposed(port) : TillServer.Settings.defaults(port);
+        try (TillServer server = new TillServer(c, settings)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                DatabaseManager.getInstance().disconnect();
+            }));
+            System.out.println("Serving tills on " + server.address());
+            server.await();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
     private static void menu() {
         System.out.print("+----------+-------------------------------+\n" +
                          "| DE-Store | Distributed Management System |\n" +
@@ -65,13 +107,26 @@ public class Main {
     }
 
     private static void modifyPLU() {
-        System.out.print("Please enter the ID of the item whose price you wish to modify: ");
+        System.out.print("Please enter the ID of the item whose price you wish to modify, or 0 to load a price list file: ");
         int id = s.nextInt();
 
-        System.out.print("\nPlease enter the new price of the item: ");
-        double price = s.nextDouble();
+        String file = null;
+        double price = 0;
+        if (id == 0) {
+            System.out.print("\nPlease enter the path of the price list: ");
+            file = s.next();
+        } else {
+            System.out.print("\nPlease enter the new price of the item: ");
+            price = s.nextDouble();
+        }
+
+        // The credentials are read here, through the one scanner on System.in, rather than by the model.
+        System.out.print("\n---> Only managers can modify the prices of items.\nManager username: ");
+        String username = s.next();
+        System.out.print("Manager password: ");
+        String password = s.next();
 
-        System.out.printf("\n%s", c.changePrice(id, price));
+        System.out.printf("\n%s", file != null ? c.changePrices(file, username, password) : c.changePrice(id, price, username, password));
     }
 
     private static void addSale() {
@@ -128,16 +183,30 @@ public class Main {
             System.out.println("\nPrint previous N purchases?");
             System.out.println("[1] Yes\n" +
                                "[2] No\n" +
+                               "[3] Export transactions to a file instead\n" +
+                               "[4] Report from an export file instead\n" +
                                "Enter your choice: ");
             choice = s.nextInt();
-        } while (!Arrays.asList(1, 2).contains(choice));
+        } while (!Arrays.asList(1, 2, 3, 4).contains(choice));
 
         if (choice == 1) {
             System.out.print("\n Please pick an amount of previous purchases to print: ");
             choice = s.nextInt();
             c.printLastNPurchases(choice);
+        } else if (choice == 3 || choice == 4) {
+            System.out.print("\nPlease enter the path of the export file: ");
+            String file = s.next();
+            System.out.print("First day (yyyy-MM-dd, or - for the first transaction): ");
+            String from = day(s.next());
+            System.out.print("Last day (yyyy-MM-dd, or - for the last transaction): ");
+            String to = day(s.next());
+            System.out.println(choice == 3 ? c.exportTransactions(from, to, file) : c.reportFromExport(file, from, to));
         }
 
         System.out.println("\n");
     }
+
+    private static String day(String input) {
+        return input.equals("-") ? "" : input;
+    }
 }
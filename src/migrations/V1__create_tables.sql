@@ -2,11 +2,6 @@
 --  Database Schema  --
 -- --------------------
 --
-DROP TABLE IF EXISTS `transaction`;
-DROP TABLE IF EXISTS `sale`;
-DROP TABLE IF EXISTS `product`;
-DROP TABLE IF EXISTS `customer`;
---
 -- --------------------
 --   Structure for   --
 --  table `customer` --
@@ -34,4 +29,4 @@ CREATE TABLE IF NOT EXISTS `sale`(    id      int NOT NULL AUTO_INCREMENT PRIMAR
 --   `transaction`   --
 -- --------------------
 --
-CREATE TABLE IF NOT EXISTS `transaction`(    id        int            NOT NULL AUTO_INCREMENT PRIMARY KEY,    product   int            NOT NULL,    customer  int            NOT NULL,    sale      int            NOT NULL,    cost      decimal(16, 2) NOT NULL,    purchased TIMESTAMP DEFAULT CURRENT_TIMESTAMP,    CONSTRAINT product_id FOREIGN KEY  product (product) REFERENCES product (id),    CONSTRAINT customer FOREIGN KEY customer (customer) REFERENCES customer (id),    CONSTRAINT sale FOREIGN KEY sale (sale) REFERENCES sale (id));
\ No newline at end of file
+CREATE TABLE IF NOT EXISTS `transaction`(    id        int            NOT NULL AUTO_INCREMENT PRIMARY KEY,    product   int            NOT NULL,    customer  int            NOT NULL,    sale      int            NULL,    cost      decimal(16, 2) NOT NULL,    purchased TIMESTAMP DEFAULT CURRENT_TIMESTAMP,    CONSTRAINT product_id FOREIGN KEY  product (product) REFERENCES product (id),    CONSTRAINT customer FOREIGN KEY customer (customer) REFERENCES customer (id),    CONSTRAINT sale FOREIGN KEY sale (sale) REFERENCES sale (id));
\ No newline at end of file
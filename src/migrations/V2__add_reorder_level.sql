@@ -0,0 +1,7 @@
+-- --------------------
+--  Reorder levels   --
+-- --------------------
+--
+-- The stock level at or below which each product is reported as low in stock.
+--
+ALTER TABLE product ADD COLUMN reorder_level int NOT NULL DEFAULT 5;
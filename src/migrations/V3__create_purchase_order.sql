@@ -0,0 +1,14 @@
+-- --------------------
+--   Structure for   --
+--      table        --
+--  `purchase_order` --
+-- --------------------
+--
+CREATE TABLE IF NOT EXISTS `purchase_order`
+(
+    id       int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    product  int NOT NULL,
+    quantity int NOT NULL,
+    ordered  TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT purchase_order_product FOREIGN KEY (product) REFERENCES product (id)
+);
@@ -0,0 +1,7 @@
+-- --------------------
+--  Purchase history --
+-- --------------------
+--
+-- Lets the purchase history seek straight to a page, newest first, instead of sorting the whole table.
+--
+CREATE INDEX transaction_purchased ON `transaction` (purchased, id);
@@ -0,0 +1,17 @@
+-- --------------------
+--   Structure for   --
+--      table        --
+--  `write_behind`   --
+-- --------------------
+--
+-- The sequence number of the last queued write that the write-behind queue
+-- has committed, updated in the same transaction as each batch, so writes
+-- replayed from its journal after a crash are never inserted twice.
+--
+CREATE TABLE IF NOT EXISTS `write_behind`
+(
+    id      int    NOT NULL PRIMARY KEY,
+    flushed bigint NOT NULL
+);
+
+INSERT INTO `write_behind` (id, flushed) VALUES (1, 0);
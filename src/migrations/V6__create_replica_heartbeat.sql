@@ -0,0 +1,15 @@
+-- ---------------------
+--   Structure for    --
+--      table         --
+-- `replica_heartbeat` --
+-- ---------------------
+--
+-- Stamped with the time by every database manager that reads from
+-- replicas, one row each, and read back from the replicas to tell how far
+-- behind the primary they are.
+--
+CREATE TABLE IF NOT EXISTS `replica_heartbeat`
+(
+    source bigint NOT NULL PRIMARY KEY,
+    beat   bigint NOT NULL
+);
@@ -0,0 +1,10 @@
+-- ---------------------
+--   Allow purchases   --
+--   without a sale    --
+-- ---------------------
+--
+-- V1 creates `transaction` only if it does not exist, so databases that
+-- had the table before migrations were introduced may still have a
+-- NOT NULL sale column, which rejects every purchase made without a sale.
+--
+ALTER TABLE `transaction` MODIFY sale int NULL;
@@ -0,0 +1,20 @@
+-- ------------------------------
+--   Structure for            --
+--      table                 --
+--  `write_behind_checkpoint` --
+-- ------------------------------
+--
+-- Replaces the single `write_behind` row with one row per write-behind
+-- queue, keyed by the name each queue is opened with, so that queues in
+-- different processes sharing a database no longer move each other's
+-- checkpoint. The old row is kept under the name 'default'.
+--
+CREATE TABLE IF NOT EXISTS `write_behind_checkpoint`
+(
+    source  varchar(255) NOT NULL PRIMARY KEY,
+    flushed bigint       NOT NULL
+);
+
+INSERT INTO `write_behind_checkpoint` (source, flushed) SELECT 'default', flushed FROM `write_behind` WHERE id = 1;
+
+DROP TABLE `write_behind`;
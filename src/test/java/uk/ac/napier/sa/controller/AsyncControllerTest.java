@@ -0,0 +1,64 @@
+package uk.ac.napier.sa.controller;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.model.InMemoryDatabaseManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncControllerTest {
+
+    private static final String FIXTURE = "src/test/resources/conformance.sql";
+
+    private Controller controller;
+    private AsyncController async;
+
+    @BeforeEach
+    void load() {
+        InMemoryDatabaseManager memory = new InMemoryDatabaseManager();
+        assertTrue(memory.init(FIXTURE));
+        controller = new Controller(memory);
+        async = new AsyncController(controller);
+    }
+
+    @AfterEach
+    void close() {
+        async.close();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws ExecutionException, InterruptedException, TimeoutException {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void productsAreLookedUpConcurrentlyAndReturnedInOrder() throws ExecutionException, InterruptedException, TimeoutException {
+        List<String> products = await(async.retrieveProducts(List.of(5, 1, 99)));
+        assertEquals(List.of(controller.retrieveProduct(5), controller.retrieveProduct(1), controller.retrieveProduct(99)), products);
+        assertTrue(products.get(2).startsWith("[!]"));
+    }
+
+    @Test
+    void overviewCombinesTheStockCheckAndTheReport() throws ExecutionException, InterruptedException, TimeoutException {
+        assertEquals(controller.stockMonitor() + "\n" + controller.generateReport(), await(async.overview()));
+        assertTrue(await(async.purchase(1, 1)).startsWith("Product price"));
+        assertEquals("[!] Purchase disallowed.", await(async.purchase(99, 1)));
+    }
+
+    @Test
+    void exceptionSurfacesThroughTheFuture() {
+        CompletableFuture<String> basket = async.purchaseBasket(1, Map.of(1, -1));
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> await(basket));
+        assertInstanceOf(IllegalArgumentException.class, thrown.getCause());
+
+        CompletableFuture<String> combined = async.purchaseBasket(1, Map.of(2, 0)).thenCombine(async.generateReport(), String::concat);
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(ExecutionException.class, () -> await(combined)).getCause());
+    }
+}
@@ -0,0 +1,75 @@
+package uk.ac.napier.sa.metrics;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.model.DatabaseManager;
+import uk.ac.napier.sa.model.RemoteDatabaseManager;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentationTest {
+
+    interface Till {
+        boolean sell(int id);
+
+        boolean sell(int id, int quantity);
+
+        String name(int id);
+    }
+
+    private static final class QuietTill implements Till {
+        @Override
+        public boolean sell(int id) {
+            return true;
+        }
+
+        @Override
+        public boolean sell(int id, int quantity) {
+            if (quantity > 0) return true;
+            Instrumentation.failed();
+            return false;
+        }
+
+        @Override
+        public String name(int id) {
+            throw new IllegalArgumentException("No product " + id);
+        }
+    }
+
+    @Test
+    void overloadsAreMeasuredSeparately() {
+        Till till = Instrumentation.instrument(Till.class, new QuietTill(), "overloads");
+        till.sell(1);
+        till.sell(1);
+        till.sell(1, 3);
+
+        Map<String, OperationMetrics> metrics = Instrumentation.metrics("overloads");
+        assertEquals(2, metrics.get("sell(int)").getCalls());
+        assertEquals(1, metrics.get("sell(int,int)").getCalls());
+    }
+
+    @Test
+    void handledFailuresAreCountedAsErrors() {
+        Till till = Instrumentation.instrument(Till.class, new QuietTill(), "handled");
+        assertTrue(till.sell(1, 1));
+        assertFalse(till.sell(1, 0));
+        assertThrows(IllegalArgumentException.class, () -> till.name(1));
+
+        Map<String, OperationMetrics> metrics = Instrumentation.metrics("handled");
+        assertEquals(2, metrics.get("sell(int,int)").getCalls());
+        assertEquals(1, metrics.get("sell(int,int)").getErrors());
+        assertEquals(1, metrics.get("name(int)").getErrors());
+    }
+
+    @Test
+    void failureCaughtByTheDatabaseManagerIsCounted() {
+        RemoteDatabaseManager rdbm = Instrumentation.instrument(RemoteDatabaseManager.class, DatabaseManager.create(), "unconnected");
+        assertNull(rdbm.completePurchase(1, 1));
+        rdbm.disconnect();
+
+        Map<String, OperationMetrics> metrics = Instrumentation.metrics("unconnected");
+        assertEquals(1, metrics.get("completePurchase(int,int)").getErrors());
+        assertEquals(0, metrics.get("disconnect()").getErrors());
+    }
+}
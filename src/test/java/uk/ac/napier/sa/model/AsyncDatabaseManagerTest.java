@@ -0,0 +1,115 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.Product;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncDatabaseManagerTest {
+
+    private static final String FIXTURE = "src/test/resources/conformance.sql";
+
+    private InMemoryDatabaseManager memory;
+    private AsyncDatabaseManager async;
+
+    @BeforeEach
+    void load() {
+        memory = new InMemoryDatabaseManager();
+        assertTrue(memory.init(FIXTURE));
+        async = new AsyncDatabaseManager(memory);
+    }
+
+    @AfterEach
+    void close() {
+        async.close();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws ExecutionException, InterruptedException, TimeoutException {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void operationsCompleteWithTheUnderlyingResults() throws ExecutionException, InterruptedException, TimeoutException {
+        CompletableFuture<Product> tea = async.getProduct(1);
+        CompletableFuture<List<Integer>> low = async.stockMonitor();
+        assertEquals("Tea", await(tea).getName());
+        assertEquals(memory.stockMonitor(), await(low));
+
+        assertNotNull(await(async.completePurchase(1, 2)));
+        assertEquals(6, await(async.getProduct(2)).getQuantity());
+        assertNull(await(async.completePurchase(99, 1)));
+    }
+
+    @Test
+    void exceptionSurfacesThroughTheFuture() {
+        CompletableFuture<?> basket = async.purchaseBasket(1, Map.of(1, 0));
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> await(basket));
+        assertInstanceOf(IllegalArgumentException.class, thrown.getCause());
+
+        CompletionException joined = assertThrows(CompletionException.class, basket::join);
+        assertInstanceOf(IllegalArgumentException.class, joined.getCause());
+        assertEquals(20, memory.getProduct(1).getQuantity());
+    }
+
+    @Test
+    void closingStopsTheExecutor() {
+        ExecutorService executor = TaskExecutors.newPlatformExecutor("closing", 1);
+        AsyncDatabaseManager closing = new AsyncDatabaseManager(memory, executor);
+        closing.close();
+        assertTrue(executor.isShutdown());
+        assertThrows(RuntimeException.class, () -> closing.getProduct(1));
+    }
+
+    @Test
+    void executorUsesVirtualThreadsWhereTheJdkHasThem() throws ExecutionException, InterruptedException, TimeoutException {
+        ExecutorService executor = TaskExecutors.newExecutor("lookup");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            if (Runtime.version().feature() >= 21) {
+                assertEquals(true, isVirtual(thread));
+            } else {
+                // Without virtual threads the reflective lookup fails and a pool of named daemon threads is used.
+                assertTrue(thread.getName().startsWith("lookup-"), thread.getName());
+                assertTrue(thread.isDaemon());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void platformExecutorThreadsAreNamedDaemonsThatTimeOut() throws ExecutionException, InterruptedException, TimeoutException {
+        ExecutorService executor = TaskExecutors.newPlatformExecutor("pool", 2);
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            assertEquals("pool-1", thread.getName());
+            assertTrue(thread.isDaemon());
+            assertFalse(isVirtual(thread));
+            assertTrue(((ThreadPoolExecutor) executor).allowsCoreThreadTimeOut());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(Duration.ofSeconds(10).toMillis(), TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Imports small files in chunks of a few lines each, so that most lines fall across the middle of a chunk as first
+ * split, and batches of a few rows, so that every file is written in many transactions.
+ */
+class CatalogImporterTest {
+
+    private static final CatalogImporter.Settings SETTINGS = new CatalogImporter.Settings(4, 64, 3, 5);
+    private static final int PRODUCTS = 200;
+    private static final int TRANSACTIONS = 300;
+
+    private final String url = EmbeddedDatabase.url("import");
+    private DatabaseManager db;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void connect() {
+        db = EmbeddedDatabase.migrated(url);
+        db.setImportSettings(SETTINGS);
+    }
+
+    @AfterEach
+    void disconnect() {
+        db.disconnect();
+    }
+
+    private void write(String file, String text) throws IOException {
+        Files.writeString(dir.resolve(file), text);
+    }
+
+    /**
+     * Write files of every table, with a malformed line in the customers and another in the transactions.
+     */
+    private void writeCatalog() throws IOException {
+        write("customer.csv", """
+                id,name,loyal
+                1,Ada Lovelace,1
+                2,"Kernighan, Brian",0
+                # Clarice goes by CP
+                3,"Clarice ""CP"" Phelps",0
+                4,"Dennis Ritchie,1
+                5,  Grace Hopper  ,1
+                """);
+
+        // Windows line endings, and every third product left at the default reorder level.
+        StringBuilder products = new StringBuilder("id,name,stock,price,reorder_level\r\n");
+        for (int id = 1; id <= PRODUCTS; id++) {
+            products.append(id).append(',').append(id % 7 == 0 ? "\"Product " + id + ", large\"" : "Product " + id)
+                    .append(',').append(id * 2).append(',').append(id).append('.').append(String.format("%02d", id % 100));
+            if (id % 3 != 0) products.append(',').append(id % 10);
+            products.append("\r\n");
+        }
+        write("product.csv", products.toString());
+
+        StringBuilder sales = new StringBuilder();
+        for (int id = 1; id <= 20; id++) sales.append(id).append(',').append(id * 10).append(',').append(id % 3 + 1).append('\n');
+        write("sale.csv", sales.toString());
+
+        StringBuilder transactions = new StringBuilder("id,product,customer,sale,cost,purchased\n");
+        for (int id = 1; id <= TRANSACTIONS; id++) {
+            if (id == 150) transactions.append("150,1,1,,2.00p,2024-03-01 10:00:00\n");
+            else transactions.append(id).append(',').append(id % PRODUCTS + 1).append(',').append(id % 2 + 1).append(',')
+                    .append(id % 4 == 0 ? "" : String.valueOf(id % 20 + 1)).append(",1.50,2024-03-01 10:")
+                    .append(String.format("%02d", id % 60)).append(":00\n");
+        }
+        write("transaction.csv", transactions.toString());
+    }
+
+    @Test
+    void filesAreImportedInChunksWithEveryLineOnce() throws IOException, SQLException {
+        writeCatalog();
+        List<CatalogImporter.Result> results = db.importCatalog(dir.toString());
+        assertNotNull(results);
+        assertEquals(List.of(CatalogImporter.Table.CUSTOMER, CatalogImporter.Table.PRODUCT, CatalogImporter.Table.SALE,
+                CatalogImporter.Table.TRANSACTION), results.stream().map(CatalogImporter.Result::table).toList());
+        assertEquals(List.of(4L, (long) PRODUCTS, 20L, TRANSACTIONS - 1L), results.stream().map(CatalogImporter.Result::rows).toList());
+        assertEquals(List.of(1L, 0L, 0L, 1L), results.stream().map(CatalogImporter.Result::rejected).toList());
+
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            assertEquals(List.of("1 Ada Lovelace 1", "2 Kernighan, Brian 0", "3 Clarice \"CP\" Phelps 0", "5 Grace Hopper 1"),
+                    rows(stmt, "SELECT id, name, loyal FROM customer ORDER BY id"));
+
+            try (ResultSet products = stmt.executeQuery("SELECT id, name, stock, price, reorder_level FROM product ORDER BY id")) {
+                for (int id = 1; id <= PRODUCTS; id++) {
+                    assertTrue(products.next());
+                    assertEquals(id, products.getInt(1));
+                    assertEquals(id % 7 == 0 ? "Product " + id + ", large" : "Product " + id, products.getString(2));
+                    assertEquals(id * 2, products.getInt(3));
+                    assertEquals(new BigDecimal(id + "." + String.format("%02d", id % 100)), products.getBigDecimal(4));
+                    assertEquals(id % 3 == 0 ? LowStockIndex.DEFAULT_REORDER_LEVEL : id % 10, products.getInt(5));
+                }
+                assertFalse(products.next());
+            }
+
+            assertEquals(List.of("299 299 448.50"), rows(stmt, "SELECT COUNT(*), COUNT(DISTINCT id), SUM(cost) FROM transaction"));
+            assertEquals(List.of("75"), rows(stmt, "SELECT COUNT(*) FROM transaction WHERE sale IS NULL"));
+            assertEquals(List.of("0"), rows(stmt, "SELECT COUNT(*) FROM transaction WHERE id = 150"));
+            try (ResultSet purchased = stmt.executeQuery("SELECT purchased FROM transaction WHERE id = 61")) {
+                assertTrue(purchased.next());
+                assertEquals(Timestamp.valueOf("2024-03-01 10:01:00"), purchased.getTimestamp(1));
+            }
+        }
+        assertEquals("Product 14, large", db.getProduct(14).getName());
+    }
+
+    @Test
+    void malformedLinesAreSkippedAndReportedByByteOffset() throws IOException {
+        writeCatalog();
+        List<CatalogImporter.Result> results = db.importCatalog(dir.toString());
+        assertNotNull(results);
+
+        String customers = Files.readString(dir.resolve("customer.csv"));
+        assertEquals(List.of("customer.csv at byte " + customers.indexOf("4,\"Dennis") + ": expected the name to end with a quote"),
+                results.get(0).errors());
+        String transactions = Files.readString(dir.resolve("transaction.csv"));
+        assertEquals(List.of("transaction.csv at byte " + transactions.indexOf("150,1,1") +
+                             ": expected the cost to be an amount in pounds with at most two decimal places"), results.get(3).errors());
+    }
+
+    @Test
+    void customersAndProductsAreWrittenBeforeSalesAndSalesBeforeTransactions() throws IOException, SQLException {
+        writeCatalog();
+        List<CatalogImporter.Table> written = Collections.synchronizedList(new ArrayList<>());
+        new CatalogImporter(SETTINGS).load(dir, rows -> written.add(rows.table()), null);
+
+        List<CatalogImporter.Table> phases = written.stream().map(table -> switch (table) {
+            case CUSTOMER, PRODUCT -> CatalogImporter.Table.CUSTOMER;
+            case SALE -> CatalogImporter.Table.SALE;
+            case TRANSACTION -> CatalogImporter.Table.TRANSACTION;
+        }).toList();
+        assertEquals(phases.stream().sorted().toList(), phases);
+        assertTrue(written.contains(CatalogImporter.Table.PRODUCT));
+        assertTrue(written.contains(CatalogImporter.Table.TRANSACTION));
+    }
+
+    @Test
+    void rejectedBatchStopsTheImportAndKeepsWhatWasCommitted() throws IOException, SQLException {
+        writeCatalog();
+        // Sales of products that do not exist break the foreign key, so the transactions are never reached.
+        write("product.csv", "1,Tea,20,2.00\n");
+        assertNull(db.importCatalog(dir.toString()));
+
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            assertEquals(List.of("4"), rows(stmt, "SELECT COUNT(*) FROM customer"));
+            assertEquals(List.of("0"), rows(stmt, "SELECT COUNT(*) FROM transaction"));
+        }
+    }
+
+    @Test
+    void filesOpenedBeforeOneThatCannotBeAreClosed() throws IOException {
+        Path fds = Path.of("/proc/self/fd");
+        assumeTrue(Files.isDirectory(fds), "Open files can only be listed on Linux");
+        writeCatalog();
+        Path products = dir.resolve("product.csv");
+        assumeTrue(products.toFile().setReadable(false));
+        // Anyone who can read the file regardless, such as root, cannot make it fail to open.
+        assumeFalse(Files.isReadable(products), "The file is readable whatever its permissions");
+
+        List<CatalogImporter.Table> written = Collections.synchronizedList(new ArrayList<>());
+        assertThrows(IOException.class, () -> new CatalogImporter(SETTINGS).load(dir, rows -> written.add(rows.table()), null));
+        assertEquals(List.of(), written);
+        assertEquals(0, openFilesIn(fds, dir.toRealPath()));
+    }
+
+    private static long openFilesIn(Path fds, Path directory) throws IOException {
+        try (Stream<Path> open = Files.list(fds)) {
+            return open.filter(fd -> {
+                try {
+                    return Files.readSymbolicLink(fd).startsWith(directory);
+                } catch (IOException e) {
+                    return false;
+                }
+            }).count();
+        }
+    }
+
+    private static List<String> rows(Statement stmt, String sql) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (ResultSet results = stmt.executeQuery(sql)) {
+            int columns = results.getMetaData().getColumnCount();
+            while (results.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int column = 1; column <= columns; column++) {
+                    if (column > 1) row.append(' ');
+                    row.append(results.getString(column));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,87 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.Product;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+
+    @Test
+    void productsAreFoundWithAndWithoutGapsInTheirIds() throws SQLException {
+        String url = EmbeddedDatabase.url("catalog");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 20, 2.00), (2, 'Milk', 9, 0.95), (3, 'Jam', 4, 3.10)");
+            assertTrue(db.refreshCatalog());
+            assertEquals("Milk", db.getProduct(2).getName());
+            assertNull(db.getProduct(4));
+
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (10, 'Eggs', 30, 2.49)");
+            assertTrue(db.refreshCatalog());
+            assertEquals("Jam", db.getProduct(3).getName());
+            assertEquals("Eggs", db.getProduct(10).getName());
+            assertEquals(4, db.getAllProducts().size());
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void priceChangedByAnotherProcessShowsAfterReconciling() throws SQLException {
+        String url = EmbeddedDatabase.url("catalog");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 20, 2.00)");
+            db.reconcile();
+            assertEquals(200, db.getProduct(1).getPricePence());
+
+            stmt.executeUpdate("UPDATE product SET price = 2.40 WHERE id = 1");
+            stmt.executeUpdate("INSERT INTO sale (product, type) VALUES (1, 2)");
+            assertEquals(200, db.getProduct(1).getPricePence());
+
+            db.reconcile();
+            assertEquals(240, db.getProduct(1).getPricePence());
+            assertEquals(db.getProduct(1).getSaleTypes(), db.getAllProducts().get(0).getSaleTypes());
+            assertNotEquals(0, db.getProduct(1).getSaleTypes());
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void catchingUpReadsOnlyTheProductsChangedHere() throws SQLException {
+        String url = EmbeddedDatabase.url("catalog");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 20, 2.00), (2, 'Milk', 9, 0.95), (5, 'Jam', 4, 3.10)");
+            assertTrue(db.refreshCatalog());
+
+            stmt.executeUpdate("UPDATE product SET price = 1.05 WHERE id = 2");
+            assertTrue(db.changePrice(1, 2.5, "StoreManager", "************"));
+            assertTrue(db.sell(5, 2));
+            db.catchUp();
+
+            assertEquals(250, db.getProduct(1).getPricePence());
+            assertNotEquals(0, db.getProduct(5).getSaleTypes());
+            assertEquals("Jam", db.getProduct(5).getName());
+            // The product changed by another process is not read until the snapshot is rebuilt.
+            assertEquals(95, db.getProduct(2).getPricePence());
+            assertEquals(List.of(250L, 95L, 310L), db.getAllProducts().stream().map(Product::getPricePence).toList());
+
+            db.reconcile();
+            assertEquals(105, db.getProduct(2).getPricePence());
+        } finally {
+            db.disconnect();
+        }
+    }
+}
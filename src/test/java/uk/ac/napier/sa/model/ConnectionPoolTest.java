@@ -0,0 +1,144 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    private String url;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void open() throws SQLException {
+        url = EmbeddedDatabase.url("pool");
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings(1, 2, 200L, 300_000L, 2, 8));
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    @Test
+    void returnedConnectionIsLentAgain() throws SQLException {
+        Connection first;
+        try (PooledConnection c = pool.borrow()) {
+            first = c.connection();
+        }
+        try (PooledConnection c = pool.borrow()) {
+            assertSame(first, c.connection());
+        }
+        assertEquals(2, pool.statistics().borrows());
+        assertEquals(1, pool.statistics().idle());
+    }
+
+    @Test
+    void closingTwiceReturnsTheConnectionOnce() throws SQLException {
+        PooledConnection c = pool.borrow();
+        c.close();
+        c.close();
+
+        try (PooledConnection a = pool.borrow(); PooledConnection b = pool.borrow()) {
+            assertNotSame(a.connection(), b.connection());
+        }
+        assertEquals(2, pool.statistics().idle());
+    }
+
+    @Test
+    void exhaustedPoolTimesOut() throws SQLException {
+        try (PooledConnection a = pool.borrow(); PooledConnection b = pool.borrow()) {
+            assertThrows(SQLTimeoutException.class, pool::borrow);
+        }
+        assertEquals(1, pool.statistics().timeouts());
+        assertEquals(0, pool.statistics().active());
+    }
+
+    @Test
+    void openTransactionIsRolledBackOnReturn() throws SQLException {
+        try (PooledConnection c = pool.borrow()) {
+            c.prepare("CREATE TABLE item (id int PRIMARY KEY)").execute();
+        }
+        try (PooledConnection c = pool.borrow()) {
+            c.connection().setAutoCommit(false);
+            c.prepare("INSERT INTO item (id) VALUES (1)").executeUpdate();
+        }
+        try (PooledConnection c = pool.borrow();
+             ResultSet results = c.prepare("SELECT COUNT(*) FROM item").executeQuery()) {
+            assertTrue(c.connection().getAutoCommit());
+            assertTrue(results.next());
+            assertEquals(0, results.getInt(1));
+        }
+    }
+
+    @Test
+    void batchLeftOnACachedStatementIsNotExecutedByTheNextBorrower() throws SQLException {
+        String insert = "INSERT INTO item (id) VALUES (?)";
+        try (PooledConnection c = pool.borrow()) {
+            c.prepare("CREATE TABLE item (id int PRIMARY KEY)").execute();
+            PreparedStatement stmt = c.prepare(insert);
+            stmt.setInt(1, 1);
+            stmt.addBatch();
+            stmt.setInt(1, 2);
+        }
+        try (PooledConnection c = pool.borrow()) {
+            PreparedStatement stmt = c.prepare(insert);
+            assertThrows(SQLException.class, stmt::executeUpdate);
+            stmt.setInt(1, 3);
+            stmt.addBatch();
+            assertArrayEquals(new int[]{1}, stmt.executeBatch());
+        }
+        try (PooledConnection c = pool.borrow();
+             ResultSet results = c.prepare("SELECT COUNT(*) FROM item").executeQuery()) {
+            assertTrue(results.next());
+            assertEquals(1, results.getInt(1));
+        }
+    }
+
+    @Test
+    void brokenConnectionIsReplaced() throws SQLException {
+        Connection broken;
+        try (PooledConnection c = pool.borrow()) {
+            broken = c.connection();
+            broken.close();
+        }
+        try (PooledConnection c = pool.borrow();
+             ResultSet results = c.prepare("SELECT 1").executeQuery()) {
+            assertNotSame(broken, c.connection());
+            assertTrue(results.next());
+        }
+    }
+
+    @Test
+    void statementsAreCachedPerConnection() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            try (PooledConnection c = pool.borrow();
+                 ResultSet results = c.prepare("SELECT 1").executeQuery()) {
+                assertTrue(results.next());
+            }
+        }
+        StatementCache.Statistics statistics = pool.statementStatistics();
+        assertEquals(1, statistics.misses());
+        assertEquals(2, statistics.hits());
+    }
+
+    @Test
+    void closedPoolLendsNothing() throws SQLException {
+        PooledConnection held = pool.borrow();
+        pool.close();
+        assertThrows(SQLException.class, pool::borrow);
+
+        Connection physical = held.connection();
+        held.close();
+        assertTrue(physical.isClosed());
+        assertEquals(0, pool.statistics().idle());
+    }
+}
@@ -0,0 +1,76 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Embedded H2 databases for tests, in MySQL mode so that the migrations run as they are, each kept open until the JVM exits.
+ */
+final class EmbeddedDatabase {
+
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    private static Path migrations;
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Obtain the url of a new, empty database.
+     *
+     * @param name A name for the database, to tell it apart in errors.
+     * @return A JDBC url no other test uses.
+     */
+    static @NotNull String url(@NotNull String name) {
+        return "jdbc:h2:mem:" + name + "-" + NEXT.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+    }
+
+    /**
+     * Obtain a copy of src/migrations that the embedded database can run: every script is run as it is, apart from
+     * V1, whose MySQL-only foreign key clauses are replaced by the portable version in the test resources.
+     *
+     * @return The directory to pass to {@link DatabaseManager#migrate(String, String)}.
+     */
+    static synchronized @NotNull String migrations() {
+        if (migrations != null) return migrations.toString();
+        try {
+            Path dir = Files.createTempDirectory("migrations");
+            Path source = Path.of("src/migrations");
+            try (Stream<Path> files = Files.walk(source)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.equals(source)) continue;
+                    Files.copy(file, dir.resolve(source.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            try (InputStream v1 = EmbeddedDatabase.class.getResourceAsStream("/migrations/V1__create_tables.sql")) {
+                Files.copy(v1, dir.resolve("V1__create_tables.sql"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            migrations = dir;
+            return dir.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Create a database manager connected to an embedded database with every schema migration applied.
+     *
+     * @param url The url of the database, from {@link #url(String)}.
+     * @return The connected database manager, with no data loaded.
+     */
+    static @NotNull DatabaseManager migrated(@NotNull String url) {
+        DatabaseManager db = DatabaseManager.create();
+        if (!db.connect(url, "sa", "", ConnectionPool.Settings.defaults()) || !db.migrate(migrations(), "prod")) {
+            throw new IllegalStateException("Could not migrate " + url);
+        }
+        return db;
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LowStockIndexTest {
+
+    private final LowStockIndex index = new LowStockIndex();
+
+    @Test
+    void reconcileAppliesStockChangedElsewhere() {
+        List<String> events = new ArrayList<>();
+        index.addListener(new StockListener() {
+            @Override
+            public void lowStock(int productId, int stock, int reorderLevel) {
+                events.add("low " + productId + " " + stock);
+            }
+
+            @Override
+            public void restocked(int productId, int stock) {
+                events.add("restocked " + productId + " " + stock);
+            }
+        });
+        index.put(1, 10, 5);
+        index.put(2, 3, 5);
+
+        long asOf = index.version();
+        index.reconcile(1, 4, 5, asOf);
+        index.reconcile(2, 3, 5, asOf);
+        index.reconcile(3, 0, 5, asOf);
+
+        assertEquals(4, index.stock(1));
+        assertEquals(List.of(1, 2, 3), index.lowStock());
+        assertEquals(List.of(3), index.outOfStock());
+        assertEquals(List.of("low 1 4", "low 3 0"), events);
+    }
+
+    @Test
+    void changeMadeAfterTheReadStartedIsKept() {
+        index.put(1, 10, 5);
+        long asOf = index.version();
+        index.adjust(1, -1);
+
+        index.reconcile(1, 10, 5, asOf);
+        assertEquals(9, index.stock(1));
+
+        index.reconcile(1, 9, 5, index.version());
+        index.reconcile(1, 7, 5, index.version());
+        assertEquals(7, index.stock(1));
+    }
+
+    @Test
+    void stockTakenByAnotherProcessShowsAfterReconciling() throws SQLException {
+        String url = EmbeddedDatabase.url("stock");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (name, stock, price) VALUES ('Tea', 20, 2.00), ('Milk', 9, 0.95)");
+            db.reconcile();
+            assertEquals(List.of(), db.stockMonitor());
+
+            stmt.executeUpdate("UPDATE product SET stock = 2 WHERE id = 2");
+            stmt.executeUpdate("UPDATE product SET stock = 0 WHERE id = 1");
+            assertEquals(List.of(), db.stockMonitor());
+
+            // Catching up does not scan the product table; only the full reconciliation does.
+            db.catchUp();
+            assertEquals(List.of(), db.stockMonitor());
+
+            db.reconcile();
+            assertEquals(List.of(1, 2), db.stockMonitor());
+            assertEquals(2, db.getProduct(2).getQuantity());
+        } finally {
+            db.disconnect();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoyaltyIndexTest {
+
+    private final LoyaltyIndex index = new LoyaltyIndex();
+
+    @Test
+    void changeMadeAfterTheReadStartedIsKept() {
+        index.put(1, 2, false);
+        index.put(2, 5, false);
+        long asOf = index.version();
+        index.recordPurchase(1, false);
+        index.grant(2);
+
+        index.reconcile(1, 2, false, asOf);
+        index.reconcile(2, 5, false, asOf);
+        index.reconcile(3, 4, false, asOf);
+        assertEquals(3, index.purchases(1));
+        assertEquals(List.of(1, 3), index.eligible());
+
+        index.reconcile(1, 3, true, index.version());
+        assertEquals(List.of(3), index.eligible());
+    }
+
+    @Test
+    void purchasesAndCardsRecordedElsewhereShowAfterReconciling() throws SQLException {
+        String url = EmbeddedDatabase.url("loyalty");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 20, 2.00)");
+            stmt.executeUpdate("INSERT INTO customer (id, name) VALUES (1, 'Ada'), (2, 'Brian'), (3, 'Clarice')");
+            db.reconcile();
+
+            stmt.executeUpdate("INSERT INTO transaction (product, customer, cost) VALUES (1, 1, 2.00), (1, 1, 2.00), " +
+                               "(1, 1, 2.00), (1, 2, 2.00), (1, 2, 2.00), (1, 2, 2.00), (1, 3, 2.00), (1, 3, 2.00)");
+            assertFalse(db.checkLoyaltyCardEligibility(1));
+
+            db.reconcile();
+            assertTrue(db.checkLoyaltyCardEligibility(1));
+            assertTrue(db.checkLoyaltyCardEligibility(2));
+
+            stmt.executeUpdate("UPDATE customer SET loyal = 1 WHERE id = 2");
+            stmt.executeUpdate("INSERT INTO transaction (product, customer, cost) VALUES (1, 3, 2.00)");
+
+            // The sweep grants every customer the database finds eligible, whatever the index thinks.
+            assertEquals(List.of(1, 3), db.grantAllEligibleLoyalty());
+            assertEquals(List.of(), db.grantAllEligibleLoyalty());
+
+            db.reconcile();
+            for (int id = 1; id <= 3; id++) assertFalse(db.checkLoyaltyCardEligibility(id));
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    @Test
+    void catchingUpCountsOnlyCustomersWhoHaveBoughtSince() throws SQLException {
+        String url = EmbeddedDatabase.url("loyalty");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 20, 2.00)");
+            stmt.executeUpdate("INSERT INTO customer (id, name) VALUES (1, 'Ada'), (2, 'Brian')");
+            stmt.executeUpdate("INSERT INTO transaction (product, customer, cost) VALUES (1, 1, 2.00), (1, 1, 2.00), " +
+                               "(1, 2, 2.00), (1, 2, 2.00), (1, 2, 2.00)");
+            db.reconcile();
+            assertFalse(db.checkLoyaltyCardEligibility(1));
+            assertTrue(db.checkLoyaltyCardEligibility(2));
+
+            stmt.executeUpdate("INSERT INTO transaction (product, customer, cost) VALUES (1, 1, 2.00)");
+            stmt.executeUpdate("UPDATE customer SET loyal = 1 WHERE id = 2");
+            db.catchUp();
+            assertTrue(db.checkLoyaltyCardEligibility(1));
+            assertTrue(db.checkLoyaltyCardEligibility(2));
+
+            // A card granted to a customer with no new purchases waits for the full reconciliation.
+            db.reconcile();
+            assertFalse(db.checkLoyaltyCardEligibility(2));
+
+            stmt.executeUpdate("UPDATE customer SET loyal = 1 WHERE id = 1");
+            db.catchUp();
+            assertTrue(db.checkLoyaltyCardEligibility(1));
+            stmt.executeUpdate("INSERT INTO transaction (product, customer, cost) VALUES (1, 1, 2.00)");
+            db.catchUp();
+            assertFalse(db.checkLoyaltyCardEligibility(1));
+        } finally {
+            db.disconnect();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceListTest {
+
+    private static final String USERNAME = "StoreManager";
+    private static final String PASSWORD = "************";
+
+    @TempDir
+    Path dir;
+
+    private PriceList parse(String text) throws IOException {
+        Path file = Files.createTempFile(dir, "prices", ".csv");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        return PriceList.read(file);
+    }
+
+    private static List<Integer> ids(PriceList prices) {
+        return IntStream.range(0, prices.size()).map(prices::id).boxed().toList();
+    }
+
+    private static List<Long> pence(PriceList prices) {
+        return IntStream.range(0, prices.size()).mapToObj(prices::pricePence).toList();
+    }
+
+    @Test
+    void headerCommentsAndBlankLinesAreSkippedAndProductsSorted() throws IOException {
+        PriceList prices = parse("""
+                # Spring prices
+
+                product,price
+                7,3.99
+                  # Bread is going up
+                3 , 1.2
+                12,4
+                """);
+        assertEquals(List.of(), prices.errors());
+        assertEquals(List.of(3, 7, 12), ids(prices));
+        assertEquals(List.of(120L, 399L, 400L), pence(prices));
+        assertEquals(new BigDecimal("1.20"), prices.price(0));
+    }
+
+    @Test
+    void headerIsOnlyTakenFromTheFirstLine() throws IOException {
+        PriceList prices = parse("1,2.00\nproduct,price\n");
+        assertEquals(List.of("Line 2: expected a product ID and a comma"), prices.errors());
+        assertEquals(1, prices.size());
+    }
+
+    @Test
+    void windowsLineEndingsAndAMissingFinalNewlineAreAccepted() throws IOException {
+        PriceList prices = parse("product,price\r\n1,2.50\r\n\r\n2,0.05\t\r\n3,10");
+        assertEquals(List.of(), prices.errors());
+        assertEquals(List.of(1, 2, 3), ids(prices));
+        assertEquals(List.of(250L, 5L, 1_000L), pence(prices));
+    }
+
+    @Test
+    void productListedTwiceIsAnError() throws IOException {
+        PriceList prices = parse("4,1.00\n2,2.00\n4,1.50\n");
+        assertEquals(List.of("Line 3: product 4 is already priced on line 1"), prices.errors());
+    }
+
+    @Test
+    void malformedLinesAreReportedByLine() throws IOException {
+        PriceList prices = parse("""
+                0,1.00
+                2147483648,1.00
+                5
+                5,
+                5,1.999
+                5,1.5p
+                5,.50
+                """);
+        assertEquals(List.of(
+                "Line 1: expected a product ID and a comma",
+                "Line 2: expected a product ID and a comma",
+                "Line 3: expected a product ID and a comma",
+                "Line 4: expected a price in pounds with at most two decimal places",
+                "Line 5: expected a price in pounds with at most two decimal places",
+                "Line 6: expected a price in pounds with at most two decimal places",
+                "Line 7: expected a price in pounds with at most two decimal places"), prices.errors());
+        assertEquals(0, prices.size());
+    }
+
+    @Test
+    void poundsAreLimitedToFourteenDigits() throws IOException {
+        PriceList largest = parse("2147483647,99999999999999.99\n");
+        assertEquals(List.of(), largest.errors());
+        assertEquals(9_999_999_999_999_999L, largest.pricePence(0));
+        assertEquals(new BigDecimal("99999999999999.99"), largest.price(0));
+
+        PriceList tooLarge = parse("1,100000000000000\n");
+        assertEquals(List.of("Line 1: expected a price in pounds with at most two decimal places"), tooLarge.errors());
+    }
+
+    @Test
+    void errorsAreCappedForAFileInTheWrongFormat() throws IOException {
+        PriceList prices = parse("id;price\n" + "1;2.00\n".repeat(500));
+        assertEquals(PriceList.MAX_ERRORS, prices.errors().size());
+        assertEquals("Line 2: expected a product ID and a comma", prices.errors().get(0));
+    }
+
+    @Test
+    void pricesAreChangedInPaddedBatches() throws IOException, SQLException {
+        String url = EmbeddedDatabase.url("prices");
+        DatabaseManager db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO product (id, name, stock, price) VALUES (?, ?, 10, 1.00)")) {
+                for (int id = 1; id <= 300; id++) {
+                    insert.setInt(1, id);
+                    insert.setString(2, "Product " + id);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            // 303 rows take a batch of 256 and one of 47, padded to 64 by repeating the last product.
+            // Every tenth product keeps its price, and products 301 to 303 do not exist.
+            StringBuilder file = new StringBuilder("product,price\n");
+            for (int id = 1; id <= 303; id++) file.append(id).append(',').append(id % 10 == 0 ? "1.00" : id + ".25").append('\n');
+            Path prices = dir.resolve("prices.csv");
+            Files.writeString(prices, file);
+
+            PriceList.Update update = db.changePrices(prices.toString(), USERNAME, PASSWORD);
+            assertNotNull(update);
+            assertTrue(update.applied());
+            assertEquals(303, update.rows());
+            assertEquals(270, update.changed());
+            try (ResultSet results = conn.createStatement().executeQuery("SELECT id, price FROM product ORDER BY id")) {
+                for (int id = 1; id <= 300; id++) {
+                    assertTrue(results.next());
+                    assertEquals(id, results.getInt(1));
+                    assertEquals(new BigDecimal(id % 10 == 0 ? "1.00" : id + ".25"), results.getBigDecimal(2));
+                }
+                assertFalse(results.next());
+            }
+            assertEquals(29_925, db.getProduct(299).getPricePence());
+
+            // Three rows fill a batch of four, with the last repeated, and change each product once.
+            Files.writeString(prices, "1,7.00\n2,7.00\n3,7.00\n");
+            assertEquals(3, db.changePrices(prices.toString(), USERNAME, PASSWORD).changed());
+            assertEquals(0, db.changePrices(prices.toString(), USERNAME, PASSWORD).changed());
+
+            // A file with an error anywhere changes nothing, not even its valid lines.
+            Files.writeString(prices, "1,8.00\n2,8.00\nthree,8.00\n");
+            PriceList.Update refused = db.changePrices(prices.toString(), USERNAME, PASSWORD);
+            assertNotNull(refused);
+            assertFalse(refused.applied());
+            assertEquals(0, refused.changed());
+            assertEquals(new BigDecimal("7.00"), price(conn, 1));
+            assertEquals(700, db.getProduct(2).getPricePence());
+
+            assertNull(db.changePrices(prices.toString(), USERNAME, "wrong"));
+        } finally {
+            db.disconnect();
+        }
+    }
+
+    private static BigDecimal price(Connection conn, int id) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT price FROM product WHERE id = ?")) {
+            stmt.setInt(1, id);
+            try (ResultSet results = stmt.executeQuery()) {
+                assertTrue(results.next());
+                return results.getBigDecimal(1);
+            }
+        }
+    }
+}
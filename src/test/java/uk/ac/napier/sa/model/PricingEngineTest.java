@@ -0,0 +1,134 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.Product;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PricingEngineTest {
+
+    private static final int THREE_FOR_TWO = Product.saleMask(PricingEngine.THREE_FOR_TWO);
+    private static final int BUY_ONE_GET_ONE_FREE = Product.saleMask(PricingEngine.BUY_ONE_GET_ONE_FREE);
+    private static final int FREE_DELIVERY = Product.saleMask(PricingEngine.FREE_DELIVERY);
+
+    private final PricingEngine engine = new PricingEngine(PricingEngine.Settings.defaults());
+
+    @Test
+    void costIsRoundedUpAndTheDiscountHalfUp() {
+        assertEquals(105, engine.cost(100, false));
+        // 99p with a 5% surcharge is 103.95p, and 93.555p after 10% off for a loyalty card holder.
+        assertEquals(104, engine.cost(99, false));
+        assertEquals(94, engine.cost(99, true));
+        assertEquals(0, engine.cost(0, true));
+
+        assertEquals(10, engine.loyaltyDiscount(95, true));
+        assertEquals(9, engine.loyaltyDiscount(94, true));
+        assertEquals(0, engine.loyaltyDiscount(95, false));
+    }
+
+    @Test
+    void bestPromotionDecidesTheFreeUnits() {
+        assertEquals(1, PricingEngine.freeUnits(5, THREE_FOR_TWO));
+        assertEquals(2, PricingEngine.freeUnits(5, BUY_ONE_GET_ONE_FREE));
+        assertEquals(2, PricingEngine.freeUnits(5, THREE_FOR_TWO | BUY_ONE_GET_ONE_FREE));
+        assertEquals(1, PricingEngine.freeUnits(3, THREE_FOR_TWO | BUY_ONE_GET_ONE_FREE));
+        assertEquals(0, PricingEngine.freeUnits(2, THREE_FOR_TWO));
+        assertEquals(0, PricingEngine.freeUnits(1, BUY_ONE_GET_ONE_FREE));
+        assertEquals(0, PricingEngine.freeUnits(9, FREE_DELIVERY));
+    }
+
+    @Test
+    void linesArePricedAfterTheirPromotion() {
+        PricingEngine.Basket basket = new PricingEngine.Basket(1);
+        basket.add(1, 3, 200, THREE_FOR_TWO);
+        basket.add(2, 2, 95, BUY_ONE_GET_ONE_FREE);
+        PricingEngine.Quote quote = new PricingEngine.Quote();
+        engine.price(basket, true, quote);
+
+        assertEquals(790, quote.subtotal());
+        assertEquals(200, quote.promotion(0));
+        assertEquals(95, quote.promotion(1));
+        assertEquals(40, quote.discount(0));
+        assertEquals(10, quote.discount(1));
+        assertEquals(378, quote.cost(0));
+        assertEquals(90, quote.cost(1));
+        assertEquals(468, quote.total());
+        assertEquals(0, quote.delivery());
+    }
+
+    @Test
+    void freeDeliveryOnAnyProductWaivesTheCharge() {
+        PricingEngine charging = new PricingEngine(new PricingEngine.Settings(0, 0, 350));
+        PricingEngine.Basket basket = new PricingEngine.Basket();
+        PricingEngine.Quote quote = new PricingEngine.Quote();
+
+        charging.price(basket, false, quote);
+        assertEquals(0, quote.delivery());
+        assertEquals(0, quote.total());
+
+        basket.add(1, 1, 200, THREE_FOR_TWO);
+        charging.price(basket, false, quote);
+        assertEquals(350, quote.delivery());
+        assertEquals(550, quote.total());
+
+        basket.add(2, 1, 100, FREE_DELIVERY);
+        charging.price(basket, false, quote);
+        assertEquals(0, quote.delivery());
+        assertEquals(300, quote.total());
+    }
+
+    @Test
+    void unitSharesAddUpToTheLineCost() {
+        for (int quantity = 1; quantity <= 7; quantity++) {
+            for (long cost = 0; cost <= 50; cost++) {
+                long sum = 0;
+                long least = Long.MAX_VALUE;
+                long most = 0;
+                for (int unit = 0; unit < quantity; unit++) {
+                    long share = PricingEngine.unitShare(cost, quantity, unit);
+                    sum += share;
+                    least = Math.min(least, share);
+                    most = Math.max(most, share);
+                }
+                assertEquals(cost, sum, cost + " over " + quantity);
+                assertTrue(most - least <= 1);
+            }
+        }
+    }
+
+    @Test
+    void unitCostsAddUpToTheTotalWithDelivery() {
+        PricingEngine charging = new PricingEngine(new PricingEngine.Settings(1_000, 500, 299));
+        PricingEngine.Basket basket = new PricingEngine.Basket();
+        basket.add(1, 3, 199, THREE_FOR_TWO);
+        basket.add(2, 4, 95, 0);
+        basket.add(3, 1, 310, 0);
+        PricingEngine.Quote quote = new PricingEngine.Quote();
+        charging.price(basket, true, quote);
+
+        long recorded = 0;
+        for (int line = 0; line < quote.size(); line++) {
+            long lineShares = 0;
+            for (int unit = 0; unit < basket.quantity(line); unit++) {
+                recorded += quote.unitCost(line, unit);
+                lineShares += PricingEngine.unitShare(quote.cost(line), basket.quantity(line), unit);
+            }
+            assertEquals(quote.cost(line), lineShares);
+        }
+        assertEquals(299, quote.delivery());
+        assertEquals(quote.total(), recorded);
+    }
+
+    @Test
+    void basketTooLargeToPriceIsRefused() {
+        PricingEngine.Quote quote = new PricingEngine.Quote();
+        PricingEngine.Basket huge = new PricingEngine.Basket();
+        huge.add(1, 3, Long.MAX_VALUE / 2, 0);
+        assertThrows(ArithmeticException.class, () -> engine.price(huge, false, quote));
+
+        PricingEngine.Basket small = new PricingEngine.Basket();
+        small.add(1, 1, 100, 0);
+        PricingEngine costly = new PricingEngine(new PricingEngine.Settings(0, 0, Long.MAX_VALUE));
+        assertThrows(ArithmeticException.class, () -> costly.price(small, false, quote));
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.Product;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCacheTest {
+
+    private final ProductCache cache = new ProductCache(16, Duration.ofMinutes(1));
+
+    private static Product product(int id) {
+        return new Product(id, "Product " + id, 10, 100L, 0);
+    }
+
+    @Test
+    void loadIsCachedUntilInvalidated() {
+        cache.get(1, ProductCacheTest::product);
+        assertNotNull(cache.get(1, id -> fail("cached product reloaded")));
+
+        cache.invalidate(1);
+        Product reloaded = cache.get(1, ProductCacheTest::product);
+        assertNotNull(reloaded);
+        assertEquals(2, cache.statistics().misses());
+        assertEquals(1, cache.statistics().hits());
+        assertEquals(1, cache.statistics().size());
+    }
+
+    @Test
+    void loadRacingAWriteToTheSameProductIsNotCached() {
+        cache.get(1, id -> {
+            cache.invalidate(1);
+            return product(id);
+        });
+        cache.get(1, ProductCacheTest::product);
+        assertEquals(2, cache.statistics().misses());
+    }
+
+    @Test
+    void writeToAnotherProductDoesNotStopALoadBeingCached() {
+        cache.get(1, id -> {
+            cache.invalidate(2);
+            return product(id);
+        });
+        cache.getAll(List.of(3, 4), ids -> {
+            cache.invalidate(5);
+            return Map.of(3, product(3), 4, product(4));
+        });
+
+        cache.get(1, id -> fail("product 1 was not cached"));
+        cache.getAll(List.of(3, 4), ids -> fail("products 3 and 4 were not cached"));
+        assertEquals(3, cache.statistics().size());
+    }
+
+    @Test
+    void loadRacingInvalidateAllIsNotCached() {
+        cache.get(1, id -> {
+            cache.invalidateAll();
+            return product(id);
+        });
+        cache.get(1, ProductCacheTest::product);
+        assertEquals(2, cache.statistics().misses());
+    }
+
+    @Test
+    void evictedTombstoneStillStopsARacingLoad() {
+        ProductCache small = new ProductCache(2, Duration.ofMinutes(1));
+        small.get(1, id -> {
+            small.invalidate(1);
+            // Two more tombstones push the one for product 1 out of the cache.
+            small.invalidate(2);
+            small.invalidate(3);
+            return product(id);
+        });
+        small.get(1, ProductCacheTest::product);
+        assertEquals(2, small.statistics().misses());
+    }
+}
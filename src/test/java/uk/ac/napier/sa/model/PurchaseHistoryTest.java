@@ -0,0 +1,110 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.Purchase;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PurchaseHistoryTest {
+
+    private static final int PURCHASES = 1_234;
+
+    private final String url = EmbeddedDatabase.url("history");
+    private DatabaseManager db;
+
+    @BeforeEach
+    void load() throws SQLException {
+        db = EmbeddedDatabase.migrated(url);
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO transaction (product, customer, cost, purchased) VALUES (1, 1, ?, ?)")) {
+            stmt.executeUpdate("INSERT INTO product (name, stock, price) VALUES ('Tea', 100, 2.00)");
+            stmt.executeUpdate("INSERT INTO customer (name) VALUES ('Ada')");
+
+            // IDs are not in time order, and every time is shared by several purchases.
+            Instant start = Instant.parse("2021-06-01T09:00:00Z");
+            for (int i = 0; i < PURCHASES; i++) {
+                insert.setBigDecimal(1, BigDecimal.valueOf(i, 2));
+                insert.setTimestamp(2, Timestamp.from(start.plusSeconds((i * 37L) % 101)));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    @AfterEach
+    void close() {
+        db.disconnect();
+    }
+
+    @Test
+    void historyIsWalkedNewestFirstAcrossPages() throws SQLException {
+        List<Integer> walked = new ArrayList<>();
+        assertTrue(db.forEachPurchase(PURCHASES + 10, p -> walked.add(p.getTransactionId())));
+        assertEquals(newestFirst(), walked);
+
+        List<Integer> some = new ArrayList<>();
+        assertTrue(db.forEachPurchase(700, p -> some.add(p.getTransactionId())));
+        assertEquals(walked.subList(0, 700), some);
+    }
+
+    @Test
+    void pagesFollowOnFromTheLastPurchase() throws SQLException {
+        List<Integer> paged = new ArrayList<>();
+        Purchase last = null;
+        List<Purchase> page;
+        do {
+            page = db.purchasesBefore(last, 97);
+            assertNotNull(page);
+            page.forEach(p -> paged.add(p.getTransactionId()));
+            if (!page.isEmpty()) last = page.get(page.size() - 1);
+        } while (page.size() == 97);
+        assertEquals(newestFirst(), paged);
+    }
+
+    @Test
+    void pageThatCannotBeReadStopsTheWalk() {
+        List<Integer> walked = new ArrayList<>();
+        boolean complete = db.forEachPurchase(PURCHASES, p -> {
+            if (walked.isEmpty()) dropHistory();
+            walked.add(p.getTransactionId());
+        });
+
+        assertFalse(complete);
+        assertEquals(500, walked.size());
+        assertNull(db.purchasesBefore(null, 10));
+    }
+
+    private void dropHistory() {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE customer RENAME TO former_customer");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Integer> newestFirst() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             ResultSet results = stmt.executeQuery("SELECT id FROM transaction ORDER BY purchased DESC, id DESC")) {
+            while (results.next()) ids.add(results.getInt(1));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,219 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.BasketReceipt;
+import uk.ac.napier.sa.controller.adt.Product;
+import uk.ac.napier.sa.controller.adt.Purchase;
+import uk.ac.napier.sa.controller.adt.Receipt;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the same scenarios against every implementation of {@link RemoteDatabaseManager}, each loaded from the same
+ * script, and checks that they agree with each other as well as with the figures the script implies.
+ */
+class RemoteDatabaseManagerConformanceTest {
+
+    private static final String FIXTURE = "src/test/resources/conformance.sql";
+
+    private DatabaseManager database;
+    private InMemoryDatabaseManager memory;
+
+    @BeforeEach
+    void load() {
+        database = EmbeddedDatabase.migrated(EmbeddedDatabase.url("conformance"));
+        memory = new InMemoryDatabaseManager();
+        assertTrue(database.init(FIXTURE));
+        assertTrue(memory.init(FIXTURE));
+    }
+
+    @AfterEach
+    void close() {
+        database.disconnect();
+    }
+
+    /**
+     * Run a step against both managers and check that they give the same result.
+     *
+     * @return The result, which both managers gave.
+     */
+    private <T> T agree(Function<RemoteDatabaseManager, T> step) {
+        T expected = step.apply(memory);
+        assertEquals(expected, step.apply(database));
+        return expected;
+    }
+
+    private static String describe(Product product) {
+        return product == null ? null : product.getId() + " " + product.getName() + " " + product.getQuantity() + " " +
+                                         product.getPricePence() + " " + product.getSaleTypes();
+    }
+
+    /**
+     * Describe a purchase without the time it was made, which each store takes from its own clock.
+     */
+    private static String describe(Purchase purchase) {
+        return purchase.getTransactionId() + " " + purchase.getProductName() + " " + purchase.getCustomerName() + " " + purchase.getCost();
+    }
+
+    private static List<String> describe(List<Purchase> purchases) {
+        return purchases.stream().map(RemoteDatabaseManagerConformanceTest::describe).toList();
+    }
+
+    @Test
+    void purchaseReceipts() {
+        Receipt loyal = agree(rdbm -> rdbm.completePurchase(1, 1));
+        assertNotNull(loyal);
+        assertEquals(8, loyal.getTransactionId());
+        assertEquals(new BigDecimal("2.00"), loyal.getPrice());
+        assertTrue(loyal.isDiscounted());
+
+        Receipt full = agree(rdbm -> rdbm.completePurchase(2, 5));
+        assertNotNull(full);
+        assertFalse(full.isDiscounted());
+
+        assertNotNull(agree(rdbm -> rdbm.completePurchase(4, 3)));
+        assertNull(agree(rdbm -> rdbm.completePurchase(4, 3)));
+        assertNull(agree(rdbm -> rdbm.completePurchase(4, 4)));
+        assertNull(agree(rdbm -> rdbm.completePurchase(99, 1)));
+        assertNull(agree(rdbm -> rdbm.completePurchase(1, 99)));
+    }
+
+    @Test
+    void basketReceipts() {
+        BasketReceipt promoted = agree(rdbm -> rdbm.purchaseBasket(2, Map.of(1, 3, 2, 2)));
+        assertNotNull(promoted);
+        assertEquals(List.of(1, 2), promoted.getLines().stream().map(BasketReceipt.Line::getProductId).toList());
+        assertTrue(promoted.getLines().get(0).getPromotion().signum() > 0);
+        assertTrue(promoted.getLines().get(1).getPromotion().signum() > 0);
+
+        BasketReceipt loyal = agree(rdbm -> rdbm.purchaseBasket(1, Map.of(5, 2, 1, 1)));
+        assertNotNull(loyal);
+        assertTrue(loyal.getSavings().signum() > 0);
+
+        assertNull(agree(rdbm -> rdbm.purchaseBasket(3, Map.of(1, 1, 3, 2))));
+        assertNull(agree(rdbm -> rdbm.purchaseBasket(99, Map.of(1, 1))));
+        assertEquals(List.of(16, 28), agree(rdbm -> List.of(rdbm.getProduct(1).getQuantity(), rdbm.getProduct(5).getQuantity())));
+    }
+
+    @Test
+    void deliveryIsRecordedWithTheUnitsItWasChargedOn() {
+        PricingEngine charging = new PricingEngine(new PricingEngine.Settings(1_000, 500, 299));
+        database.setPricing(charging);
+        memory.setPricing(charging);
+
+        BasketReceipt receipt = agree(rdbm -> rdbm.purchaseBasket(2, Map.of(1, 3, 2, 2)));
+        assertNotNull(receipt);
+        assertEquals(new BigDecimal("2.99"), receipt.getDelivery());
+
+        // Every unit carries its share of the delivery charge, so the recorded sales add up to the receipt.
+        long revenue = agree(RemoteDatabaseManager::salesSummary).revenuePence();
+        assertEquals(receipt.getTotal().movePointRight(2).longValueExact(), revenue);
+        assertEquals(5, (int) agree(rdbm -> rdbm.generateReport().get("purchases")));
+    }
+
+    @Test
+    void stockAndLowStock() {
+        assertEquals(List.of(3, 4), agree(RemoteDatabaseManager::stockMonitor));
+
+        agree(rdbm -> rdbm.completePurchase(2, 2));
+        agree(rdbm -> rdbm.completePurchase(2, 2));
+        agree(rdbm -> rdbm.completePurchase(2, 3));
+        assertEquals(List.of(2, 3, 4), agree(RemoteDatabaseManager::stockMonitor));
+        assertEquals("2 Milk 5 95 2", agree(rdbm -> describe(rdbm.getProduct(2))));
+
+        agree(rdbm -> rdbm.setReorderLevel(2, 4));
+        assertEquals(List.of(3, 4), agree(RemoteDatabaseManager::stockMonitor));
+
+        assertTrue(agree(RemoteDatabaseManager::noStock));
+        agree(rdbm -> rdbm.getAllProducts().stream().map(RemoteDatabaseManagerConformanceTest::describe).toList());
+        assertTrue(agree(rdbm -> rdbm.getProduct(4).getQuantity()) > 0);
+        assertFalse(agree(RemoteDatabaseManager::noStock));
+    }
+
+    @Test
+    void priceChanges() {
+        assertEquals(true, agree(rdbm -> rdbm.changePrice(1, 2.5, "StoreManager", "************")));
+        assertEquals("1 Tea 20 250 1", agree(rdbm -> describe(rdbm.getProduct(1))));
+
+        assertEquals(false, agree(rdbm -> rdbm.changePrice(99, 2.5, "StoreManager", "************")));
+        assertEquals(false, agree(rdbm -> rdbm.changePrice(1, 3.0, "StoreManager", "wrong")));
+        assertEquals("1 Tea 20 250 1", agree(rdbm -> describe(rdbm.getProduct(1))));
+    }
+
+    @Test
+    void loyaltyEligibility() {
+        assertEquals(List.of(false, false, true, false), agree(rdbm -> eligibility(rdbm)));
+
+        agree(rdbm -> rdbm.completePurchase(2, 1));
+        assertEquals(List.of(false, true, true, false), agree(rdbm -> eligibility(rdbm)));
+
+        assertEquals(List.of(2, 3), agree(RemoteDatabaseManager::grantAllEligibleLoyalty));
+        assertEquals(List.of(false, false, false, false), agree(rdbm -> eligibility(rdbm)));
+        assertEquals(List.of(), agree(RemoteDatabaseManager::grantAllEligibleLoyalty));
+
+        Receipt discounted = agree(rdbm -> rdbm.completePurchase(2, 1));
+        assertTrue(discounted.isDiscounted());
+    }
+
+    private static List<Boolean> eligibility(RemoteDatabaseManager rdbm) {
+        List<Boolean> eligible = new ArrayList<>();
+        for (int id = 1; id <= 4; id++) eligible.add(rdbm.checkLoyaltyCardEligibility(id));
+        return eligible;
+    }
+
+    @Test
+    void reportTotals() {
+        Map<String, Object> before = agree(RemoteDatabaseManager::generateReport);
+        assertEquals(0, before.get("purchases"));
+        assertEquals(4, before.get("most-popular"));
+
+        agree(rdbm -> rdbm.completePurchase(1, 5));
+        agree(rdbm -> rdbm.completePurchase(2, 5));
+        agree(rdbm -> rdbm.purchaseBasket(3, Map.of(5, 3)));
+
+        Map<String, Object> after = agree(RemoteDatabaseManager::generateReport);
+        assertEquals(5, after.get("purchases"));
+        assertEquals(6, after.get("most-popular"));
+        assertEquals(agree(RemoteDatabaseManager::salesSummary).revenuePence() / 100.0d, (double) after.get("revenue"), 0.001);
+    }
+
+    @Test
+    void keysetHistoryPaging() {
+        agree(rdbm -> rdbm.completePurchase(4, 2));
+        List<String> all = agree(rdbm -> {
+            List<Purchase> purchases = new ArrayList<>();
+            rdbm.forEachPurchase(100, purchases::add);
+            return describe(purchases);
+        });
+        assertEquals(List.of("8 Milk Dennis Ritchie 1.00", "7 Tea Ada Lovelace 1.89", "6 Bread Ada Lovelace 1.13",
+                "4 Milk Clarice Phelps 1.00", "3 Tea Clarice Phelps 2.10", "2 Eggs Brian Kernighan 2.61",
+                "1 Tea Brian Kernighan 2.10", "5 Tea Clarice Phelps 2.10"), all);
+
+        List<String> paged = agree(rdbm -> {
+            List<Purchase> purchases = new ArrayList<>();
+            Purchase last = null;
+            List<Purchase> page;
+            do {
+                page = rdbm.purchasesBefore(last, 3);
+                purchases.addAll(page);
+                if (!page.isEmpty()) last = page.get(page.size() - 1);
+            } while (page.size() == 3);
+            return describe(purchases);
+        });
+        assertEquals(all, paged);
+
+        assertEquals(all.subList(0, 3), agree(rdbm -> {
+            List<Purchase> purchases = new ArrayList<>();
+            rdbm.forEachPurchase(3, purchases::add);
+            return describe(purchases);
+        }));
+    }
+}
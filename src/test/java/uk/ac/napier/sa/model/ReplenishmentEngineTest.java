@@ -0,0 +1,131 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplenishmentEngineTest {
+
+    private final String url = EmbeddedDatabase.url("replenish");
+    private final List<List<ReplenishmentEngine.Order>> placed = new ArrayList<>();
+    private DatabaseManager db;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void load() throws SQLException {
+        db = EmbeddedDatabase.migrated(url);
+        pool = new ConnectionPool(url, "sa", "", ConnectionPool.Settings.defaults());
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO customer (id, name) VALUES (1, 'Ada')");
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price, reorder_level) VALUES " +
+                               "(1, 'Tea', 0, 2.00, 5), (2, 'Milk', 5, 0.95, 5), (3, 'Bread', 6, 1.20, 5)");
+            // Twenty-eight teas sold over the last week and one long before, which is outside the window.
+            for (int i = 0; i < 28; i++) {
+                stmt.executeUpdate("INSERT INTO transaction (product, customer, cost) VALUES (1, 1, 2.00)");
+            }
+            stmt.executeUpdate("INSERT INTO transaction (product, customer, cost, purchased) VALUES (1, 1, 2.00, '2020-01-01 00:00:00')");
+        }
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+        db.disconnect();
+    }
+
+    private ReplenishmentEngine engine(StockSupplier supplier) {
+        return new ReplenishmentEngine(new ReplenishmentEngine.Settings(10, 7, Duration.ofDays(7)), supplier);
+    }
+
+    @Test
+    void quantityCoversRecentSalesInWholeCases() {
+        ReplenishmentEngine engine = engine(StockSupplier.local());
+        // Two a day for seven days on top of a reorder level of 5 is 19, short by 16, so two cases.
+        assertEquals(20, engine.quantity(3, 5, 14));
+        // A product that has not sold is still ordered one case.
+        assertEquals(10, engine.quantity(5, 5, 0));
+        assertEquals(10, engine.quantity(0, 0, 0));
+        // Part of a unit a day is rounded up before the shortfall is.
+        assertEquals(10, engine.quantity(5, 5, 1));
+        assertEquals(30, engine.quantity(0, 5, 21));
+
+        ReplenishmentEngine single = new ReplenishmentEngine(new ReplenishmentEngine.Settings(1, 7, Duration.ofDays(7)), StockSupplier.local());
+        assertEquals(17, single.quantity(2, 5, 14));
+    }
+
+    @Test
+    void onlyProductsAtOrBelowTheirReorderLevelAreOrdered() throws SQLException {
+        List<ReplenishmentEngine.Order> orders;
+        try (PooledConnection c = pool.borrow()) {
+            orders = engine(placed::add).replenish(c, List.of(3, 2, 1, 2));
+        }
+
+        // Tea sold 4 a day over the window, so it is ordered 5 + 28 in whole cases; Milk sold none.
+        assertEquals(List.of(new ReplenishmentEngine.Order(1, 40), new ReplenishmentEngine.Order(2, 10)), orders);
+        assertEquals(List.of(orders), placed);
+        assertEquals(List.of(40, 15, 6), stock());
+        assertEquals(2, count("SELECT COUNT(*) FROM purchase_order"));
+    }
+
+    @Test
+    void nothingIsOrderedWhenTheRestockCannotBeWritten() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE purchase_order");
+        }
+
+        try (PooledConnection c = pool.borrow()) {
+            assertThrows(SQLException.class, () -> engine(placed::add).replenish(c, List.of(1, 2)));
+        }
+        assertEquals(List.of(), placed);
+        assertEquals(List.of(0, 5, 6), stock());
+    }
+
+    @Test
+    void restockIsTakenBackWhenTheSupplierRefusesTheOrders() throws SQLException {
+        try (PooledConnection c = pool.borrow()) {
+            IllegalStateException refused = assertThrows(IllegalStateException.class, () -> engine(orders -> {
+                throw new IllegalStateException("Supplier closed");
+            }).replenish(c, List.of(1, 2)));
+            assertEquals(0, refused.getSuppressed().length);
+        }
+        assertEquals(List.of(0, 5, 6), stock());
+        assertEquals(0, count("SELECT COUNT(*) FROM purchase_order"));
+
+        try (PooledConnection c = pool.borrow()) {
+            assertEquals(2, engine(placed::add).replenish(c, List.of(1, 2)).size());
+        }
+        assertEquals(2, count("SELECT COUNT(*) FROM purchase_order"));
+    }
+
+    private List<Integer> stock() throws SQLException {
+        List<Integer> stock = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             ResultSet results = stmt.executeQuery("SELECT stock FROM product ORDER BY id")) {
+            while (results.next()) stock.add(results.getInt(1));
+        }
+        return stock;
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             ResultSet results = stmt.executeQuery(sql)) {
+            results.next();
+            return results.getLong(1);
+        }
+    }
+}
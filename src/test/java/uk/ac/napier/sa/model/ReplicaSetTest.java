@@ -0,0 +1,185 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs a replica set over a primary and two replicas, all embedded databases. Replication is played by copying the
+ * primary's heartbeat rows to a replica, so each test decides how far behind each replica is.
+ */
+class ReplicaSetTest {
+
+    private static final ReplicaSet.Settings SETTINGS = new ReplicaSet.Settings(Duration.ofMillis(400), Duration.ofMillis(20), true);
+
+    private final String primaryUrl = EmbeddedDatabase.url("primary");
+    private final String firstUrl = EmbeddedDatabase.url("replica");
+    private final String secondUrl = EmbeddedDatabase.url("replica");
+    private final List<DatabaseManager> databases = new ArrayList<>();
+    private ConnectionPool primary;
+    private ReplicaSet set;
+
+    @BeforeEach
+    void open() throws SQLException {
+        for (String url : List.of(primaryUrl, firstUrl, secondUrl)) {
+            databases.add(EmbeddedDatabase.migrated(url));
+            try (Connection conn = DriverManager.getConnection(url, "sa", "");
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE whoami (url varchar(255))");
+                stmt.execute("INSERT INTO whoami VALUES ('" + url + "')");
+            }
+        }
+        primary = new ConnectionPool(primaryUrl, "sa", "", ConnectionPool.Settings.defaults());
+        set = new ReplicaSet(primary, List.of(endpoint(firstUrl), endpoint(secondUrl)), SETTINGS);
+    }
+
+    @AfterEach
+    void close() {
+        set.close();
+        primary.close();
+        databases.forEach(DatabaseManager::disconnect);
+    }
+
+    private static ReplicaSet.Endpoint endpoint(String url) {
+        return new ReplicaSet.Endpoint(url, "sa", "", ConnectionPool.Settings.defaults());
+    }
+
+    @Test
+    void staleReplicaIsPassedOverForThePrimary() throws SQLException {
+        catchUp(firstUrl);
+        assertEquals(firstUrl, purchasesFrom());
+        assertEquals(firstUrl, purchasesFrom());
+
+        // Without further replication the replica falls behind, and reads go to the primary instead.
+        await(() -> !set.statistics().replicas().get(0).available() || set.statistics().replicas().get(0).lagMillis() > 400);
+        assertEquals(primaryUrl, purchasesFrom());
+        assertTrue(set.statistics().primaryReads() > 0);
+    }
+
+    @Test
+    void changedProductIsReadFromThePrimaryUntilTheReplicasHaveIt() throws SQLException {
+        catchUp(firstUrl, secondUrl);
+        set.productWritten(7);
+
+        assertEquals(primaryUrl, productsFrom(7));
+        assertEquals(primaryUrl, productsFrom(3, 7));
+        assertNotEquals(primaryUrl, productsFrom(3));
+        assertEquals(1, set.statistics().fencedProducts());
+
+        catchUp(firstUrl, secondUrl);
+        assertNotEquals(primaryUrl, productsFrom(7));
+        await(() -> set.statistics().fencedProducts() == 0);
+    }
+
+    @Test
+    void freshReplicasAreReadInTurn() throws SQLException {
+        catchUp(firstUrl, secondUrl);
+        String first = purchasesFrom();
+        String second = purchasesFrom();
+        assertNotEquals(first, second);
+        assertEquals(first, purchasesFrom());
+        assertEquals(second, purchasesFrom());
+        assertEquals(List.of(2L, 2L), set.statistics().replicas().stream().map(ReplicaSet.ReplicaStatistics::reads).toList());
+    }
+
+    @Test
+    void replicaOutOfReachDoesNotHoldBackTheOthers() throws SQLException {
+        catchUp(firstUrl, secondUrl);
+        try (Connection conn = DriverManager.getConnection(secondUrl, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE replica_heartbeat");
+        }
+        await(() -> !set.statistics().replicas().get(1).available());
+
+        set.productWritten(7);
+        catchUp(firstUrl);
+        await(() -> set.statistics().fencedProducts() == 0);
+        assertEquals(firstUrl, productsFrom(7));
+    }
+
+    private String purchasesFrom() throws SQLException {
+        try (PooledConnection c = set.borrowForPurchases()) {
+            return whoami(c);
+        }
+    }
+
+    private String productsFrom(int... ids) throws SQLException {
+        try (PooledConnection c = set.borrowForProducts(ids)) {
+            return whoami(c);
+        }
+    }
+
+    private static String whoami(PooledConnection c) throws SQLException {
+        try (ResultSet results = c.prepare("SELECT url FROM whoami").executeQuery()) {
+            results.next();
+            return results.getString(1);
+        }
+    }
+
+    /**
+     * Copy a heartbeat stamped after every write so far to the replicas, and wait for the set to read it back.
+     */
+    private void catchUp(String... replicas) throws SQLException {
+        long now = System.currentTimeMillis();
+        await(() -> beat() > now);
+
+        try (Connection from = DriverManager.getConnection(primaryUrl, "sa", "");
+             ResultSet rows = from.createStatement().executeQuery("SELECT source, beat FROM replica_heartbeat")) {
+            List<long[]> beats = new ArrayList<>();
+            while (rows.next()) beats.add(new long[]{rows.getLong(1), rows.getLong(2)});
+
+            for (String url : replicas) {
+                try (Connection to = DriverManager.getConnection(url, "sa", "");
+                     PreparedStatement merge = to.prepareStatement("MERGE INTO replica_heartbeat (source, beat) KEY (source) VALUES (?, ?)")) {
+                    for (long[] row : beats) {
+                        merge.setLong(1, row[0]);
+                        merge.setLong(2, row[1]);
+                        merge.executeUpdate();
+                    }
+                }
+            }
+        }
+
+        // The second heartbeat stamped after the copy is only stamped once the first has read every replica.
+        for (int i = 0; i < 2; i++) {
+            long stamped = beat();
+            await(() -> beat() > stamped);
+        }
+    }
+
+    private long beat() {
+        try (Connection conn = DriverManager.getConnection(primaryUrl, "sa", "");
+             ResultSet results = conn.createStatement().executeQuery("SELECT MAX(beat) FROM replica_heartbeat")) {
+            results.next();
+            return results.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
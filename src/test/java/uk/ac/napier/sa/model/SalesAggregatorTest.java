@@ -0,0 +1,144 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SalesAggregatorTest {
+
+    private static final Instant NOW = Instant.parse("2024-05-15T12:30:00Z");
+
+    private final MutableClock clock = new MutableClock(NOW);
+    private final SalesAggregator aggregator = new SalesAggregator(clock);
+
+    private DatabaseManager db;
+
+    @AfterEach
+    void close() {
+        if (db != null) db.disconnect();
+    }
+
+    @Test
+    void purchaseInTheFirstHourOfTheWindowCountsOnlyIfItIsAfterTheStart() {
+        Instant start = aggregator.windowStart();
+        assertEquals(Instant.parse("2024-04-15T12:30:00Z"), start);
+
+        aggregator.record(1, 100, start.minus(Duration.ofMinutes(20)));
+        aggregator.record(1, 200, start);
+        aggregator.record(1, 400, start.plusMillis(1));
+
+        assertEquals(new SalesAggregator.Snapshot(1, 400, 3), aggregator.snapshot());
+        assertEquals(Map.of(1, 1L), aggregator.productCounts());
+    }
+
+    @Test
+    void purchasesLeaveTheWindowAtTheirExactTime() {
+        Instant start = aggregator.windowStart();
+        aggregator.record(1, 100, start.plus(Duration.ofMinutes(10)));
+        aggregator.record(2, 200, start.plus(Duration.ofMinutes(40)));
+        aggregator.record(2, 400, start.plus(Duration.ofDays(1)));
+
+        clock.advance(Duration.ofMinutes(10));
+        assertEquals(new SalesAggregator.Snapshot(2, 600, 2), aggregator.snapshot());
+        assertEquals(Map.of(2, 2L), aggregator.productCounts());
+
+        clock.advance(Duration.ofMinutes(31));
+        assertEquals(new SalesAggregator.Snapshot(1, 400, 2), aggregator.snapshot());
+
+        clock.advance(Duration.ofDays(2));
+        assertEquals(new SalesAggregator.Snapshot(0, 0, 2), aggregator.snapshot());
+        assertEquals(Map.of(), aggregator.productCounts());
+    }
+
+    @Test
+    void purchasesLoadedOutOfOrderAreTrimmedInTimeOrder() {
+        Instant start = aggregator.windowStart();
+        for (int minute = 55; minute >= 5; minute -= 10) {
+            aggregator.record(minute, minute, start.plus(Duration.ofMinutes(minute)));
+        }
+
+        clock.advance(Duration.ofMinutes(30));
+        SalesAggregator.Snapshot snapshot = aggregator.snapshot();
+        assertEquals(3, snapshot.purchases());
+        assertEquals(35 + 45 + 55, snapshot.revenuePence());
+        assertEquals(Map.of(35, 1L, 45, 1L, 55, 1L), aggregator.productCounts());
+
+        aggregator.record(50, 50, start.plus(Duration.ofMinutes(50)));
+        clock.advance(Duration.ofMinutes(20));
+        assertEquals(Map.of(55, 1L), aggregator.productCounts());
+    }
+
+    @Test
+    void reportMatchesTheTransactionTableAroundTheWindowStart() throws SQLException {
+        String url = EmbeddedDatabase.url("sales");
+        db = EmbeddedDatabase.migrated(url);
+
+        Instant start = ZonedDateTime.now().minusMonths(1).toInstant();
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO transaction (product, customer, cost, purchased) VALUES (?, 1, ?, ?)")) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 100, 1.50), (2, 'Milk', 100, 0.90)");
+            stmt.executeUpdate("INSERT INTO customer (id, name) VALUES (1, 'Ada')");
+
+            int[] minutes = {-24 * 60, -50, -25, -10, -1, 1, 10, 25, 50, 24 * 60};
+            for (int i = 0; i < minutes.length; i++) {
+                insert.setInt(1, i % 3 == 0 ? 1 : 2);
+                insert.setBigDecimal(2, BigDecimal.valueOf(100 + i, 2));
+                insert.setTimestamp(3, Timestamp.from(start.plus(Duration.ofMinutes(minutes[i]))));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        assertTrue(db.connect(url, "sa", "", ConnectionPool.Settings.defaults()));
+
+        Map<String, Object> report = db.generateReport();
+        Map<String, Object> expected = db.generateReportFromDatabase();
+        assertEquals(5, expected.get("purchases"));
+        assertEquals(expected.get("purchases"), report.get("purchases"));
+        assertEquals((double) expected.get("revenue"), (double) report.get("revenue"), 0.001);
+        assertEquals(expected.get("most-popular"), report.get("most-popular"));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+
+    private final String url = EmbeddedDatabase.url("migrations");
+    private final DatabaseManager db = DatabaseManager.create();
+
+    @AfterEach
+    void close() {
+        db.disconnect();
+    }
+
+    @Test
+    void baselineTransactionTableAcceptsPurchasesWithoutASale() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE `transaction` (id int NOT NULL AUTO_INCREMENT PRIMARY KEY, product int NOT NULL, " +
+                         "customer int NOT NULL, sale int NOT NULL, cost decimal(16, 2) NOT NULL, purchased TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        assertTrue(db.connect(url, "sa", "", ConnectionPool.Settings.defaults()));
+        assertTrue(db.migrate(EmbeddedDatabase.migrations(), "prod"));
+
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            assertEquals(1, stmt.executeUpdate("INSERT INTO `transaction` (product, customer, cost) VALUES (1, 1, 1.00)"));
+        }
+    }
+
+    @Test
+    void onlyDevelopmentProfilesLoadSampleData() throws SQLException {
+        assertTrue(db.connect(url, "sa", "", ConnectionPool.Settings.defaults()));
+        assertTrue(db.migrate(EmbeddedDatabase.migrations(), "prod"));
+        assertEquals(0, customers());
+
+        assertTrue(db.migrate(EmbeddedDatabase.migrations(), "dev"));
+        assertTrue(customers() > 0);
+    }
+
+    @Test
+    void editedMigrationStopsFurtherMigrations(@TempDir Path dir) throws IOException, SQLException {
+        try (Stream<Path> scripts = Files.list(Path.of(EmbeddedDatabase.migrations()))) {
+            for (Path script : (Iterable<Path>) scripts::iterator) {
+                if (Files.isRegularFile(script)) Files.copy(script, dir.resolve(script.getFileName()));
+            }
+        }
+        assertTrue(db.connect(url, "sa", "", ConnectionPool.Settings.defaults()));
+        assertTrue(db.migrate(dir.toString(), "prod"));
+
+        Files.writeString(dir.resolve("V2__add_reorder_level.sql"), "-- edited\n", StandardOpenOption.APPEND);
+        Files.writeString(dir.resolve("V99__create_note.sql"), "CREATE TABLE note (id int NOT NULL PRIMARY KEY);\n");
+        assertFalse(db.migrate(dir.toString(), "prod"));
+
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             ResultSet tables = conn.getMetaData().getTables(null, null, "note", null)) {
+            assertFalse(tables.next());
+        }
+    }
+
+    private int customers() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             ResultSet results = stmt.executeQuery("SELECT COUNT(*) FROM customer")) {
+            results.next();
+            return results.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.adt.Purchase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs a chain of four stores over three embedded databases, with stores 3 and 4 sharing one, each loaded from the
+ * conformance script.
+ */
+class ShardedDatabaseManagerTest {
+
+    private static final String FIXTURE = "src/test/resources/conformance.sql";
+
+    private DatabaseManager north;
+    private DatabaseManager south;
+    private DatabaseManager west;
+    private ShardedDatabaseManager chain;
+
+    @BeforeEach
+    void load() {
+        north = EmbeddedDatabase.migrated(EmbeddedDatabase.url("north"));
+        south = EmbeddedDatabase.migrated(EmbeddedDatabase.url("south"));
+        west = EmbeddedDatabase.migrated(EmbeddedDatabase.url("west"));
+        chain = new ShardedDatabaseManager(Map.of(1, north, 2, south, 3, west, 4, west));
+        assertTrue(chain.init(FIXTURE));
+    }
+
+    @AfterEach
+    void close() {
+        chain.disconnect();
+        chain.close();
+    }
+
+    @Test
+    void storeOperationsOnlyReachTheirShard() {
+        assertNotNull(chain.completePurchase(2, 1, 1));
+        assertNotNull(chain.purchaseBasket(2, 2, Map.of(5, 2)));
+
+        assertEquals(20, chain.getProduct(1, 1).getQuantity());
+        assertEquals(19, chain.getProduct(2, 1).getQuantity());
+        assertEquals(28, chain.getProduct(2, 5).getQuantity());
+        assertEquals(20, chain.getProduct(3, 1).getQuantity());
+        assertEquals("Eggs", chain.retrieveProductName(4, 5));
+
+        // Stores 3 and 4 share a database, so they share its stock.
+        assertTrue(chain.purchase(4, 1, 2));
+        assertEquals(6, chain.getProduct(3, 2).getQuantity());
+        assertEquals(7, chain.getProduct(1, 2).getQuantity());
+    }
+
+    @Test
+    void unknownStoreIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> chain.getProduct(9, 1));
+        assertThrows(IllegalArgumentException.class, () -> chain.purchase(9, 1, 1));
+        assertEquals(Set.of(1, 2, 3, 4), chain.stores());
+    }
+
+    @Test
+    void lowStockIsMergedAcrossStores() {
+        assertTrue(chain.setReorderLevel(1, 2, 10));
+        assertEquals(List.of(2, 3, 4), chain.stockMonitor());
+
+        Map<Integer, List<Integer>> byStore = chain.lowStockByStore();
+        assertEquals(Set.of(1, 2, 3), byStore.keySet());
+        assertEquals(List.of(2, 3, 4), byStore.get(1));
+        assertEquals(List.of(3, 4), byStore.get(2));
+        assertEquals(List.of(3, 4), byStore.get(3));
+    }
+
+    @Test
+    void reportAddsUpEveryShard() {
+        assertNotNull(chain.completePurchase(1, 1, 5));
+        assertNotNull(chain.completePurchase(2, 2, 5));
+        assertNotNull(chain.completePurchase(3, 3, 2));
+        assertNotNull(chain.completePurchase(4, 4, 2));
+
+        Map<String, Object> report = chain.generateReport();
+        assertEquals(4, report.get("purchases"));
+        SalesSummary total = north.salesSummary().merge(south.salesSummary()).merge(west.salesSummary());
+        assertEquals(total.revenuePence() / 100.0d, (double) report.get("revenue"), 0.001);
+    }
+
+    @Test
+    void historyIsMergedNewestFirst() {
+        assertNotNull(chain.completePurchase(1, 1, 1));
+        assertNotNull(chain.completePurchase(2, 2, 2));
+        assertNotNull(chain.completePurchase(3, 3, 5));
+
+        List<Purchase> merged = new ArrayList<>();
+        assertTrue(chain.forEachPurchase(100, merged::add));
+        assertEquals(3 * 8, merged.size());
+        for (int i = 1; i < merged.size(); i++) {
+            assertFalse(merged.get(i).getPurchased().isAfter(merged.get(i - 1).getPurchased()));
+        }
+
+        List<Purchase> newest = new ArrayList<>();
+        assertTrue(chain.forEachPurchase(3, newest::add));
+        assertEquals(merged.subList(0, 3), newest);
+        assertEquals(8, chain.purchasesBefore(2, null, 100).size());
+    }
+}
@@ -0,0 +1,71 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlScriptReaderTest {
+
+    private static List<String> split(Reader script) throws IOException {
+        SqlScriptReader reader = new SqlScriptReader(script);
+        List<String> statements = new ArrayList<>();
+        String sql;
+        while ((sql = reader.next()) != null) statements.add(sql);
+        return statements;
+    }
+
+    private static List<String> split(String script) throws IOException {
+        return split(new StringReader(script));
+    }
+
+    /**
+     * A reader that hands out at most a few characters per read, so that every token straddles a refill somewhere.
+     */
+    private static Reader trickle(String script, int chunk) {
+        return new StringReader(script) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, chunk));
+            }
+        };
+    }
+
+    @Test
+    void semicolonInsideAStringOrIdentifierDoesNotEndTheStatement() throws IOException {
+        assertEquals(List.of("INSERT INTO t VALUES ('a;b', \"c;d\", `e;f`)", "SELECT 'it''s;', 'back\\';slash'"),
+                split("INSERT INTO t VALUES ('a;b', \"c;d\", `e;f`); SELECT 'it''s;', 'back\\';slash';"));
+    }
+
+    @Test
+    void semicolonInsideACommentDoesNotEndTheStatement() throws IOException {
+        assertEquals(List.of("SELECT 1 \n\n   FROM t", "SELECT 2", "SELECT 3 --4"),
+                split("SELECT 1 -- first; not the end\n# nor this;\n /* nor; this */ FROM t;\nSELECT 2;SELECT 3 --4;"));
+    }
+
+    @Test
+    void trailingStatementWithoutASemicolonIsReturned() throws IOException {
+        assertEquals(List.of("SELECT 1", "SELECT 2"), split("SELECT 1;\n\nSELECT 2\n"));
+        assertEquals(List.of("SELECT 1"), split("SELECT 1;\n  ;\n-- only a comment\n"));
+        assertEquals(List.of(), split(""));
+    }
+
+    @Test
+    void statementSpanningRefillsIsReadWhole() throws IOException {
+        String script = "INSERT INTO t VALUES ('a;b'); -- x;\nSELECT /* y; */ 1 - -2;SELECT 'it''s'";
+        List<String> whole = split(script);
+        assertEquals(List.of("INSERT INTO t VALUES ('a;b')", "SELECT   1 - -2", "SELECT 'it''s'"), whole);
+        for (int chunk = 1; chunk <= 4; chunk++) assertEquals(whole, split(trickle(script, chunk)), "chunk " + chunk);
+    }
+
+    @Test
+    void statementLongerThanTheBufferIsReadWhole() throws IOException {
+        String values = "'" + "x".repeat(100_000) + "'";
+        assertEquals(List.of("SELECT " + values, "SELECT 2"), split("SELECT " + values + ";SELECT 2;"));
+    }
+}
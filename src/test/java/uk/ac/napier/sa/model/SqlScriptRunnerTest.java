@@ -0,0 +1,104 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs scripts through a connection whose statements record the size of every batch they send.
+ */
+class SqlScriptRunnerTest {
+
+    private Connection connection;
+    private final List<Integer> batches = new ArrayList<>();
+
+    @BeforeEach
+    void open() throws SQLException {
+        connection = DriverManager.getConnection(EmbeddedDatabase.url("script"), "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE item (id int PRIMARY KEY, n int)");
+        }
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        connection.close();
+    }
+
+    private int run(String script) throws IOException, SQLException {
+        Connection recording = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    return method.getName().equals("createStatement") ? recording((Statement) result) : result;
+                });
+        return new SqlScriptRunner(recording).run(new StringReader(script));
+    }
+
+    private Statement recording(Statement stmt) {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(stmt, method, args);
+                    if (method.getName().equals("executeBatch")) batches.add(((int[]) result).length);
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String inserts(int from, int to) {
+        StringBuilder script = new StringBuilder();
+        for (int id = from; id < to; id++) script.append("INSERT INTO item (id, n) VALUES (").append(id).append(", 0);\n");
+        return script.toString();
+    }
+
+    @Test
+    void insertsAreSentInBatchesOfAThousand() throws IOException, SQLException {
+        assertEquals(2_501, run(inserts(0, 2_500) + "insert INTO item (id, n) VALUES (2500, 0)"));
+        assertEquals(List.of(1_000, 1_000, 501), batches);
+        assertEquals(2_501, count());
+    }
+
+    @Test
+    void pendingBatchIsSentBeforeTheNextOtherStatement() throws IOException, SQLException {
+        assertEquals(1_006, run(inserts(0, 1_003) + "UPDATE item SET n = 1;\n" + inserts(1_003, 1_004) + "DELETE FROM item WHERE n = 0;"));
+        assertEquals(List.of(1_000, 3, 1), batches);
+        assertEquals(1_003, count());
+    }
+
+    @Test
+    void failingStatementRollsBackTheWholeScript() {
+        assertThrows(SQLException.class, () -> run(inserts(0, 1_500) + "INSERT INTO item (id, n) VALUES (7, 0);"));
+        assertEquals(0, count());
+    }
+
+    private int count() {
+        try (Statement stmt = connection.createStatement();
+             ResultSet results = stmt.executeQuery("SELECT COUNT(*) FROM item")) {
+            results.next();
+            return results.getInt(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
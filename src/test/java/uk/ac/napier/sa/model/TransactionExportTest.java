@@ -0,0 +1,186 @@
+package uk.ac.napier.sa.model;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionExportTest {
+
+    // The count, earliest and latest times, and the raw and compressed length of each of the nine columns.
+    private static final int GROUP_HEADER_BYTES = 4 + 8 + 8 + 9 * 8;
+
+    /**
+     * Three groups of four, the last holding only two. IDs go back as well as forward, two rows share a time, and
+     * costs include a refund and an amount too large for an int.
+     */
+    private static final List<TransactionExport.Row> ROWS = List.of(
+            row(5, "2024-03-01T10:00:00Z", 199, 0, 1, "Tea", 7, "Ada", true),
+            row(3, "2024-03-01T10:00:00Z", -150, 2, 2, "Crème fraîche", 8, "Brian", false),
+            row(8, "2024-03-01T10:01:00Z", 0, 0, Integer.MAX_VALUE, "Tea", 7, "Ada", true),
+            row(9, "2024-03-01T10:30:00Z", 1_000_000_000_000L, 3, 1, "Tea", 9, "Clarice", false),
+
+            row(12, "2024-03-02T09:00:00Z", 95, 1, 2, "Crème fraîche", 7, "Ada", true),
+            row(11, "2024-03-02T09:00:00Z", 95, 1, 2, "Crème fraîche", 7, "Ada", true),
+            row(40, "2024-03-02T17:45:00Z", 310, 0, 4, "Jam", 8, "Brian", false),
+            row(41, "2024-03-02T17:46:00Z", 249, 3, 5, "Eggs", 9, "Clarice", false),
+
+            row(2, "2024-03-04T08:00:00Z", 120, 0, 3, "Bread", 10, "", false),
+            row(50, "2024-03-04T08:00:00Z", 200, 1, 1, "Tea", 7, "Ada", true));
+
+    @TempDir
+    Path dir;
+
+    private static TransactionExport.Row row(int id, String purchased, long costPence, int sale, int product, String productName,
+                                             int customer, String customerName, boolean loyal) {
+        return new TransactionExport.Row(id, Instant.parse(purchased), costPence, sale, product, productName, customer, customerName, loyal);
+    }
+
+    private Path export() throws IOException {
+        Path file = dir.resolve("transactions.dstx");
+        try (TransactionExport.Writer writer = new TransactionExport.Writer(file, new TransactionExport.Settings(4, 6))) {
+            for (TransactionExport.Row row : ROWS) {
+                writer.add(row.id(), row.purchased().toEpochMilli(), row.costPence(), row.sale(), row.product(), row.productName(),
+                        row.customer(), row.customerName(), row.loyal());
+            }
+            TransactionExport.Result result = writer.finish();
+            assertEquals(10, result.rows());
+            assertEquals(3, result.groups());
+            assertEquals(Files.size(file), result.bytes());
+        }
+        return file;
+    }
+
+    private static List<TransactionExport.Row> read(Path file, @Nullable String from, @Nullable String to) throws IOException {
+        List<TransactionExport.Row> rows = new ArrayList<>();
+        try (TransactionExport.Reader reader = TransactionExport.Reader.open(file)) {
+            reader.forEach(from == null ? null : Instant.parse(from), to == null ? null : Instant.parse(to), rows::add);
+        }
+        return rows;
+    }
+
+    private static SalesSummary summary(Path file, @Nullable String from, @Nullable String to) throws IOException {
+        try (TransactionExport.Reader reader = TransactionExport.Reader.open(file)) {
+            return reader.salesSummary(from == null ? null : Instant.parse(from), to == null ? null : Instant.parse(to));
+        }
+    }
+
+    @Test
+    void everyRowIsReadBackAsItWasWritten() throws IOException {
+        assertEquals(ROWS, read(export(), null, null));
+    }
+
+    @Test
+    void periodIncludesItsStartButNotItsEnd() throws IOException {
+        Path file = export();
+        assertEquals(ROWS.subList(2, 4), read(file, "2024-03-01T10:01:00Z", "2024-03-02T09:00:00Z"));
+        assertEquals(ROWS.subList(7, 10), read(file, "2024-03-02T17:46:00Z", null));
+        assertEquals(ROWS.subList(0, 6), read(file, null, "2024-03-02T17:45:00Z"));
+        assertEquals(List.of(), read(file, null, "2024-03-01T10:00:00Z"));
+        assertEquals(List.of(), read(file, "2024-03-03T00:00:00Z", "2024-03-04T00:00:00Z"));
+    }
+
+    @Test
+    void salesAreSummedOverThePeriod() throws IOException {
+        Path file = export();
+        long revenue = ROWS.stream().mapToLong(TransactionExport.Row::costPence).sum();
+        assertEquals(new SalesSummary(10, revenue, Map.of(1, 3L, 2, 3L, 3, 1L, 4, 1L, 5, 1L, Integer.MAX_VALUE, 1L)),
+                summary(file, null, null));
+        assertEquals(new SalesSummary(4, 749, Map.of(2, 2L, 4, 1L, 5, 1L)), summary(file, "2024-03-02T00:00:00Z", "2024-03-03T00:00:00Z"));
+        assertEquals(new SalesSummary(0, 0, Map.of()), summary(file, "2024-03-03T00:00:00Z", "2024-03-04T00:00:00Z"));
+    }
+
+    @Test
+    void groupsOutsideThePeriodAndColumnsNotNeededAreNotDecoded() throws IOException {
+        Path file = export();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Overwrite the IDs of the second group with bytes that cannot be inflated.
+            long second = 8 + GROUP_HEADER_BYTES + payload(channel, 8);
+            ByteBuffer ids = ByteBuffer.allocate(header(channel, second).getInt(24));
+            Arrays.fill(ids.array(), (byte) 0xFF);
+            channel.write(ids, second + GROUP_HEADER_BYTES);
+        }
+
+        assertEquals(ROWS.subList(0, 4), read(file, null, "2024-03-02T00:00:00Z"));
+        assertEquals(ROWS.subList(8, 10), read(file, "2024-03-03T00:00:00Z", null));
+        assertEquals(10, summary(file, null, null).purchases());
+        IOException damaged = assertThrows(IOException.class, () -> read(file, null, null));
+        assertTrue(damaged.getMessage().startsWith("Damaged column"));
+    }
+
+    private static ByteBuffer header(FileChannel channel, long at) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER_BYTES);
+        while (header.hasRemaining()) channel.read(header, at + header.position());
+        return header;
+    }
+
+    private static long payload(FileChannel channel, long at) throws IOException {
+        ByteBuffer header = header(channel, at);
+        long payload = 0;
+        for (int column = 0; column < 9; column++) payload += header.getInt(24 + column * 8);
+        return payload;
+    }
+
+    @Test
+    void fileThatIsNotAnExportIsRefused() throws IOException {
+        Path file = dir.resolve("prices.csv");
+        Files.writeString(file, "1,2.00\n2,3.50\n");
+        IOException refused = assertThrows(IOException.class, () -> TransactionExport.Reader.open(file).close());
+        assertTrue(refused.getMessage().endsWith("is not a transaction export"));
+    }
+
+    @Test
+    void databaseExportMapsNoSaleToZero() throws IOException {
+        DatabaseManager db = EmbeddedDatabase.migrated(EmbeddedDatabase.url("export"));
+        try {
+            assertTrue(db.init("src/test/resources/conformance.sql"));
+            db.setExportSettings(new TransactionExport.Settings(3, 6));
+
+            Path file = dir.resolve("all.dstx");
+            TransactionExport.Result result = db.exportTransactions(null, null, file.toString());
+            assertNotNull(result);
+            assertEquals(7, result.rows());
+            assertEquals(3, result.groups());
+
+            List<String> rows = new ArrayList<>();
+            try (TransactionExport.Reader reader = TransactionExport.Reader.open(file)) {
+                reader.forEach(null, null, row -> rows.add(row.id() + " " + row.sale() + " " + row.costPence() + " " + row.productName() +
+                                                           " " + row.customerName() + " " + row.loyal()));
+                assertEquals(new SalesSummary(7, 1_293, Map.of(1, 4L, 2, 1L, 3, 1L, 5, 1L)), reader.salesSummary(null, null));
+            }
+            assertEquals(List.of(
+                    "5 0 210 Tea Clarice Phelps false",
+                    "1 1 210 Tea Brian Kernighan false",
+                    "2 3 261 Eggs Brian Kernighan false",
+                    "3 1 210 Tea Clarice Phelps false",
+                    "4 2 100 Milk Clarice Phelps false",
+                    "6 0 113 Bread Ada Lovelace true",
+                    "7 1 189 Tea Ada Lovelace true"), rows);
+
+            // The fixture's times are local, as the database stores them.
+            Instant from = Timestamp.valueOf("2020-03-01 00:00:00").toInstant();
+            Instant to = Timestamp.valueOf("2020-03-02 12:30:00").toInstant();
+            Path period = dir.resolve("period.dstx");
+            assertEquals(3, db.exportTransactions(from, to, period.toString()).rows());
+            try (TransactionExport.Reader reader = TransactionExport.Reader.open(period)) {
+                assertEquals(new SalesSummary(3, 681, Map.of(1, 2L, 5, 1L)), reader.salesSummary(null, null));
+            }
+        } finally {
+            db.disconnect();
+        }
+    }
+}
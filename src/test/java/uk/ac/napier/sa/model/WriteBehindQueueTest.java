@@ -0,0 +1,156 @@
+package uk.ac.napier.sa.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindQueueTest {
+
+    private static final Instant PURCHASED = Instant.parse("2024-03-01T10:00:00Z");
+
+    private final String url = EmbeddedDatabase.url("write-behind");
+    private DatabaseManager db;
+    private ConnectionPool pool;
+
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void load() throws SQLException {
+        db = EmbeddedDatabase.migrated(url);
+        pool = new ConnectionPool(url, "sa", "", ConnectionPool.Settings.defaults());
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO product (id, name, stock, price) VALUES (1, 'Tea', 100, 2.00)");
+            stmt.executeUpdate("INSERT INTO customer (id, name) VALUES (1, 'Ada')");
+        }
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+        db.disconnect();
+    }
+
+    private WriteBehindQueue open(String source, Path journal) throws IOException, SQLException {
+        return new WriteBehindQueue(pool, new WriteBehindQueue.Settings(source, 100, 10, Duration.ofSeconds(1), journal), id -> {
+        });
+    }
+
+    @Test
+    void rejectedWriteIsSetAsideAndTheRestOfItsBatchWritten() throws IOException, SQLException {
+        Path journal = dir.resolve("till-1.journal");
+        try (WriteBehindQueue queue = open("till-1", journal)) {
+            assertTrue(queue.transaction(1, 1, 0, new BigDecimal("2.00"), PURCHASED));
+            assertTrue(queue.transaction(1, 99, 0, new BigDecimal("2.00"), PURCHASED));
+            assertTrue(queue.sale(1, 2));
+            assertTrue(queue.transaction(1, 1, 0, new BigDecimal("1.80"), PURCHASED));
+            assertTrue(queue.flush());
+
+            WriteBehindQueue.Statistics statistics = queue.statistics();
+            assertEquals(3, statistics.written());
+            assertEquals(1, statistics.rejected());
+            assertEquals(0, statistics.pending());
+        }
+
+        assertEquals(2, count("SELECT COUNT(*) FROM transaction"));
+        assertEquals(1, count("SELECT COUNT(*) FROM sale"));
+        assertEquals(4, checkpoint("till-1"));
+        List<String> rejected = Files.readAllLines(dir.resolve("till-1.journal.rejected"));
+        assertEquals(1, rejected.size());
+        assertTrue(rejected.get(0).startsWith("2 T 1 99 "));
+    }
+
+    @Test
+    void eachSourceReplaysAgainstItsOwnCheckpoint() throws IOException, SQLException {
+        try (WriteBehindQueue other = open("till-2", dir.resolve("till-2.journal"))) {
+            for (int i = 0; i < 5; i++) assertTrue(other.transaction(1, 1, 0, new BigDecimal("2.00"), PURCHASED));
+            assertTrue(other.flush());
+        }
+        assertEquals(5, checkpoint("till-2"));
+
+        // A journal left behind by a till that stopped before writing anything.
+        Path journal = dir.resolve("till-1.journal");
+        long millis = PURCHASED.toEpochMilli();
+        Files.write(journal, List.of("1 T 1 1 0 100 " + millis, "2 T 1 1 0 100 " + millis));
+        open("till-1", journal).close();
+        assertEquals(7, count("SELECT COUNT(*) FROM transaction"));
+        assertEquals(2, checkpoint("till-1"));
+
+        Files.write(journal, List.of("1 T 1 1 0 100 " + millis, "2 T 1 1 0 100 " + millis, "3 T 1 1 0 100 " + millis));
+        open("till-1", journal).close();
+        assertEquals(8, count("SELECT COUNT(*) FROM transaction"));
+        assertEquals(5, checkpoint("till-2"));
+    }
+
+    @Test
+    void journalOnlyKeepsWhatIsPendingWhileTheQueueIsBusy() throws IOException, SQLException {
+        Path journal = dir.resolve("till-1.journal");
+        long largest = 0;
+        try (WriteBehindQueue queue = open("till-1", journal)) {
+            // The queue never empties, so every checkpoint leaves writes pending behind it.
+            for (int i = 0; i < 10_000; i++) {
+                assertTrue(queue.transaction(1, 1, 0, new BigDecimal("2.00"), PURCHASED));
+                if (i % 100 == 0) largest = Math.max(largest, Files.size(journal));
+            }
+            assertTrue(queue.flush());
+            assertEquals(0, Files.size(journal));
+        }
+
+        // Ten thousand lines of about thirty bytes; only the committed lines past the last copy and those pending stay.
+        assertTrue(largest < 200_000, "Journal reached " + largest + " bytes");
+        assertEquals(10_000, count("SELECT COUNT(*) FROM transaction"));
+        assertEquals(10_000, checkpoint("till-1"));
+        assertFalse(Files.exists(dir.resolve("till-1.journal.next")));
+
+        open("till-1", journal).close();
+        assertEquals(10_000, count("SELECT COUNT(*) FROM transaction"));
+    }
+
+    @Test
+    void saleForAMissingProductIsRefusedBeforeItIsQueued() {
+        assertTrue(db.enableWriteBehind(WriteBehindQueue.Settings.defaults("till-1", dir.resolve("till-1.journal"))));
+        assertFalse(db.sell(99, 1));
+        assertTrue(db.sell(1, 1));
+        assertTrue(db.flushWriteBehind());
+        assertEquals(0, db.writeBehindStatistics().rejected());
+        assertEquals(1, db.writeBehindStatistics().written());
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement();
+             ResultSet results = stmt.executeQuery(sql)) {
+            results.next();
+            return results.getLong(1);
+        }
+    }
+
+    private long checkpoint(String source) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             PreparedStatement stmt = conn.prepareStatement("SELECT flushed FROM write_behind_checkpoint WHERE source = ?")) {
+            stmt.setString(1, source);
+            try (ResultSet results = stmt.executeQuery()) {
+                assertTrue(results.next());
+                return results.getLong(1);
+            }
+        }
+    }
+}
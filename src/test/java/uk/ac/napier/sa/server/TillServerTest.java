@@ -0,0 +1,167 @@
+package uk.ac.napier.sa.server;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.napier.sa.controller.RemoteController;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TillServerTest {
+
+    /**
+     * A controller that names the product asked for, and fails as badly as it can for product 0.
+     */
+    private static final RemoteController CONTROLLER = (RemoteController) Proxy.newProxyInstance(
+            RemoteController.class.getClassLoader(), new Class<?>[]{RemoteController.class}, (proxy, method, args) -> {
+                if (!method.getName().equals("retrieveProduct")) throw new UnsupportedOperationException(method.getName());
+                int id = (int) args[0];
+                if (id == 0) throw new AssertionError("product 0");
+                return "Product " + id;
+            });
+
+    /**
+     * A controller that names the product asked for, once a permit lets it.
+     */
+    private static RemoteController gated(Semaphore permits) {
+        return (RemoteController) Proxy.newProxyInstance(
+                RemoteController.class.getClassLoader(), new Class<?>[]{RemoteController.class}, (proxy, method, args) -> {
+                    permits.acquire();
+                    return "Product " + args[0];
+                });
+    }
+
+    @Test
+    void listensOnlyOnLoopbackUnlessExposed() throws IOException {
+        try (TillServer server = new TillServer(CONTROLLER, TillServer.Settings.defaults(0))) {
+            assertTrue(server.address().getAddress().isLoopbackAddress());
+        }
+        assertTrue(TillServer.Settings.exposed(0).address().getAddress().isAnyLocalAddress());
+    }
+
+    @Test
+    void errorInARequestIsAnsweredAndTheConnectionKeepsWorking() throws IOException {
+        try (TillServer server = new TillServer(CONTROLLER, TillServer.Settings.defaults(0));
+             TillClient till = TillClient.connect(server.address())) {
+            int first = till.retrieveProduct(1);
+            int failing = till.retrieveProduct(0);
+            int after = till.retrieveProduct(2);
+            till.flush();
+
+            assertEquals(new TillClient.Response(first, true, "Product 1"), till.receive());
+            TillClient.Response failed = till.receive();
+            assertEquals(failing, failed.requestId());
+            assertFalse(failed.ok());
+            assertEquals(new TillClient.Response(after, true, "Product 2"), till.receive());
+
+            int later = till.retrieveProduct(3);
+            till.flush();
+            assertEquals(new TillClient.Response(later, true, "Product 3"), till.receive());
+            assertEquals(1, server.statistics().failures());
+        }
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrderAcrossBatches() throws IOException {
+        try (TillServer server = new TillServer(CONTROLLER, TillServer.Settings.defaults(0));
+             TillClient till = TillClient.connect(server.address())) {
+            // Several times the 64 responses the server writes in one go, all sent before any is read.
+            List<Integer> sent = new ArrayList<>();
+            for (int id = 1; id <= 500; id++) sent.add(till.retrieveProduct(id));
+            till.flush();
+
+            for (int i = 0; i < sent.size(); i++) {
+                assertEquals(new TillClient.Response(sent.get(i), true, "Product " + (i + 1)), till.receive());
+            }
+            assertEquals(500, server.statistics().requests());
+        }
+    }
+
+    @Test
+    void connectionIsNotReadFromWhileTooManyRequestsAreOutstanding() throws IOException {
+        Semaphore permits = new Semaphore(0);
+        TillServer.Settings settings = TillServer.Settings.defaults(0);
+        settings = new TillServer.Settings(settings.address(), settings.backlog(), 1, 4);
+        try (TillServer server = new TillServer(gated(permits), settings);
+             TillClient till = TillClient.connect(server.address())) {
+            List<Integer> sent = new ArrayList<>();
+            for (int id = 1; id <= 4; id++) sent.add(till.retrieveProduct(id));
+            till.flush();
+            await(() -> server.statistics().paused() == 1);
+
+            for (int id = 5; id <= 10; id++) sent.add(till.retrieveProduct(id));
+            till.flush();
+
+            // The first three are answered, but reading only resumes once their responses are written, after the fourth.
+            permits.release(3);
+            await(() -> server.statistics().requests() == 4);
+            assertEquals(1, server.statistics().paused());
+
+            permits.release(7);
+            for (int i = 0; i < sent.size(); i++) {
+                assertEquals(new TillClient.Response(sent.get(i), true, "Product " + (i + 1)), till.receive());
+            }
+            assertEquals(10, server.statistics().requests());
+            await(() -> server.statistics().paused() == 0);
+        }
+    }
+
+    @Test
+    void stringRunningPastTheEndOfItsFrameIsRefused() throws IOException {
+        try (TillServer server = new TillServer(CONTROLLER, TillServer.Settings.defaults(0));
+             Socket socket = connect(server.address())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+
+            // A price change whose username claims 200 bytes, followed by only 5.
+            out.writeInt(4 + 1 + 12 + 2 + 5);
+            out.writeInt(7);
+            out.writeByte(TillProtocol.CHANGE_PRICE);
+            out.writeInt(1);
+            out.writeDouble(2.5);
+            out.writeShort(200);
+            out.write("admin".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            int length = in.readInt();
+            assertEquals(7, in.readInt());
+            assertEquals(TillProtocol.ERROR, in.readByte());
+            byte[] text = in.readNBytes(length - 5);
+            assertTrue(new String(text, StandardCharsets.UTF_8).contains("Malformed frame"));
+            assertEquals(1, server.statistics().failures());
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> TillProtocol.getString(ByteBuffer.wrap(new byte[]{0})));
+    }
+
+    private static Socket connect(InetSocketAddress address) throws IOException {
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
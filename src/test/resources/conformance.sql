@@ -0,0 +1,29 @@
+-- ------------------------------ --
+--  Data for the conformance tests --
+-- ------------------------------ --
+--
+-- Loaded through init() into every database manager under test, so IDs are
+-- left to each store to allocate, in the order the rows are inserted.
+--
+INSERT INTO customer (`name`, `loyal`) VALUES ('Ada Lovelace', 1);
+INSERT INTO customer (`name`, `loyal`) VALUES ('Brian Kernighan', 0);
+INSERT INTO customer (`name`, `loyal`) VALUES ('Clarice Phelps', 0);
+INSERT INTO customer (`name`, `loyal`) VALUES ('Dennis Ritchie', 0);
+
+INSERT INTO product (`name`, `stock`, `price`) VALUES ('Tea', 20, 2.00);
+INSERT INTO product (`name`, `stock`, `price`) VALUES ('Milk', 7, 0.95);
+INSERT INTO product (`name`, `stock`, `price`) VALUES ('Bread', 1, 1.20);
+INSERT INTO product (`name`, `stock`, `price`) VALUES ('Jam', 0, 3.10);
+INSERT INTO product (`name`, `stock`, `price`) VALUES ('Eggs', 30, 2.49);
+
+INSERT INTO sale (`product`, `type`) VALUES (1, 1);
+INSERT INTO sale (`product`, `type`) VALUES (2, 2);
+INSERT INTO sale (`product`, `type`) VALUES (5, 3);
+
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (1, 2, 1, 2.10, '2020-03-01 09:00:00');
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (5, 2, 3, 2.61, '2020-03-01 09:00:00');
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (1, 3, 1, 2.10, '2020-03-01 09:00:00');
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (2, 3, 2, 1.00, '2020-03-02 12:30:00');
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (1, 3, NULL, 2.10, '2020-02-28 17:45:00');
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (3, 1, NULL, 1.13, '2020-03-02 12:30:00');
+INSERT INTO transaction (`product`, `customer`, `sale`, `cost`, `purchased`) VALUES (1, 1, 1, 1.89, '2020-03-03 08:15:00');
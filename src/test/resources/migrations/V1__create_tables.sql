@@ -0,0 +1,43 @@
+-- ------------------------------ --
+--  V1 for the embedded database  --
+-- ------------------------------ --
+--
+-- The tables of src/migrations/V1__create_tables.sql, written with the
+-- portable form of the foreign key clause so that the embedded database
+-- accepts them. Later migrations are run as they are.
+--
+CREATE TABLE IF NOT EXISTS `customer`
+(
+    id    int          NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    name  varchar(255) NOT NULL,
+    loyal tinyint(1)   NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS `product`
+(
+    id    int            NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    name  varchar(255)   NOT NULL,
+    stock int            NOT NULL,
+    price decimal(16, 2) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS `sale`
+(
+    id      int NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    product int NOT NULL,
+    type    int NOT NULL,
+    CONSTRAINT sale_product FOREIGN KEY (product) REFERENCES product (id)
+);
+
+CREATE TABLE IF NOT EXISTS `transaction`
+(
+    id        int            NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    product   int            NOT NULL,
+    customer  int            NOT NULL,
+    sale      int            NULL,
+    cost      decimal(16, 2) NOT NULL,
+    purchased TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT transaction_product FOREIGN KEY (product) REFERENCES product (id),
+    CONSTRAINT transaction_customer FOREIGN KEY (customer) REFERENCES customer (id),
+    CONSTRAINT transaction_sale FOREIGN KEY (sale) REFERENCES sale (id)
+);